@@ -0,0 +1,83 @@
+package com.mjurczyga.iot_server.logic;
+
+import com.mjurczyga.iot_server.config.DeviceConfig;
+import com.mjurczyga.iot_server.model.DeviceDecision;
+import com.mjurczyga.iot_server.model.SystemState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a single priority calculation.
+ *
+ * Run with {@code ./gradlew jmh}, the gc profiler reports gc.alloc.rate.norm, which should be
+ * about 0 B/op for {@link #evaluate()} with either allocation strategy once the buffer has grown.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PriorityCalculatorBenchmark {
+
+    @Param({"MAX_USAGE", "COMFORT", "CUSTOM"})
+    private String mode;
+
+    @Param({"GREEDY", "OPTIMAL"})
+    private DeviceConfig.AllocationStrategy strategy;
+
+    private PriorityCalculator calculator;
+    private SystemState state;
+    private final DecisionBuffer buffer = new DecisionBuffer();
+
+    @Setup
+    public void setUp() {
+        DeviceConfig config = new DeviceConfig();
+        config.setCustomPriorityEnabled("CUSTOM".equals(mode));
+        config.setAllocationStrategy(strategy);
+        // At benchmark speed every call falls into the smoothing window, which would grow without bound
+        config.setStabilityDurationSeconds(0);
+        config.setMinOnTime(Duration.ZERO);
+        config.setMinOffTime(Duration.ZERO);
+        calculator = new PriorityCalculator(config);
+
+        state = SystemState.builder()
+                .anyoneHome("COMFORT".equals(mode))
+                .currentPvProduction(6000.0)
+                .currentHouseConsumption(300.0)
+                .indoorTemperature(25.0)
+                .outdoorTemperature(28.0)
+                .evConnected(true)
+                .evChargePercentage(50.0)
+                .evChargingPower(0.0)
+                .acOn(false)
+                .acPowerUsage(0.0)
+                .dishwasherReady(true)
+                .dishwasherOn(false)
+                .smartPlugOn(false)
+                .smartPlugPower(0.0)
+                .build();
+    }
+
+    @Benchmark
+    public DecisionBuffer evaluate() {
+        calculator.evaluate(state, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public DeviceDecision calculatePriorities() {
+        return calculator.calculatePriorities(state);
+    }
+
+    @Benchmark
+    public String calculatePrioritiesRendered() {
+        return calculator.calculatePriorities(state).getExplanation();
+    }
+}
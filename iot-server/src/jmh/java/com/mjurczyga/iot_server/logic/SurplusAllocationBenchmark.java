@@ -0,0 +1,135 @@
+package com.mjurczyga.iot_server.logic;
+
+import com.mjurczyga.iot_server.config.DeviceConfig;
+import com.mjurczyga.iot_server.model.DeviceDecision.ActionType;
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceType;
+import com.mjurczyga.iot_server.model.SystemState;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Greedy vs optimal surplus allocation over a large set of synthetic states.
+ *
+ * The score is the solve time per state. The aux counters sum, per iteration, the PV used by the
+ * house after applying each decision (selfConsumedWatts), the power drawn from the grid
+ * (importedWatts) and the number of states, so selfConsumedWatts / states compares the strategies.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SurplusAllocationBenchmark {
+
+    private static final int STATES = 100_000;
+
+    @Param({"GREEDY", "OPTIMAL"})
+    private DeviceConfig.AllocationStrategy strategy;
+
+    @Param({"false", "true"})
+    private boolean anyoneHome;
+
+    private DeviceConfig config;
+    private PriorityCalculator calculator;
+    private SystemState[] states;
+    private final DecisionBuffer buffer = new DecisionBuffer();
+    private int next;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Consumption {
+        public double selfConsumedWatts;
+        public double importedWatts;
+        public long states;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            selfConsumedWatts = 0.0;
+            importedWatts = 0.0;
+            states = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        config = new DeviceConfig();
+        config.setAllocationStrategy(strategy);
+        // States are independent samples, compare the allocation of each one on its own
+        config.setStabilityDurationSeconds(0);
+        config.setMinOnTime(Duration.ZERO);
+        config.setMinOffTime(Duration.ZERO);
+        calculator = new PriorityCalculator(config);
+
+        Random random = new Random(42);
+        states = new SystemState[STATES];
+        for (int i = 0; i < STATES; i++) {
+            boolean evCharging = random.nextBoolean();
+            boolean plugOn = random.nextBoolean();
+            boolean acOn = random.nextInt(4) == 0;
+            states[i] = SystemState.builder()
+                    .anyoneHome(anyoneHome)
+                    .currentPvProduction(random.nextDouble() * config.getPvMaxProduction())
+                    .currentHouseConsumption(150.0 + random.nextDouble() * 600.0)
+                    .indoorTemperature(18.0 + random.nextDouble() * 8.0)
+                    .outdoorTemperature(5.0 + random.nextDouble() * 30.0)
+                    .acOn(acOn)
+                    .acPowerUsage(acOn ? config.getAcCoolingPower() : 0.0)
+                    .evConnected(random.nextInt(5) != 0)
+                    .evChargePercentage(random.nextDouble() * 100.0)
+                    .evChargingPower(evCharging ? config.getEvMinPower() + random.nextDouble() * 3000.0 : 0.0)
+                    .dishwasherReady(random.nextInt(3) == 0)
+                    .dishwasherOn(false)
+                    .smartPlugOn(plugOn)
+                    .smartPlugPower(plugOn ? config.getSmartPlugPower() : 0.0)
+                    .build();
+        }
+    }
+
+    @Benchmark
+    public DecisionBuffer allocate(Consumption consumption) {
+        SystemState state = states[next];
+        next = (next + 1) % STATES;
+
+        calculator.evaluate(state, buffer);
+
+        double load = loadAfter(state, buffer);
+        consumption.selfConsumedWatts += Math.min(load, state.getCurrentPvProduction());
+        consumption.importedWatts += Math.max(0.0, load - state.getCurrentPvProduction());
+        consumption.states++;
+        return buffer;
+    }
+
+    /**
+     * House consumption after the decision is applied
+     */
+    private double loadAfter(SystemState state, DecisionBuffer decision) {
+        double ev = state.getEvChargingPower();
+        double ac = state.getAcPowerUsage();
+        double dishwasher = 0.0;
+        double plug = state.getSmartPlugPower();
+
+        for (int i = 0; i < decision.size(); i++) {
+            ActionType action = decision.getAction(i);
+            DeviceType device = decision.getDevice(i);
+            switch (device) {
+                case EV_CHARGER -> ev = action == ActionType.SET_POWER ? decision.getTargetPower(i) : 0.0;
+                case AC_CLIMATE -> ac = action == ActionType.TURN_ON
+                        ? Math.max(config.getAcCoolingPower(), config.getAcHeatingPower())
+                        : 0.0;
+                case DISHWASHER -> dishwasher = action == ActionType.TURN_ON ? config.getDishwasherPower() : 0.0;
+                case SMART_PLUG -> plug = action == ActionType.TURN_ON ? config.getSmartPlugPower() : 0.0;
+            }
+        }
+        return state.getCurrentHouseConsumption() + ev + ac + dishwasher + plug;
+    }
+}
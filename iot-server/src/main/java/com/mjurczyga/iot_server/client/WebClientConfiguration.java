@@ -1,9 +1,22 @@
 package com.mjurczyga.iot_server.client;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mjurczyga.iot_server.client.home_assistant.EntityStateTable;
+import com.mjurczyga.iot_server.client.home_assistant.HomeAssistantEventSubscriber;
+import com.mjurczyga.iot_server.config.HomeAssistantConfig;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class WebClientConfiguration {
@@ -14,12 +27,74 @@ public class WebClientConfiguration {
     @Value("${HOME_ASSISTANT_TOKEN}")
     private String token;
 
+    /**
+     * Connection pool shared by the clients of all homes
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider homeAssistantConnectionProvider(HomeAssistantConfig homeAssistantConfig) {
+        HomeAssistantConfig.Connection connection = homeAssistantConfig.getConnection();
+        return ConnectionProvider.builder("home-assistant")
+                .maxConnections(connection.getMaxConnections())
+                .pendingAcquireMaxCount(connection.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(connection.getPendingAcquireTimeout())
+                .maxIdleTime(connection.getMaxIdleTime())
+                .maxLifeTime(connection.getMaxLifeTime())
+                .evictInBackground(connection.getEvictionInterval())
+                .metrics(connection.isMetricsEnabled())
+                .build();
+    }
+
+    /**
+     * Connector shared by the clients of all homes, so they use one connection pool and one event loop
+     */
+    @Bean
+    public ReactorClientHttpConnector homeAssistantConnector(ConnectionProvider homeAssistantConnectionProvider,
+                                                             HomeAssistantConfig homeAssistantConfig) {
+        HomeAssistantConfig.Connection connection = homeAssistantConfig.getConnection();
+        HttpClient httpClient = HttpClient.create(homeAssistantConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connection.getConnectTimeout().toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(connection.getResponseTimeout())
+                .doOnConnected(conn -> conn.addHandlerLast(
+                        new ReadTimeoutHandler(connection.getReadTimeout().toMillis(), TimeUnit.MILLISECONDS)))
+                // Entity ids are folded into one tag value to keep metric cardinality bounded
+                .metrics(connection.isMetricsEnabled(),
+                        uri -> uri.startsWith("/api/states/") ? "/api/states/{entityId}" : uri);
+
+        if (connection.isHttp2Enabled()) {
+            httpClient = httpClient.secure().protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+        return new ReactorClientHttpConnector(httpClient);
+    }
+
     @Bean
-    public WebClient webClient(){
-       return WebClient.builder()
+    public WebClient webClient(ReactorClientHttpConnector homeAssistantConnector) {
+        return homeAssistantWebClient(homeAssistantConnector, baseUrl, token);
+    }
+
+    @Bean
+    public EntityStateTable entityStateTable(HomeAssistantConfig homeAssistantConfig) {
+        return new EntityStateTable(homeAssistantConfig.getEntities());
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnProperty(prefix = "iot.home-assistant.websocket", name = "enabled", havingValue = "true")
+    public HomeAssistantEventSubscriber homeAssistantEventSubscriber(EntityStateTable entityStateTable,
+                                                                     HomeAssistantConfig homeAssistantConfig,
+                                                                     ObjectMapper objectMapper) {
+        return new HomeAssistantEventSubscriber(baseUrl, token, entityStateTable,
+                homeAssistantConfig.getWebsocket(), objectMapper);
+    }
+
+    /**
+     * Creates a client for a single Home Assistant instance on top of the shared connector
+     */
+    public static WebClient homeAssistantWebClient(ReactorClientHttpConnector connector, String baseUrl, String token) {
+        return WebClient.builder()
+                .clientConnector(connector)
                 .baseUrl(baseUrl)
                 .defaultHeader("Authorization", "Bearer " + token)
                 .defaultHeader("Content-Type", "application/json")
                 .build();
     }
-}
\ No newline at end of file
+}
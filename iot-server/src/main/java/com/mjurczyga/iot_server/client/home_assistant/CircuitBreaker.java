@@ -0,0 +1,166 @@
+package com.mjurczyga.iot_server.client.home_assistant;
+
+import com.mjurczyga.iot_server.config.HomeAssistantConfig;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker with an adaptive timeout, guarding a single entity or a whole home.
+ *
+ * CLOSED: calls pass, the timeout follows the observed latency percentile.
+ * OPEN: calls fail immediately until the open duration has passed.
+ * HALF_OPEN: a single probe call is let through; success closes the breaker, failure opens it again.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final int TIMEOUT_RECALCULATION_INTERVAL = 10;
+
+    private final String name;
+    private final HomeAssistantConfig.Breaker config;
+    private final LongSupplier nanoClock;
+
+    private final long[] latencies;
+    private int latencyCount = 0;
+    private int latencyIndex = 0;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt = 0;
+    private boolean probeInFlight = false;
+    private Duration timeout;
+
+    public CircuitBreaker(String name, HomeAssistantConfig.Breaker config) {
+        this(name, config, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock Monotonic time in nanoseconds, System::nanoTime outside of tests.
+     */
+    public CircuitBreaker(String name, HomeAssistantConfig.Breaker config, LongSupplier nanoClock) {
+        this.name = name;
+        this.config = config;
+        this.nanoClock = nanoClock;
+        this.latencies = new long[config.getWindowSize()];
+        this.timeout = config.getMaxTimeout();
+    }
+
+    /**
+     * Checks if a call may be made now.
+     * @return false if the breaker is open, or half-open with a probe already in flight.
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (nanoClock.getAsLong() - openedAt < config.getOpenDuration().toNanos()) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return true;
+            case HALF_OPEN:
+            default:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    /**
+     * Records a successful call.
+     * @param latencyNanos Duration of the call.
+     */
+    public synchronized void onSuccess(long latencyNanos) {
+        latencies[latencyIndex] = latencyNanos;
+        latencyIndex = (latencyIndex + 1) % latencies.length;
+        latencyCount++;
+        if (latencyCount % TIMEOUT_RECALCULATION_INTERVAL == 0) {
+            timeout = calculateTimeout();
+        }
+
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Records a failed call (error or timeout).
+     */
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        probeInFlight = false;
+        if (state == State.HALF_OPEN || consecutiveFailures >= config.getFailureThreshold()) {
+            state = State.OPEN;
+            openedAt = nanoClock.getAsLong();
+        }
+    }
+
+    /**
+     * Releases a call that ended without an outcome (e.g. cancelled), so another probe can be made.
+     */
+    public synchronized void onCancel() {
+        probeInFlight = false;
+    }
+
+    /**
+     * @return The timeout to apply to the next call.
+     */
+    public synchronized Duration getTimeout() {
+        return timeout;
+    }
+
+    public synchronized Status getStatus() {
+        return new Status(name, state, consecutiveFailures,
+                percentileMillis(0.5), percentileMillis(config.getTimeoutPercentile()), timeout.toMillis());
+    }
+
+    private Duration calculateTimeout() {
+        int samples = Math.min(latencyCount, latencies.length);
+        if (samples < config.getMinSamples()) {
+            return config.getMaxTimeout();
+        }
+        long adaptive = (long) (percentileNanos(config.getTimeoutPercentile()) * config.getTimeoutMultiplier());
+        long min = config.getMinTimeout().toNanos();
+        long max = config.getMaxTimeout().toNanos();
+        return Duration.ofNanos(Math.max(min, Math.min(max, adaptive)));
+    }
+
+    private long percentileNanos(double percentile) {
+        int samples = Math.min(latencyCount, latencies.length);
+        if (samples == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, samples);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * samples) - 1;
+        return sorted[Math.max(0, Math.min(samples - 1, index))];
+    }
+
+    private double percentileMillis(double percentile) {
+        return percentileNanos(percentile) / 1_000_000.0;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Status {
+        private String name;
+        private State state;
+        private int consecutiveFailures;
+        private double p50LatencyMillis;
+        private double timeoutPercentileLatencyMillis;
+        private long timeoutMillis;
+    }
+}
@@ -0,0 +1,139 @@
+package com.mjurczyga.iot_server.client.home_assistant;
+
+import com.mjurczyga.iot_server.config.HomeAssistantConfig;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breakers of a single home: one for the home itself and one per entity.
+ *
+ * The home breaker opens when Home Assistant as a whole stops responding, so no entity is
+ * queried until a probe succeeds. It guards every request, including the /api/states snapshot.
+ * Entity breakers isolate single failing integrations; they exist only for per-entity requests
+ * (per-entity gather and entity value lookups), since a snapshot cannot fail for a single entity.
+ */
+public class CircuitBreakerRegistry {
+
+    public static final String HOME_BREAKER = "home";
+
+    private final HomeAssistantConfig.Breaker config;
+    private final LongSupplier nanoClock;
+    private final CircuitBreaker homeBreaker;
+    private final Map<String, CircuitBreaker> entityBreakers = new ConcurrentHashMap<>();
+
+    public CircuitBreakerRegistry(HomeAssistantConfig.Breaker config) {
+        this(config, System::nanoTime);
+    }
+
+    public CircuitBreakerRegistry(HomeAssistantConfig.Breaker config, LongSupplier nanoClock) {
+        this.config = config;
+        this.nanoClock = nanoClock;
+        this.homeBreaker = new CircuitBreaker(HOME_BREAKER, config, nanoClock);
+    }
+
+    /**
+     * Guards a request that covers the whole home, e.g. the snapshot, with the home breaker only.
+     * @param call The call, subscribed only if the home breaker lets it through.
+     * @return The result of the call, or a CircuitOpenException if the home breaker is open.
+     */
+    public <T> Mono<T> protectHome(Mono<T> call) {
+        if (!config.isEnabled()) {
+            return call;
+        }
+        return Mono.defer(() -> {
+            if (!homeBreaker.tryAcquire()) {
+                return Mono.error(new CircuitOpenException(HOME_BREAKER));
+            }
+            return guard(call, null);
+        });
+    }
+
+    /**
+     * Guards a call to Home Assistant with the home and entity breakers and the adaptive timeout.
+     * @param entityId The entity the call is made for.
+     * @param call The call, subscribed only if both breakers let it through.
+     * @return The result of the call, or a CircuitOpenException if a breaker is open.
+     */
+    public <T> Mono<T> protect(String entityId, Mono<T> call) {
+        if (!config.isEnabled()) {
+            return call;
+        }
+        return Mono.defer(() -> {
+            CircuitBreaker entityBreaker = breakerFor(entityId);
+            if (!homeBreaker.tryAcquire()) {
+                return Mono.error(new CircuitOpenException(HOME_BREAKER));
+            }
+            if (!entityBreaker.tryAcquire()) {
+                homeBreaker.onCancel();
+                return Mono.error(new CircuitOpenException(entityId));
+            }
+
+            return guard(call, entityBreaker);
+        });
+    }
+
+    /**
+     * Applies the timeout of the most specific breaker and reports the outcome to the breakers.
+     * @param entityBreaker The entity breaker next to the home breaker, null for home requests.
+     */
+    private <T> Mono<T> guard(Mono<T> call, CircuitBreaker entityBreaker) {
+        CircuitBreaker timeoutBreaker = entityBreaker != null ? entityBreaker : homeBreaker;
+        long start = nanoClock.getAsLong();
+        return call
+                .timeout(timeoutBreaker.getTimeout())
+                .doOnSuccess(value -> {
+                    long latency = nanoClock.getAsLong() - start;
+                    if (entityBreaker != null) {
+                        entityBreaker.onSuccess(latency);
+                    }
+                    homeBreaker.onSuccess(latency);
+                })
+                .doOnError(e -> {
+                    if (isFailure(e)) {
+                        if (entityBreaker != null) {
+                            entityBreaker.onFailure();
+                        }
+                        homeBreaker.onFailure();
+                    } else {
+                        release(entityBreaker);
+                    }
+                })
+                .doOnCancel(() -> release(entityBreaker));
+    }
+
+    private void release(CircuitBreaker entityBreaker) {
+        if (entityBreaker != null) {
+            entityBreaker.onCancel();
+        }
+        homeBreaker.onCancel();
+    }
+
+    public CircuitBreaker getHomeBreaker() {
+        return homeBreaker;
+    }
+
+    /**
+     * @return The status of the home breaker followed by all entity breakers.
+     */
+    public List<CircuitBreaker.Status> getStatuses() {
+        List<CircuitBreaker.Status> statuses = new ArrayList<>();
+        statuses.add(homeBreaker.getStatus());
+        entityBreakers.values().forEach(breaker -> statuses.add(breaker.getStatus()));
+        return statuses;
+    }
+
+    private CircuitBreaker breakerFor(String entityId) {
+        return entityBreakers.computeIfAbsent(entityId, id -> new CircuitBreaker(id, config, nanoClock));
+    }
+
+    // Client errors (e.g. 404 for an unknown entity) say nothing about the health of Home Assistant
+    private static boolean isFailure(Throwable e) {
+        return !(e instanceof WebClientResponseException response) || response.getStatusCode().is5xxServerError();
+    }
+}
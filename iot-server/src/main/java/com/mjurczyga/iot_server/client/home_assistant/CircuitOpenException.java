@@ -0,0 +1,11 @@
+package com.mjurczyga.iot_server.client.home_assistant;
+
+/**
+ * Thrown when a call is rejected because the circuit breaker of the entity or home is open.
+ */
+public class CircuitOpenException extends RuntimeException {
+
+    public CircuitOpenException(String breakerName) {
+        super("Circuit breaker " + breakerName + " is open");
+    }
+}
@@ -0,0 +1,129 @@
+package com.mjurczyga.iot_server.client.home_assistant;
+
+import com.mjurczyga.iot_server.client.response.HomeAssistantStateResponse;
+import com.mjurczyga.iot_server.config.HomeAssistantConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of entity states with a configurable TTL per entity.
+ *
+ * A fresh entry is served directly. An expired entry is still served while it is younger than
+ * TTL + max-stale, and a single background refresh is started for it (stale-while-revalidate).
+ * Older entries, and entities without a TTL, are loaded synchronously. When the cache is full the
+ * least recently used entry is evicted.
+ */
+public class EntityStateCache {
+
+    private static final Logger log = LoggerFactory.getLogger(EntityStateCache.class);
+
+    private final HomeAssistantConfig.Cache config;
+    // Access ordered, guarded by itself
+    private final LinkedHashMap<String, Entry> entries;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    public EntityStateCache(HomeAssistantConfig.Cache config) {
+        this.config = config;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > config.getMaxSize();
+            }
+        };
+    }
+
+    /**
+     * Gets the state of an entity, loading it only when the cached value cannot be served.
+     * @param entityId The entity id.
+     * @param loader Loads the state from Home Assistant.
+     * @return The entity state.
+     */
+    public Mono<HomeAssistantStateResponse> get(String entityId,
+                                                Function<String, Mono<HomeAssistantStateResponse>> loader) {
+        Duration ttl = ttlFor(entityId);
+        if (!config.isEnabled() || ttl.isZero() || ttl.isNegative()) {
+            return loader.apply(entityId);
+        }
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(entityId);
+        }
+        if (entry != null) {
+            long age = System.nanoTime() - entry.fetchedAt;
+            if (age < ttl.toNanos()) {
+                return Mono.just(entry.value);
+            }
+            if (age < ttl.plus(config.getMaxStale()).toNanos()) {
+                refreshInBackground(entityId, loader);
+                return Mono.just(entry.value);
+            }
+        }
+
+        return loader.apply(entityId).doOnNext(value -> put(entityId, value));
+    }
+
+    /**
+     * Stores states fetched by other means, e.g. a snapshot, so later reads can be served from the cache.
+     * @param states The entity states.
+     */
+    public void putAll(Collection<HomeAssistantStateResponse> states) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        for (HomeAssistantStateResponse state : states) {
+            if (state.getEntityId() != null && !ttlFor(state.getEntityId()).isZero()) {
+                put(state.getEntityId(), state);
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void refreshInBackground(String entityId, Function<String, Mono<HomeAssistantStateResponse>> loader) {
+        if (!refreshing.add(entityId)) {
+            return;
+        }
+        log.debug("Refreshing stale state of {} in background", entityId);
+        loader.apply(entityId)
+                .doOnNext(value -> put(entityId, value))
+                .doFinally(signal -> refreshing.remove(entityId))
+                .subscribe(
+                        value -> { },
+                        e -> log.warn("Background refresh of {} failed: {}", entityId, e.getMessage()));
+    }
+
+    private void put(String entityId, HomeAssistantStateResponse value) {
+        Entry entry = new Entry(value, System.nanoTime());
+        synchronized (entries) {
+            entries.put(entityId, entry);
+        }
+    }
+
+    private Duration ttlFor(String entityId) {
+        return config.getTtl().getOrDefault(entityId, config.getDefaultTtl());
+    }
+
+    private static class Entry {
+        private final HomeAssistantStateResponse value;
+        private final long fetchedAt;
+
+        private Entry(HomeAssistantStateResponse value, long fetchedAt) {
+            this.value = value;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.mjurczyga.iot_server.client.home_assistant;
+
+import com.mjurczyga.iot_server.client.response.HomeAssistantStateResponse;
+import com.mjurczyga.iot_server.config.EntityMapping;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * In-memory table of the latest known entity states, kept current by the Home Assistant event stream.
+ * Only entities needed by the control loop are stored. A resync swaps in a complete table at once,
+ * so readers never see a partially rebuilt table.
+ */
+public class EntityStateTable {
+
+    private final EntityMapping entities;
+    private final Set<String> trackedEntities;
+    private volatile Map<String, HomeAssistantStateResponse> states = new ConcurrentHashMap<>();
+    private final List<BiConsumer<String, HomeAssistantStateResponse>> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean synced = false;
+
+    public EntityStateTable(EntityMapping entities) {
+        this.entities = entities;
+        this.trackedEntities = Set.copyOf(entities.controlLoopEntities());
+    }
+
+    /**
+     * Registers a listener called with every applied state change of a tracked entity.
+     * @param listener Receives the entity id and the new state (null if removed).
+     */
+    public void addListener(BiConsumer<String, HomeAssistantStateResponse> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Checks if an entity is stored in this table.
+     * @param entityId The entity id.
+     * @return true if state changes of the entity should be applied.
+     */
+    public boolean isTracked(String entityId) {
+        return entityId != null && trackedEntities.contains(entityId);
+    }
+
+    /**
+     * Applies a single state change, untracked entities are ignored.
+     * @param entityId The entity id.
+     * @param newState The new state, or null if the entity was removed.
+     */
+    public void update(String entityId, HomeAssistantStateResponse newState) {
+        if (!isTracked(entityId)) {
+            return;
+        }
+        if (newState == null) {
+            states.remove(entityId);
+        } else {
+            newState.setEntityId(entityId);
+            states.put(entityId, newState);
+        }
+        notifyListeners(entityId, newState);
+    }
+
+    /**
+     * Replaces the whole table with a full list of states and marks it as synced.
+     * Listeners are notified only of entities whose state differs from the replaced table.
+     * @param allStates States of all entities, as returned by Home Assistant.
+     */
+    public void resync(Collection<HomeAssistantStateResponse> allStates) {
+        Map<String, HomeAssistantStateResponse> resynced = new ConcurrentHashMap<>();
+        for (HomeAssistantStateResponse state : allStates) {
+            if (isTracked(state.getEntityId())) {
+                resynced.put(state.getEntityId(), state);
+            }
+        }
+        Map<String, HomeAssistantStateResponse> previous = states;
+        states = resynced;
+        synced = true;
+
+        for (Map.Entry<String, HomeAssistantStateResponse> entry : resynced.entrySet()) {
+            if (!sameState(previous.get(entry.getKey()), entry.getValue())) {
+                notifyListeners(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String entityId : previous.keySet()) {
+            if (!resynced.containsKey(entityId)) {
+                notifyListeners(entityId, null);
+            }
+        }
+    }
+
+    /**
+     * Marks the table as out of date, e.g. after the event stream disconnected.
+     */
+    public void markOutOfSync() {
+        synced = false;
+    }
+
+    /**
+     * @return true if the table reflects the current state of Home Assistant.
+     */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    private void notifyListeners(String entityId, HomeAssistantStateResponse newState) {
+        for (BiConsumer<String, HomeAssistantStateResponse> listener : listeners) {
+            listener.accept(entityId, newState);
+        }
+    }
+
+    /**
+     * Home Assistant changes last_changed only with the state, attribute updates are not changes here.
+     */
+    private static boolean sameState(HomeAssistantStateResponse previous, HomeAssistantStateResponse current) {
+        return previous != null
+                && Objects.equals(previous.getState(), current.getState())
+                && Objects.equals(previous.getLastChanged(), current.getLastChanged());
+    }
+
+    /**
+     * @return A snapshot of the tracked entities, built without any network calls.
+     */
+    public HomeAssistantSnapshot toSnapshot() {
+        return HomeAssistantSnapshot.of(states.values(), entities);
+    }
+}
@@ -1,42 +1,66 @@
 package com.mjurczyga.iot_server.client.home_assistant;
 
+import com.mjurczyga.iot_server.client.response.EntityValue;
 import com.mjurczyga.iot_server.client.response.HomeAssistantStateResponse;
-import lombok.RequiredArgsConstructor;
+import com.mjurczyga.iot_server.config.EntityMapping;
+import com.mjurczyga.iot_server.config.HomeAssistantConfig;
+import com.mjurczyga.iot_server.metrics.IotMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Service
-@RequiredArgsConstructor
 public class HomeAssistantClient {
 
     private static final Logger log = LoggerFactory.getLogger(HomeAssistantClient.class);
 
-    private static final String SWITCH_ENTITY_ID = "switch.smart_plug_socket_1";
-    private static final String IPHONE_JAN_TRACKER_ID = "device_tracker.iphone_jan";
-    private static final String NOTIFICATION_SCRIPT_ID = "script.notification_script";
-    private static final String OUTDOOR_TEMPERATURE_SENSOR_ID = "sensor.153931628518786_outdoor_temperature";
-    private static final String INDOOR_TEMPERATURE_SENSOR_ID = "sensor.153931628518786_indoor_temperature";
-    private static final String AC_TOTAL_ENERGY_CONSUMPTION_ID = "sensor.153931628518786_total_energy_consumption";
-    private static final String PHONE_BATTER_LEVEL = "sensor.iphone_jan_battery_level";
-    private static final String PHONE_CHARGING_STATE = "sensor.iphone_jan_battery_state";
-    private static final String SMART_PLUG_CURRENT_POWER_USED = "sensor.smart_plug_moc";
-    private static final String PV_PRODUCTION_TOTAL_DAILY = "sensor.solarman_daily_production";
-    private static final String TOTAL_PV_PRODUCTION = "sensor.solarman_total_production";
-    private static final String TEMPORARY_PV_PRODUCTION = "sensor.solarman_total_ac_output_power_active";
-    private static final String NEXT_DAWN = "sensor.sun_next_dawn";
-    private static final String NEXT_DUSK = "sensor.sun_next_dusk";
+    private static final String SNAPSHOT_REQUEST = "/api/states";
 
     private final WebClient webClient;
+    private final EntityMapping entities;
+    private final EntityStateCache stateCache;
+    private final CircuitBreakerRegistry breakers;
+
+    @Autowired
+    public HomeAssistantClient(WebClient webClient, HomeAssistantConfig homeAssistantConfig) {
+        this(webClient, homeAssistantConfig, homeAssistantConfig.getEntities());
+    }
+
+    public HomeAssistantClient(WebClient webClient, HomeAssistantConfig homeAssistantConfig, EntityMapping entities) {
+        this.webClient = webClient;
+        this.entities = entities;
+        this.stateCache = new EntityStateCache(homeAssistantConfig.getCache());
+        this.breakers = new CircuitBreakerRegistry(homeAssistantConfig.getBreaker());
+    }
+
+    public EntityMapping getEntities() {
+        return entities;
+    }
+
+    /**
+     * @return The status of the circuit breakers of this home.
+     */
+    public List<CircuitBreaker.Status> getBreakerStatuses() {
+        return breakers.getStatuses();
+    }
 
     /**
      * Turns on the smart plug.
      * @return A confirmation message.
      */
     public String turnOnSmartPlug() {
-        return callService("switch", "turn_on", SWITCH_ENTITY_ID);
+        return callService("switch", "turn_on", entities.getSmartPlugSwitch());
     }
 
     /**
@@ -44,7 +68,7 @@ public class HomeAssistantClient {
      * @return A confirmation message.
      */
     public String turnOffSmartPlug() {
-        return callService("switch", "turn_off", SWITCH_ENTITY_ID);
+        return callService("switch", "turn_off", entities.getSmartPlugSwitch());
     }
 
     /**
@@ -52,7 +76,7 @@ public class HomeAssistantClient {
      * @return The state of the device tracker.
      */
     public String isAnyoneHomeState() {
-        return getEntityState(IPHONE_JAN_TRACKER_ID);
+        return getEntityState(entities.getPresenceTracker());
     }
 
     /**
@@ -60,7 +84,7 @@ public class HomeAssistantClient {
      * @return A confirmation message.
      */
     public String triggerNotificationScript() {
-        return callService("script", "turn_on", NOTIFICATION_SCRIPT_ID);
+        return callService("script", "turn_on", entities.getNotificationScript());
     }
 
     /**
@@ -68,7 +92,7 @@ public class HomeAssistantClient {
      * @return The indoor temperature.
      */
     public String getIndoorTemperature() {
-        return getEntityState(INDOOR_TEMPERATURE_SENSOR_ID);
+        return getEntityState(entities.getIndoorTemperature());
     }
 
     /**
@@ -76,7 +100,7 @@ public class HomeAssistantClient {
      * @return The outdoor temperature.
      */
     public String getOutdoorTemperature() {
-        return getEntityState(OUTDOOR_TEMPERATURE_SENSOR_ID);
+        return getEntityState(entities.getOutdoorTemperature());
     }
 
     /**
@@ -84,7 +108,7 @@ public class HomeAssistantClient {
      * @return The total AC energy consumption.
      */
     public String getTotalAcEnergyConsumption() {
-        return getEntityState(AC_TOTAL_ENERGY_CONSUMPTION_ID);
+        return getEntityState(entities.getAcTotalEnergyConsumption());
     }
 
     /**
@@ -92,7 +116,7 @@ public class HomeAssistantClient {
      * @return The phone battery level.
      */
     public String getPhoneBatteryLevel() {
-        return getEntityState(PHONE_BATTER_LEVEL);
+        return getEntityState(entities.getPhoneBatteryLevel());
     }
 
     /**
@@ -100,7 +124,7 @@ public class HomeAssistantClient {
      * @return The phone's charging state.
      */
     public String getPhoneChargingState() {
-        return getEntityState(PHONE_CHARGING_STATE);
+        return getEntityState(entities.getPhoneChargingState());
     }
 
     /**
@@ -108,7 +132,7 @@ public class HomeAssistantClient {
      * @return The current power usage.
      */
     public String getSmartPlugCurrentPowerUsed() {
-        return getEntityState(SMART_PLUG_CURRENT_POWER_USED);
+        return getEntityState(entities.getSmartPlugPower());
     }
 
     /**
@@ -116,7 +140,7 @@ public class HomeAssistantClient {
      * @return The total daily PV production.
      */
     public String getPvProductionTotalDaily() {
-        return getEntityState(PV_PRODUCTION_TOTAL_DAILY);
+        return getEntityState(entities.getPvDailyProduction());
     }
 
     /**
@@ -124,7 +148,7 @@ public class HomeAssistantClient {
      * @return The total PV production.
      */
     public String getTotalPvProduction() {
-        return getEntityState(TOTAL_PV_PRODUCTION);
+        return getEntityState(entities.getPvTotalProduction());
     }
 
     /**
@@ -132,7 +156,7 @@ public class HomeAssistantClient {
      * @return The temporary PV production.
      */
     public String getTemporaryPvProduction() {
-        return getEntityState(TEMPORARY_PV_PRODUCTION);
+        return getEntityState(entities.getPvCurrentProduction());
     }
 
     /**
@@ -140,7 +164,7 @@ public class HomeAssistantClient {
      * @return The next dawn time.
      */
     public String getNextDawn() {
-        return getEntityState(NEXT_DAWN);
+        return getEntityState(entities.getNextDawn());
     }
 
     /**
@@ -148,35 +172,144 @@ public class HomeAssistantClient {
      * @return The next dusk time.
      */
     public String getNextDusk() {
-        return getEntityState(NEXT_DUSK);
+        return getEntityState(entities.getNextDusk());
     }
 
-    private String getEntityState(String entityId) {
+    /**
+     * Fetches the states of all entities with a single request.
+     * @return A snapshot of all entity states.
+     */
+    public HomeAssistantSnapshot getSnapshot() {
+        return fetchSnapshot().block();
+    }
+
+    /**
+     * Fetches the states of all entities with a single request, without blocking.
+     * @return A snapshot of all entity states.
+     */
+    public Mono<HomeAssistantSnapshot> fetchSnapshot() {
+        Mono<List<HomeAssistantStateResponse>> request = webClient.get()
+                .uri("/api/states")
+                .retrieve()
+                .bodyToFlux(HomeAssistantStateResponse.class)
+                .collectList();
+        return timed(SNAPSHOT_REQUEST, breakers.protectHome(request))
+                .doOnNext(stateCache::putAll)
+                .map(states -> HomeAssistantSnapshot.of(states, entities))
+                .doOnNext(snapshot -> log.debug("Fetched states snapshot with {} entities", snapshot.size()));
+    }
+
+    /**
+     * Fetches the entities needed by the control loop concurrently.
+     * @param timeout Timeout applied to each entity separately.
+     * @return A snapshot of the entities that were fetched in time.
+     */
+    public Mono<HomeAssistantSnapshot> fetchControlLoopEntities(Duration timeout) {
+        return fetchEntities(entities.controlLoopEntities(), timeout);
+    }
+
+    /**
+     * Fetches the states of the given entities concurrently.
+     * Entities that fail or exceed the timeout are left out of the snapshot.
+     * @param entityIds The entity ids.
+     * @param timeout Timeout applied to each entity separately.
+     * @return A snapshot of the entities that were fetched in time.
+     */
+    public Mono<HomeAssistantSnapshot> fetchEntities(Collection<String> entityIds, Duration timeout) {
+        return Flux.fromIterable(entityIds)
+                .flatMap(entityId -> fetchEntityState(entityId)
+                        .timeout(timeout)
+                        .doOnNext(response -> response.setEntityId(entityId))
+                        .onErrorResume(e -> {
+                            if (e instanceof CircuitOpenException) {
+                                log.debug("Skipping {}: {}", entityId, e.getMessage());
+                            } else {
+                                log.warn("Could not fetch state for {}: {}", entityId, e.toString());
+                            }
+                            return Mono.empty();
+                        }))
+                .collectList()
+                .map(states -> HomeAssistantSnapshot.of(states, entities));
+    }
+
+    /**
+     * Fetches the state of a single entity, without blocking.
+     * Served from the cache when the entity has a TTL configured, fails fast with a
+     * CircuitOpenException while the breaker of the entity or home is open.
+     * @param entityId The entity id.
+     * @return The entity state, empty if Home Assistant returned no body.
+     */
+    public Mono<HomeAssistantStateResponse> fetchEntityState(String entityId) {
+        return stateCache.get(entityId, this::requestEntityState);
+    }
+
+    private Mono<HomeAssistantStateResponse> requestEntityState(String entityId) {
+        return timed(entityId, breakers.protect(entityId, webClient.get()
+                .uri("/api/states/" + entityId)
+                .retrieve()
+                .bodyToMono(HomeAssistantStateResponse.class)));
+    }
+
+    private <T> Mono<T> timed(String entityId, Mono<T> request) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return request.doFinally(signal -> IotMetrics.recordEntityFetch(entityId, System.nanoTime() - start, signal));
+        });
+    }
+
+    /**
+     * Gets the typed value of an entity.
+     * @param entityId The entity id.
+     * @return The value, with an explicit status when the entity is unavailable or the request failed.
+     */
+    public EntityValue getEntityValue(String entityId) {
         try {
             log.info("Fetching state for entity: {}", entityId);
-            HomeAssistantStateResponse response = webClient.get()
-                    .uri("/api/states/" + entityId)
-                    .retrieve()
-                    .bodyToMono(HomeAssistantStateResponse.class)
-                    .block();
+            HomeAssistantStateResponse response = fetchEntityState(entityId).block();
 
             if (response != null) {
                 log.info("Successfully fetched state for {}: {}", entityId, response.getState());
-                return response.getState();
+                return EntityValue.of(entityId, response);
             } else {
                 log.warn("Received an empty response from Home Assistant for entity: {}", entityId);
-                return "Error: Received an empty response from Home Assistant.";
+                return EntityValue.error(entityId, "Error: Received an empty response from Home Assistant.");
             }
 
         } catch (WebClientResponseException e) {
             log.error("Error fetching state for {}: {} - {}", entityId, e.getStatusCode(), e.getResponseBodyAsString(), e);
-            return "Error fetching state for " + entityId + ": " + e.getResponseBodyAsString();
+            return EntityValue.error(entityId, "Error fetching state for " + entityId + ": " + e.getResponseBodyAsString());
         } catch (Exception e) {
             log.error("Unexpected error fetching state for {}: {}", entityId, e.getMessage(), e);
-            return "Unexpected error fetching state for " + entityId + ": " + e.getMessage();
+            return EntityValue.error(entityId, "Unexpected error fetching state for " + entityId + ": " + e.getMessage());
         }
     }
 
+    private String getEntityState(String entityId) {
+        EntityValue value = getEntityValue(entityId);
+        return value.isError() ? value.getError() : value.getState();
+    }
+
+    /**
+     * Calls a service for many entities with a single request, without blocking.
+     * @param domain The service domain, e.g. "switch".
+     * @param service The service, e.g. "turn_on".
+     * @param entityIds The entities the service is called for.
+     * @param data Additional service data, e.g. {"value": 3500}, may be empty.
+     * @return The response body of Home Assistant.
+     */
+    public Mono<String> callServiceAsync(String domain, String service, Collection<String> entityIds,
+                                         Map<String, Object> data) {
+        Map<String, Object> body = new LinkedHashMap<>(data);
+        body.put("entity_id", List.copyOf(entityIds));
+        return webClient.post()
+                .uri("/api/services/{domain}/{service}", domain, service)
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(String.class)
+                .defaultIfEmpty("")
+                .doOnNext(response -> log.debug("Service {}.{} called for {}", domain, service, entityIds));
+    }
+
     private String callService(String domain, String service, String entityId) {
         try {
             log.info("Calling service {}.{} for entity: {}", domain, service, entityId);
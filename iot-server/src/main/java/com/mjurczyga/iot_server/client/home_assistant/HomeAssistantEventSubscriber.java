@@ -0,0 +1,205 @@
+package com.mjurczyga.iot_server.client.home_assistant;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mjurczyga.iot_server.client.response.HomeAssistantStateResponse;
+import com.mjurczyga.iot_server.config.HomeAssistantConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
+import org.springframework.web.reactive.socket.client.WebSocketClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Subscribes to state_changed events over the Home Assistant WebSocket API
+ * and keeps an {@link EntityStateTable} current.
+ *
+ * After every (re)connect the table is resynced with a full get_states request,
+ * so no change is lost while the connection was down. Reconnects back off exponentially;
+ * the backoff starts over once a connection is authenticated.
+ */
+public class HomeAssistantEventSubscriber {
+
+    private static final Logger log = LoggerFactory.getLogger(HomeAssistantEventSubscriber.class);
+
+    private static final int SUBSCRIBE_REQUEST_ID = 1;
+    private static final int GET_STATES_REQUEST_ID = 2;
+
+    private final URI webSocketUri;
+    private final String token;
+    private final EntityStateTable stateTable;
+    private final HomeAssistantConfig.WebSocket config;
+    private final ObjectMapper objectMapper;
+    private final WebSocketClient webSocketClient;
+
+    private final AtomicInteger failedAttempts = new AtomicInteger();
+    private Disposable connection;
+
+    public HomeAssistantEventSubscriber(String baseUrl, String token, EntityStateTable stateTable,
+                                        HomeAssistantConfig.WebSocket config, ObjectMapper objectMapper) {
+        this.webSocketUri = toWebSocketUri(baseUrl);
+        this.token = token;
+        this.stateTable = stateTable;
+        this.config = config;
+        this.objectMapper = objectMapper;
+        this.webSocketClient = new ReactorNettyWebSocketClient();
+    }
+
+    /**
+     * Opens the connection, reconnecting with backoff whenever it is lost.
+     */
+    public void start() {
+        log.info("Subscribing to Home Assistant events at {}", webSocketUri);
+        connection = webSocketClient.execute(webSocketUri, this::handleSession)
+                .then(Mono.error(new IllegalStateException("Home Assistant event stream closed")))
+                .doOnError(e -> {
+                    stateTable.markOutOfSync();
+                    log.warn("Home Assistant event stream disconnected: {}", e.getMessage());
+                })
+                .retryWhen(Retry.from(failures -> failures.concatMap(failure -> Mono.delay(nextReconnectDelay()))))
+                .subscribe();
+    }
+
+    /**
+     * Closes the connection.
+     */
+    public void stop() {
+        if (connection != null) {
+            connection.dispose();
+        }
+        stateTable.markOutOfSync();
+    }
+
+    /**
+     * @return Delay before the next reconnect: min-backoff doubled per failed attempt since the last
+     * successful connection, capped at max-backoff, plus up to 50% jitter (still capped).
+     */
+    Duration nextReconnectDelay() {
+        int attempt = failedAttempts.getAndIncrement();
+        long min = config.getReconnectMinBackoff().toMillis();
+        long max = config.getReconnectMaxBackoff().toMillis();
+        long delay = attempt < Long.SIZE - 1 && min <= max >> attempt ? min << attempt : max;
+        long jitter = delay / 2 > 0 ? ThreadLocalRandom.current().nextLong(delay / 2 + 1) : 0;
+        return Duration.ofMillis(Math.min(max, delay + jitter));
+    }
+
+    /**
+     * Called once a connection is authenticated, the next disconnect retries after min-backoff.
+     */
+    void resetBackoff() {
+        failedAttempts.set(0);
+    }
+
+    private Mono<Void> handleSession(WebSocketSession session) {
+        Sinks.Many<String> outbound = Sinks.many().unicast().onBackpressureBuffer();
+
+        Mono<Void> receive = session.receive()
+                .map(WebSocketMessage::getPayloadAsText)
+                .doOnNext(payload -> handleMessage(payload, outbound))
+                .doFinally(signal -> outbound.tryEmitComplete())
+                .then();
+
+        Mono<Void> send = session.send(outbound.asFlux().map(session::textMessage));
+
+        return Mono.when(send, receive);
+    }
+
+    private void handleMessage(String payload, Sinks.Many<String> outbound) {
+        JsonNode message;
+        try {
+            message = objectMapper.readTree(payload);
+        } catch (Exception e) {
+            log.warn("Could not parse Home Assistant message: {}", e.getMessage());
+            return;
+        }
+
+        switch (message.path("type").asText()) {
+            case "auth_required":
+                send(outbound, Map.of("type", "auth", "access_token", token));
+                break;
+
+            case "auth_ok":
+                resetBackoff();
+                // Subscribe first, then resync, so no change falls between the two
+                send(outbound, Map.of("id", SUBSCRIBE_REQUEST_ID, "type", "subscribe_events", "event_type", "state_changed"));
+                send(outbound, Map.of("id", GET_STATES_REQUEST_ID, "type", "get_states"));
+                break;
+
+            case "auth_invalid":
+                throw new IllegalStateException("Home Assistant rejected the access token: " + message.path("message").asText());
+
+            case "result":
+                if (message.path("id").asInt() == GET_STATES_REQUEST_ID) {
+                    handleResync(message.path("result"));
+                }
+                break;
+
+            case "event":
+                handleStateChanged(message.path("event").path("data"));
+                break;
+
+            default:
+                log.debug("Ignoring Home Assistant message of type {}", message.path("type").asText());
+        }
+    }
+
+    private void handleResync(JsonNode result) {
+        List<HomeAssistantStateResponse> states = new ArrayList<>();
+        for (JsonNode state : result) {
+            if (stateTable.isTracked(state.path("entity_id").asText(null))) {
+                states.add(toState(state));
+            }
+        }
+        stateTable.resync(states);
+        log.info("Resynced {} entities from Home Assistant", states.size());
+    }
+
+    private void handleStateChanged(JsonNode data) {
+        String entityId = data.path("entity_id").asText(null);
+        if (!stateTable.isTracked(entityId)) {
+            return;
+        }
+        JsonNode newState = data.path("new_state");
+        stateTable.update(entityId, newState.isObject() ? toState(newState) : null);
+        log.debug("State of {} changed", entityId);
+    }
+
+    private HomeAssistantStateResponse toState(JsonNode node) {
+        try {
+            return objectMapper.treeToValue(node, HomeAssistantStateResponse.class);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid entity state: " + node, e);
+        }
+    }
+
+    private void send(Sinks.Many<String> outbound, Map<String, Object> message) {
+        try {
+            outbound.tryEmitNext(objectMapper.writeValueAsString(message));
+        } catch (Exception e) {
+            log.error("Could not serialize Home Assistant message {}", message, e);
+        }
+    }
+
+    private static URI toWebSocketUri(String baseUrl) {
+        String url = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        if (url.startsWith("https://")) {
+            url = "wss://" + url.substring("https://".length());
+        } else if (url.startsWith("http://")) {
+            url = "ws://" + url.substring("http://".length());
+        }
+        return URI.create(url + "/api/websocket");
+    }
+}
@@ -0,0 +1,101 @@
+package com.mjurczyga.iot_server.client.home_assistant;
+
+import com.mjurczyga.iot_server.client.response.EntityValue;
+import com.mjurczyga.iot_server.client.response.HomeAssistantStateResponse;
+import com.mjurczyga.iot_server.config.EntityMapping;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * States of many Home Assistant entities captured at the same moment.
+ * Lookups are done in memory, without any network calls.
+ */
+public class HomeAssistantSnapshot {
+
+    private final Map<String, HomeAssistantStateResponse> states;
+    private final EntityMapping entities;
+
+    private HomeAssistantSnapshot(Map<String, HomeAssistantStateResponse> states, EntityMapping entities) {
+        this.states = states;
+        this.entities = entities;
+    }
+
+    /**
+     * Creates a snapshot from a list of entity states.
+     * @param states The entity states, entries without an entity id are skipped.
+     * @param entities Entity ids of the home the states belong to.
+     * @return The snapshot.
+     */
+    public static HomeAssistantSnapshot of(Collection<HomeAssistantStateResponse> states, EntityMapping entities) {
+        Map<String, HomeAssistantStateResponse> byEntityId = new HashMap<>();
+        if (states != null) {
+            for (HomeAssistantStateResponse state : states) {
+                if (state != null && state.getEntityId() != null) {
+                    byEntityId.put(state.getEntityId(), state);
+                }
+            }
+        }
+        return new HomeAssistantSnapshot(byEntityId, entities);
+    }
+
+    /**
+     * Gets the state of an entity.
+     * @param entityId The entity id.
+     * @return The state, or null if the entity is not part of the snapshot.
+     */
+    public String getState(String entityId) {
+        HomeAssistantStateResponse response = states.get(entityId);
+        return response != null ? response.getState() : null;
+    }
+
+    /**
+     * Gets the typed value of an entity.
+     * @param entityId The entity id.
+     * @return The value, unavailable if the entity is not part of the snapshot.
+     */
+    public EntityValue getValue(String entityId) {
+        return EntityValue.of(entityId, states.get(entityId));
+    }
+
+    public boolean contains(String entityId) {
+        return states.containsKey(entityId);
+    }
+
+    public int size() {
+        return states.size();
+    }
+
+    public EntityValue getPresence() {
+        return getValue(entities.getPresenceTracker());
+    }
+
+    public EntityValue getIndoorTemperature() {
+        return getValue(entities.getIndoorTemperature());
+    }
+
+    public EntityValue getOutdoorTemperature() {
+        return getValue(entities.getOutdoorTemperature());
+    }
+
+    public EntityValue getTemporaryPvProduction() {
+        return getValue(entities.getPvCurrentProduction());
+    }
+
+    public EntityValue getSmartPlugCurrentPowerUsed() {
+        return getValue(entities.getSmartPlugPower());
+    }
+
+    public EntityValue getSmartPlugSwitch() {
+        return getValue(entities.getSmartPlugSwitch());
+    }
+
+    public EntityValue getClimate() {
+        return getValue(entities.getClimate());
+    }
+
+    public EntityValue getDishwasherSwitch() {
+        return getValue(entities.getDishwasherSwitch());
+    }
+}
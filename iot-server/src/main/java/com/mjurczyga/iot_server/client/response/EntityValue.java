@@ -0,0 +1,212 @@
+package com.mjurczyga.iot_server.client.response;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+
+/**
+ * Typed value of a Home Assistant entity.
+ *
+ * Unlike the raw state string, a value is explicitly OK, UNAVAILABLE (Home Assistant reports
+ * "unavailable"/"unknown" or the entity is missing) or ERROR (the request failed), so error
+ * messages can never be mistaken for sensor readings.
+ */
+public final class EntityValue {
+
+    public enum Status {
+        OK,
+        UNAVAILABLE,
+        ERROR
+    }
+
+    // Powers of ten that are exactly representable as double
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final String entityId;
+    private final Status status;
+    private final String state;
+    private final double numericValue;
+    private final String unitOfMeasurement;
+    private final String lastChanged;
+    private final String error;
+
+    private EntityValue(String entityId, Status status, String state, double numericValue,
+                        String unitOfMeasurement, String lastChanged, String error) {
+        this.entityId = entityId;
+        this.status = status;
+        this.state = state;
+        this.numericValue = numericValue;
+        this.unitOfMeasurement = unitOfMeasurement;
+        this.lastChanged = lastChanged;
+        this.error = error;
+    }
+
+    /**
+     * Creates a value from a Home Assistant state response.
+     * @param entityId The entity id.
+     * @param response The response, or null if the entity is unknown.
+     * @return The typed value.
+     */
+    public static EntityValue of(String entityId, HomeAssistantStateResponse response) {
+        if (response == null) {
+            return unavailable(entityId);
+        }
+        String state = response.getState();
+        String unit = response.getAttributes() != null ? response.getAttributes().getUnitOfMeasurement() : null;
+        Status status = state == null || "unavailable".equals(state) || "unknown".equals(state)
+                ? Status.UNAVAILABLE
+                : Status.OK;
+        double number = status == Status.OK ? parseNumber(state) : Double.NaN;
+        return new EntityValue(entityId, status, state, number, unit, response.getLastChanged(), null);
+    }
+
+    public static EntityValue unavailable(String entityId) {
+        return new EntityValue(entityId, Status.UNAVAILABLE, null, Double.NaN, null, null, null);
+    }
+
+    public static EntityValue error(String entityId, String error) {
+        return new EntityValue(entityId, Status.ERROR, null, Double.NaN, null, null, error);
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isAvailable() {
+        return status == Status.OK;
+    }
+
+    public boolean isError() {
+        return status == Status.ERROR;
+    }
+
+    /**
+     * @return The raw state, null if the value is not available.
+     */
+    public String getState() {
+        return state;
+    }
+
+    /**
+     * @return true if the state is a number.
+     */
+    public boolean isNumeric() {
+        return !Double.isNaN(numericValue);
+    }
+
+    /**
+     * Gets the state as a number.
+     * @param defaultValue Returned when the state is unavailable, an error or not a number.
+     * @return The numeric state.
+     */
+    public double asDouble(double defaultValue) {
+        return Double.isNaN(numericValue) ? defaultValue : numericValue;
+    }
+
+    public String getUnitOfMeasurement() {
+        return unitOfMeasurement;
+    }
+
+    /**
+     * @return When the state last changed, null if unknown.
+     */
+    public Instant getLastChanged() {
+        if (lastChanged == null) {
+            return null;
+        }
+        try {
+            return OffsetDateTime.parse(lastChanged).toInstant();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return switch (status) {
+            case OK -> entityId + "=" + state + (unitOfMeasurement != null ? " " + unitOfMeasurement : "");
+            case UNAVAILABLE -> entityId + " unavailable";
+            case ERROR -> entityId + " error: " + error;
+        };
+    }
+
+    /**
+     * Parses a plain decimal number (optional sign, digits, fraction and exponent) without regex
+     * or intermediate strings.
+     * @param text The text to parse.
+     * @return The number, or NaN if the text is not a number.
+     */
+    static double parseNumber(String text) {
+        if (text == null) {
+            return Double.NaN;
+        }
+        int length = text.length();
+        int start = 0;
+        int end = length;
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return Double.NaN;
+        }
+
+        int i = start;
+        boolean negative = false;
+        char first = text.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenDot = false;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (digits >= 18) {
+                    return slowParse(text, start, end);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (seenDot) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && !seenDot) {
+                seenDot = true;
+            } else if (c == 'e' || c == 'E') {
+                return digits == 0 ? Double.NaN : slowParse(text, start, end);
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (digits == 0) {
+            return Double.NaN;
+        }
+
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private static double slowParse(String text, int start, int end) {
+        try {
+            return Double.parseDouble(text.substring(start, end));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
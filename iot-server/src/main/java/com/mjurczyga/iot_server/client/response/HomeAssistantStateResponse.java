@@ -8,10 +8,43 @@ import lombok.Getter;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class HomeAssistantStateResponse {
 
+    @JsonProperty("entity_id")
+    private String entityId;
+
     @JsonProperty("state")
     private String state;
 
+    @JsonProperty("last_changed")
+    private String lastChanged;
+
+    @JsonProperty("attributes")
+    private Attributes attributes;
+
+    public void setEntityId(String entityId) {
+        this.entityId = entityId;
+    }
+
     public void setState(String state) {
         this.state = state;
     }
-}
\ No newline at end of file
+
+    public void setLastChanged(String lastChanged) {
+        this.lastChanged = lastChanged;
+    }
+
+    public void setAttributes(Attributes attributes) {
+        this.attributes = attributes;
+    }
+
+    @Getter
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Attributes {
+
+        @JsonProperty("unit_of_measurement")
+        private String unitOfMeasurement;
+
+        public void setUnitOfMeasurement(String unitOfMeasurement) {
+            this.unitOfMeasurement = unitOfMeasurement;
+        }
+    }
+}
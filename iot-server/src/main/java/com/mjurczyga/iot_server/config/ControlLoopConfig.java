@@ -0,0 +1,58 @@
+package com.mjurczyga.iot_server.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration of when the control loop runs
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "iot.control")
+public class ControlLoopConfig {
+
+    // Run a cycle as soon as a significant state change arrives, otherwise only every max-interval
+    private boolean eventDriven = true;
+
+    // How often pending triggers of every home are checked
+    private Duration tickInterval = Duration.ofMillis(250);
+
+    // Delay before the first tick after startup
+    private Duration initialDelay = Duration.ofSeconds(5);
+
+    // Homes are split into shards checked one after another within a tick, spreading the work
+    private int shards = 16;
+
+    // Run cycles on virtual threads, or on a fixed pool of carrier-threads platform threads
+    private boolean virtualThreads = true;
+    private int carrierThreads = 8;
+
+    // Maximum number of cycles running at the same time, waiting cycles are served first come first served
+    private int maxConcurrentCycles = 256;
+
+    // Cycles taking longer than this are counted as slow cycles (iot.control.slow.cycles)
+    private Duration cycleBudget = Duration.ofSeconds(10);
+
+    // Decisions waiting for execution per home, the oldest is dropped when a newer one does not fit
+    private int pipelineDepth = 1;
+
+    // Gather the next state while a decision executes, when another cycle is already pending
+    private boolean prefetch = true;
+
+    // A cycle runs once no significant change arrived for this long, so a burst of events causes one cycle
+    private Duration debounce = Duration.ofMillis(300);
+
+    // Minimum time between two cycles of the same home
+    private Duration minInterval = Duration.ofSeconds(1);
+
+    // A cycle runs at least this often, even when nothing changed (heartbeat)
+    private Duration maxInterval = Duration.ofSeconds(30);
+
+    // Minimum changes that trigger a cycle, presence and switch changes always do
+    private double pvDelta = 200.0; // Watts
+    private double loadDelta = 200.0; // Watts
+    private double temperatureDelta = 0.5; // Celsius
+}
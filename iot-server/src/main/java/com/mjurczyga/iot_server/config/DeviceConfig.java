@@ -1,10 +1,13 @@
 package com.mjurczyga.iot_server.config;
 
+import com.mjurczyga.iot_server.devices.Controllability;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -28,6 +31,14 @@ public class DeviceConfig {
     private double evMinPower = 1400.0; // Watts
     private double evMaxPower = 7400.0; // Watts
     private double evBatteryCapacity = 60000.0; // Wh (60 kWh)
+    // Charger current control, ev-current-step 0 sets any power between ev-min-power and ev-max-power
+    private double evVoltage = 230.0; // Volts per phase
+    private int evPhases = 1;
+    private double evMinCurrent = 6.0; // Amps
+    private double evMaxCurrent = 32.0; // Amps
+    private double evCurrentStep = 0.0; // Amps
+    private double evRampRate = 0.0; // Amps per second for increases, 0 = unlimited
+    private double evDeadband = 0.0; // Amps, smaller increases are ignored
     
     // Dishwasher
     private double dishwasherPower = 1800.0; // Watts
@@ -35,28 +46,99 @@ public class DeviceConfig {
     // Smart Plug (general devices)
     private double smartPlugPower = 500.0; // Watts
     
-    // Stability threshold for turning on devices
+    // Window of the rolling mean surplus the decisions are based on, 0 uses the instantaneous surplus
     private int stabilityDurationSeconds = 300; // 5 minutes
+
+    // Minimum time an on/off device stays on (off) before it is switched again, null or 0 disables
+    private Duration minOnTime = Duration.ofMinutes(5);
+    private Duration minOffTime = Duration.ofMinutes(2);
     
     // Minimum surplus required before activating device (buffer)
     private double surplusBuffer = 200.0; // Watts
 
-    private boolean customPriorityEnabled = false;
-    private List<String> customPriorityOrder = new ArrayList<>(Arrays.asList(
+    // Generic controllable loads, their entities are configured in the entity mapping under the same id
+    private List<Load> loads = new ArrayList<>();
+
+    // Surplus allocation: GREEDY walks the devices in priority order, OPTIMAL searches for the device
+    // mix using the most surplus, with priorities as tie-breaking weights
+    private AllocationStrategy allocationStrategy = AllocationStrategy.GREEDY;
+    private Duration allocationTimeBudget = Duration.ofMillis(5);
+    private double allocationPriorityWeight = 50.0; // Watts of surplus a priority step is worth
+
+    // Custom priority configuration, compiled into a plan that is replaced as a whole on every change,
+    // so the control loop never sees a half-updated configuration
+    @Setter(AccessLevel.NONE)
+    private volatile PriorityPlan priorityPlan = PriorityPlan.compile(false, List.of(
         "EV_CHARGER",
-        "AC_CLIMATE", 
+        "AC_CLIMATE",
         "DISHWASHER",
         "SMART_PLUG"
     ));
 
+    /**
+     * Independent copy, e.g. for a simulated variant. Loads are shared, the plan is immutable.
+     */
+    public DeviceConfig copy() {
+        DeviceConfig copy = new DeviceConfig();
+        copy.pvMaxProduction = pvMaxProduction;
+        copy.acCoolingPower = acCoolingPower;
+        copy.acHeatingPower = acHeatingPower;
+        copy.targetTemperature = targetTemperature;
+        copy.temperatureHysteresis = temperatureHysteresis;
+        copy.evMinPower = evMinPower;
+        copy.evMaxPower = evMaxPower;
+        copy.evBatteryCapacity = evBatteryCapacity;
+        copy.evVoltage = evVoltage;
+        copy.evPhases = evPhases;
+        copy.evMinCurrent = evMinCurrent;
+        copy.evMaxCurrent = evMaxCurrent;
+        copy.evCurrentStep = evCurrentStep;
+        copy.evRampRate = evRampRate;
+        copy.evDeadband = evDeadband;
+        copy.dishwasherPower = dishwasherPower;
+        copy.smartPlugPower = smartPlugPower;
+        copy.stabilityDurationSeconds = stabilityDurationSeconds;
+        copy.minOnTime = minOnTime;
+        copy.minOffTime = minOffTime;
+        copy.surplusBuffer = surplusBuffer;
+        copy.loads = new ArrayList<>(loads);
+        copy.allocationStrategy = allocationStrategy;
+        copy.allocationTimeBudget = allocationTimeBudget;
+        copy.allocationPriorityWeight = allocationPriorityWeight;
+        copy.priorityPlan = priorityPlan;
+        return copy;
+    }
+
+    public boolean isCustomPriorityEnabled() {
+        return priorityPlan.isCustomEnabled();
+    }
+
+    public List<String> getCustomPriorityOrder() {
+        return priorityPlan.getCustomOrder();
+    }
+
+    public synchronized void setCustomPriorityEnabled(boolean customPriorityEnabled) {
+        priorityPlan = PriorityPlan.compile(customPriorityEnabled, priorityPlan.getCustomOrder());
+    }
+
+    public synchronized void setCustomPriorityOrder(List<String> customPriorityOrder) {
+        priorityPlan = PriorityPlan.compile(priorityPlan.isCustomEnabled(), customPriorityOrder);
+    }
+
+    /**
+     * Update the custom priority mode and order in one step
+     */
+    public synchronized void updateCustomPriority(boolean customPriorityEnabled, List<String> customPriorityOrder) {
+        priorityPlan = PriorityPlan.compile(customPriorityEnabled, customPriorityOrder);
+    }
+
     /**
      * Get priority index for a device (lower = higher priority)
      * @param deviceName Device name (e.g., "EV_CHARGER")
      * @return Priority index (0 = highest priority)
      */
     public int getDevicePriority(String deviceName) {
-        int index = customPriorityOrder.indexOf(deviceName);
-        return index >= 0 ? index : 999; // Unknown devices get lowest priority
+        return priorityPlan.getPriority(deviceName); // Unknown devices get lowest priority
     }
     
     /**
@@ -66,4 +148,23 @@ public class DeviceConfig {
     public boolean isComfortDevice(String deviceName) {
         return "AC_CLIMATE".equals(deviceName);
     }
-}
\ No newline at end of file
+
+    /**
+     * A generic load, e.g. a pool pump, boiler or wallbox, controlled with the surplus
+     */
+    @Data
+    public static class Load {
+        private String id;
+        private String name;
+        private double power;       // W, power of an on/off load
+        private double minPower;    // W, continuous loads only
+        private double maxPower;    // W, above 0 makes the load continuous, controlled through a number entity
+        private int priority = 100; // lower = higher priority, loads come after the built-in devices
+        private Controllability control = Controllability.SURPLUS;
+    }
+
+    public enum AllocationStrategy {
+        GREEDY,
+        OPTIMAL
+    }
+}
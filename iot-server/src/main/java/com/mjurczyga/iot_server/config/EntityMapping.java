@@ -0,0 +1,68 @@
+package com.mjurczyga.iot_server.config;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Home Assistant entity ids used for a single home
+ */
+@Data
+public class EntityMapping {
+
+    // Actions
+    private String smartPlugSwitch = "switch.smart_plug_socket_1";
+    private String notificationScript = "script.notification_script";
+
+    // Controlled devices, left empty when the home has no such device
+    private String evChargerPower;          // number entity, set to the charging power in W
+    private String climate;                 // climate entity
+    private String dishwasherSwitch;        // switch (or smart plug) powering the dishwasher
+
+    // Generic loads from iot.devices.loads, by load id
+    private Map<String, String> loads = new LinkedHashMap<>();      // switch, or number entity of continuous loads
+    private Map<String, String> loadPower = new LinkedHashMap<>();  // optional sensor with the actual power in W
+
+    // Presence
+    private String presenceTracker = "device_tracker.iphone_jan";
+
+    // Sensors
+    private String indoorTemperature = "sensor.153931628518786_indoor_temperature";
+    private String outdoorTemperature = "sensor.153931628518786_outdoor_temperature";
+
+    // Energy
+    private String acTotalEnergyConsumption = "sensor.153931628518786_total_energy_consumption";
+    private String smartPlugPower = "sensor.smart_plug_moc";
+    private String pvDailyProduction = "sensor.solarman_daily_production";
+    private String pvTotalProduction = "sensor.solarman_total_production";
+    private String pvCurrentProduction = "sensor.solarman_total_ac_output_power_active";
+
+    // Devices
+    private String phoneBatteryLevel = "sensor.iphone_jan_battery_level";
+    private String phoneChargingState = "sensor.iphone_jan_battery_state";
+
+    // Sun
+    private String nextDawn = "sensor.sun_next_dawn";
+    private String nextDusk = "sensor.sun_next_dusk";
+
+    /**
+     * Entities needed to build the system state for the control loop
+     */
+    public List<String> controlLoopEntities() {
+        List<String> ids = new ArrayList<>(List.of(presenceTracker, indoorTemperature, outdoorTemperature,
+                pvCurrentProduction, smartPlugPower, smartPlugSwitch));
+        // Controlled devices report whether they are on, so applied commands can be reconciled
+        if (climate != null && !climate.isBlank()) {
+            ids.add(climate);
+        }
+        if (dishwasherSwitch != null && !dishwasherSwitch.isBlank()) {
+            ids.add(dishwasherSwitch);
+        }
+        ids.addAll(loads.values());
+        ids.addAll(loadPower.values());
+        return ids;
+    }
+}
@@ -0,0 +1,109 @@
+package com.mjurczyga.iot_server.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Configuration for communication with Home Assistant
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "iot.home-assistant")
+public class HomeAssistantConfig {
+
+    // Gather system state with a single /api/states call instead of one call per sensor
+    private boolean snapshotEnabled = true;
+
+    // Maximum time to wait for a single entity (or the whole snapshot) before falling back to defaults
+    private Duration entityTimeout = Duration.ofSeconds(5);
+
+    // Callers asking for the system state within this window after a gather share its result
+    private Duration coalesceWindow = Duration.ofSeconds(1);
+
+    // Maximum time to wait for all service calls of a single decision
+    private Duration serviceCallTimeout = Duration.ofSeconds(10);
+
+    // Entity ids of the default home
+    private EntityMapping entities = new EntityMapping();
+
+    // Connection pool and timeouts of the HTTP client shared by all homes
+    private Connection connection = new Connection();
+
+    // Push-based state updates over the Home Assistant WebSocket API
+    private WebSocket websocket = new WebSocket();
+
+    // Cache of entity states, useful for slow-moving entities such as sun times or energy totals
+    private Cache cache = new Cache();
+
+    // Circuit breakers and adaptive timeouts, per entity and per home
+    private Breaker breaker = new Breaker();
+
+    // Suppression of commands that would not change the device state
+    private Commands commands = new Commands();
+
+    @Data
+    public static class Connection {
+        private int maxConnections = 500;
+        private int pendingAcquireMaxCount = 1000;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+        private Duration evictionInterval = Duration.ofSeconds(30);
+        private Duration connectTimeout = Duration.ofSeconds(3);
+        private Duration responseTimeout = Duration.ofSeconds(10);
+        private Duration readTimeout = Duration.ofSeconds(10);
+        // Negotiates HTTP/2 over TLS (ALPN) with HTTP/1.1 fallback, only for https base URLs
+        private boolean http2Enabled = false;
+        private boolean metricsEnabled = true;
+    }
+
+    @Data
+    public static class WebSocket {
+        private boolean enabled = false;
+        private Duration reconnectMinBackoff = Duration.ofSeconds(1);
+        private Duration reconnectMaxBackoff = Duration.ofSeconds(60);
+    }
+
+    @Data
+    public static class Cache {
+        private boolean enabled = true;
+        private int maxSize = 1000;
+        // TTL for entities without their own entry, zero disables caching
+        private Duration defaultTtl = Duration.ZERO;
+        // How long an expired value may still be served while it is refreshed in background
+        private Duration maxStale = Duration.ofMinutes(5);
+        private Map<String, Duration> ttl = new HashMap<>();
+    }
+
+    @Data
+    public static class Breaker {
+        private boolean enabled = true;
+        // Consecutive failures after which the breaker opens
+        private int failureThreshold = 3;
+        // How long an open breaker rejects calls before letting a probe through
+        private Duration openDuration = Duration.ofSeconds(30);
+        // Number of recent latencies the adaptive timeout is calculated from
+        private int windowSize = 100;
+        // Samples needed before the adaptive timeout replaces max-timeout
+        private int minSamples = 20;
+        // Timeout = latency percentile * multiplier, clamped to [min-timeout, max-timeout]
+        private double timeoutPercentile = 0.99;
+        private double timeoutMultiplier = 2.0;
+        private Duration minTimeout = Duration.ofMillis(200);
+        private Duration maxTimeout = Duration.ofSeconds(5);
+    }
+
+    @Data
+    public static class Commands {
+        private boolean deduplicate = true;
+        // SET_POWER commands closer than this to the applied power are not sent (W)
+        private double powerTolerance = 100.0;
+        // Applied state is forgotten after this time, so the command is sent again even if unchanged
+        private Duration reconcileInterval = Duration.ofMinutes(5);
+    }
+}
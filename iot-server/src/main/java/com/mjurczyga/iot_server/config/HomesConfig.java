@@ -0,0 +1,29 @@
+package com.mjurczyga.iot_server.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Additional homes managed by this server, next to the default home configured
+ * with HOME_ASSISTANT_BASE_URL / HOME_ASSISTANT_TOKEN
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "iot")
+public class HomesConfig {
+
+    private List<Home> homes = new ArrayList<>();
+
+    @Data
+    public static class Home {
+        private String id;
+        private String baseUrl;
+        private String token;
+        private EntityMapping entities = new EntityMapping();
+        private DeviceConfig devices = new DeviceConfig();
+    }
+}
@@ -0,0 +1,124 @@
+package com.mjurczyga.iot_server.config;
+
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, precompiled custom priority configuration.
+ *
+ * Device names are parsed once when the configuration changes, so the control loop only walks
+ * an array of device types. Unknown names are logged and left out of the order.
+ */
+public final class PriorityPlan {
+
+    private static final Logger log = LoggerFactory.getLogger(PriorityPlan.class);
+
+    private static final int UNKNOWN_PRIORITY = 999;
+    private static final Map<String, DeviceType> DEVICES_BY_NAME = devicesByName();
+
+    private final boolean customEnabled;
+    private final List<String> customOrder;
+    private final DeviceType[] order;
+    private final List<DeviceType> devices;
+    private final int[] priorities;
+
+    private PriorityPlan(boolean customEnabled, List<String> customOrder, DeviceType[] order, int[] priorities) {
+        this.customEnabled = customEnabled;
+        this.customOrder = customOrder;
+        this.order = order;
+        this.devices = List.of(order);
+        this.priorities = priorities;
+    }
+
+    /**
+     * @param customEnabled Whether the custom priority mode is active.
+     * @param customOrder Device names, highest priority first.
+     */
+    public static PriorityPlan compile(boolean customEnabled, List<String> customOrder) {
+        List<String> names = customOrder != null
+                ? Collections.unmodifiableList(new ArrayList<>(customOrder))
+                : List.of();
+        List<DeviceType> devices = new ArrayList<>(names.size());
+        int[] priorities = new int[DeviceType.values().length];
+        Arrays.fill(priorities, UNKNOWN_PRIORITY);
+
+        for (int i = 0; i < names.size(); i++) {
+            DeviceType device = DEVICES_BY_NAME.get(names.get(i));
+            if (device == null) {
+                log.warn("Unknown device type in custom priority: {}", names.get(i));
+                continue;
+            }
+            if (priorities[device.ordinal()] == UNKNOWN_PRIORITY) {
+                priorities[device.ordinal()] = i;
+            }
+            devices.add(device);
+        }
+        return new PriorityPlan(customEnabled, names, devices.toArray(new DeviceType[0]), priorities);
+    }
+
+    public boolean isCustomEnabled() {
+        return customEnabled;
+    }
+
+    /**
+     * @return The device names as configured, including unknown ones.
+     */
+    public List<String> getCustomOrder() {
+        return customOrder;
+    }
+
+    /**
+     * @return The known devices of the custom order, highest priority first.
+     */
+    public List<DeviceType> getDevices() {
+        return devices;
+    }
+
+    /**
+     * @return Number of known devices in the custom order.
+     */
+    public int size() {
+        return order.length;
+    }
+
+    /**
+     * @return The device at the given position of the custom order.
+     */
+    public DeviceType get(int index) {
+        return order[index];
+    }
+
+    /**
+     * @return Priority index of a device (0 = highest), 999 for devices not in the order.
+     */
+    public int getPriority(DeviceType device) {
+        return priorities[device.ordinal()];
+    }
+
+    /**
+     * @return Priority index of a device by name (0 = highest), 999 for unknown devices.
+     */
+    public int getPriority(String deviceName) {
+        DeviceType device = DEVICES_BY_NAME.get(deviceName);
+        return device != null ? priorities[device.ordinal()] : UNKNOWN_PRIORITY;
+    }
+
+    private static Map<String, DeviceType> devicesByName() {
+        Map<String, DeviceType> byName = new HashMap<>();
+        for (DeviceType device : DeviceType.values()) {
+            // Generic loads are ordered by the device registry
+            if (device != DeviceType.LOAD) {
+                byName.put(device.name(), device);
+            }
+        }
+        return Map.copyOf(byName);
+    }
+}
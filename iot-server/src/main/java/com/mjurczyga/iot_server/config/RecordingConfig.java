@@ -0,0 +1,24 @@
+package com.mjurczyga.iot_server.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Configuration of the recording of control cycles, replayed with /api/v1/recording/replay
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "iot.recording")
+public class RecordingConfig {
+
+    // Append the state and decision of every cycle to a binary log
+    private boolean enabled = false;
+
+    // Every home records into a subdirectory named by its id
+    private String directory = "recordings";
+
+    // Size of a memory-mapped segment file, the next one is started when it is full
+    private DataSize segmentSize = DataSize.ofMegabytes(64);
+}
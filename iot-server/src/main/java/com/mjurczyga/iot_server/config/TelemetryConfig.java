@@ -0,0 +1,36 @@
+package com.mjurczyga.iot_server.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Configuration of the telemetry store: per-cycle state samples and entity readings
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "iot.telemetry")
+public class TelemetryConfig {
+
+    private boolean enabled = false;
+
+    // Store every state change of the control loop entities, next to the per-cycle samples
+    private boolean entityReadings = true;
+
+    // Rows waiting to be written; when the queue is full new rows are dropped, the control loop never waits
+    private int queueCapacity = 100_000;
+
+    // How long an offer may wait for room in the queue, 0 drops right away
+    private Duration offerTimeout = Duration.ZERO;
+
+    // Rows written with one COPY (Postgres) or JDBC batch (other databases)
+    private int batchSize = 5_000;
+
+    // Threads writing batches, each uses its own connection
+    private int writerThreads = 2;
+
+    // How long an idle writer waits for rows before checking for shutdown
+    private Duration pollInterval = Duration.ofMillis(200);
+}
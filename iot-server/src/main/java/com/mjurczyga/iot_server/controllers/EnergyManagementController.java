@@ -1,17 +1,28 @@
 package com.mjurczyga.iot_server.controllers;
 
+import com.mjurczyga.iot_server.home.HomeContext;
+import com.mjurczyga.iot_server.home.HomeRegistry;
 import com.mjurczyga.iot_server.model.DeviceDecision;
 import com.mjurczyga.iot_server.model.SystemState;
 import com.mjurczyga.iot_server.service.EnergyManagementService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
 /**
- * REST API for energy management system
+ * REST API for energy management system.
+ * Every endpoint accepts an optional home id, the default home is used when it is omitted.
  */
 @RestController
 @RequiredArgsConstructor
@@ -19,31 +30,54 @@ import org.springframework.web.bind.annotation.RestController;
 public class EnergyManagementController {
     
     private final EnergyManagementService energyManagementService;
+    private final HomeRegistry homeRegistry;
     
     /**
      * Get current system state
      */
     @GetMapping("/state")
-    public ResponseEntity<SystemState> getSystemState() {
-        SystemState state = energyManagementService.getSystemState();
-        return ResponseEntity.ok(state);
+    public ResponseEntity<SystemState> getSystemState(
+            @RequestParam(defaultValue = HomeRegistry.DEFAULT_HOME_ID) String home) {
+        return homeRegistry.findHome(home)
+            .map(energyManagementService::getSystemState)
+            .map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity.notFound().build());
     }
     
     /**
      * Calculate decision without executing (dry run)
      */
     @GetMapping("/decision")
-    public ResponseEntity<DeviceDecision> getDecision() {
-        DeviceDecision decision = energyManagementService.calculateDecision();
-        return ResponseEntity.ok(decision);
+    public ResponseEntity<DeviceDecision> getDecision(
+            @RequestParam(defaultValue = HomeRegistry.DEFAULT_HOME_ID) String home) {
+        return homeRegistry.findHome(home)
+            .map(energyManagementService::calculateDecision)
+            .map(ResponseEntity::ok)
+            .orElseGet(() -> ResponseEntity.notFound().build());
     }
     
     /**
-     * Manually trigger control loop
+     * Manually trigger control loop, responds once the decision has executed with the action results.
+     * 409 if a newer decision superseded it before execution, 504 if execution did not finish in time.
      */
     @PostMapping("/control")
-    public ResponseEntity<DeviceDecision> manualControl() {
-        DeviceDecision decision = energyManagementService.manualControl();
-        return ResponseEntity.ok(decision);
+    public ResponseEntity<?> manualControl(
+            @RequestParam(defaultValue = HomeRegistry.DEFAULT_HOME_ID) String home) {
+        Optional<HomeContext> context = homeRegistry.findHome(home);
+        if (context.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            return ResponseEntity.ok(energyManagementService.manualControl(context.get()));
+        } catch (CancellationException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", "A newer decision superseded this one before it executed"));
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                    .body(Map.of("error", "The decision did not execute in time"));
+            }
+            throw e;
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,19 +1,25 @@
 package com.mjurczyga.iot_server.controllers;
 
+import com.mjurczyga.iot_server.client.home_assistant.CircuitBreaker;
 import com.mjurczyga.iot_server.client.home_assistant.HomeAssistantClient;
+import com.mjurczyga.iot_server.home.HomeRegistry;
 import lombok.AllArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+
 @RestController
 @AllArgsConstructor
 @RequestMapping("/api/v1/ha")
 public class HomeAssistantController {
 
     private final HomeAssistantClient homeAssistantClient;
+    private final HomeRegistry homeRegistry;
 
     // --- Actions ---
 
@@ -101,4 +107,15 @@ public class HomeAssistantController {
     public ResponseEntity<String> getNextDusk() {
         return ResponseEntity.ok("Next dusk: " + homeAssistantClient.getNextDusk());
     }
-}
\ No newline at end of file
+
+    // --- Connection health ---
+
+    @GetMapping("/breakers")
+    public ResponseEntity<List<CircuitBreaker.Status>> getBreakers(
+            @RequestParam(defaultValue = HomeRegistry.DEFAULT_HOME_ID) String home) {
+        return homeRegistry.findHome(home)
+                .map(context -> context.getHomeAssistantClient().getBreakerStatuses())
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
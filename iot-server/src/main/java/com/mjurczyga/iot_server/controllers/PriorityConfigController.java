@@ -1,6 +1,7 @@
 package com.mjurczyga.iot_server.controllers;
 
 import com.mjurczyga.iot_server.config.DeviceConfig;
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceType;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -8,8 +9,11 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 /**
  * REST API for managing custom priority configuration
@@ -19,6 +23,12 @@ import java.util.Map;
 @RequestMapping("/api/v1/priority")
 public class PriorityConfigController {
     
+    // Devices ordered by the custom priority, generic loads use their configured priority
+    private static final List<String> PRIORITIZED_DEVICES = Arrays.stream(DeviceType.values())
+        .filter(device -> device != DeviceType.LOAD)
+        .map(DeviceType::name)
+        .toList();
+    
     private final DeviceConfig deviceConfig;
     
     /**
@@ -55,15 +65,15 @@ public class PriorityConfigController {
             // Validate priorities
             if (!validatePriorities(request.getPriorities())) {
                 return ResponseEntity.badRequest()
-                    .body(Map.of("error", "Invalid priorities. Must include all 4 devices with priorities 1-4"));
+                    .body(Map.of("error", "Invalid priorities. Must include all " + PRIORITIZED_DEVICES.size()
+                        + " devices " + PRIORITIZED_DEVICES + " with priorities 1-" + PRIORITIZED_DEVICES.size()));
             }
             
             // Convert priority map to ordered list
             List<String> orderedDevices = convertPrioritiesToList(request.getPriorities());
             
-            // Update configuration
-            deviceConfig.setCustomPriorityEnabled(request.isEnabled());
-            deviceConfig.setCustomPriorityOrder(orderedDevices);
+            // Update configuration, the control loop picks up the new plan with its next cycle
+            deviceConfig.updateCustomPriority(request.isEnabled(), orderedDevices);
             
             PriorityConfig config = new PriorityConfig(
                 deviceConfig.isCustomPriorityEnabled(),
@@ -93,39 +103,39 @@ public class PriorityConfigController {
     }
     
     /**
-     * Get available devices that can be prioritized
+     * Get available devices that can be prioritized, followed by the configured generic loads
      */
     @GetMapping("/devices")
     public ResponseEntity<List<DeviceInfo>> getAvailableDevices() {
-        List<DeviceInfo> devices = List.of(
+        List<DeviceInfo> devices = new ArrayList<>(List.of(
             new DeviceInfo("EV_CHARGER", "Electric Vehicle Charger", "1.4-7.4 kW dynamic charging"),
             new DeviceInfo("AC_CLIMATE", "Air Conditioning / Heating", "Temperature-based climate control"),
             new DeviceInfo("DISHWASHER", "Dishwasher", "1.8 kW appliance"),
             new DeviceInfo("SMART_PLUG", "Smart Plug Devices", "0.5 kW plugged devices")
-        );
+        ));
+        for (DeviceConfig.Load load : deviceConfig.getLoads()) {
+            devices.add(new DeviceInfo(load.getId(), load.getName() != null ? load.getName() : load.getId(),
+                "Generic load, priority " + load.getPriority()));
+        }
         return ResponseEntity.ok(devices);
     }
     
     /**
-     * Validate that priorities include all devices with values 1-4
+     * Validate that priorities include every prioritized device with values 1..n
      */
     private boolean validatePriorities(Map<String, Integer> priorities) {
-        // Must have exactly 4 devices
-        if (priorities.size() != 4) {
+        if (priorities == null || priorities.size() != PRIORITIZED_DEVICES.size()) {
             return false;
         }
         
         // Must include all required devices
-        List<String> requiredDevices = List.of("EV_CHARGER", "AC_CLIMATE", "DISHWASHER", "SMART_PLUG");
-        for (String device : requiredDevices) {
-            if (!priorities.containsKey(device)) {
-                return false;
-            }
+        if (!priorities.keySet().containsAll(PRIORITIZED_DEVICES)) {
+            return false;
         }
         
-        // Must have priorities 1, 2, 3, 4 (no duplicates)
+        // Must have priorities 1..n (no duplicates)
         List<Integer> values = priorities.values().stream().sorted().toList();
-        return values.equals(List.of(1, 2, 3, 4));
+        return values.equals(IntStream.rangeClosed(1, PRIORITIZED_DEVICES.size()).boxed().toList());
     }
     
     /**
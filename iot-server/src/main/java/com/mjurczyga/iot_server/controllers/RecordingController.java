@@ -0,0 +1,50 @@
+package com.mjurczyga.iot_server.controllers;
+
+import com.mjurczyga.iot_server.home.HomeContext;
+import com.mjurczyga.iot_server.home.HomeRegistry;
+import com.mjurczyga.iot_server.logic.PriorityCalculator;
+import com.mjurczyga.iot_server.recording.RecordingReplay;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * REST API for replaying recorded control cycles
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/v1/recording")
+public class RecordingController {
+
+    private final HomeRegistry homeRegistry;
+
+    /**
+     * Replay a home's recording through the calculator of this build with the home's current
+     * configuration, and report the cycles it decides differently
+     */
+    @PostMapping("/replay")
+    public ResponseEntity<?> replay(
+            @RequestParam(defaultValue = HomeRegistry.DEFAULT_HOME_ID) String home,
+            @RequestParam(defaultValue = "20") int maxDifferences) {
+        Optional<HomeContext> context = homeRegistry.findHome(home);
+        if (context.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        PriorityCalculator calculator = new PriorityCalculator(context.get().getDeviceConfig().copy());
+        RecordingReplay replay = new RecordingReplay(calculator, context.get().getDeviceRegistry()::find, maxDifferences);
+        try {
+            return ResponseEntity.ok(replay.replay(homeRegistry.getRecordingDirectory(home)));
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError()
+                .body(Map.of("error", "Replay failed: " + e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.mjurczyga.iot_server.controllers;
+
+import com.mjurczyga.iot_server.config.ControlLoopConfig;
+import com.mjurczyga.iot_server.home.HomeRegistry;
+import com.mjurczyga.iot_server.simulation.HouseholdSimulation;
+import com.mjurczyga.iot_server.simulation.ParameterSweep;
+import com.mjurczyga.iot_server.simulation.SimulationScenario;
+import com.mjurczyga.iot_server.simulation.SweepSpec;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * REST API for offline simulations of a home's control configuration.
+ * Nothing is sent to Home Assistant, the devices of the home are simulated.
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/v1/simulation")
+public class SimulationController {
+
+    // Runs on the request thread, a year takes seconds (see HouseholdSimulationTest)
+    private static final int MAX_DAYS = 366;
+    private static final int MAX_SWEEP_RUNS = 100_000;
+
+    private final HomeRegistry homeRegistry;
+    private final ControlLoopConfig controlLoopConfig;
+
+    /**
+     * Simulate the home with its current device configuration, a year with the default scenario
+     */
+    @PostMapping("/run")
+    public ResponseEntity<?> run(
+            @RequestParam(defaultValue = HomeRegistry.DEFAULT_HOME_ID) String home,
+            @RequestBody(required = false) SimulationScenario scenario) {
+        SimulationScenario simulated = scenario != null ? scenario : new SimulationScenario();
+        if (simulated.getDays() < 1 || simulated.getDays() > MAX_DAYS) {
+            return ResponseEntity.badRequest()
+                .body(Map.of("error", "Days must be between 1 and " + MAX_DAYS));
+        }
+
+        // A copy, so configuration changes during the run do not mix into its results
+        return homeRegistry.findHome(home)
+            .<ResponseEntity<?>>map(context -> ResponseEntity.ok(
+                new HouseholdSimulation(context.getDeviceConfig().copy(), controlLoopConfig, simulated).run()))
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Simulate variants of the home's device configuration, ranked by self-consumption
+     *
+     * Example request body:
+     * {
+     *   "surplusBuffers": [100, 200, 400],
+     *   "temperatureHystereses": [0.5, 1.0],
+     *   "priorityOrders": [[], ["SMART_PLUG", "EV_CHARGER", "AC_CLIMATE", "DISHWASHER"]],
+     *   "days": 30
+     * }
+     */
+    @PostMapping("/sweep")
+    public ResponseEntity<?> sweep(
+            @RequestParam(defaultValue = HomeRegistry.DEFAULT_HOME_ID) String home,
+            @RequestBody SweepSpec spec) {
+        if (spec.getDays() < 1 || spec.getDays() > MAX_DAYS) {
+            return ResponseEntity.badRequest()
+                .body(Map.of("error", "Days must be between 1 and " + MAX_DAYS));
+        }
+
+        return homeRegistry.findHome(home)
+            .<ResponseEntity<?>>map(context -> {
+                ParameterSweep sweep = new ParameterSweep(context.getDeviceConfig(), controlLoopConfig);
+                long runs = (long) sweep.variants(spec).size() * spec.getDays();
+                if (runs > MAX_SWEEP_RUNS) {
+                    return ResponseEntity.badRequest()
+                        .body(Map.of("error", "Sweep of " + runs + " runs exceeds " + MAX_SWEEP_RUNS));
+                }
+                return ResponseEntity.ok(sweep.run(spec));
+            })
+            .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
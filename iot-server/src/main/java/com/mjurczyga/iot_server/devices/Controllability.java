@@ -0,0 +1,13 @@
+package com.mjurczyga.iot_server.devices;
+
+/**
+ * How the control loop may switch a device
+ */
+public enum Controllability {
+    /** Switched on and off with the surplus */
+    SURPLUS,
+    /** Started when there is surplus, a running program is never interrupted */
+    RUN_TO_COMPLETION,
+    /** Driven by comfort needs instead of the surplus, generic loads of this kind are left alone */
+    COMFORT
+}
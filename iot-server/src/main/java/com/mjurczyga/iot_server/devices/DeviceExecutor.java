@@ -0,0 +1,43 @@
+package com.mjurczyga.iot_server.devices;
+
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceAction;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Translates device actions to Home Assistant service calls
+ */
+@FunctionalInterface
+public interface DeviceExecutor {
+
+    /**
+     * Switch-like entities (switch, light, climate, ...) turned on and off in their own domain
+     */
+    DeviceExecutor ON_OFF = (action, entityId) -> {
+        String domain = entityId.substring(0, Math.max(0, entityId.indexOf('.')));
+        return switch (action.getAction()) {
+            case TURN_ON -> new ServiceCall(domain, "turn_on", Collections.emptyMap());
+            case TURN_OFF -> new ServiceCall(domain, "turn_off", Collections.emptyMap());
+            default -> null;
+        };
+    };
+
+    /**
+     * Number entities holding a power setpoint in W, 0 stops the device
+     */
+    DeviceExecutor POWER_SETPOINT = (action, entityId) -> switch (action.getAction()) {
+        case SET_POWER -> action.getTargetPower() != null
+                ? new ServiceCall("number", "set_value", Map.of("value", action.getTargetPower()))
+                : null;
+        case TURN_OFF -> new ServiceCall("number", "set_value", Map.of("value", 0.0));
+        default -> null;
+    };
+
+    /**
+     * @param action The action to execute.
+     * @param entityId The entity controlling the device.
+     * @return The service call, null if the action is not supported by the device.
+     */
+    ServiceCall serviceCall(DeviceAction action, String entityId);
+}
@@ -0,0 +1,34 @@
+package com.mjurczyga.iot_server.devices;
+
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceType;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * A controllable device of a home: what it is, how much power it draws, how it may be
+ * switched and how actions reach Home Assistant.
+ */
+@Getter
+@Builder
+public class DevicePlugin {
+
+    // Unique within the home, the DeviceType name for built-in devices
+    private final String id;
+    private final DeviceType type;
+    private final String name;
+
+    // Entity controlling the device (switch or number), null when the home has no such device
+    private final String entityId;
+    // Optional sensor reporting the actual power in W
+    private final String powerSensorId;
+
+    private final PowerModel powerModel;
+    private final Controllability controllability;
+    // Lower = higher priority
+    private final int priority;
+    private final DeviceExecutor executor;
+
+    public boolean isConfigured() {
+        return entityId != null && !entityId.isBlank();
+    }
+}
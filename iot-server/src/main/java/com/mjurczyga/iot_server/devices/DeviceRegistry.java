@@ -0,0 +1,125 @@
+package com.mjurczyga.iot_server.devices;
+
+import com.mjurczyga.iot_server.config.DeviceConfig;
+import com.mjurczyga.iot_server.config.EntityMapping;
+import com.mjurczyga.iot_server.config.HomeAssistantConfig;
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Devices of a single home, the built-in devices plus the generic loads from iot.devices.loads.
+ *
+ * Loads are sorted by priority once when the registry is built, so every control cycle walks
+ * them in order without sorting or lookups.
+ */
+@Component
+public class DeviceRegistry {
+
+    private final Map<String, DevicePlugin> devices = new HashMap<>();
+    private final List<DevicePlugin> builtIn;
+    private final List<DevicePlugin> loads;
+
+    @Autowired
+    public DeviceRegistry(DeviceConfig deviceConfig, HomeAssistantConfig homeAssistantConfig) {
+        this(deviceConfig, homeAssistantConfig.getEntities());
+    }
+
+    public DeviceRegistry(DeviceConfig deviceConfig, EntityMapping entities) {
+        this.builtIn = List.of(
+                builtIn(DeviceType.EV_CHARGER, "Electric Vehicle Charger", entities.getEvChargerPower(),
+                        PowerModel.continuous(deviceConfig.getEvMinPower(), deviceConfig.getEvMaxPower()),
+                        Controllability.SURPLUS, DeviceExecutor.POWER_SETPOINT),
+                builtIn(DeviceType.AC_CLIMATE, "Air Conditioning / Heating", entities.getClimate(),
+                        PowerModel.onOff(Math.max(deviceConfig.getAcCoolingPower(), deviceConfig.getAcHeatingPower())),
+                        Controllability.COMFORT, DeviceExecutor.ON_OFF),
+                builtIn(DeviceType.DISHWASHER, "Dishwasher", entities.getDishwasherSwitch(),
+                        PowerModel.onOff(deviceConfig.getDishwasherPower()),
+                        Controllability.RUN_TO_COMPLETION, DeviceExecutor.ON_OFF),
+                builtIn(DeviceType.SMART_PLUG, "Smart Plug Devices", entities.getSmartPlugSwitch(),
+                        PowerModel.onOff(deviceConfig.getSmartPlugPower()),
+                        Controllability.SURPLUS, DeviceExecutor.ON_OFF));
+        builtIn.forEach(this::register);
+
+        List<DevicePlugin> configured = new ArrayList<>();
+        for (DeviceConfig.Load load : deviceConfig.getLoads()) {
+            DevicePlugin plugin = load(load, entities);
+            register(plugin);
+            configured.add(plugin);
+        }
+        configured.sort(Comparator.comparingInt(DevicePlugin::getPriority).thenComparing(DevicePlugin::getId));
+        this.loads = Collections.unmodifiableList(configured);
+    }
+
+    /**
+     * @return The device, null if the home has no device with this id.
+     */
+    public DevicePlugin find(String id) {
+        return id != null ? devices.get(id) : null;
+    }
+
+    /**
+     * @return The built-in devices, in DeviceType order.
+     */
+    public List<DevicePlugin> getBuiltIn() {
+        return builtIn;
+    }
+
+    /**
+     * @return The generic loads, highest priority first.
+     */
+    public List<DevicePlugin> getLoads() {
+        return loads;
+    }
+
+    public int size() {
+        return devices.size();
+    }
+
+    private DevicePlugin builtIn(DeviceType type, String name, String entityId, PowerModel powerModel,
+                                 Controllability controllability, DeviceExecutor executor) {
+        return DevicePlugin.builder()
+                .id(type.name())
+                .type(type)
+                .name(name)
+                .entityId(entityId)
+                .powerModel(powerModel)
+                .controllability(controllability)
+                .priority(type.ordinal())
+                .executor(executor)
+                .build();
+    }
+
+    private DevicePlugin load(DeviceConfig.Load load, EntityMapping entities) {
+        if (load.getId() == null || load.getId().isBlank()) {
+            throw new IllegalStateException("Every load in iot.devices.loads needs an id");
+        }
+        boolean continuous = load.getMaxPower() > 0;
+        return DevicePlugin.builder()
+                .id(load.getId())
+                .type(DeviceType.LOAD)
+                .name(load.getName() != null ? load.getName() : load.getId())
+                .entityId(entities.getLoads().get(load.getId()))
+                .powerSensorId(entities.getLoadPower().get(load.getId()))
+                .powerModel(continuous
+                        ? PowerModel.continuous(load.getMinPower(), load.getMaxPower())
+                        : PowerModel.onOff(load.getPower()))
+                .controllability(load.getControl())
+                .priority(load.getPriority())
+                .executor(continuous ? DeviceExecutor.POWER_SETPOINT : DeviceExecutor.ON_OFF)
+                .build();
+    }
+
+    private void register(DevicePlugin device) {
+        if (devices.putIfAbsent(device.getId(), device) != null) {
+            throw new IllegalStateException("Duplicate device id: " + device.getId());
+        }
+    }
+}
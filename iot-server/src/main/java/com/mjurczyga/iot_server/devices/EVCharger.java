@@ -14,6 +14,7 @@ public class EVCharger extends Device {
     private double batteryCapacity;
     private double currentCharge; // Wh - current battery charge level
     private double chargingPower; // W - current charging power
+    private boolean connected = true;
     
     public EVCharger(String name, double minPower, double maxPower, double batteryCapacity) {
         super(name);
@@ -29,7 +30,11 @@ public class EVCharger extends Device {
      * @return true if vehicle is connected
      */
     public boolean isConnected() {
-        return true; // Placeholder - would integrate with HA sensor
+        return connected; // Set by the household simulation, which plugs the car in and out
+    }
+    
+    public void setConnected(boolean connected) {
+        this.connected = connected;
     }
     
     /**
@@ -0,0 +1,52 @@
+package com.mjurczyga.iot_server.devices;
+
+/**
+ * How much power a device draws: a fixed rated power for on/off devices, or a range for
+ * devices whose power can be set continuously (e.g. an EV charger).
+ */
+public final class PowerModel {
+
+    private final double minPower;
+    private final double maxPower;
+    private final boolean continuous;
+
+    private PowerModel(double minPower, double maxPower, boolean continuous) {
+        this.minPower = minPower;
+        this.maxPower = maxPower;
+        this.continuous = continuous;
+    }
+
+    /**
+     * @param ratedPower Power drawn while the device is on, in W.
+     */
+    public static PowerModel onOff(double ratedPower) {
+        return new PowerModel(ratedPower, ratedPower, false);
+    }
+
+    /**
+     * @param minPower Lowest power the device can run with, in W.
+     * @param maxPower Highest power the device can run with, in W.
+     */
+    public static PowerModel continuous(double minPower, double maxPower) {
+        return new PowerModel(minPower, maxPower, true);
+    }
+
+    public double getMinPower() {
+        return minPower;
+    }
+
+    public double getMaxPower() {
+        return maxPower;
+    }
+
+    /**
+     * @return The power drawn by an on/off device, the maximum power of a continuous one.
+     */
+    public double getRatedPower() {
+        return maxPower;
+    }
+
+    public boolean isContinuous() {
+        return continuous;
+    }
+}
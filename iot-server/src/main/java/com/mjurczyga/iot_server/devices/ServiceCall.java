@@ -0,0 +1,15 @@
+package com.mjurczyga.iot_server.devices;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * Home Assistant service call, actions with equal service calls are sent as a single request
+ */
+@Data
+public class ServiceCall {
+    private final String domain;
+    private final String service;
+    private final Map<String, Object> data;
+}
@@ -0,0 +1,34 @@
+package com.mjurczyga.iot_server.home;
+
+import com.mjurczyga.iot_server.client.home_assistant.EntityStateTable;
+import com.mjurczyga.iot_server.client.home_assistant.HomeAssistantClient;
+import com.mjurczyga.iot_server.config.DeviceConfig;
+import com.mjurczyga.iot_server.devices.DeviceRegistry;
+import com.mjurczyga.iot_server.logic.PriorityCalculator;
+import com.mjurczyga.iot_server.recording.StateRecorder;
+import com.mjurczyga.iot_server.service.ControlTrigger;
+import com.mjurczyga.iot_server.service.DecisionLane;
+import com.mjurczyga.iot_server.service.DeviceExecutorService;
+import com.mjurczyga.iot_server.service.SystemStateService;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Everything needed to run the control loop for a single home
+ */
+@Getter
+@Builder
+public class HomeContext {
+
+    private final String id;
+    private final DeviceConfig deviceConfig;
+    private final DeviceRegistry deviceRegistry;
+    private final HomeAssistantClient homeAssistantClient;
+    private final EntityStateTable entityStateTable;
+    private final SystemStateService systemStateService;
+    private final PriorityCalculator priorityCalculator;
+    private final DeviceExecutorService executorService;
+    private final ControlTrigger controlTrigger;
+    private final DecisionLane decisionLane;
+    private final StateRecorder stateRecorder; // null when recording is disabled
+}
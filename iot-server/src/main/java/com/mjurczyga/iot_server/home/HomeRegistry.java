@@ -0,0 +1,201 @@
+package com.mjurczyga.iot_server.home;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mjurczyga.iot_server.client.WebClientConfiguration;
+import com.mjurczyga.iot_server.client.home_assistant.EntityStateTable;
+import com.mjurczyga.iot_server.client.home_assistant.HomeAssistantClient;
+import com.mjurczyga.iot_server.client.home_assistant.HomeAssistantEventSubscriber;
+import com.mjurczyga.iot_server.config.ControlLoopConfig;
+import com.mjurczyga.iot_server.config.DeviceConfig;
+import com.mjurczyga.iot_server.config.EntityMapping;
+import com.mjurczyga.iot_server.config.HomeAssistantConfig;
+import com.mjurczyga.iot_server.config.HomesConfig;
+import com.mjurczyga.iot_server.config.RecordingConfig;
+import com.mjurczyga.iot_server.devices.DeviceRegistry;
+import com.mjurczyga.iot_server.logic.PriorityCalculator;
+import com.mjurczyga.iot_server.recording.StateRecorder;
+import com.mjurczyga.iot_server.service.ControlTrigger;
+import com.mjurczyga.iot_server.service.DecisionLane;
+import com.mjurczyga.iot_server.service.DeviceExecutorService;
+import com.mjurczyga.iot_server.service.SystemStateService;
+import com.mjurczyga.iot_server.telemetry.TelemetryWriter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Registry of all homes managed by this server.
+ *
+ * The default home uses the application beans. Every additional home gets its own client,
+ * entity mapping and device configuration, while all clients share one connector
+ * (connection pool and event loop).
+ */
+@Component
+@RequiredArgsConstructor
+public class HomeRegistry {
+
+    public static final String DEFAULT_HOME_ID = "default";
+
+    private static final Logger log = LoggerFactory.getLogger(HomeRegistry.class);
+
+    private final HomesConfig homesConfig;
+    private final HomeAssistantConfig homeAssistantConfig;
+    private final ControlLoopConfig controlLoopConfig;
+    private final RecordingConfig recordingConfig;
+    private final ReactorClientHttpConnector homeAssistantConnector;
+    private final ObjectMapper objectMapper;
+    private final TelemetryWriter telemetryWriter;
+
+    // Beans of the default home
+    private final DeviceConfig deviceConfig;
+    private final DeviceRegistry deviceRegistry;
+    private final HomeAssistantClient homeAssistantClient;
+    private final EntityStateTable entityStateTable;
+    private final SystemStateService systemStateService;
+    private final PriorityCalculator priorityCalculator;
+    private final DeviceExecutorService executorService;
+
+    private final Map<String, HomeContext> homes = new LinkedHashMap<>();
+    private final List<HomeAssistantEventSubscriber> subscribers = new ArrayList<>();
+
+    @PostConstruct
+    void registerHomes() {
+        ControlTrigger trigger = createTrigger(DEFAULT_HOME_ID, homeAssistantConfig.getEntities(), entityStateTable);
+        register(HomeContext.builder()
+                .id(DEFAULT_HOME_ID)
+                .deviceConfig(deviceConfig)
+                .deviceRegistry(deviceRegistry)
+                .homeAssistantClient(homeAssistantClient)
+                .entityStateTable(entityStateTable)
+                .systemStateService(systemStateService)
+                .priorityCalculator(priorityCalculator)
+                .executorService(executorService)
+                .controlTrigger(trigger)
+                .decisionLane(createLane(DEFAULT_HOME_ID, executorService, systemStateService, trigger))
+                .stateRecorder(createRecorder(DEFAULT_HOME_ID))
+                .build());
+
+        for (HomesConfig.Home home : homesConfig.getHomes()) {
+            register(createHome(home));
+        }
+        log.info("Registered {} home(s): {}", homes.size(), homes.keySet());
+    }
+
+    @PreDestroy
+    void stop() {
+        subscribers.forEach(HomeAssistantEventSubscriber::stop);
+        homes.values().stream()
+                .map(HomeContext::getStateRecorder)
+                .filter(Objects::nonNull)
+                .forEach(StateRecorder::close);
+    }
+
+    /**
+     * @return The recording directory of a home.
+     */
+    public Path getRecordingDirectory(String homeId) {
+        return Path.of(recordingConfig.getDirectory()).resolve(homeId);
+    }
+
+    /**
+     * @return All registered homes, the default home first.
+     */
+    public Collection<HomeContext> getHomes() {
+        return Collections.unmodifiableCollection(homes.values());
+    }
+
+    public Optional<HomeContext> findHome(String homeId) {
+        return Optional.ofNullable(homes.get(homeId));
+    }
+
+    public HomeContext getDefaultHome() {
+        return homes.get(DEFAULT_HOME_ID);
+    }
+
+    private HomeContext createHome(HomesConfig.Home home) {
+        if (home.getId() == null || home.getId().isBlank()) {
+            throw new IllegalStateException("Every home in iot.homes needs an id");
+        }
+        if (home.getBaseUrl() == null || home.getBaseUrl().isBlank()) {
+            throw new IllegalStateException("Home " + home.getId() + " has no base-url configured");
+        }
+
+        WebClient webClient = WebClientConfiguration.homeAssistantWebClient(
+                homeAssistantConnector, home.getBaseUrl(), home.getToken());
+        HomeAssistantClient client = new HomeAssistantClient(webClient, homeAssistantConfig, home.getEntities());
+        EntityStateTable stateTable = new EntityStateTable(home.getEntities());
+
+        if (homeAssistantConfig.getWebsocket().isEnabled()) {
+            HomeAssistantEventSubscriber subscriber = new HomeAssistantEventSubscriber(
+                    home.getBaseUrl(), home.getToken(), stateTable, homeAssistantConfig.getWebsocket(), objectMapper);
+            subscriber.start();
+            subscribers.add(subscriber);
+        }
+
+        DeviceRegistry devices = new DeviceRegistry(home.getDevices(), home.getEntities());
+        SystemStateService stateService = new SystemStateService(client, homeAssistantConfig, stateTable, devices);
+        DeviceExecutorService executor = new DeviceExecutorService(client, homeAssistantConfig, devices);
+        ControlTrigger trigger = createTrigger(home.getId(), home.getEntities(), stateTable);
+
+        return HomeContext.builder()
+                .id(home.getId())
+                .deviceConfig(home.getDevices())
+                .deviceRegistry(devices)
+                .homeAssistantClient(client)
+                .entityStateTable(stateTable)
+                .systemStateService(stateService)
+                .priorityCalculator(new PriorityCalculator(home.getDevices()))
+                .executorService(executor)
+                .controlTrigger(trigger)
+                .decisionLane(createLane(home.getId(), executor, stateService, trigger))
+                .stateRecorder(createRecorder(home.getId()))
+                .build();
+    }
+
+    /**
+     * Homes are given evenly spaced phase offsets within max-interval, in registration order.
+     */
+    private ControlTrigger createTrigger(String homeId, EntityMapping entities, EntityStateTable stateTable) {
+        int homeCount = 1 + homesConfig.getHomes().size();
+        Duration phaseOffset = controlLoopConfig.getMaxInterval().multipliedBy(homes.size()).dividedBy(homeCount);
+        ControlTrigger trigger = new ControlTrigger(homeId, entities, controlLoopConfig, phaseOffset);
+        stateTable.addListener(trigger::onStateChange);
+        return trigger;
+    }
+
+    private DecisionLane createLane(String homeId, DeviceExecutorService executor, SystemStateService stateService,
+                                    ControlTrigger trigger) {
+        return new DecisionLane(homeId, executor, stateService, controlLoopConfig.getPipelineDepth(),
+                trigger::isPending, controlLoopConfig.isPrefetch());
+    }
+
+    private StateRecorder createRecorder(String homeId) {
+        if (!recordingConfig.isEnabled()) {
+            return null;
+        }
+        return new StateRecorder(getRecordingDirectory(homeId), (int) recordingConfig.getSegmentSize().toBytes());
+    }
+
+    private void register(HomeContext home) {
+        if (homes.putIfAbsent(home.getId(), home) != null) {
+            throw new IllegalStateException("Duplicate home id: " + home.getId());
+        }
+        telemetryWriter.trackEntities(home.getId(), home.getEntityStateTable());
+    }
+}
@@ -0,0 +1,220 @@
+package com.mjurczyga.iot_server.home;
+
+import com.mjurczyga.iot_server.config.ControlLoopConfig;
+import com.mjurczyga.iot_server.metrics.IotMetrics;
+import com.mjurczyga.iot_server.service.ControlTrigger;
+import com.mjurczyga.iot_server.service.EnergyManagementService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Schedules the control cycles of all homes.
+ *
+ * A single ticker thread walks the homes shard by shard, so every home is checked once per tick
+ * interval while the checking work is spread evenly over the interval. Due cycles run on virtual
+ * threads (or a bounded carrier pool), limited by a fair semaphore. A home never gathers and
+ * calculates two cycles at the same time; a cycle that is due while the previous one still runs is
+ * counted as an overrun. Execution of decisions is done by the DecisionLane of the home, so the next
+ * cycle may already start while the previous decision executes.
+ *
+ * This scheduler replaces Spring's annotation scheduling, which is not enabled: a @Scheduled method
+ * does not run unless @EnableScheduling is added back.
+ */
+@Component
+@RequiredArgsConstructor
+public class HomeScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(HomeScheduler.class);
+
+    private final HomeRegistry homeRegistry;
+    private final EnergyManagementService energyManagementService;
+    private final ControlLoopConfig config;
+
+    private final AtomicLong completedCycles = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
+    private final AtomicLong slowCycles = new AtomicLong();
+    private final AtomicLong maxTickLagNanos = new AtomicLong();
+
+    private List<List<Slot>> shards;
+    private ScheduledExecutorService ticker;
+    private ExecutorService workers;
+    private Semaphore permits;
+    private LongSupplier nanoClock;
+    private long tickPeriodNanos;
+    private long firstTickAt;
+
+    // Accessed only by the ticker thread
+    private long ticks = 0;
+
+    @PostConstruct
+    void start() {
+        start(Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("control-loop-ticker").daemon(true).factory()),
+                createWorkers(config), System::nanoTime);
+    }
+
+    /**
+     * Starts scheduling on the given executors; tests pass executors and a clock they drive themselves.
+     * @param nanoClock Monotonic time in nanoseconds, used for tick lag and cycle durations.
+     */
+    void start(ScheduledExecutorService ticker, ExecutorService workers, LongSupplier nanoClock) {
+        this.ticker = ticker;
+        this.workers = workers;
+        this.nanoClock = nanoClock;
+        int shardCount = Math.max(1, config.getShards());
+        shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new ArrayList<>());
+        }
+        int index = 0;
+        for (HomeContext home : homeRegistry.getHomes()) {
+            shards.get(index++ % shardCount).add(new Slot(home));
+        }
+
+        permits = new Semaphore(config.getMaxConcurrentCycles(), true);
+
+        tickPeriodNanos = Math.max(1, config.getTickInterval().toNanos() / shardCount);
+        long initialDelay = config.getInitialDelay().toNanos();
+        firstTickAt = nanoClock.getAsLong() + initialDelay;
+        ticker.scheduleAtFixedRate(this::tick, initialDelay, tickPeriodNanos, TimeUnit.NANOSECONDS);
+
+        IotMetrics.registerCounter("iot.control.cycles", "Completed control cycles", completedCycles);
+        IotMetrics.registerCounter("iot.control.overruns", "Cycles due while the previous one was running", overruns);
+        IotMetrics.registerCounter("iot.control.slow.cycles", "Cycles exceeding the cycle budget", slowCycles);
+        IotMetrics.registerGauge("iot.control.tick.lag.max", "Largest tick delay in ms", this::getMaxTickLagMillis);
+
+        log.info("Scheduling {} home(s) in {} shard(s) on {}", index, shardCount,
+                config.isVirtualThreads() ? "virtual threads" : config.getCarrierThreads() + " carrier threads");
+    }
+
+    @PreDestroy
+    void stop() {
+        ticker.shutdownNow();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(config.getCycleBudget().toMillis(), TimeUnit.MILLISECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Cycles run on virtual threads, or on a fixed pool of carrier threads.
+     */
+    static ExecutorService createWorkers(ControlLoopConfig config) {
+        return config.isVirtualThreads()
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("control-cycle-", 0).factory())
+                : Executors.newFixedThreadPool(config.getCarrierThreads(), Thread.ofPlatform().name("control-cycle-", 0).factory());
+    }
+
+    public long getCompletedCycles() {
+        return completedCycles.get();
+    }
+
+    /**
+     * @return How often a cycle was due while the previous cycle of the same home was still running.
+     */
+    public long getOverruns() {
+        return overruns.get();
+    }
+
+    /**
+     * @return How many cycles took longer than the cycle budget.
+     */
+    public long getSlowCycles() {
+        return slowCycles.get();
+    }
+
+    /**
+     * @return The largest delay of a tick behind its planned time, in milliseconds.
+     */
+    public double getMaxTickLagMillis() {
+        return maxTickLagNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Checks the triggers of the next shard and starts the due cycles.
+     */
+    void tick() {
+        try {
+            long lag = nanoClock.getAsLong() - (firstTickAt + ticks * tickPeriodNanos);
+            maxTickLagNanos.accumulateAndGet(lag, Math::max);
+            List<Slot> shard = shards.get((int) (ticks++ % shards.size()));
+
+            for (Slot slot : shard) {
+                ControlTrigger trigger = slot.home.getControlTrigger();
+                ControlTrigger.Reason reason = trigger.evaluate();
+                if (reason == ControlTrigger.Reason.NONE) {
+                    continue;
+                }
+                if (!slot.running.compareAndSet(false, true)) {
+                    // The trigger stays pending, the cycle runs as soon as the previous one finishes
+                    if (slot.overrunStreak.getAndIncrement() == 0) {
+                        overruns.incrementAndGet();
+                        log.warn("Control cycle of home {} is due ({}) while the previous one is still running",
+                                slot.home.getId(), reason);
+                    }
+                    continue;
+                }
+                slot.overrunStreak.set(0);
+                trigger.beginCycle(slot.home.getEntityStateTable().toSnapshot());
+                log.debug("Running control cycle for home {} ({})", slot.home.getId(), reason);
+                workers.execute(() -> runCycle(slot));
+            }
+        } catch (Exception e) {
+            // An exception would cancel the periodic task
+            log.error("Error in control loop tick", e);
+        }
+    }
+
+    private void runCycle(Slot slot) {
+        long start = nanoClock.getAsLong();
+        try {
+            permits.acquire();
+            try {
+                energyManagementService.runControlCycle(slot.home);
+            } finally {
+                permits.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            long duration = nanoClock.getAsLong() - start;
+            if (duration > config.getCycleBudget().toNanos()) {
+                slowCycles.incrementAndGet();
+                log.warn("Control cycle of home {} took {} ms, budget is {} ms",
+                        slot.home.getId(), duration / 1_000_000, config.getCycleBudget().toMillis());
+            }
+            completedCycles.incrementAndGet();
+            slot.running.set(false);
+        }
+    }
+
+    private static class Slot {
+        private final HomeContext home;
+        private final AtomicBoolean running = new AtomicBoolean();
+        private final AtomicInteger overrunStreak = new AtomicInteger();
+
+        private Slot(HomeContext home) {
+            this.home = home;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.mjurczyga.iot_server.logic;
+
+import com.mjurczyga.iot_server.model.DeviceDecision;
+import com.mjurczyga.iot_server.model.DeviceDecision.ActionType;
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceAction;
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceType;
+
+import java.util.Arrays;
+
+/**
+ * Reusable, primitive-backed storage for the result of a priority calculation.
+ *
+ * Actions are written into parallel arrays and reasons are kept as a code plus numeric arguments,
+ * so filling a buffer that has already grown to size allocates nothing. {@link #toDecision()}
+ * converts the content to the public model, with reasons rendered lazily.
+ */
+public final class DecisionBuffer {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private long cycleTime;
+    private String mode;
+    private double availableSurplus;
+    private DecisionReason explanation;
+    private Object explanationSubject;
+    private double explanationFirst;
+    private double explanationSecond;
+    private final boolean[] held = new boolean[DeviceType.values().length];
+
+    private int size;
+    private DeviceType[] devices = new DeviceType[INITIAL_CAPACITY];
+    private String[] deviceIds = new String[INITIAL_CAPACITY];
+    private String[] subjects = new String[INITIAL_CAPACITY];
+    private ActionType[] actions = new ActionType[INITIAL_CAPACITY];
+    private double[] targetPowers = new double[INITIAL_CAPACITY];
+    private DecisionReason[] reasons = new DecisionReason[INITIAL_CAPACITY];
+    private double[] firstArgs = new double[INITIAL_CAPACITY];
+    private double[] secondArgs = new double[INITIAL_CAPACITY];
+
+    /**
+     * Clears the buffer for the next calculation, keeping its capacity.
+     */
+    public void reset() {
+        cycleTime = 0L;
+        mode = null;
+        availableSurplus = 0.0;
+        explanation = null;
+        explanationSubject = null;
+        explanationFirst = 0.0;
+        explanationSecond = 0.0;
+        Arrays.fill(held, false);
+        size = 0;
+    }
+
+    void cycleTime(long cycleTime) {
+        this.cycleTime = cycleTime;
+    }
+
+    /**
+     * Fixes a built-in device in its current state for this calculation, e.g. within its dwell time.
+     */
+    void hold(DeviceType device) {
+        held[device.ordinal()] = true;
+    }
+
+    boolean isHeld(DeviceType device) {
+        return held[device.ordinal()];
+    }
+
+    void mode(String mode) {
+        this.mode = mode;
+    }
+
+    void availableSurplus(double availableSurplus) {
+        this.availableSurplus = availableSurplus;
+    }
+
+    void explanation(DecisionReason explanation, double first, double second) {
+        this.explanation = explanation;
+        this.explanationSubject = null;
+        this.explanationFirst = first;
+        this.explanationSecond = second;
+    }
+
+    void explanation(DecisionReason explanation, Object subject, double value) {
+        this.explanation = explanation;
+        this.explanationSubject = subject;
+        this.explanationFirst = value;
+        this.explanationSecond = 0.0;
+    }
+
+    /**
+     * Adds an action.
+     * @param targetPower Target power in W, NaN for ON/OFF actions.
+     */
+    void add(DeviceType device, ActionType action, double targetPower, DecisionReason reason, double first, double second) {
+        if (size == devices.length) {
+            grow();
+        }
+        devices[size] = device;
+        deviceIds[size] = null;
+        subjects[size] = null;
+        actions[size] = action;
+        targetPowers[size] = targetPower;
+        reasons[size] = reason;
+        firstArgs[size] = first;
+        secondArgs[size] = second;
+        size++;
+    }
+
+    void add(DeviceType device, ActionType action, DecisionReason reason) {
+        add(device, action, Double.NaN, reason, 0.0, 0.0);
+    }
+
+    /**
+     * Adds an action for a generic load, the reason is rendered with the load name and a value.
+     */
+    void addLoad(String deviceId, String name, ActionType action, double targetPower, DecisionReason reason, double value) {
+        add(DeviceType.LOAD, action, targetPower, reason, value, 0.0);
+        deviceIds[size - 1] = deviceId;
+        subjects[size - 1] = name;
+    }
+
+    /**
+     * @return Time of the calculation, System.nanoTime() based unless a clock was passed in.
+     */
+    public long getCycleTime() {
+        return cycleTime;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public double getAvailableSurplus() {
+        return availableSurplus;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public DeviceType getDevice(int index) {
+        return devices[index];
+    }
+
+    /**
+     * @return The registry id of a load, null for built-in devices.
+     */
+    public String getDeviceId(int index) {
+        return deviceIds[index];
+    }
+
+    public ActionType getAction(int index) {
+        return actions[index];
+    }
+
+    /**
+     * @return The target power in W, NaN if the action has none.
+     */
+    public double getTargetPower(int index) {
+        return targetPowers[index];
+    }
+
+    public DecisionReason getReason(int index) {
+        return reasons[index];
+    }
+
+    public String renderReason(int index) {
+        return subjects[index] != null
+                ? reasons[index].render(subjects[index], firstArgs[index])
+                : reasons[index].render(firstArgs[index], secondArgs[index]);
+    }
+
+    public String renderExplanation() {
+        if (explanation == null) {
+            return null;
+        }
+        return explanationSubject != null
+                ? explanation.render(explanationSubject, explanationFirst)
+                : explanation.render(explanationFirst, explanationSecond);
+    }
+
+    /**
+     * Copies the buffer into a decision. Reasons and the explanation are rendered when first read.
+     */
+    public DeviceDecision toDecision() {
+        DeviceDecision decision = DeviceDecision.create()
+                .mode(mode)
+                .availableSurplus(availableSurplus);
+
+        DecisionReason explanationReason = explanation;
+        Object subject = explanationSubject;
+        double first = explanationFirst;
+        double second = explanationSecond;
+        if (explanationReason != null) {
+            decision.lazyExplanation(() -> subject != null
+                    ? explanationReason.render(subject, first)
+                    : explanationReason.render(first, second));
+        }
+
+        for (int i = 0; i < size; i++) {
+            DecisionReason reason = reasons[i];
+            String loadName = subjects[i];
+            double reasonFirst = firstArgs[i];
+            double reasonSecond = secondArgs[i];
+            decision.addAction(DeviceAction.builder()
+                    .device(devices[i])
+                    .deviceId(deviceIds[i])
+                    .action(actions[i])
+                    .targetPower(Double.isNaN(targetPowers[i]) ? null : targetPowers[i])
+                    .lazyReason(() -> loadName != null
+                            ? reason.render(loadName, reasonFirst)
+                            : reason.render(reasonFirst, reasonSecond))
+                    .build());
+        }
+        return decision.build();
+    }
+
+    private void grow() {
+        int capacity = devices.length * 2;
+        devices = Arrays.copyOf(devices, capacity);
+        deviceIds = Arrays.copyOf(deviceIds, capacity);
+        subjects = Arrays.copyOf(subjects, capacity);
+        actions = Arrays.copyOf(actions, capacity);
+        targetPowers = Arrays.copyOf(targetPowers, capacity);
+        reasons = Arrays.copyOf(reasons, capacity);
+        firstArgs = Arrays.copyOf(firstArgs, capacity);
+        secondArgs = Arrays.copyOf(secondArgs, capacity);
+    }
+}
@@ -0,0 +1,45 @@
+package com.mjurczyga.iot_server.logic;
+
+/**
+ * Reasons for device actions and decision explanations.
+ * The calculator stores a reason with its numeric arguments; the text is rendered only when it is read.
+ */
+public enum DecisionReason {
+
+    // Device actions
+    EV_NOT_CONNECTED("EV not connected"),
+    EV_FULLY_CHARGED("EV fully charged (95%+)"),
+    EV_CHARGING("Charging with %.0fW (%.0f%% charged)"),
+    EV_INSUFFICIENT_SURPLUS("Insufficient surplus for minimum charging power"),
+    CLIMATE_IN_RANGE("Temperature in acceptable range"),
+    CLIMATE_COOLING("Temperature %.1f°C, target %.1f°C (cooling)"),
+    CLIMATE_HEATING("Temperature %.1f°C, target %.1f°C (heating)"),
+    CLIMATE_INSUFFICIENT_SURPLUS("Insufficient surplus for climate control"),
+    COMFORT_COOLING("Comfort priority: Temperature %.1f°C, target %.1f°C (cooling)"),
+    COMFORT_HEATING("Comfort priority: Temperature %.1f°C, target %.1f°C (heating)"),
+    DISHWASHER_SURPLUS("Sufficient surplus (%.0fW) for dishwasher"),
+    SMART_PLUG_INSUFFICIENT_SURPLUS("Insufficient surplus to maintain smart plug"),
+    SMART_PLUG_SURPLUS("Sufficient surplus (%.0fW) for smart plug"),
+    LOAD_SURPLUS("Sufficient surplus for %s (%.0fW)"),
+    LOAD_POWER("Running %s with %.0fW"),
+    LOAD_INSUFFICIENT_SURPLUS("Insufficient surplus to keep %s running"),
+
+    // Decision explanations
+    MAX_USAGE("Max usage mode: Utilizing %.0fW from PV. Remaining surplus: %.0fW"),
+    COMFORT("Comfort mode: Priority on comfort. Available surplus: %.0fW"),
+    CUSTOM("Custom priority mode: Order %s. Remaining surplus: %.0fW");
+
+    private final String template;
+
+    DecisionReason(String template) {
+        this.template = template;
+    }
+
+    public String render(double first, double second) {
+        return String.format(template, first, second);
+    }
+
+    public String render(Object subject, double value) {
+        return String.format(template, subject, value);
+    }
+}
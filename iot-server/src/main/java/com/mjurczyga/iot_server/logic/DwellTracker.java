@@ -0,0 +1,63 @@
+package com.mjurczyga.iot_server.logic;
+
+import com.mjurczyga.iot_server.model.DeviceDecision.ActionType;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimum on/off dwell times of the on/off devices of a home.
+ *
+ * The observed state of every device is fed in each cycle and the moment it last changed is
+ * remembered, whether the change came from a command or from a manual switch. A device that has
+ * not been on (off) for the minimum time yet is held in its state. Devices seen for the first
+ * time are not held, so a restart does not block the first commands.
+ */
+public class DwellTracker {
+
+    private final Map<String, Dwell> devices = new HashMap<>();
+
+    /**
+     * @param deviceId The device id, the DeviceType name for built-in devices.
+     * @param on Whether the device is observed on.
+     * @param nowNanos Time of the observation, System.nanoTime() based.
+     */
+    public synchronized void observe(String deviceId, boolean on, long nowNanos) {
+        Dwell dwell = devices.get(deviceId);
+        if (dwell == null) {
+            devices.put(deviceId, new Dwell(on));
+        } else if (dwell.on != on) {
+            dwell.on = on;
+            dwell.known = true;
+            dwell.since = nowNanos;
+        }
+    }
+
+    /**
+     * @return true if the action would switch the device before its minimum on or off time is over.
+     */
+    public synchronized boolean isHeld(String deviceId, ActionType action, long nowNanos,
+                                       long minOnNanos, long minOffNanos) {
+        Dwell dwell = devices.get(deviceId);
+        if (dwell == null || !dwell.known) {
+            return false;
+        }
+        if (action == ActionType.TURN_OFF && dwell.on) {
+            return nowNanos - dwell.since < minOnNanos;
+        }
+        if (action == ActionType.TURN_ON && !dwell.on) {
+            return nowNanos - dwell.since < minOffNanos;
+        }
+        return false;
+    }
+
+    private static class Dwell {
+        private boolean on;
+        private boolean known; // false until a change has been observed
+        private long since;
+
+        private Dwell(boolean on) {
+            this.on = on;
+        }
+    }
+}
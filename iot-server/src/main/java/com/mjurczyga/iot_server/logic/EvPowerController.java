@@ -0,0 +1,108 @@
+package com.mjurczyga.iot_server.logic;
+
+import com.mjurczyga.iot_server.config.DeviceConfig;
+
+/**
+ * Charging power of the EV charger of a single home.
+ *
+ * Chargers are set in current steps, so the available power is rounded down to a whole number of
+ * steps on the configured phases, within the current and power limits of the charger. Charging
+ * starts at the minimum current and increases are ramp limited from there, increases within the
+ * deadband are ignored. Decreases are applied right away so the car never draws from the grid to
+ * keep its current. The result only changes when the surplus moves by a full step, which keeps the
+ * number of SET_POWER commands low.
+ *
+ * With ev-current-step 0 the power is continuous between ev-min-power and ev-max-power.
+ */
+public class EvPowerController {
+
+    private static final double EPSILON = 1e-9;
+
+    private final DeviceConfig config;
+
+    private double lastPower;
+    private long lastChange;
+
+    public EvPowerController(DeviceConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Highest charging power the charger can be set to without exceeding the available power.
+     * @param available Power available to the charger in W.
+     * @return The power in W, 0 if not even the minimum fits.
+     */
+    public double quantize(double available) {
+        double wattsPerAmp = wattsPerAmp();
+        if (config.getEvCurrentStep() <= 0 || wattsPerAmp <= 0) {
+            return available < config.getEvMinPower() ? 0.0 : Math.min(available, config.getEvMaxPower());
+        }
+
+        double minCurrent = minimumPower() / wattsPerAmp;
+        double maxCurrent = floorToStep(Math.min(config.getEvMaxCurrent(), config.getEvMaxPower() / wattsPerAmp));
+        double current = floorToStep(Math.min(available / wattsPerAmp, maxCurrent));
+        return current > 0 && current >= minCurrent - EPSILON ? current * wattsPerAmp : 0.0;
+    }
+
+    /**
+     * Charging power for this cycle: the quantized available power, with the deadband and ramp
+     * limit applied to increases.
+     * @param available Power available to the charger in W.
+     * @param nowNanos Time of the cycle, System.nanoTime() based.
+     * @return The power in W, 0 stops charging.
+     */
+    public synchronized double regulate(double available, long nowNanos) {
+        double target = quantize(available);
+
+        if (target > lastPower) {
+            double wattsPerAmp = wattsPerAmp();
+            if (lastPower > 0 && target - lastPower <= config.getEvDeadband() * wattsPerAmp + EPSILON) {
+                target = lastPower;
+            } else if (config.getEvRampRate() > 0 && wattsPerAmp > 0) {
+                // Charging starts at the minimum current, the ramp applies from there
+                double allowed = lastPower > 0
+                        ? lastPower + config.getEvRampRate() * wattsPerAmp * (nowNanos - lastChange) / 1e9
+                        : minimumPower();
+                target = Math.min(target, quantize(allowed));
+            }
+        }
+
+        if (target != lastPower) {
+            lastPower = target;
+            lastChange = nowNanos;
+        }
+        return target;
+    }
+
+    /**
+     * Forgets the last power, e.g. when the car was disconnected
+     */
+    public synchronized void reset() {
+        lastPower = 0.0;
+    }
+
+    /**
+     * Lowest power the charger can charge with
+     */
+    private double minimumPower() {
+        double wattsPerAmp = wattsPerAmp();
+        if (config.getEvCurrentStep() <= 0 || wattsPerAmp <= 0) {
+            return config.getEvMinPower();
+        }
+        return ceilToStep(Math.max(config.getEvMinCurrent(), config.getEvMinPower() / wattsPerAmp)) * wattsPerAmp;
+    }
+
+    private double wattsPerAmp() {
+        return config.getEvVoltage() * config.getEvPhases();
+    }
+
+    private double floorToStep(double current) {
+        double step = config.getEvCurrentStep();
+        return Math.floor(current / step + EPSILON) * step;
+    }
+
+    private double ceilToStep(double current) {
+        double step = config.getEvCurrentStep();
+        return Math.ceil(current / step - EPSILON) * step;
+    }
+}
@@ -0,0 +1,374 @@
+package com.mjurczyga.iot_server.logic;
+
+import com.mjurczyga.iot_server.config.DeviceConfig;
+import com.mjurczyga.iot_server.model.DeviceDecision.ActionType;
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceType;
+import com.mjurczyga.iot_server.model.SystemState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Surplus allocation searching for the device mix that uses the most surplus.
+ *
+ * On/off devices are decided by a depth-first branch-and-bound search, the EV charger takes the
+ * capacity they leave (within its power limits), so the EV may charge slower to let a device run
+ * that greedy allocation would starve. Every running device adds its priority weight to the
+ * objective, so among mixes using about the same surplus the higher priorities win.
+ *
+ * The search starts from filling the devices in priority order and stops at the configured time
+ * budget with the best mix found so far. Its working state is allocated once per allocator and
+ * reused, so an allocation allocates nothing; calls on one allocator are serialized.
+ *
+ * Devices held in their state by the decision take no part, a held running device keeps its power.
+ */
+public class OptimalSurplusAllocator implements SurplusAllocator {
+
+    private static final Logger log = LoggerFactory.getLogger(OptimalSurplusAllocator.class);
+
+    // Chosen devices are tracked in a long bitmask
+    private static final int MAX_DEVICES = 63;
+    private static final long TIME_CHECK_MASK = 0xFF;
+
+    private final DeviceConfig config;
+    private final EvPowerController evPowerController;
+
+    // Reused by every allocation, guarded by this
+    private final Problem problem = new Problem(Math.min(DeviceType.values().length, MAX_DEVICES));
+    private final Search search;
+
+    public OptimalSurplusAllocator(DeviceConfig config) {
+        this(config, new EvPowerController(config));
+    }
+
+    public OptimalSurplusAllocator(DeviceConfig config, EvPowerController evPowerController) {
+        this.config = config;
+        this.evPowerController = evPowerController;
+        this.search = new Search(problem, evPowerController);
+    }
+
+    @Override
+    public synchronized double allocate(SystemState state, double surplus, List<DeviceType> order,
+                                        DecisionBuffer decision) {
+        problem.reset();
+        double pool = surplus;
+
+        // Devices that cannot run are switched off right away, the rest become search items
+        for (int i = 0; i < order.size(); i++) {
+            double weight = config.getAllocationPriorityWeight() * (order.size() - i);
+            pool = switch (order.get(i)) {
+                case EV_CHARGER -> addEvCharger(state, pool, weight, decision);
+                case AC_CLIMATE -> addClimate(state, pool, weight, decision);
+                case DISHWASHER -> addDishwasher(state, pool, weight, decision);
+                case SMART_PLUG -> addSmartPlug(state, pool, weight, decision);
+                case LOAD -> pool;
+            };
+        }
+
+        search.run(pool - config.getSurplusBuffer(), budgetNanos());
+        if (search.timedOut) {
+            log.debug("Allocation search stopped at the time budget after {} nodes", search.nodes);
+        }
+        return apply(state, pool, order, decision);
+    }
+
+    private long budgetNanos() {
+        Duration budget = config.getAllocationTimeBudget();
+        return budget != null ? budget.toNanos() : Long.MAX_VALUE;
+    }
+
+    private double addEvCharger(SystemState state, double pool, double weight, DecisionBuffer decision) {
+        if (problem.evCandidate) {
+            return pool;
+        }
+        if (!state.isEvConnected()) {
+            evPowerController.reset();
+            if (state.getEvChargingPower() > 0) {
+                decision.add(DeviceType.EV_CHARGER, ActionType.TURN_OFF, DecisionReason.EV_NOT_CONNECTED);
+            }
+            return pool;
+        }
+        if (state.getEvChargePercentage() >= 95.0) {
+            evPowerController.reset();
+            if (state.getEvChargingPower() > 0) {
+                decision.add(DeviceType.EV_CHARGER, ActionType.TURN_OFF, DecisionReason.EV_FULLY_CHARGED);
+            }
+            return pool;
+        }
+        problem.evCandidate = true;
+        problem.evWeight = weight;
+        problem.evMin = config.getEvMinPower();
+        problem.evMax = config.getEvMaxPower();
+        // Current EV consumption is available to the new allocation
+        return pool + state.getEvChargingPower();
+    }
+
+    private double addClimate(SystemState state, double pool, double weight, DecisionBuffer decision) {
+        if (problem.contains(DeviceType.AC_CLIMATE) || decision.isHeld(DeviceType.AC_CLIMATE)) {
+            return pool;
+        }
+        boolean needsCooling = state.getIndoorTemperature() > config.getTargetTemperature() + config.getTemperatureHysteresis();
+        boolean needsHeating = state.getIndoorTemperature() < config.getTargetTemperature() - config.getTemperatureHysteresis();
+
+        if (!needsCooling && !needsHeating) {
+            if (state.isAcOn()) {
+                decision.add(DeviceType.AC_CLIMATE, ActionType.TURN_OFF, DecisionReason.CLIMATE_IN_RANGE);
+                return pool + state.getAcPowerUsage();
+            }
+            return pool;
+        }
+
+        problem.add(DeviceType.AC_CLIMATE,
+                needsCooling ? config.getAcCoolingPower() : config.getAcHeatingPower(),
+                weight, state.isAcOn(),
+                needsCooling ? DecisionReason.CLIMATE_COOLING : DecisionReason.CLIMATE_HEATING,
+                state.getIndoorTemperature(), config.getTargetTemperature(), false,
+                DecisionReason.CLIMATE_INSUFFICIENT_SURPLUS);
+        return state.isAcOn() ? pool + state.getAcPowerUsage() : pool;
+    }
+
+    private double addDishwasher(SystemState state, double pool, double weight, DecisionBuffer decision) {
+        // A running program is never interrupted
+        if (problem.contains(DeviceType.DISHWASHER) || decision.isHeld(DeviceType.DISHWASHER)
+                || !state.isDishwasherReady() || state.isDishwasherOn()) {
+            return pool;
+        }
+        problem.add(DeviceType.DISHWASHER, config.getDishwasherPower(), weight, false,
+                DecisionReason.DISHWASHER_SURPLUS, 0.0, 0.0, true, null);
+        return pool;
+    }
+
+    private double addSmartPlug(SystemState state, double pool, double weight, DecisionBuffer decision) {
+        if (problem.contains(DeviceType.SMART_PLUG) || decision.isHeld(DeviceType.SMART_PLUG)) {
+            return pool;
+        }
+        problem.add(DeviceType.SMART_PLUG, config.getSmartPlugPower(), weight, state.isSmartPlugOn(),
+                DecisionReason.SMART_PLUG_SURPLUS, 0.0, 0.0, true,
+                DecisionReason.SMART_PLUG_INSUFFICIENT_SURPLUS);
+        return state.isSmartPlugOn() ? pool + state.getSmartPlugPower() : pool;
+    }
+
+    /**
+     * Adds the actions of the best mix, in priority order, and returns the surplus left
+     */
+    private double apply(SystemState state, double pool, List<DeviceType> order, DecisionBuffer decision) {
+        double remaining = pool;
+        boolean evApplied = false;
+
+        for (int i = 0; i < order.size(); i++) {
+            DeviceType device = order.get(i);
+            if (device == DeviceType.EV_CHARGER) {
+                if (!problem.evCandidate || evApplied) {
+                    continue;
+                }
+                evApplied = true;
+                // The search sized the EV in charger steps, ramp and deadband may keep it lower
+                double evPower = evPowerController.regulate(search.bestEvPower, decision.getCycleTime());
+                if (evPower > 0) {
+                    decision.add(DeviceType.EV_CHARGER, ActionType.SET_POWER, evPower,
+                            DecisionReason.EV_CHARGING, evPower, state.getEvChargePercentage());
+                    remaining -= evPower;
+                } else if (state.getEvChargingPower() > 0) {
+                    decision.add(DeviceType.EV_CHARGER, ActionType.TURN_OFF, DecisionReason.EV_INSUFFICIENT_SURPLUS);
+                }
+                continue;
+            }
+
+            int item = problem.itemOf(device);
+            if (item < 0 || problem.applied[item]) {
+                continue;
+            }
+            problem.applied[item] = true;
+            if ((search.bestMask & (1L << item)) != 0) {
+                if (!problem.on[item]) {
+                    decision.add(device, ActionType.TURN_ON, Double.NaN, problem.onReason[item],
+                            problem.reportsSurplus[item] ? remaining : problem.onFirst[item],
+                            problem.reportsSurplus[item] ? 0.0 : problem.onSecond[item]);
+                }
+                remaining -= problem.power[item];
+            } else if (problem.on[item] && problem.offReason[item] != null) {
+                decision.add(device, ActionType.TURN_OFF, problem.offReason[item]);
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Devices to allocate: on/off items plus the EV charger with its continuous power range
+     */
+    private static final class Problem {
+        private final DeviceType[] device;
+        private final double[] power;
+        private final double[] weight;
+        private final boolean[] on;
+        private final boolean[] applied;
+        private final DecisionReason[] onReason;
+        private final double[] onFirst;
+        private final double[] onSecond;
+        private final boolean[] reportsSurplus;
+        private final DecisionReason[] offReason;
+        private final int[] itemByDevice = new int[DeviceType.values().length];
+        private int count;
+
+        private boolean evCandidate;
+        private double evWeight;
+        private double evMin;
+        private double evMax;
+
+        private Problem(int capacity) {
+            device = new DeviceType[capacity];
+            power = new double[capacity];
+            weight = new double[capacity];
+            on = new boolean[capacity];
+            applied = new boolean[capacity];
+            onReason = new DecisionReason[capacity];
+            onFirst = new double[capacity];
+            onSecond = new double[capacity];
+            reportsSurplus = new boolean[capacity];
+            offReason = new DecisionReason[capacity];
+            Arrays.fill(itemByDevice, -1);
+        }
+
+        private void reset() {
+            Arrays.fill(applied, 0, count, false);
+            Arrays.fill(itemByDevice, -1);
+            count = 0;
+            evCandidate = false;
+            evWeight = 0.0;
+            evMin = 0.0;
+            evMax = 0.0;
+        }
+
+        private boolean contains(DeviceType type) {
+            return itemByDevice[type.ordinal()] >= 0;
+        }
+
+        private int itemOf(DeviceType type) {
+            return itemByDevice[type.ordinal()];
+        }
+
+        private void add(DeviceType type, double itemPower, double itemWeight, boolean itemOn,
+                         DecisionReason itemOnReason, double first, double second, boolean itemReportsSurplus,
+                         DecisionReason itemOffReason) {
+            if (count == device.length) {
+                return;
+            }
+            device[count] = type;
+            power[count] = itemPower;
+            weight[count] = itemWeight;
+            on[count] = itemOn;
+            onReason[count] = itemOnReason;
+            onFirst[count] = first;
+            onSecond[count] = second;
+            reportsSurplus[count] = itemReportsSurplus;
+            offReason[count] = itemOffReason;
+            itemByDevice[type.ordinal()] = count;
+            count++;
+        }
+    }
+
+    /**
+     * Depth-first branch-and-bound over the on/off items, the EV charger is sized at the leaves
+     */
+    private static final class Search {
+        private final Problem problem;
+        private final EvPowerController evPowerController;
+        private final double[] suffixPower;
+        private final double[] suffixWeight;
+
+        private double capacity;
+        private long budgetNanos;
+        private long start;
+        private double best;
+        private long bestMask;
+        private double bestEvPower;
+        private long nodes;
+        private boolean timedOut;
+
+        private Search(Problem problem, EvPowerController evPowerController) {
+            this.problem = problem;
+            this.evPowerController = evPowerController;
+            this.suffixPower = new double[problem.device.length + 1];
+            this.suffixWeight = new double[problem.device.length + 1];
+        }
+
+        private void run(double searchCapacity, long searchBudgetNanos) {
+            capacity = searchCapacity;
+            budgetNanos = searchBudgetNanos;
+            start = System.nanoTime();
+            best = Double.NEGATIVE_INFINITY;
+            bestMask = 0L;
+            bestEvPower = 0.0;
+            nodes = 0;
+            timedOut = false;
+            suffixPower[problem.count] = 0.0;
+            suffixWeight[problem.count] = 0.0;
+            for (int i = problem.count - 1; i >= 0; i--) {
+                suffixPower[i] = suffixPower[i + 1] + problem.power[i];
+                suffixWeight[i] = suffixWeight[i + 1] + problem.weight[i];
+            }
+
+            // Incumbent: fill the items in priority order
+            long mask = 0;
+            double used = 0.0;
+            double value = 0.0;
+            for (int i = 0; i < problem.count; i++) {
+                if (used + problem.power[i] <= capacity) {
+                    mask |= 1L << i;
+                    used += problem.power[i];
+                    value += problem.weight[i];
+                }
+            }
+            evaluate(mask, used, value);
+
+            search(0, 0L, 0.0, 0.0);
+        }
+
+        private void search(int index, long mask, double used, double value) {
+            if (timedOut) {
+                return;
+            }
+            if ((++nodes & TIME_CHECK_MASK) == 0 && System.nanoTime() - start > budgetNanos) {
+                timedOut = true;
+                return;
+            }
+            if (index == problem.count) {
+                evaluate(mask, used, value);
+                return;
+            }
+
+            double evMax = problem.evCandidate ? problem.evMax : 0.0;
+            double evWeight = problem.evCandidate ? problem.evWeight : 0.0;
+            double bound = value + used + Math.min(capacity - used, suffixPower[index] + evMax)
+                    + suffixWeight[index] + evWeight;
+            if (bound <= best) {
+                return;
+            }
+
+            if (used + problem.power[index] <= capacity) {
+                search(index + 1, mask | (1L << index), used + problem.power[index], value + problem.weight[index]);
+            }
+            search(index + 1, mask, used, value);
+        }
+
+        private void evaluate(long mask, double used, double value) {
+            double evPower = evPower(capacity - used);
+            double score = value + used + evPower + (evPower > 0 ? problem.evWeight : 0.0);
+            if (score > best) {
+                best = score;
+                bestMask = mask;
+                bestEvPower = evPower;
+            }
+        }
+
+        private double evPower(double available) {
+            if (!problem.evCandidate || available < problem.evMin) {
+                return 0.0;
+            }
+            return evPowerController.quantize(available);
+        }
+    }
+}
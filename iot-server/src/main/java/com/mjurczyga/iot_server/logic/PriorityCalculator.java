@@ -1,19 +1,22 @@
 package com.mjurczyga.iot_server.logic;
 
 import com.mjurczyga.iot_server.config.DeviceConfig;
+import com.mjurczyga.iot_server.config.PriorityPlan;
+import com.mjurczyga.iot_server.devices.DevicePlugin;
+import com.mjurczyga.iot_server.devices.PowerModel;
 import com.mjurczyga.iot_server.model.DeviceDecision;
 import com.mjurczyga.iot_server.model.DeviceDecision.ActionType;
-import com.mjurczyga.iot_server.model.DeviceDecision.DeviceAction;
 import com.mjurczyga.iot_server.model.DeviceDecision.DeviceType;
+import com.mjurczyga.iot_server.model.LoadState;
 import com.mjurczyga.iot_server.model.SystemState;
-import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.Comparator;
+import java.time.Duration;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Priority-based calculator for IoT device control
@@ -22,95 +25,263 @@ import java.util.List;
  * 1. MAX_USAGE (no one home) - maximize PV usage
  * 2. COMFORT (someone home) - prioritize comfort, use surplus for secondary devices
  * 3. CUSTOM - user-defined priority order
+ *
+ * The evaluation core writes into a reusable {@link DecisionBuffer} and allocates nothing;
+ * action reasons and the explanation are only formatted when they are read. Each mode hands a
+ * prebuilt device order to the configured {@link SurplusAllocator}, the custom order comes
+ * precompiled from {@link PriorityPlan}.
+ *
+ * Decisions use the surplus averaged over the stability window rather than a single sample, and
+ * on/off devices are not switched again before their minimum on/off time is over. Such devices
+ * are fixed in their current state before the surplus is allocated, so a running device that
+ * cannot be switched off yet keeps its power reserved.
  */
 @Service
-@RequiredArgsConstructor
 public class PriorityCalculator {
 
     private static final Logger log = LoggerFactory.getLogger(PriorityCalculator.class);
 
+    // Scenario 1: EV charger as dynamic regulator, AC if temperature requires it, dishwasher, smart plug
+    private static final List<DeviceType> MAX_USAGE_ORDER = List.of(
+            DeviceType.EV_CHARGER, DeviceType.AC_CLIMATE, DeviceType.DISHWASHER, DeviceType.SMART_PLUG);
+    // Scenario 2: after the AC, EV charger with remaining surplus, dishwasher, smart plug
+    private static final List<DeviceType> COMFORT_ORDER = List.of(
+            DeviceType.EV_CHARGER, DeviceType.DISHWASHER, DeviceType.SMART_PLUG);
+
     private final DeviceConfig config;
 
+    private final Map<DeviceType, DeviceHandler> surplusHandlers = new EnumMap<>(DeviceType.class);
+    private final SurplusAllocator greedyAllocator = this::allocateGreedy;
+    private final SurplusAllocator optimalAllocator;
+    private final EvPowerController evPowerController;
+
+    // Per-home history: the surplus over the stability window and the last switch of every device
+    private final SurplusSmoother surplusSmoother = new SurplusSmoother();
+    private final DwellTracker dwellTracker = new DwellTracker();
+
+    public PriorityCalculator(DeviceConfig config) {
+        this.config = config;
+        this.evPowerController = new EvPowerController(config);
+        this.optimalAllocator = new OptimalSurplusAllocator(config, evPowerController);
+
+        surplusHandlers.put(DeviceType.EV_CHARGER, this::handleEvChargerMaxUsage);
+        surplusHandlers.put(DeviceType.AC_CLIMATE, this::handleClimateMaxUsage);
+        surplusHandlers.put(DeviceType.DISHWASHER, this::handleDishwasher);
+        surplusHandlers.put(DeviceType.SMART_PLUG, this::handleSmartPlug);
+    }
+
     /**
      * Main calculation method - determines what actions to take based on current system state
      */
     public DeviceDecision calculatePriorities(SystemState state) {
-        DeviceDecision decision = DeviceDecision.create();
+        DecisionBuffer buffer = new DecisionBuffer();
+        evaluate(state, buffer);
+        return buffer.toDecision();
+    }
+
+    /**
+     * Allocation-free evaluation core, the buffer is reset and filled with the decision
+     */
+    public void evaluate(SystemState state, DecisionBuffer decision) {
+        evaluate(state, decision, System.nanoTime());
+    }
+
+    /**
+     * Evaluation at a given time, e.g. of a simulation clock. Smoothing, dwell times and the EV
+     * ramp all measure time by it, so successive calls must pass non-decreasing times.
+     * @param now Time of the cycle in nanoseconds, System.nanoTime() based for live homes.
+     */
+    public void evaluate(SystemState state, DecisionBuffer decision, long now) {
+        decision.reset();
+        decision.cycleTime(now);
+        observeDevices(state, now);
+        holdDwellingDevices(state, decision, now);
+
+        // Read the plan once, so the whole cycle works with one consistent configuration
+        PriorityPlan plan = config.getPriorityPlan();
+        double surplus = stableSurplus(state, now);
+        decision.availableSurplus(surplus);
 
         // Check if custom priority mode is enabled
-        if (config.isCustomPriorityEnabled()) {
-            log.info("Mode: CUSTOM (user-defined priorities)");
+        if (plan.isCustomEnabled()) {
+            log.debug("Mode: CUSTOM (user-defined priorities)");
             decision.mode("CUSTOM");
-            return calculateCustomMode(state, decision);
-        }
-
-        if (state.isAnyoneHome()) {
-            log.info("Mode: COMFORT (someone is home)");
+            calculateCustomMode(state, surplus, plan, decision);
+        } else if (state.isAnyoneHome()) {
+            log.debug("Mode: COMFORT (someone is home)");
             decision.mode("COMFORT");
-            return calculateComfortMode(state, decision);
+            calculateComfortMode(state, surplus, decision);
         } else {
-            log.info("Mode: MAX_USAGE (no one home)");
+            log.debug("Mode: MAX_USAGE (no one home)");
             decision.mode("MAX_USAGE");
-            return calculateMaxUsageMode(state, decision);
+            calculateMaxUsageMode(state, surplus, decision);
         }
     }
 
     /**
-     * NEW: Custom priority mode - user defines the order
+     * Surplus the decisions are based on: the PV left after the base load, averaged over the
+     * stability window so passing clouds do not switch devices, minus what the controlled devices
+     * draw right now.
      */
-    private DeviceDecision calculateCustomMode(SystemState state, DeviceDecision decision) {
-        double surplus = state.getAvailableSurplus();
-        decision.availableSurplus(surplus);
+    private double stableSurplus(SystemState state, long now) {
+        long window = config.getStabilityDurationSeconds() * 1_000_000_000L;
+        if (window <= 0) {
+            return state.getAvailableSurplus();
+        }
+        double baseSurplus = state.getCurrentPvProduction() - state.getCurrentHouseConsumption();
+        return surplusSmoother.add(now, baseSurplus, window) - state.getControlledConsumption();
+    }
+
+    /**
+     * Feeds the observed state of the on/off devices to the dwell tracker
+     */
+    private void observeDevices(SystemState state, long now) {
+        dwellTracker.observe(DeviceType.AC_CLIMATE.name(), state.isAcOn(), now);
+        dwellTracker.observe(DeviceType.DISHWASHER.name(), state.isDishwasherOn(), now);
+        dwellTracker.observe(DeviceType.SMART_PLUG.name(), state.isSmartPlugOn(), now);
+        List<LoadState> loads = state.getLoads();
+        for (int i = 0; i < loads.size(); i++) {
+            LoadState load = loads.get(i);
+            if (!load.getDevice().getPowerModel().isContinuous()) {
+                dwellTracker.observe(load.getId(), load.isOn(), now);
+            }
+        }
+    }
 
-        log.debug("Available surplus: {}W", surplus);
-        log.debug("Custom priority order: {}", config.getCustomPriorityOrder());
+    /**
+     * Fixes the built-in devices still within their minimum on or off time in their current state.
+     * A held device that is on keeps drawing power, which the surplus already excludes.
+     */
+    private void holdDwellingDevices(SystemState state, DecisionBuffer decision, long now) {
+        holdIfDwelling(DeviceType.AC_CLIMATE, state.isAcOn(), decision, now);
+        holdIfDwelling(DeviceType.DISHWASHER, state.isDishwasherOn(), decision, now);
+        holdIfDwelling(DeviceType.SMART_PLUG, state.isSmartPlugOn(), decision, now);
+    }
 
-        // Process devices in custom order
-        for (String deviceName : config.getCustomPriorityOrder()) {
-            DeviceType deviceType = parseDeviceType(deviceName);
+    private void holdIfDwelling(DeviceType device, boolean on, DecisionBuffer decision, long now) {
+        if (isDwelling(device.name(), on, now)) {
+            log.debug("{} held {}, minimum dwell time not over", device, on ? "on" : "off");
+            decision.hold(device);
+        }
+    }
 
-            if (deviceType != null) {
-                surplus = handleDeviceByType(deviceType, state, surplus, decision);
-            }
+    /**
+     * @return true if the device cannot leave its current state before its minimum on or off time is over.
+     */
+    private boolean isDwelling(String deviceId, boolean on, long now) {
+        long minOn = nanos(config.getMinOnTime());
+        long minOff = nanos(config.getMinOffTime());
+        if (minOn <= 0 && minOff <= 0) {
+            return false;
         }
+        return dwellTracker.isHeld(deviceId, on ? ActionType.TURN_OFF : ActionType.TURN_ON, now, minOn, minOff);
+    }
 
-        decision.explanation(String.format(
-                "Custom priority mode: Order %s. Remaining surplus: %.0fW",
-                config.getCustomPriorityOrder(),
-                surplus
-        ));
+    private static long nanos(Duration duration) {
+        return duration != null ? duration.toNanos() : 0L;
+    }
 
-        return decision.build();
+    /**
+     * NEW: Custom priority mode - user defines the order
+     */
+    private void calculateCustomMode(SystemState state, double surplus, PriorityPlan plan, DecisionBuffer decision) {
+        // Process devices in custom order
+        surplus = allocator().allocate(state, surplus, plan.getDevices(), decision);
+        surplus = allocateLoads(state, surplus, decision);
+
+        decision.explanation(DecisionReason.CUSTOM, plan.getCustomOrder(), surplus);
     }
 
     /**
-     * Route to appropriate device handler based on type
+     * Surplus allocation strategy selected in the configuration, greedy by default
      */
-    private double handleDeviceByType(DeviceType type, SystemState state, double surplus, DeviceDecision decision) {
-        switch (type) {
-            case EV_CHARGER:
-                return handleEvChargerMaxUsage(state, surplus, decision);
-            case AC_CLIMATE:
-                return handleClimateMaxUsage(state, surplus, decision);
-            case DISHWASHER:
-                return handleDishwasher(state, surplus, decision);
-            case SMART_PLUG:
-                return handleSmartPlug(state, surplus, decision);
-            default:
-                return surplus;
+    private SurplusAllocator allocator() {
+        return config.getAllocationStrategy() == DeviceConfig.AllocationStrategy.OPTIMAL
+                ? optimalAllocator
+                : greedyAllocator;
+    }
+
+    /**
+     * Greedy allocation: devices are handled in priority order, each one gets the surplus left by the previous ones
+     */
+    private double allocateGreedy(SystemState state, double surplus, List<DeviceType> order, DecisionBuffer decision) {
+        for (int i = 0; i < order.size(); i++) {
+            DeviceHandler handler = surplusHandlers.get(order.get(i));
+            if (handler != null) {
+                surplus = handler.handle(state, surplus, decision);
+            }
+        }
+        return surplus;
+    }
+
+    /**
+     * Generic loads come after the built-in devices, in the priority order of the device registry.
+     * They are walked greedily, so homes with many loads cost one pass per cycle.
+     */
+    private double allocateLoads(SystemState state, double surplus, DecisionBuffer decision) {
+        List<LoadState> loads = state.getLoads();
+        for (int i = 0; i < loads.size(); i++) {
+            surplus = handleLoad(loads.get(i), surplus, decision);
         }
+        return surplus;
     }
 
     /**
-     * Parse device type from string
+     * Handle a generic load according to its controllability and power model
      */
-    private DeviceType parseDeviceType(String deviceName) {
-        try {
-            return DeviceType.valueOf(deviceName);
-        } catch (IllegalArgumentException e) {
-            log.warn("Unknown device type in custom priority: {}", deviceName);
-            return null;
+    private double handleLoad(LoadState load, double surplus, DecisionBuffer decision) {
+        DevicePlugin device = load.getDevice();
+        PowerModel power = device.getPowerModel();
+        if (!power.isContinuous() && isDwelling(load.getId(), load.isOn(), decision.getCycleTime())) {
+            return surplus;
+        }
+
+        switch (device.getControllability()) {
+            case COMFORT:
+                // Not driven by the surplus
+                return surplus;
+            case RUN_TO_COMPLETION:
+                if (!load.isOn() && surplus >= power.getRatedPower() + config.getSurplusBuffer()) {
+                    decision.addLoad(device.getId(), device.getName(), ActionType.TURN_ON, Double.NaN,
+                            DecisionReason.LOAD_SURPLUS, surplus);
+                    return surplus - power.getRatedPower();
+                }
+                return surplus;
+            default:
+                break;
         }
+
+        if (power.isContinuous()) {
+            // Current consumption of the load is available to it again
+            double available = surplus + load.getPower();
+            double targetPower = Math.min(available - config.getSurplusBuffer(), power.getMaxPower());
+            if (targetPower >= power.getMinPower() && targetPower > 0) {
+                decision.addLoad(device.getId(), device.getName(), ActionType.SET_POWER, targetPower,
+                        DecisionReason.LOAD_POWER, targetPower);
+                return available - targetPower;
+            }
+            if (load.isOn()) {
+                decision.addLoad(device.getId(), device.getName(), ActionType.TURN_OFF, Double.NaN,
+                        DecisionReason.LOAD_INSUFFICIENT_SURPLUS, 0.0);
+                return available;
+            }
+            return surplus;
+        }
+
+        if (load.isOn()) {
+            if (surplus + load.getPower() < config.getSurplusBuffer()) {
+                decision.addLoad(device.getId(), device.getName(), ActionType.TURN_OFF, Double.NaN,
+                        DecisionReason.LOAD_INSUFFICIENT_SURPLUS, 0.0);
+                return surplus + load.getPower();
+            }
+            return surplus;
+        }
+        if (surplus >= power.getRatedPower() + config.getSurplusBuffer()) {
+            decision.addLoad(device.getId(), device.getName(), ActionType.TURN_ON, Double.NaN,
+                    DecisionReason.LOAD_SURPLUS, surplus);
+            return surplus - power.getRatedPower();
+        }
+        return surplus;
     }
 
     /**
@@ -121,31 +292,11 @@ public class PriorityCalculator {
      * 3. Dishwasher
      * 4. Smart Plug devices
      */
-    private DeviceDecision calculateMaxUsageMode(SystemState state, DeviceDecision decision) {
-        double surplus = state.getAvailableSurplus();
-        decision.availableSurplus(surplus);
-
-        log.debug("Available surplus: {}W", surplus);
-
-        // Priority 1: EV Charger as dynamic regulator
-        surplus = handleEvChargerMaxUsage(state, surplus, decision);
-
-        // Priority 2: AC if temperature requires it
-        surplus = handleClimateMaxUsage(state, surplus, decision);
-
-        // Priority 3: Dishwasher
-        surplus = handleDishwasher(state, surplus, decision);
+    private void calculateMaxUsageMode(SystemState state, double surplus, DecisionBuffer decision) {
+        surplus = allocator().allocate(state, surplus, MAX_USAGE_ORDER, decision);
+        surplus = allocateLoads(state, surplus, decision);
 
-        // Priority 4: Smart Plug
-        surplus = handleSmartPlug(state, surplus, decision);
-
-        decision.explanation(String.format(
-                "Max usage mode: Utilizing %.0fW from PV. Remaining surplus: %.0fW",
-                state.getCurrentPvProduction(),
-                surplus
-        ));
-
-        return decision.build();
+        decision.explanation(DecisionReason.MAX_USAGE, state.getCurrentPvProduction(), surplus);
     }
 
     /**
@@ -156,119 +307,78 @@ public class PriorityCalculator {
      * 3. Dishwasher (if enough surplus)
      * 4. Smart Plug devices (if enough surplus)
      */
-    private DeviceDecision calculateComfortMode(SystemState state, DeviceDecision decision) {
-        double surplus = state.getAvailableSurplus();
-        decision.availableSurplus(surplus);
-
-        log.debug("Available surplus: {}W", surplus);
-
+    private void calculateComfortMode(SystemState state, double surplus, DecisionBuffer decision) {
         // Priority 1: AC for comfort (independent of surplus)
         surplus = handleClimateComfort(state, surplus, decision);
 
-        // Priority 2: EV Charger with remaining surplus
-        surplus = handleEvChargerComfort(state, surplus, decision);
-
-        // Priority 3: Dishwasher
-        surplus = handleDishwasher(state, surplus, decision);
-
-        // Priority 4: Smart Plug
-        surplus = handleSmartPlug(state, surplus, decision);
+        // Remaining devices share what is left
+        surplus = allocator().allocate(state, surplus, COMFORT_ORDER, decision);
+        surplus = allocateLoads(state, surplus, decision);
 
-        decision.explanation(String.format(
-                "Comfort mode: Priority on comfort. Available surplus: %.0fW",
-                surplus
-        ));
-
-        return decision.build();
+        decision.explanation(DecisionReason.COMFORT, surplus, 0.0);
     }
 
     /**
      * Handle EV charger in max usage mode - charge with any available surplus
      */
-    private double handleEvChargerMaxUsage(SystemState state, double surplus, DeviceDecision decision) {
+    private double handleEvChargerMaxUsage(SystemState state, double surplus, DecisionBuffer decision) {
         if (!state.isEvConnected()) {
+            evPowerController.reset();
             if (state.getEvChargingPower() > 0) {
-                decision.addAction(DeviceAction.builder()
-                        .device(DeviceType.EV_CHARGER)
-                        .action(ActionType.TURN_OFF)
-                        .reason("EV not connected")
-                        .build());
+                decision.add(DeviceType.EV_CHARGER, ActionType.TURN_OFF, DecisionReason.EV_NOT_CONNECTED);
             }
             return surplus;
         }
 
         if (state.getEvChargePercentage() >= 95.0) {
+            evPowerController.reset();
             if (state.getEvChargingPower() > 0) {
-                decision.addAction(DeviceAction.builder()
-                        .device(DeviceType.EV_CHARGER)
-                        .action(ActionType.TURN_OFF)
-                        .reason("EV fully charged (95%+)")
-                        .build());
+                decision.add(DeviceType.EV_CHARGER, ActionType.TURN_OFF, DecisionReason.EV_FULLY_CHARGED);
             }
             return surplus;
         }
 
         // Calculate optimal charging power
-        double targetPower = calculateEvChargingPower(surplus, state);
-
-        if (targetPower >= config.getEvMinPower()) {
-            decision.addAction(DeviceAction.builder()
-                    .device(DeviceType.EV_CHARGER)
-                    .action(ActionType.SET_POWER)
-                    .targetPower(targetPower)
-                    .reason(String.format("Charging with %.0fW (%.0f%% charged)", targetPower, state.getEvChargePercentage()))
-                    .build());
+        double targetPower = calculateEvChargingPower(surplus, state, decision);
+
+        if (targetPower > 0) {
+            decision.add(DeviceType.EV_CHARGER, ActionType.SET_POWER, targetPower,
+                    DecisionReason.EV_CHARGING, targetPower, state.getEvChargePercentage());
             return surplus - targetPower;
         } else if (state.getEvChargingPower() > 0) {
-            decision.addAction(DeviceAction.builder()
-                    .device(DeviceType.EV_CHARGER)
-                    .action(ActionType.TURN_OFF)
-                    .reason("Insufficient surplus for minimum charging power")
-                    .build());
+            decision.add(DeviceType.EV_CHARGER, ActionType.TURN_OFF, DecisionReason.EV_INSUFFICIENT_SURPLUS);
         }
 
         return surplus;
     }
 
-    /**
-     * Handle EV charger in comfort mode - use surplus after AC
-     */
-    private double handleEvChargerComfort(SystemState state, double surplus, DeviceDecision decision) {
-        return handleEvChargerMaxUsage(state, surplus, decision); // Same logic but different context
-    }
-
     /**
      * Calculate optimal EV charging power based on available surplus
      */
-    private double calculateEvChargingPower(double surplus, SystemState state) {
+    private double calculateEvChargingPower(double surplus, SystemState state, DecisionBuffer decision) {
         // Add current EV consumption back to surplus to get total available
         double totalAvailable = surplus + state.getEvChargingPower();
 
         // Apply buffer
         totalAvailable -= config.getSurplusBuffer();
 
-        // Clamp to EV charger limits
-        if (totalAvailable < config.getEvMinPower()) {
-            return 0.0;
-        }
-
-        return Math.min(totalAvailable, config.getEvMaxPower());
+        // Charger limits, current steps, ramp and deadband
+        return evPowerController.regulate(totalAvailable, decision.getCycleTime());
     }
 
     /**
      * Handle climate control in max usage mode - only if temperature requires
      */
-    private double handleClimateMaxUsage(SystemState state, double surplus, DeviceDecision decision) {
+    private double handleClimateMaxUsage(SystemState state, double surplus, DecisionBuffer decision) {
+        if (decision.isHeld(DeviceType.AC_CLIMATE)) {
+            return surplus;
+        }
         boolean needsCooling = state.getIndoorTemperature() > config.getTargetTemperature() + config.getTemperatureHysteresis();
         boolean needsHeating = state.getIndoorTemperature() < config.getTargetTemperature() - config.getTemperatureHysteresis();
 
         if (!needsCooling && !needsHeating) {
             if (state.isAcOn()) {
-                decision.addAction(DeviceAction.builder()
-                        .device(DeviceType.AC_CLIMATE)
-                        .action(ActionType.TURN_OFF)
-                        .reason("Temperature in acceptable range")
-                        .build());
+                decision.add(DeviceType.AC_CLIMATE, ActionType.TURN_OFF, DecisionReason.CLIMATE_IN_RANGE);
                 return surplus + state.getAcPowerUsage();
             }
             return surplus;
@@ -279,23 +389,14 @@ public class PriorityCalculator {
         // In max usage mode, only turn on if we have surplus
         if (surplus + state.getAcPowerUsage() >= requiredPower + config.getSurplusBuffer()) {
             if (!state.isAcOn()) {
-                decision.addAction(DeviceAction.builder()
-                        .device(DeviceType.AC_CLIMATE)
-                        .action(ActionType.TURN_ON)
-                        .reason(String.format("Temperature %.1f°C, target %.1f°C (%s)",
-                                state.getIndoorTemperature(),
-                                config.getTargetTemperature(),
-                                needsCooling ? "cooling" : "heating"))
-                        .build());
+                decision.add(DeviceType.AC_CLIMATE, ActionType.TURN_ON, Double.NaN,
+                        needsCooling ? DecisionReason.CLIMATE_COOLING : DecisionReason.CLIMATE_HEATING,
+                        state.getIndoorTemperature(), config.getTargetTemperature());
                 return surplus - requiredPower;
             }
             return surplus;
         } else if (state.isAcOn()) {
-            decision.addAction(DeviceAction.builder()
-                    .device(DeviceType.AC_CLIMATE)
-                    .action(ActionType.TURN_OFF)
-                    .reason("Insufficient surplus for climate control")
-                    .build());
+            decision.add(DeviceType.AC_CLIMATE, ActionType.TURN_OFF, DecisionReason.CLIMATE_INSUFFICIENT_SURPLUS);
             return surplus + state.getAcPowerUsage();
         }
 
@@ -306,21 +407,19 @@ public class PriorityCalculator {
      * Handle climate control in comfort mode - always operate based on temperature needs
      * FIXED: Now returns updated surplus after AC decision
      */
-    private double handleClimateComfort(SystemState state, double surplus, DeviceDecision decision) {
+    private double handleClimateComfort(SystemState state, double surplus, DecisionBuffer decision) {
+        if (decision.isHeld(DeviceType.AC_CLIMATE)) {
+            return surplus;
+        }
         boolean needsCooling = state.getIndoorTemperature() > config.getTargetTemperature() + config.getTemperatureHysteresis();
         boolean needsHeating = state.getIndoorTemperature() < config.getTargetTemperature() - config.getTemperatureHysteresis();
 
         if (needsCooling || needsHeating) {
             if (!state.isAcOn()) {
                 double requiredPower = needsCooling ? config.getAcCoolingPower() : config.getAcHeatingPower();
-                decision.addAction(DeviceAction.builder()
-                        .device(DeviceType.AC_CLIMATE)
-                        .action(ActionType.TURN_ON)
-                        .reason(String.format("Comfort priority: Temperature %.1f°C, target %.1f°C (%s)",
-                                state.getIndoorTemperature(),
-                                config.getTargetTemperature(),
-                                needsCooling ? "cooling" : "heating"))
-                        .build());
+                decision.add(DeviceType.AC_CLIMATE, ActionType.TURN_ON, Double.NaN,
+                        needsCooling ? DecisionReason.COMFORT_COOLING : DecisionReason.COMFORT_HEATING,
+                        state.getIndoorTemperature(), config.getTargetTemperature());
                 // Subtract AC power from surplus
                 return surplus - requiredPower;
             }
@@ -328,11 +427,7 @@ public class PriorityCalculator {
             return surplus;
         } else {
             if (state.isAcOn()) {
-                decision.addAction(DeviceAction.builder()
-                        .device(DeviceType.AC_CLIMATE)
-                        .action(ActionType.TURN_OFF)
-                        .reason("Temperature in acceptable range")
-                        .build());
+                decision.add(DeviceType.AC_CLIMATE, ActionType.TURN_OFF, DecisionReason.CLIMATE_IN_RANGE);
                 // Add back AC power to surplus
                 return surplus + state.getAcPowerUsage();
             }
@@ -344,7 +439,10 @@ public class PriorityCalculator {
     /**
      * Handle dishwasher - only turn on with stable surplus
      */
-    private double handleDishwasher(SystemState state, double surplus, DeviceDecision decision) {
+    private double handleDishwasher(SystemState state, double surplus, DecisionBuffer decision) {
+        if (decision.isHeld(DeviceType.DISHWASHER)) {
+            return surplus;
+        }
         if (!state.isDishwasherReady()) {
             return surplus;
         }
@@ -356,11 +454,8 @@ public class PriorityCalculator {
 
         // Turn on only if we have enough surplus
         if (surplus >= config.getDishwasherPower() + config.getSurplusBuffer()) {
-            decision.addAction(DeviceAction.builder()
-                    .device(DeviceType.DISHWASHER)
-                    .action(ActionType.TURN_ON)
-                    .reason(String.format("Sufficient surplus (%.0fW) for dishwasher", surplus))
-                    .build());
+            decision.add(DeviceType.DISHWASHER, ActionType.TURN_ON, Double.NaN,
+                    DecisionReason.DISHWASHER_SURPLUS, surplus, 0.0);
             return surplus - config.getDishwasherPower();
         }
 
@@ -370,30 +465,34 @@ public class PriorityCalculator {
     /**
      * Handle smart plug devices - turn on with stable surplus
      */
-    private double handleSmartPlug(SystemState state, double surplus, DeviceDecision decision) {
+    private double handleSmartPlug(SystemState state, double surplus, DecisionBuffer decision) {
+        if (decision.isHeld(DeviceType.SMART_PLUG)) {
+            return surplus;
+        }
         if (state.isSmartPlugOn()) {
             // Check if we should turn it off
             if (surplus + state.getSmartPlugPower() < config.getSurplusBuffer()) {
-                decision.addAction(DeviceAction.builder()
-                        .device(DeviceType.SMART_PLUG)
-                        .action(ActionType.TURN_OFF)
-                        .reason("Insufficient surplus to maintain smart plug")
-                        .build());
+                decision.add(DeviceType.SMART_PLUG, ActionType.TURN_OFF, DecisionReason.SMART_PLUG_INSUFFICIENT_SURPLUS);
                 return surplus + state.getSmartPlugPower();
             }
             return surplus;
         } else {
             // Turn on if we have enough surplus
             if (surplus >= config.getSmartPlugPower() + config.getSurplusBuffer()) {
-                decision.addAction(DeviceAction.builder()
-                        .device(DeviceType.SMART_PLUG)
-                        .action(ActionType.TURN_ON)
-                        .reason(String.format("Sufficient surplus (%.0fW) for smart plug", surplus))
-                        .build());
+                decision.add(DeviceType.SMART_PLUG, ActionType.TURN_ON, Double.NaN,
+                        DecisionReason.SMART_PLUG_SURPLUS, surplus, 0.0);
                 return surplus - config.getSmartPlugPower();
             }
         }
 
         return surplus;
     }
-}
\ No newline at end of file
+
+    /**
+     * Decides the action for one device and returns the surplus left for the next ones
+     */
+    @FunctionalInterface
+    private interface DeviceHandler {
+        double handle(SystemState state, double surplus, DecisionBuffer decision);
+    }
+}
@@ -0,0 +1,23 @@
+package com.mjurczyga.iot_server.logic;
+
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceType;
+import com.mjurczyga.iot_server.model.SystemState;
+
+import java.util.List;
+
+/**
+ * Strategy distributing the PV surplus among the surplus-driven devices of a home
+ */
+@FunctionalInterface
+public interface SurplusAllocator {
+
+    /**
+     * Adds the actions for the given devices to the decision.
+     * @param state Current system state.
+     * @param surplus Surplus available to the devices, in W.
+     * @param order Devices to allocate, highest priority first.
+     * @param decision Buffer receiving the actions.
+     * @return The surplus left after the allocation.
+     */
+    double allocate(SystemState state, double surplus, List<DeviceType> order, DecisionBuffer decision);
+}
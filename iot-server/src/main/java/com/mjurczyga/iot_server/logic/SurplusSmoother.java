@@ -0,0 +1,121 @@
+package com.mjurczyga.iot_server.logic;
+
+/**
+ * Time-weighted rolling mean of a surplus signal over a sliding window.
+ *
+ * Samples are kept in a ring buffer together with the running integral of the signal, so adding
+ * a sample and dropping the ones that left the window is O(1) amortized. Control cycles are
+ * event-driven and come at irregular intervals, so every sample is weighted by how long it was
+ * the latest value rather than counted once.
+ */
+public class SurplusSmoother {
+
+    private static final int INITIAL_CAPACITY = 64;
+    // The running integral is recomputed now and then, so rounding errors do not pile up
+    private static final int RESUM_INTERVAL = 4096;
+
+    private long[] times = new long[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private int head;
+    private int size;
+    private double integral; // sum of value * duration of all samples but the latest
+    private int updates;
+
+    /**
+     * Adds a sample and returns the smoothed value.
+     * @param nowNanos Time of the sample, System.nanoTime() based.
+     * @param value The instantaneous value.
+     * @param windowNanos Window length, 0 or less disables smoothing.
+     * @return The mean over the window, the sample itself until the window holds more than one sample.
+     */
+    public synchronized double add(long nowNanos, double value, long windowNanos) {
+        if (windowNanos <= 0) {
+            clear();
+            return value;
+        }
+
+        if (size > 0) {
+            int last = index(size - 1);
+            long elapsed = nowNanos - times[last];
+            if (elapsed <= 0) {
+                // Same instant, the latest value wins
+                values[last] = value;
+                return mean(nowNanos);
+            }
+            integral += values[last] * elapsed;
+        }
+        append(nowNanos, value);
+        evict(nowNanos - windowNanos);
+
+        if (++updates % RESUM_INTERVAL == 0) {
+            integral = resum();
+        }
+        return mean(nowNanos);
+    }
+
+    /**
+     * @return Number of samples in the window.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+        integral = 0.0;
+    }
+
+    private double mean(long nowNanos) {
+        long span = nowNanos - times[head];
+        if (size < 2 || span <= 0) {
+            return values[index(size - 1)];
+        }
+        return integral / span;
+    }
+
+    /**
+     * Drops samples whose whole duration lies before the window start.
+     */
+    private void evict(long windowStart) {
+        while (size > 1 && times[index(1)] <= windowStart) {
+            integral -= values[head] * (times[index(1)] - times[head]);
+            head = index(1);
+            size--;
+        }
+    }
+
+    private void append(long time, double value) {
+        if (size == times.length) {
+            grow();
+        }
+        int slot = index(size);
+        times[slot] = time;
+        values[slot] = value;
+        size++;
+    }
+
+    private double resum() {
+        double sum = 0.0;
+        for (int i = 0; i < size - 1; i++) {
+            sum += values[index(i)] * (times[index(i + 1)] - times[index(i)]);
+        }
+        return sum;
+    }
+
+    private int index(int offset) {
+        return (head + offset) % times.length;
+    }
+
+    private void grow() {
+        long[] grownTimes = new long[times.length * 2];
+        double[] grownValues = new double[values.length * 2];
+        for (int i = 0; i < size; i++) {
+            grownTimes[i] = times[index(i)];
+            grownValues[i] = values[index(i)];
+        }
+        times = grownTimes;
+        values = grownValues;
+        head = 0;
+    }
+}
@@ -0,0 +1,137 @@
+package com.mjurczyga.iot_server.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Metrics of the control loop and the Home Assistant communication.
+ *
+ * Meters are registered in the global registry, which Spring Boot backs with the actuator registry,
+ * so classes created per home (without dependency injection) can record them too.
+ * Timers publish percentile histograms; tags are kept to low-cardinality values (no home ids).
+ */
+public final class IotMetrics {
+
+    public static final String PHASE_GATHER = "gather";
+    public static final String PHASE_CALCULATE = "calculate";
+    public static final String PHASE_EXECUTE = "execute";
+
+    private static final MeterRegistry registry = Metrics.globalRegistry;
+
+    private IotMetrics() {
+    }
+
+    /**
+     * Records the duration of a control loop phase.
+     */
+    public static void recordPhase(String phase, long nanos) {
+        Timer.builder("iot.control.phase")
+                .description("Duration of a control loop phase")
+                .tag("phase", phase)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the duration of a state request to Home Assistant.
+     * @param entityId The entity, or "/api/states" for a snapshot.
+     * @param signal How the request ended.
+     */
+    public static void recordEntityFetch(String entityId, long nanos, SignalType signal) {
+        Timer.builder("iot.homeassistant.fetch")
+                .description("Duration of entity state requests")
+                .tag("entity", entityId)
+                .tag("outcome", outcomeOf(signal))
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the duration of a (batched) service call to Home Assistant.
+     */
+    public static void recordServiceCall(String domain, String service, long nanos, boolean success) {
+        Timer.builder("iot.homeassistant.service")
+                .description("Duration of service calls")
+                .tag("service", domain + "." + service)
+                .tag("outcome", success ? "success" : "error")
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Counts an executed device action by its result.
+     */
+    public static void countAction(String device, String action, String status) {
+        Counter.builder("iot.control.actions")
+                .description("Device actions by result")
+                .tag("device", device)
+                .tag("action", action)
+                .tag("status", status)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Counts a gather of the system state by where the state came from.
+     * @param source "table", "snapshot" or "entities".
+     */
+    public static void countGather(String source) {
+        Counter.builder("iot.control.gather")
+                .description("System state gathers by source")
+                .tag("source", source)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Counts a value that fell back to its default because the real value was not available.
+     * @param input The input, e.g. "indoor_temperature" or "default_state" for the whole state.
+     */
+    public static void countFallback(String input) {
+        Counter.builder("iot.control.fallbacks")
+                .description("Inputs replaced by defaults")
+                .tag("input", input)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Exposes a counter maintained elsewhere, e.g. by the scheduler.
+     */
+    public static void registerCounter(String name, String description, AtomicLong counter) {
+        FunctionCounter.builder(name, counter, AtomicLong::get)
+                .description(description)
+                .register(registry);
+    }
+
+    /**
+     * Exposes a value maintained elsewhere as a gauge.
+     */
+    public static void registerGauge(String name, String description, Supplier<Number> value) {
+        Gauge.builder(name, value)
+                .description(description)
+                .register(registry);
+    }
+
+    private static String outcomeOf(SignalType signal) {
+        return switch (signal) {
+            case ON_COMPLETE -> "success";
+            case ON_ERROR -> "error";
+            case CANCEL -> "cancelled";
+            default -> signal.name().toLowerCase();
+        };
+    }
+}
@@ -0,0 +1,37 @@
+package com.mjurczyga.iot_server.model;
+
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceAction;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of executing a single device action
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ActionResult {
+
+    public enum Status {
+        SUCCESS,
+        FAILED,
+        SKIPPED // Nothing to do, or the device is not configured for this home
+    }
+
+    private DeviceAction action;
+    private Status status;
+    private String message;
+
+    public static ActionResult success(DeviceAction action, String message) {
+        return new ActionResult(action, Status.SUCCESS, message);
+    }
+
+    public static ActionResult failed(DeviceAction action, String message) {
+        return new ActionResult(action, Status.FAILED, message);
+    }
+
+    public static ActionResult skipped(DeviceAction action, String message) {
+        return new ActionResult(action, Status.SKIPPED, message);
+    }
+}
@@ -0,0 +1,18 @@
+package com.mjurczyga.iot_server.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * A decision together with the outcome of executing its actions
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ControlResult {
+    private DeviceDecision decision;
+    private List<ActionResult> results;
+}
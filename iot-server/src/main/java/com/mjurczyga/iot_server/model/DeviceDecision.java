@@ -1,11 +1,15 @@
 package com.mjurczyga.iot_server.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * Represents the decision result from priority calculator
@@ -19,6 +23,19 @@ public class DeviceDecision {
     private double availableSurplus;
     private String mode; // "MAX_USAGE" or "COMFORT"
     private String explanation;
+
+    // Renders the explanation on first read, so it is only formatted when serialized or logged
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Supplier<String> explanationRenderer;
+
+    public String getExplanation() {
+        if (explanation == null && explanationRenderer != null) {
+            explanation = explanationRenderer.get();
+        }
+        return explanation;
+    }
     
     /**
      * Add an action to the decision
@@ -61,6 +78,15 @@ public class DeviceDecision {
         return this;
     }
     
+    /**
+     * Builder-style method to set an explanation rendered on first read
+     */
+    public DeviceDecision lazyExplanation(Supplier<String> renderer) {
+        this.explanation = null;
+        this.explanationRenderer = renderer;
+        return this;
+    }
+    
     /**
      * Terminal method for builder pattern
      */
@@ -73,9 +99,27 @@ public class DeviceDecision {
     @AllArgsConstructor
     public static class DeviceAction {
         private DeviceType device;
+        private String deviceId; // Registry id of a LOAD, built-in devices use their type name
         private ActionType action;
         private Double targetPower; // For EV charger, null for ON/OFF devices
         private String reason;
+
+        // Renders the reason on first read, so it is only formatted when serialized or logged
+        @JsonIgnore
+        @EqualsAndHashCode.Exclude
+        @ToString.Exclude
+        private Supplier<String> reasonRenderer;
+
+        public String getReason() {
+            if (reason == null && reasonRenderer != null) {
+                reason = reasonRenderer.get();
+            }
+            return reason;
+        }
+
+        public String getDeviceId() {
+            return deviceId != null ? deviceId : device != null ? device.name() : null;
+        }
         
         /**
          * Static factory method to create a builder
@@ -89,15 +133,22 @@ public class DeviceDecision {
          */
         public static class DeviceActionBuilder {
             private DeviceType device;
+            private String deviceId;
             private ActionType action;
             private Double targetPower;
             private String reason;
+            private Supplier<String> reasonRenderer;
             
             public DeviceActionBuilder device(DeviceType device) {
                 this.device = device;
                 return this;
             }
             
+            public DeviceActionBuilder deviceId(String deviceId) {
+                this.deviceId = deviceId;
+                return this;
+            }
+            
             public DeviceActionBuilder action(ActionType action) {
                 this.action = action;
                 return this;
@@ -113,8 +164,13 @@ public class DeviceDecision {
                 return this;
             }
             
+            public DeviceActionBuilder lazyReason(Supplier<String> reasonRenderer) {
+                this.reasonRenderer = reasonRenderer;
+                return this;
+            }
+            
             public DeviceAction build() {
-                return new DeviceAction(device, action, targetPower, reason);
+                return new DeviceAction(device, deviceId, action, targetPower, reason, reasonRenderer);
             }
         }
     }
@@ -123,7 +179,8 @@ public class DeviceDecision {
         EV_CHARGER,
         AC_CLIMATE,
         DISHWASHER,
-        SMART_PLUG
+        SMART_PLUG,
+        LOAD // Generic load from the device registry, identified by the action's device id
     }
     
     public enum ActionType {
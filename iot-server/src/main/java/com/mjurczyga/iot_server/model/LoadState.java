@@ -0,0 +1,23 @@
+package com.mjurczyga.iot_server.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.mjurczyga.iot_server.devices.DevicePlugin;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Observed state of a generic load
+ */
+@Data
+@AllArgsConstructor
+public class LoadState {
+
+    @JsonIgnore
+    private DevicePlugin device;
+    private boolean on;
+    private double power; // Watts
+
+    public String getId() {
+        return device.getId();
+    }
+}
@@ -3,6 +3,8 @@ package com.mjurczyga.iot_server.model;
 import lombok.Builder;
 import lombok.Data;
 
+import java.util.List;
+
 /**
  * Represents the current state of the entire IoT system
  */
@@ -36,12 +38,24 @@ public class SystemState {
     // Smart Plug
     private boolean smartPlugOn;
     private double smartPlugPower; // Watts
+
+    // Generic loads, in priority order
+    @Builder.Default
+    private List<LoadState> loads = List.of();
+    private double loadsPower; // Watts, total of all loads
     
     /**
      * Calculate total current consumption
      */
     public double getTotalConsumption() {
-        return currentHouseConsumption + acPowerUsage + evChargingPower + smartPlugPower;
+        return currentHouseConsumption + getControlledConsumption();
+    }
+
+    /**
+     * Consumption of the devices controlled by the control loop
+     */
+    public double getControlledConsumption() {
+        return acPowerUsage + evChargingPower + smartPlugPower + loadsPower;
     }
     
     /**
@@ -0,0 +1,11 @@
+package com.mjurczyga.iot_server.recording;
+
+import com.mjurczyga.iot_server.model.DeviceDecision;
+import com.mjurczyga.iot_server.model.SystemState;
+
+/**
+ * A control cycle as recorded: the gathered state and the decision the calculator made
+ * @param timestampMillis Wall clock time of the cycle.
+ */
+public record RecordedCycle(long timestampMillis, SystemState state, DeviceDecision decision) {
+}
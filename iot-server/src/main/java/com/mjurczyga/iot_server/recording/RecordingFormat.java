@@ -0,0 +1,165 @@
+package com.mjurczyga.iot_server.recording;
+
+import com.mjurczyga.iot_server.devices.DevicePlugin;
+import com.mjurczyga.iot_server.model.DeviceDecision;
+import com.mjurczyga.iot_server.model.DeviceDecision.ActionType;
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceAction;
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceType;
+import com.mjurczyga.iot_server.model.LoadState;
+import com.mjurczyga.iot_server.model.SystemState;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Binary layout of a recording, little endian.
+ *
+ * A segment starts with the magic number and the format version, followed by records. Each
+ * record is an int length and the body: the wall clock time of the cycle, the state (flags,
+ * readings, loads) and the decision (mode, surplus, actions). Enums are stored by ordinal, so
+ * new constants must only be appended. A length of 0 marks the end of the written part.
+ * Reasons and explanations are not recorded, they follow from the rest.
+ */
+final class RecordingFormat {
+
+    static final int MAGIC = 0x52544F49; // "IOTR"
+    static final int VERSION = 1;
+    static final int SEGMENT_HEADER = 8;
+    static final int LENGTH_PREFIX = 4;
+
+    private static final DeviceType[] DEVICES = DeviceType.values();
+    private static final ActionType[] ACTIONS = ActionType.values();
+
+    private static final int ANYONE_HOME = 1;
+    private static final int AC_ON = 1 << 1;
+    private static final int EV_CONNECTED = 1 << 2;
+    private static final int DISHWASHER_READY = 1 << 3;
+    private static final int DISHWASHER_ON = 1 << 4;
+    private static final int SMART_PLUG_ON = 1 << 5;
+
+    private RecordingFormat() {
+    }
+
+    /**
+     * Writes the body of a record at the position of the buffer.
+     * @throws java.nio.BufferOverflowException if the buffer is too small.
+     */
+    static void encode(ByteBuffer buffer, long timestampMillis, SystemState state, DeviceDecision decision) {
+        buffer.putLong(timestampMillis);
+
+        int flags = (state.isAnyoneHome() ? ANYONE_HOME : 0)
+                | (state.isAcOn() ? AC_ON : 0)
+                | (state.isEvConnected() ? EV_CONNECTED : 0)
+                | (state.isDishwasherReady() ? DISHWASHER_READY : 0)
+                | (state.isDishwasherOn() ? DISHWASHER_ON : 0)
+                | (state.isSmartPlugOn() ? SMART_PLUG_ON : 0);
+        buffer.put((byte) flags);
+        buffer.putDouble(state.getIndoorTemperature());
+        buffer.putDouble(state.getOutdoorTemperature());
+        buffer.putDouble(state.getCurrentPvProduction());
+        buffer.putDouble(state.getCurrentHouseConsumption());
+        buffer.putDouble(state.getAcPowerUsage());
+        buffer.putDouble(state.getEvChargePercentage());
+        buffer.putDouble(state.getEvChargingPower());
+        buffer.putDouble(state.getSmartPlugPower());
+        buffer.putDouble(state.getLoadsPower());
+
+        List<LoadState> loads = state.getLoads();
+        buffer.putShort((short) loads.size());
+        for (LoadState load : loads) {
+            putString(buffer, load.getId());
+            buffer.put((byte) (load.isOn() ? 1 : 0));
+            buffer.putDouble(load.getPower());
+        }
+
+        putString(buffer, decision.getMode());
+        buffer.putDouble(decision.getAvailableSurplus());
+        List<DeviceAction> actions = decision.getActions();
+        buffer.putShort((short) actions.size());
+        for (DeviceAction action : actions) {
+            buffer.put((byte) action.getDevice().ordinal());
+            putString(buffer, action.getDevice() == DeviceType.LOAD ? action.getDeviceId() : null);
+            buffer.put((byte) action.getAction().ordinal());
+            buffer.putDouble(action.getTargetPower() != null ? action.getTargetPower() : Double.NaN);
+        }
+    }
+
+    /**
+     * Reads the body of a record at the position of the buffer.
+     * @param loads Resolves the device of a recorded load, loads that resolve to null are skipped.
+     */
+    static RecordedCycle decode(ByteBuffer buffer, Function<String, DevicePlugin> loads) {
+        long timestampMillis = buffer.getLong();
+
+        int flags = buffer.get();
+        SystemState.SystemStateBuilder state = SystemState.builder()
+                .anyoneHome((flags & ANYONE_HOME) != 0)
+                .acOn((flags & AC_ON) != 0)
+                .evConnected((flags & EV_CONNECTED) != 0)
+                .dishwasherReady((flags & DISHWASHER_READY) != 0)
+                .dishwasherOn((flags & DISHWASHER_ON) != 0)
+                .smartPlugOn((flags & SMART_PLUG_ON) != 0)
+                .indoorTemperature(buffer.getDouble())
+                .outdoorTemperature(buffer.getDouble())
+                .currentPvProduction(buffer.getDouble())
+                .currentHouseConsumption(buffer.getDouble())
+                .acPowerUsage(buffer.getDouble())
+                .evChargePercentage(buffer.getDouble())
+                .evChargingPower(buffer.getDouble())
+                .smartPlugPower(buffer.getDouble())
+                .loadsPower(buffer.getDouble());
+
+        int loadCount = buffer.getShort();
+        List<LoadState> loadStates = new ArrayList<>(loadCount);
+        for (int i = 0; i < loadCount; i++) {
+            DevicePlugin device = loads.apply(getString(buffer));
+            boolean on = buffer.get() != 0;
+            double power = buffer.getDouble();
+            if (device != null) {
+                loadStates.add(new LoadState(device, on, power));
+            }
+        }
+        state.loads(loadStates);
+
+        DeviceDecision decision = DeviceDecision.create()
+                .mode(getString(buffer))
+                .availableSurplus(buffer.getDouble());
+        int actionCount = buffer.getShort();
+        for (int i = 0; i < actionCount; i++) {
+            DeviceType device = DEVICES[buffer.get()];
+            String deviceId = getString(buffer);
+            ActionType action = ACTIONS[buffer.get()];
+            double targetPower = buffer.getDouble();
+            decision.addAction(DeviceAction.builder()
+                    .device(device)
+                    .deviceId(deviceId)
+                    .action(action)
+                    .targetPower(Double.isNaN(targetPower) ? null : targetPower)
+                    .build());
+        }
+        return new RecordedCycle(timestampMillis, state.build(), decision.build());
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,91 @@
+package com.mjurczyga.iot_server.recording;
+
+import com.mjurczyga.iot_server.devices.DevicePlugin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Reads the recording of a home, segment by segment in recording order. The segment being
+ * written is read up to its last complete record.
+ */
+public final class RecordingReader {
+
+    private static final Logger log = LoggerFactory.getLogger(RecordingReader.class);
+
+    private RecordingReader() {
+    }
+
+    /**
+     * @return The segment files of a recording directory in recording order, empty if there is none.
+     */
+    public static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(StateRecorder.SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Passes every recorded cycle to the consumer.
+     * @param loads Resolves the device of a recorded load, loads that resolve to null are skipped.
+     * @return Number of cycles read.
+     */
+    public static long read(Path directory, Function<String, DevicePlugin> loads, Consumer<RecordedCycle> consumer)
+            throws IOException {
+        long cycles = 0;
+        for (Path segment : segments(directory)) {
+            cycles += readSegment(segment, loads, consumer);
+        }
+        return cycles;
+    }
+
+    private static long readSegment(Path file, Function<String, DevicePlugin> loads, Consumer<RecordedCycle> consumer)
+            throws IOException {
+        MappedByteBuffer segment;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        if (segment.remaining() < RecordingFormat.SEGMENT_HEADER
+                || segment.getInt() != RecordingFormat.MAGIC
+                || segment.getInt() != RecordingFormat.VERSION) {
+            throw new IOException("Not a recording segment of version " + RecordingFormat.VERSION + ": " + file);
+        }
+
+        long cycles = 0;
+        while (segment.remaining() >= RecordingFormat.LENGTH_PREFIX) {
+            int length = segment.getInt();
+            VarHandle.acquireFence();
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || length > segment.remaining()) {
+                log.warn("Corrupt record in {} at {}, rest of the segment skipped", file, segment.position());
+                break;
+            }
+            int end = segment.position() + length;
+            consumer.accept(RecordingFormat.decode(segment.slice(segment.position(), length)
+                    .order(ByteOrder.LITTLE_ENDIAN), loads));
+            segment.position(end);
+            cycles++;
+        }
+        return cycles;
+    }
+}
@@ -0,0 +1,120 @@
+package com.mjurczyga.iot_server.recording;
+
+import com.mjurczyga.iot_server.devices.DevicePlugin;
+import com.mjurczyga.iot_server.logic.DecisionBuffer;
+import com.mjurczyga.iot_server.logic.PriorityCalculator;
+import com.mjurczyga.iot_server.model.DeviceDecision;
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceAction;
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Replays a recording through a calculator and compares its decisions with the recorded ones.
+ *
+ * The recorded wall clock time is the calculator's clock, so smoothing and dwell times see the
+ * intervals of the live cycles. Replay runs as fast as the cycles can be decoded and evaluated;
+ * only differing cycles allocate beyond decoding. An instance replays one recording.
+ */
+public class RecordingReplay {
+
+    private static final Logger log = LoggerFactory.getLogger(RecordingReplay.class);
+
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final double POWER_TOLERANCE = 0.5; // Watts
+
+    private final PriorityCalculator calculator;
+    private final Function<String, DevicePlugin> loads;
+    private final int maxDifferences;
+
+    private final DecisionBuffer buffer = new DecisionBuffer();
+    private final List<ReplayDifference> differences = new ArrayList<>();
+    private long cycles;
+    private long differingCycles;
+
+    /**
+     * @param calculator A fresh calculator, its history is built up by the replay.
+     * @param loads Resolves the device of a recorded load.
+     * @param maxDifferences Differing cycles reported in detail, all of them are counted.
+     */
+    public RecordingReplay(PriorityCalculator calculator, Function<String, DevicePlugin> loads, int maxDifferences) {
+        this.calculator = calculator;
+        this.loads = loads;
+        this.maxDifferences = maxDifferences;
+    }
+
+    /**
+     * Replays all segments of a recording directory.
+     */
+    public ReplayReport replay(Path directory) throws IOException {
+        long started = System.nanoTime();
+        RecordingReader.read(directory, loads, this::replay);
+        long wallTimeMillis = (System.nanoTime() - started) / 1_000_000;
+
+        log.info("Replayed {} cycles from {} in {} ms, {} differ", cycles, directory, wallTimeMillis, differingCycles);
+        return new ReplayReport(cycles, differingCycles, wallTimeMillis, List.copyOf(differences));
+    }
+
+    private void replay(RecordedCycle cycle) {
+        cycles++;
+        calculator.evaluate(cycle.state(), buffer, cycle.timestampMillis() * NANOS_PER_MILLI);
+        if (matches(cycle.decision())) {
+            return;
+        }
+
+        differingCycles++;
+        if (differences.size() < maxDifferences) {
+            List<String> replayed = new ArrayList<>(buffer.size());
+            for (int i = 0; i < buffer.size(); i++) {
+                replayed.add(describe(buffer.getDevice(i), buffer.getDeviceId(i), buffer.getAction(i).name(),
+                        buffer.getTargetPower(i)));
+            }
+            differences.add(new ReplayDifference(Instant.ofEpochMilli(cycle.timestampMillis()),
+                    cycle.decision().getMode(), buffer.getMode(),
+                    cycle.decision().getActions().stream().map(RecordingReplay::describe).toList(), replayed));
+        }
+    }
+
+    private boolean matches(DeviceDecision recorded) {
+        List<DeviceAction> actions = recorded.getActions();
+        if (!Objects.equals(recorded.getMode(), buffer.getMode()) || actions.size() != buffer.size()) {
+            return false;
+        }
+        for (int i = 0; i < actions.size(); i++) {
+            DeviceAction action = actions.get(i);
+            if (action.getDevice() != buffer.getDevice(i) || action.getAction() != buffer.getAction(i)) {
+                return false;
+            }
+            if (action.getDevice() == DeviceType.LOAD && !action.getDeviceId().equals(buffer.getDeviceId(i))) {
+                return false;
+            }
+            double replayedPower = buffer.getTargetPower(i);
+            if (action.getTargetPower() == null
+                    ? !Double.isNaN(replayedPower)
+                    : Double.isNaN(replayedPower) || Math.abs(action.getTargetPower() - replayedPower) > POWER_TOLERANCE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String describe(DeviceAction action) {
+        return describe(action.getDevice(), action.getDeviceId(), action.getAction().name(),
+                action.getTargetPower() != null ? action.getTargetPower() : Double.NaN);
+    }
+
+    private static String describe(DeviceType device, String deviceId, String action, double targetPower) {
+        String name = device == DeviceType.LOAD ? deviceId : device.name();
+        return Double.isNaN(targetPower)
+                ? name + " " + action
+                : name + " " + action + " " + Math.round(targetPower) + "W";
+    }
+}
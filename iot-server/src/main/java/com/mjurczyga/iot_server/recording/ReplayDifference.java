@@ -0,0 +1,20 @@
+package com.mjurczyga.iot_server.recording;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A cycle the replayed calculator decided differently, actions as "DEVICE ACTION [power]"
+ */
+@Data
+@AllArgsConstructor
+public class ReplayDifference {
+    private Instant time;
+    private String recordedMode;
+    private String replayedMode;
+    private List<String> recordedActions;
+    private List<String> replayedActions;
+}
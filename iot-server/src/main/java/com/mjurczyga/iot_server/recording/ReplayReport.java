@@ -0,0 +1,18 @@
+package com.mjurczyga.iot_server.recording;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Outcome of a replay
+ */
+@Data
+@AllArgsConstructor
+public class ReplayReport {
+    private long cycles;
+    private long differingCycles;
+    private long wallTimeMillis;
+    private List<ReplayDifference> differences; // The first differing cycles
+}
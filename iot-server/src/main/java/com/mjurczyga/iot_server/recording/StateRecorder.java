@@ -0,0 +1,130 @@
+package com.mjurczyga.iot_server.recording;
+
+import com.mjurczyga.iot_server.model.DeviceDecision;
+import com.mjurczyga.iot_server.model.SystemState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only recording of the control cycles of one home.
+ *
+ * Records go into memory-mapped segment files of a fixed size, so recording a cycle is a copy
+ * into mapped memory without a system call; the operating system writes the pages back. A record
+ * is encoded into a reusable buffer first and its length is written last, so a reader never sees
+ * a partly written record. When a segment is full the next one is started. Segments are named
+ * by their start time and sort in recording order.
+ *
+ * Recording never fails a control cycle: errors are logged and recording stops. Once closed,
+ * the recorder ignores further cycles.
+ */
+public class StateRecorder implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(StateRecorder.class);
+
+    static final String SEGMENT_SUFFIX = ".rec";
+
+    private final Path directory;
+    private final int segmentSize;
+
+    private ByteBuffer scratch = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+    private MappedByteBuffer segment;
+    private int sequence;
+    private boolean failed;
+    private boolean closed;
+
+    /**
+     * @param directory Directory of the segments, created if missing.
+     * @param segmentSize Size of a segment file in bytes.
+     */
+    public StateRecorder(Path directory, int segmentSize) {
+        if (segmentSize <= RecordingFormat.SEGMENT_HEADER + RecordingFormat.LENGTH_PREFIX) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Appends a cycle.
+     * @param timestampMillis Wall clock time of the cycle.
+     */
+    public synchronized void record(long timestampMillis, SystemState state, DeviceDecision decision) {
+        if (failed || closed) {
+            return;
+        }
+        try {
+            int length = encode(timestampMillis, state, decision);
+            int required = RecordingFormat.LENGTH_PREFIX + length;
+            if (required > segmentSize - RecordingFormat.SEGMENT_HEADER) {
+                log.warn("Record of {} bytes does not fit a segment of {}, not recorded", length, segmentSize);
+                return;
+            }
+            // Room for the end marker is always kept, a full segment ends where the next record would start
+            if (segment == null || segment.remaining() < required + RecordingFormat.LENGTH_PREFIX) {
+                startSegment(timestampMillis);
+            }
+
+            int position = segment.position();
+            segment.position(position + RecordingFormat.LENGTH_PREFIX);
+            segment.put(scratch.flip());
+            // Publish the length after the body, readers stop at a length of 0
+            VarHandle.releaseFence();
+            segment.putInt(position, length);
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            log.error("Recording to {} failed, recording stopped", directory, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        closeSegment();
+    }
+
+    private void closeSegment() {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+        }
+    }
+
+    private int encode(long timestampMillis, SystemState state, DeviceDecision decision) {
+        while (true) {
+            scratch.clear();
+            try {
+                RecordingFormat.encode(scratch, timestampMillis, state, decision);
+                return scratch.position();
+            } catch (BufferOverflowException e) {
+                scratch = ByteBuffer.allocate(scratch.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+    }
+
+    private void startSegment(long timestampMillis) throws IOException {
+        closeSegment();
+        Files.createDirectories(directory);
+        Path file = directory.resolve(String.format("%019d-%04d%s", timestampMillis, sequence++ % 10_000, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segment.putInt(RecordingFormat.MAGIC);
+        segment.putInt(RecordingFormat.VERSION);
+        log.info("Recording to {}", file);
+    }
+}
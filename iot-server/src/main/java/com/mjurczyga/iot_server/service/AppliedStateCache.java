@@ -0,0 +1,94 @@
+package com.mjurczyga.iot_server.service;
+
+import com.mjurczyga.iot_server.config.HomeAssistantConfig;
+import com.mjurczyga.iot_server.model.DeviceDecision.ActionType;
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Last command successfully applied to each device of a single home.
+ *
+ * Used to suppress commands that would not change anything: the same TURN_ON/TURN_OFF as last
+ * time, or a SET_POWER within the power tolerance of the applied power. Entries expire after the
+ * reconcile interval and are dropped when the observed device state disagrees with them, so a
+ * device switched manually gets the command again.
+ */
+public class AppliedStateCache {
+
+    private static final Logger log = LoggerFactory.getLogger(AppliedStateCache.class);
+
+    private final HomeAssistantConfig.Commands config;
+    private final Map<String, Applied> applied = new HashMap<>();
+
+    public AppliedStateCache(HomeAssistantConfig.Commands config) {
+        this.config = config;
+    }
+
+    /**
+     * @return true if the action would leave the device in the state it is already in.
+     */
+    public synchronized boolean isNoOp(DeviceAction action) {
+        if (!config.isDeduplicate()) {
+            return false;
+        }
+        Applied last = applied.get(action.getDeviceId());
+        if (last == null || System.nanoTime() - last.appliedAt > config.getReconcileInterval().toNanos()) {
+            return false;
+        }
+        if (action.getAction() == ActionType.SET_POWER) {
+            return last.action == ActionType.SET_POWER
+                    && action.getTargetPower() != null
+                    && last.power != null
+                    && Math.abs(action.getTargetPower() - last.power) < config.getPowerTolerance();
+        }
+        return last.action == action.getAction();
+    }
+
+    /**
+     * Remembers an action that was applied successfully.
+     */
+    public synchronized void record(DeviceAction action) {
+        applied.put(action.getDeviceId(), new Applied(action.getAction(), action.getTargetPower(), System.nanoTime()));
+    }
+
+    /**
+     * Forgets the applied state of a device, the next command is always sent.
+     */
+    public synchronized void invalidate(String device) {
+        applied.remove(device);
+    }
+
+    /**
+     * Compares the applied state of an on/off device with its observed state.
+     * @param device The device id.
+     * @param observedOn Whether Home Assistant reports the device as on.
+     */
+    public synchronized void reconcile(String device, boolean observedOn) {
+        Applied last = applied.get(device);
+        if (last == null || last.action == ActionType.SET_POWER) {
+            return;
+        }
+        boolean expectedOn = last.action == ActionType.TURN_ON;
+        if (expectedOn != observedOn) {
+            log.info("{} is {} although {} was applied, the next command will be sent",
+                    device, observedOn ? "on" : "off", last.action);
+            applied.remove(device);
+        }
+    }
+
+    private static class Applied {
+        private final ActionType action;
+        private final Double power;
+        private final long appliedAt;
+
+        private Applied(ActionType action, Double power, long appliedAt) {
+            this.action = action;
+            this.power = power;
+            this.appliedAt = appliedAt;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.mjurczyga.iot_server.service;
+
+import com.mjurczyga.iot_server.client.home_assistant.HomeAssistantSnapshot;
+import com.mjurczyga.iot_server.client.response.EntityValue;
+import com.mjurczyga.iot_server.client.response.HomeAssistantStateResponse;
+import com.mjurczyga.iot_server.config.ControlLoopConfig;
+import com.mjurczyga.iot_server.config.EntityMapping;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides when the control loop of a single home has to run.
+ *
+ * State changes are compared with the inputs of the last cycle; only changes above the configured
+ * thresholds mark the home as pending. A pending home runs once no significant change arrived for
+ * the debounce time, so a burst of events causes one cycle; every home runs at least once per
+ * max-interval, which also bounds the wait under a continuous stream of changes.
+ */
+public class ControlTrigger {
+
+    public enum Reason {
+        NONE,
+        STARTUP,
+        STATE_CHANGE,
+        HEARTBEAT
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(ControlTrigger.class);
+
+    private final String homeId;
+    private final EntityMapping entities;
+    private final ControlLoopConfig config;
+    private final LongSupplier nanoClock;
+    private final long startAt;
+
+    private volatile HomeAssistantSnapshot baseline;
+    private volatile long lastRunAt = 0;
+    private volatile long pendingSince = 0;
+    private volatile long lastChangeAt = 0;
+    private volatile boolean started = false;
+
+    /**
+     * @param phaseOffset Delay of the first cycle. Homes get different offsets, so their heartbeats
+     *                    do not all fire at the same moment.
+     */
+    public ControlTrigger(String homeId, EntityMapping entities, ControlLoopConfig config, Duration phaseOffset) {
+        this(homeId, entities, config, phaseOffset, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock Monotonic time in nanoseconds, System::nanoTime outside of tests.
+     */
+    public ControlTrigger(String homeId, EntityMapping entities, ControlLoopConfig config, Duration phaseOffset,
+                          LongSupplier nanoClock) {
+        this.homeId = homeId;
+        this.entities = entities;
+        this.config = config;
+        this.nanoClock = nanoClock;
+        this.startAt = nanoClock.getAsLong() + phaseOffset.toNanos();
+        this.baseline = HomeAssistantSnapshot.of(Collections.emptyList(), entities);
+    }
+
+    /**
+     * Handles a state change of a control loop entity. Every significant change restarts the debounce.
+     * @param entityId The entity id.
+     * @param newState The new state, or null if the entity was removed.
+     */
+    public void onStateChange(String entityId, HomeAssistantStateResponse newState) {
+        if (!isSignificant(entityId, newState)) {
+            return;
+        }
+        log.debug("Significant change of {} in home {}", entityId, homeId);
+        long now = nanoClock.getAsLong();
+        lastChangeAt = now;
+        if (pendingSince == 0) {
+            pendingSince = now;
+        }
+    }
+
+    /**
+     * Checks if a cycle should run now.
+     * @return The reason to run, NONE if the cycle is not due.
+     */
+    public Reason evaluate() {
+        long now = nanoClock.getAsLong();
+        if (!started) {
+            return now - startAt >= 0 ? Reason.STARTUP : Reason.NONE;
+        }
+        long sinceLastRun = now - lastRunAt;
+        if (sinceLastRun >= config.getMaxInterval().toNanos()) {
+            return Reason.HEARTBEAT;
+        }
+        if (config.isEventDriven() && pendingSince != 0
+                && now - lastChangeAt >= config.getDebounce().toNanos()
+                && sinceLastRun >= config.getMinInterval().toNanos()) {
+            return Reason.STATE_CHANGE;
+        }
+        return Reason.NONE;
+    }
+
+    /**
+     * Marks the start of a cycle. Changes arriving from now on are compared with the given inputs.
+     * @param inputs The entity states the cycle is based on.
+     */
+    public void beginCycle(HomeAssistantSnapshot inputs) {
+        baseline = inputs;
+        pendingSince = 0;
+        lastRunAt = nanoClock.getAsLong();
+        started = true;
+    }
+
+    public String getHomeId() {
+        return homeId;
+    }
+
+    public boolean isPending() {
+        return pendingSince != 0;
+    }
+
+    private boolean isSignificant(String entityId, HomeAssistantStateResponse newState) {
+        EntityValue before = baseline.getValue(entityId);
+        EntityValue after = EntityValue.of(entityId, newState);
+        if (before.getStatus() != after.getStatus()) {
+            return true;
+        }
+        double threshold = thresholdFor(entityId);
+        if (threshold > 0 && before.isNumeric() && after.isNumeric()) {
+            return Math.abs(after.asDouble(0.0) - before.asDouble(0.0)) >= threshold;
+        }
+        return !Objects.equals(before.getState(), after.getState());
+    }
+
+    private double thresholdFor(String entityId) {
+        if (entityId.equals(entities.getPvCurrentProduction())) {
+            return config.getPvDelta();
+        }
+        if (entityId.equals(entities.getSmartPlugPower())) {
+            return config.getLoadDelta();
+        }
+        if (entityId.equals(entities.getIndoorTemperature()) || entityId.equals(entities.getOutdoorTemperature())) {
+            return config.getTemperatureDelta();
+        }
+        return 0.0;
+    }
+}
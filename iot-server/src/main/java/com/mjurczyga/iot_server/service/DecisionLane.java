@@ -0,0 +1,134 @@
+package com.mjurczyga.iot_server.service;
+
+import com.mjurczyga.iot_server.metrics.IotMetrics;
+import com.mjurczyga.iot_server.model.ActionResult;
+import com.mjurczyga.iot_server.model.DeviceDecision;
+import com.mjurczyga.iot_server.model.SystemState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Execution stage of the control loop pipeline of a single home.
+ *
+ * Decisions are handed over through a bounded queue and executed one at a time, in submission
+ * order, so commands to a device can never overtake each other. Meanwhile the next cycle can
+ * already gather state and calculate. When the queue is full the oldest waiting decision is
+ * dropped: it was calculated from older state than the decision replacing it, and its future is
+ * cancelled.
+ */
+public class DecisionLane {
+
+    private static final Logger log = LoggerFactory.getLogger(DecisionLane.class);
+
+    private final String homeId;
+    private final DeviceExecutorService executorService;
+    private final SystemStateService systemStateService;
+    private final BooleanSupplier nextCycleDue;
+    private final boolean prefetch;
+
+    private final BlockingQueue<Entry> queue;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicLong superseded = new AtomicLong();
+
+    /**
+     * @param capacity Number of decisions that may wait for execution.
+     * @param nextCycleDue Tells if another cycle is about to run, so its state is worth prefetching.
+     * @param prefetch Gather the next state while a decision executes. The prefetched state is only
+     *                 reused within the coalesce window of the SystemStateService, which bounds its age.
+     */
+    public DecisionLane(String homeId, DeviceExecutorService executorService, SystemStateService systemStateService,
+                        int capacity, BooleanSupplier nextCycleDue, boolean prefetch) {
+        this.homeId = homeId;
+        this.executorService = executorService;
+        this.systemStateService = systemStateService;
+        this.nextCycleDue = nextCycleDue;
+        this.prefetch = prefetch;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    /**
+     * Queues a decision for execution without waiting for it.
+     * @param state The state the decision was calculated from, used to reconcile applied device state.
+     * @param decision The decision.
+     * @return Completes with the action results once the decision executed, is cancelled when a newer
+     *         decision superseded it before execution.
+     */
+    public CompletableFuture<List<ActionResult>> submit(SystemState state, DeviceDecision decision) {
+        Entry entry = new Entry(state, decision);
+        while (!queue.offer(entry)) {
+            Entry dropped = queue.poll();
+            if (dropped != null) {
+                superseded.incrementAndGet();
+                dropped.result.cancel(false);
+                log.debug("Dropped a waiting decision of home {}, a newer one replaces it", homeId);
+            }
+        }
+        scheduleDrain();
+        return entry.result;
+    }
+
+    /**
+     * @return Number of decisions dropped before execution because a newer one arrived.
+     */
+    public long getSuperseded() {
+        return superseded.get();
+    }
+
+    public int getQueued() {
+        return queue.size();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("decision-lane-" + homeId).start(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            Entry entry;
+            while ((entry = queue.poll()) != null) {
+                if (prefetch && nextCycleDue.getAsBoolean()) {
+                    systemStateService.getCurrentStateAsync().subscribe(
+                            state -> { },
+                            e -> log.debug("Prefetch of home {} failed: {}", homeId, e.getMessage()));
+                }
+                long start = System.nanoTime();
+                try {
+                    executorService.reconcile(entry.state);
+                    entry.result.complete(executorService.executeDecision(entry.decision));
+                } catch (Exception e) {
+                    log.error("Error executing decision for home {}", homeId, e);
+                    entry.result.completeExceptionally(e);
+                } finally {
+                    IotMetrics.recordPhase(IotMetrics.PHASE_EXECUTE, System.nanoTime() - start);
+                }
+            }
+        } finally {
+            draining.set(false);
+        }
+        // A decision submitted after the last poll but before draining was reset
+        if (!queue.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    private static class Entry {
+        private final SystemState state;
+        private final DeviceDecision decision;
+        private final CompletableFuture<List<ActionResult>> result = new CompletableFuture<>();
+
+        private Entry(SystemState state, DeviceDecision decision) {
+            this.state = state;
+            this.decision = decision;
+        }
+    }
+}
@@ -1,157 +1,171 @@
 package com.mjurczyga.iot_server.service;
 
 import com.mjurczyga.iot_server.client.home_assistant.HomeAssistantClient;
+import com.mjurczyga.iot_server.config.HomeAssistantConfig;
+import com.mjurczyga.iot_server.devices.DevicePlugin;
+import com.mjurczyga.iot_server.devices.DeviceRegistry;
+import com.mjurczyga.iot_server.devices.ServiceCall;
+import com.mjurczyga.iot_server.metrics.IotMetrics;
+import com.mjurczyga.iot_server.model.ActionResult;
 import com.mjurczyga.iot_server.model.DeviceDecision;
 import com.mjurczyga.iot_server.model.DeviceDecision.DeviceAction;
-import lombok.RequiredArgsConstructor;
+import com.mjurczyga.iot_server.model.LoadState;
+import com.mjurczyga.iot_server.model.SystemState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * Service to execute device control decisions
+ * Service to execute device control decisions.
+ *
+ * Actions are translated to Home Assistant service calls by the executor of the device in the
+ * home's device registry, and grouped by domain, service and service data, so e.g. all switches
+ * turned on by a decision become a single request.
+ * Independent groups are sent concurrently. Actions matching the last applied device state are
+ * not sent at all.
  */
 @Service
-@RequiredArgsConstructor
 public class DeviceExecutorService {
-    
+
     private static final Logger log = LoggerFactory.getLogger(DeviceExecutorService.class);
-    
+
     private final HomeAssistantClient homeAssistantClient;
-    
-    /**
-     * Execute all device actions from a decision
-     */
-    public void executeDecision(DeviceDecision decision) {
-        log.info("Executing decision in {} mode", decision.getMode());
-        log.info("Explanation: {}", decision.getExplanation());
-        
-        for (DeviceAction action : decision.getActions()) {
-            executeAction(action);
-        }
+    private final HomeAssistantConfig homeAssistantConfig;
+    private final DeviceRegistry deviceRegistry;
+    private final AppliedStateCache appliedState;
+
+    public DeviceExecutorService(HomeAssistantClient homeAssistantClient, HomeAssistantConfig homeAssistantConfig,
+                                 DeviceRegistry deviceRegistry) {
+        this.homeAssistantClient = homeAssistantClient;
+        this.homeAssistantConfig = homeAssistantConfig;
+        this.deviceRegistry = deviceRegistry;
+        this.appliedState = new AppliedStateCache(homeAssistantConfig.getCommands());
     }
-    
+
     /**
-     * Execute a single device action
+     * Drops the applied state of devices whose observed state differs from it,
+     * e.g. because they were switched manually.
      */
-    private void executeAction(DeviceAction action) {
-        log.info("Action: {} {} - {}", action.getAction(), action.getDevice(), action.getReason());
-        
-        try {
-            switch (action.getDevice()) {
-                case EV_CHARGER:
-                    executeEvChargerAction(action);
-                    break;
-                    
-                case AC_CLIMATE:
-                    executeClimateAction(action);
-                    break;
-                    
-                case DISHWASHER:
-                    executeDishwasherAction(action);
-                    break;
-                    
-                case SMART_PLUG:
-                    executeSmartPlugAction(action);
-                    break;
-                    
-                default:
-                    log.warn("Unknown device type: {}", action.getDevice());
+    public void reconcile(SystemState state) {
+        appliedState.reconcile(DeviceDecision.DeviceType.SMART_PLUG.name(), state.isSmartPlugOn());
+        if (isConfigured(DeviceDecision.DeviceType.AC_CLIMATE.name())) {
+            appliedState.reconcile(DeviceDecision.DeviceType.AC_CLIMATE.name(), state.isAcOn());
+        }
+        if (isConfigured(DeviceDecision.DeviceType.DISHWASHER.name())) {
+            appliedState.reconcile(DeviceDecision.DeviceType.DISHWASHER.name(), state.isDishwasherOn());
+        }
+        for (LoadState load : state.getLoads()) {
+            if (!load.getDevice().getPowerModel().isContinuous()) {
+                appliedState.reconcile(load.getId(), load.isOn());
             }
-        } catch (Exception e) {
-            log.error("Error executing action for {}: {}", action.getDevice(), e.getMessage(), e);
         }
     }
-    
-    /**
-     * Execute EV charger action
-     */
-    private void executeEvChargerAction(DeviceAction action) {
-        switch (action.getAction()) {
-            case SET_POWER:
-                if (action.getTargetPower() != null) {
-                    log.info("Setting EV charger power to {}W", action.getTargetPower());
-                    // TODO: Implement actual EV charger control via Home Assistant
-                    // homeAssistantClient.setEvChargingPower(action.getTargetPower());
-                }
-                break;
-                
-            case TURN_OFF:
-                log.info("Turning off EV charger");
-                // TODO: Implement actual EV charger control
-                // homeAssistantClient.setEvChargingPower(0.0);
-                break;
-                
-            default:
-                log.warn("Unsupported action {} for EV charger", action.getAction());
-        }
+
+    private boolean isConfigured(String deviceId) {
+        DevicePlugin device = deviceRegistry.find(deviceId);
+        return device != null && device.isConfigured();
     }
-    
+
     /**
-     * Execute climate control action
+     * Execute all device actions from a decision
+     * @return The result of every action, in the order of the decision.
      */
-    private void executeClimateAction(DeviceAction action) {
-        switch (action.getAction()) {
-            case TURN_ON:
-                log.info("Turning on climate control");
-                // TODO: Implement actual climate control via Home Assistant
-                // This would typically be done via climate entity in HA
-                // homeAssistantClient.turnOnClimate();
-                break;
-                
-            case TURN_OFF:
-                log.info("Turning off climate control");
-                // TODO: Implement actual climate control
-                // homeAssistantClient.turnOffClimate();
-                break;
-                
-            default:
-                log.warn("Unsupported action {} for climate control", action.getAction());
+    public List<ActionResult> executeDecision(DeviceDecision decision) {
+        log.debug("Executing decision in {} mode: {}", decision.getMode(), decision.getExplanation());
+
+        List<DeviceAction> actions = decision.getActions();
+        AtomicReferenceArray<ActionResult> results = new AtomicReferenceArray<>(actions.size());
+        String[] entityIds = new String[actions.size()];
+        Map<ServiceCall, List<Integer>> groups = new LinkedHashMap<>();
+
+        for (int i = 0; i < actions.size(); i++) {
+            DeviceAction action = actions.get(i);
+            log.debug("Action: {} {} - {}", action.getAction(), action.getDeviceId(), action.getReason());
+
+            if (action.getAction() == DeviceDecision.ActionType.NO_CHANGE) {
+                results.set(i, ActionResult.skipped(action, "No change"));
+                continue;
+            }
+            DevicePlugin device = deviceRegistry.find(action.getDeviceId());
+            if (device == null || !device.isConfigured()) {
+                log.debug("No entity configured for {}, skipping {}", action.getDeviceId(), action.getAction());
+                results.set(i, ActionResult.skipped(action, "No entity configured for " + action.getDeviceId()));
+                continue;
+            }
+            String entityId = device.getEntityId();
+            if (appliedState.isNoOp(action)) {
+                log.debug("{} {} already applied, skipping", action.getDeviceId(), action.getAction());
+                results.set(i, ActionResult.skipped(action, "Already applied"));
+                continue;
+            }
+            ServiceCall call = device.getExecutor().serviceCall(action, entityId);
+            if (call == null) {
+                log.warn("Unsupported action {} for {}", action.getAction(), action.getDeviceId());
+                results.set(i, ActionResult.skipped(action, "Unsupported action " + action.getAction()));
+                continue;
+            }
+            entityIds[i] = entityId;
+            groups.computeIfAbsent(call, key -> new ArrayList<>()).add(i);
         }
-    }
-    
-    /**
-     * Execute dishwasher action
-     */
-    private void executeDishwasherAction(DeviceAction action) {
-        switch (action.getAction()) {
-            case TURN_ON:
-                log.info("Turning on dishwasher");
-                // TODO: Implement dishwasher control
-                // This might be via a smart plug or direct integration
-                // homeAssistantClient.turnOnDishwasher();
-                break;
-                
-            case TURN_OFF:
-                log.info("Turning off dishwasher");
-                // TODO: Implement dishwasher control
-                // homeAssistantClient.turnOffDishwasher();
-                break;
-                
-            default:
-                log.warn("Unsupported action {} for dishwasher", action.getAction());
+
+        try {
+            Flux.fromIterable(groups.entrySet())
+                    .flatMap(group -> execute(group.getKey(), group.getValue(), actions, entityIds, results))
+                    .then()
+                    .block(homeAssistantConfig.getServiceCallTimeout());
+        } catch (Exception e) {
+            log.error("Error executing decision: {}", e.getMessage(), e);
         }
-    }
-    
-    /**
-     * Execute smart plug action
-     */
-    private void executeSmartPlugAction(DeviceAction action) {
-        switch (action.getAction()) {
-            case TURN_ON:
-                log.info("Turning on smart plug");
-                String onResult = homeAssistantClient.turnOnSmartPlug();
-                log.debug("Smart plug ON result: {}", onResult);
-                break;
-                
-            case TURN_OFF:
-                log.info("Turning off smart plug");
-                String offResult = homeAssistantClient.turnOffSmartPlug();
-                log.debug("Smart plug OFF result: {}", offResult);
-                break;
-                
-            default:
-                log.warn("Unsupported action {} for smart plug", action.getAction());
+
+        List<ActionResult> executed = new ArrayList<>(actions.size());
+        for (int i = 0; i < actions.size(); i++) {
+            results.compareAndSet(i, null, ActionResult.failed(actions.get(i), "Timed out"));
+            ActionResult result = results.get(i);
+            IotMetrics.countAction(result.getAction().getDeviceId(), result.getAction().getAction().name(),
+                    result.getStatus().name());
+            if (result.getStatus() == ActionResult.Status.SUCCESS) {
+                log.info("{} {}: {}", result.getAction().getAction(), result.getAction().getDeviceId(),
+                        result.getAction().getReason());
+            }
+            executed.add(result);
         }
+        log.debug("Executed {} action(s) with {} request(s)", actions.size(), groups.size());
+        return executed;
+    }
+
+    private Mono<Void> execute(ServiceCall call, List<Integer> indexes, List<DeviceAction> actions,
+                               String[] entityIds, AtomicReferenceArray<ActionResult> results) {
+        List<String> targets = indexes.stream().map(i -> entityIds[i]).distinct().toList();
+        long start = System.nanoTime();
+        return homeAssistantClient.callServiceAsync(call.getDomain(), call.getService(), targets, call.getData())
+                .doOnEach(signal -> {
+                    if (signal.isOnNext() || signal.isOnError()) {
+                        IotMetrics.recordServiceCall(call.getDomain(), call.getService(),
+                                System.nanoTime() - start, signal.isOnNext());
+                    }
+                })
+                .doOnNext(response -> indexes.forEach(i -> {
+                    appliedState.record(actions.get(i));
+                    results.set(i, ActionResult.success(actions.get(i),
+                            "Service " + call.getDomain() + "." + call.getService() + " called for " + entityIds[i]));
+                }))
+                .onErrorResume(e -> {
+                    log.error("Error calling service {}.{} for {}: {}",
+                            call.getDomain(), call.getService(), targets, e.getMessage(), e);
+                    indexes.forEach(i -> {
+                        appliedState.invalidate(actions.get(i).getDeviceId());
+                        results.set(i, ActionResult.failed(actions.get(i), e.getMessage()));
+                    });
+                    return Mono.empty();
+                })
+                .then();
     }
-}
\ No newline at end of file
+}
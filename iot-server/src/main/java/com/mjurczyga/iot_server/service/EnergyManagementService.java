@@ -1,17 +1,25 @@
 package com.mjurczyga.iot_server.service;
 
+import com.mjurczyga.iot_server.home.HomeContext;
 import com.mjurczyga.iot_server.logic.PriorityCalculator;
+import com.mjurczyga.iot_server.metrics.IotMetrics;
+import com.mjurczyga.iot_server.model.ControlResult;
 import com.mjurczyga.iot_server.model.DeviceDecision;
 import com.mjurczyga.iot_server.model.SystemState;
+import com.mjurczyga.iot_server.recording.StateRecorder;
+import com.mjurczyga.iot_server.telemetry.TelemetryWriter;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Main orchestration service for IoT energy management
- * Periodically checks system state and makes control decisions
+ * Runs control cycles (gather state, decide, execute), scheduled per home by HomeScheduler
  */
 @Service
 @RequiredArgsConstructor
@@ -19,77 +27,107 @@ public class EnergyManagementService {
     
     private static final Logger log = LoggerFactory.getLogger(EnergyManagementService.class);
     
-    private final SystemStateService systemStateService;
-    private final PriorityCalculator priorityCalculator;
-    private final DeviceExecutorService executorService;
+    // How long a manual cycle waits for the decisions queued before it and its own execution
+    private static final long MANUAL_CONTROL_TIMEOUT_SECONDS = 30;
+    
+    private final TelemetryWriter telemetryWriter;
     
     /**
-     * Main control loop - runs every 30 seconds
+     * Control loop of a single home.
+     * Returns once the decision is queued for execution; decisions of a home execute in order.
      */
-    @Scheduled(fixedDelay = 30000, initialDelay = 5000)
-    public void controlLoop() {
+    public void runControlCycle(HomeContext home) {
         try {
-            log.debug("Starting energy management control loop");
+            log.debug("Starting energy management control loop for home {}", home.getId());
             
             // 1. Gather current system state
-            SystemState state = systemStateService.getCurrentState();
-            logSystemState(state);
+            long start = System.nanoTime();
+            SystemState state = home.getSystemStateService().getCurrentState();
+            long gathered = System.nanoTime();
+            IotMetrics.recordPhase(IotMetrics.PHASE_GATHER, gathered - start);
+            logSystemState(home, state);
             
             // 2. Calculate priorities and decisions
-            DeviceDecision decision = priorityCalculator.calculatePriorities(state);
+            DeviceDecision decision = home.getPriorityCalculator().calculatePriorities(state);
+            IotMetrics.recordPhase(IotMetrics.PHASE_CALCULATE, System.nanoTime() - gathered);
+            record(home, state, decision);
             
-            // 3. Execute decisions
-            executorService.executeDecision(decision);
+            // 3. Hand the decision to the execution stage, the next cycle can gather state meanwhile
+            home.getDecisionLane().submit(state, decision);
             
-            log.debug("Control loop completed successfully");
+            log.debug("Control loop completed successfully for home {}", home.getId());
             
         } catch (Exception e) {
-            log.error("Error in energy management control loop", e);
+            log.error("Error in energy management control loop for home {}", home.getId(), e);
         }
     }
     
     /**
-     * Manual trigger for control loop (useful for testing)
+     * Manual trigger for control loop (useful for testing).
+     * The decision goes through the decision lane of the home like a scheduled one, so it executes
+     * in order with them; returns once it has executed.
+     * @throws CancellationException if a newer decision superseded it before it executed.
+     * @throws CompletionException if execution failed or did not finish in time.
      */
-    public DeviceDecision manualControl() {
-        log.info("Manual control triggered");
+    public ControlResult manualControl(HomeContext home) {
+        log.info("Manual control triggered for home {}", home.getId());
         
-        SystemState state = systemStateService.getCurrentState();
-        DeviceDecision decision = priorityCalculator.calculatePriorities(state);
-        executorService.executeDecision(decision);
+        SystemState state = home.getSystemStateService().getCurrentState();
+        DeviceDecision decision = home.getPriorityCalculator().calculatePriorities(state);
+        record(home, state, decision);
         
-        return decision;
+        return new ControlResult(decision, home.getDecisionLane().submit(state, decision)
+                .orTimeout(MANUAL_CONTROL_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .join());
     }
     
     /**
      * Get current system state without executing actions
      */
-    public SystemState getSystemState() {
-        return systemStateService.getCurrentState();
+    public SystemState getSystemState(HomeContext home) {
+        return home.getSystemStateService().getCurrentState();
+    }
+    
+    /**
+     * Calculate priorities without executing actions (dry run).
+     * Uses its own calculator on a copy of the configuration, so the smoothing, dwell and EV ramp
+     * history of the live calculator stay untouched; the decision therefore ignores that history.
+     */
+    public DeviceDecision calculateDecision(HomeContext home) {
+        SystemState state = home.getSystemStateService().getCurrentState();
+        return new PriorityCalculator(home.getDeviceConfig().copy()).calculatePriorities(state);
     }
     
     /**
-     * Calculate priorities without executing actions (dry run)
+     * Append the cycle to the home's recording, if it records, and queue its state for the telemetry store
      */
-    public DeviceDecision calculateDecision() {
-        SystemState state = systemStateService.getCurrentState();
-        return priorityCalculator.calculatePriorities(state);
+    private void record(HomeContext home, SystemState state, DeviceDecision decision) {
+        long now = System.currentTimeMillis();
+        StateRecorder recorder = home.getStateRecorder();
+        if (recorder != null) {
+            recorder.record(now, state, decision);
+        }
+        telemetryWriter.offerState(home.getId(), now, state);
     }
     
     /**
      * Log system state for debugging
      */
-    private void logSystemState(SystemState state) {
-        log.info("=== System State ===");
-        log.info("Mode: {}", state.isAnyoneHome() ? "COMFORT (someone home)" : "MAX_USAGE (empty)");
-        log.info("PV Production: {}W", state.getCurrentPvProduction());
-        log.info("House Consumption: {}W", state.getCurrentHouseConsumption());
-        log.info("Available Surplus: {}W", state.getAvailableSurplus());
-        log.info("Indoor Temp: {}°C, Outdoor: {}°C", state.getIndoorTemperature(), state.getOutdoorTemperature());
-        log.info("AC: {}, EV: {}W, SmartPlug: {}W", 
+    private void logSystemState(HomeContext home, SystemState state) {
+        if (!log.isDebugEnabled()) {
+            return;
+        }
+        log.debug("System state of home {}: mode={}, pv={}W, house={}W, surplus={}W, indoor={}°C, outdoor={}°C, "
+                + "ac={}, ev={}W, smartPlug={}W",
+            home.getId(),
+            state.isAnyoneHome() ? "COMFORT" : "MAX_USAGE",
+            state.getCurrentPvProduction(),
+            state.getCurrentHouseConsumption(),
+            state.getAvailableSurplus(),
+            state.getIndoorTemperature(),
+            state.getOutdoorTemperature(),
             state.isAcOn() ? "ON" : "OFF",
             state.getEvChargingPower(),
             state.getSmartPlugPower());
-        log.info("===================");
     }
-}
\ No newline at end of file
+}
@@ -1,11 +1,24 @@
 package com.mjurczyga.iot_server.service;
 
+import com.mjurczyga.iot_server.client.home_assistant.EntityStateTable;
 import com.mjurczyga.iot_server.client.home_assistant.HomeAssistantClient;
+import com.mjurczyga.iot_server.client.home_assistant.HomeAssistantSnapshot;
+import com.mjurczyga.iot_server.client.response.EntityValue;
+import com.mjurczyga.iot_server.config.HomeAssistantConfig;
+import com.mjurczyga.iot_server.devices.DevicePlugin;
+import com.mjurczyga.iot_server.devices.DeviceRegistry;
+import com.mjurczyga.iot_server.metrics.IotMetrics;
+import com.mjurczyga.iot_server.model.LoadState;
 import com.mjurczyga.iot_server.model.SystemState;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Service to gather current system state from Home Assistant
@@ -13,66 +26,169 @@ import org.springframework.stereotype.Service;
 @Service
 @RequiredArgsConstructor
 public class SystemStateService {
-    
+
     private static final Logger log = LoggerFactory.getLogger(SystemStateService.class);
-    
+
     private final HomeAssistantClient homeAssistantClient;
-    
+    private final HomeAssistantConfig homeAssistantConfig;
+    private final EntityStateTable entityStateTable;
+    private final DeviceRegistry deviceRegistry;
+
+    // Single-flight gather: concurrent callers (control loop, dashboard, manual control) join the
+    // gather in progress, and callers within the coalesce window reuse its result
+    private final Mono<SystemState> sharedGather = Mono.defer(this::gatherState)
+        .cache(state -> homeAssistantConfig.getCoalesceWindow(), error -> Duration.ZERO, () -> Duration.ZERO);
+
     /**
      * Gather current system state from Home Assistant
      */
     public SystemState getCurrentState() {
-        try {
-            return SystemState.builder()
-                // Presence
-                .anyoneHome(isAnyoneHome())
-                
-                // Temperatures
-                .indoorTemperature(parseDouble(homeAssistantClient.getIndoorTemperature(), 22.0))
-                .outdoorTemperature(parseDouble(homeAssistantClient.getOutdoorTemperature(), 20.0))
-                
-                // Energy
-                .currentPvProduction(parseDouble(homeAssistantClient.getTemporaryPvProduction(), 0.0))
-                .currentHouseConsumption(estimateBaseConsumption())
-                
-                // Climate
-                .acOn(false) // TODO: Add method to check AC state
-                .acPowerUsage(0.0) // TODO: Get actual AC power usage
-                
-                // EV Charger
-                .evConnected(true) // TODO: Add method to check EV connection
-                .evChargePercentage(50.0) // TODO: Get actual charge level
-                .evChargingPower(0.0) // TODO: Get current charging power
-                
-                // Dishwasher
-                .dishwasherReady(true) // Simplified for MVP
-                .dishwasherOn(false) // TODO: Add method to check dishwasher state
-                
-                // Smart Plug
-                .smartPlugOn(false) // TODO: Check actual state
-                .smartPlugPower(parseDouble(homeAssistantClient.getSmartPlugCurrentPowerUsed(), 0.0))
-                
-                .build();
-                
-        } catch (Exception e) {
-            log.error("Error gathering system state", e);
-            return getDefaultState();
+        return getCurrentStateAsync()
+            .onErrorResume(e -> {
+                log.error("Error gathering system state", e);
+                IotMetrics.countFallback("default_state");
+                return Mono.just(getDefaultState());
+            })
+            .block();
+    }
+
+    /**
+     * Gather current system state without blocking.
+     * Concurrent callers share one gather, so Home Assistant load does not grow with the number of callers.
+     */
+    public Mono<SystemState> getCurrentStateAsync() {
+        return sharedGather;
+    }
+
+    /**
+     * When the event stream keeps the entity table in sync, no request is made at all.
+     * Otherwise either one snapshot request is made, or all entities are fetched concurrently,
+     * so the gather takes as long as the slowest sensor.
+     */
+    private Mono<SystemState> gatherState() {
+        if (entityStateTable.isSynced()) {
+            IotMetrics.countGather("table");
+            return Mono.fromSupplier(() -> buildState(entityStateTable.toSnapshot()));
         }
+
+        IotMetrics.countGather(homeAssistantConfig.isSnapshotEnabled() ? "snapshot" : "entities");
+        Mono<HomeAssistantSnapshot> snapshot = homeAssistantConfig.isSnapshotEnabled()
+            ? homeAssistantClient.fetchSnapshot().timeout(homeAssistantConfig.getEntityTimeout())
+            : homeAssistantClient.fetchControlLoopEntities(homeAssistantConfig.getEntityTimeout());
+
+        return snapshot.map(this::buildState);
     }
-    
+
     /**
-     * Check if anyone is home based on device tracker
+     * Build system state from entity states, sensors missing from the snapshot fall back to defaults
      */
-    private boolean isAnyoneHome() {
-        try {
-            String state = homeAssistantClient.isAnyoneHomeState();
-            return "home".equalsIgnoreCase(state);
-        } catch (Exception e) {
-            log.warn("Error checking presence, assuming no one home", e);
+    private SystemState buildState(HomeAssistantSnapshot snapshot) {
+        List<LoadState> loads = readLoads(snapshot);
+        double loadsPower = 0.0;
+        for (int i = 0; i < loads.size(); i++) {
+            loadsPower += loads.get(i).getPower();
+        }
+
+        return SystemState.builder()
+            // Presence
+            .anyoneHome(isHome(snapshot.getPresence()))
+
+            // Temperatures
+            .indoorTemperature(valueOrDefault(snapshot.getIndoorTemperature(), "indoor_temperature", 22.0))
+            .outdoorTemperature(valueOrDefault(snapshot.getOutdoorTemperature(), "outdoor_temperature", 20.0))
+
+            // Energy
+            .currentPvProduction(valueOrDefault(snapshot.getTemporaryPvProduction(), "pv_production", 0.0))
+            .currentHouseConsumption(estimateBaseConsumption())
+
+            // Climate
+            .acOn(isOn(snapshot.getClimate()))
+            .acPowerUsage(0.0) // TODO: Get actual AC power usage
+
+            // EV Charger
+            .evConnected(true) // TODO: Add method to check EV connection
+            .evChargePercentage(50.0) // TODO: Get actual charge level
+            .evChargingPower(0.0) // TODO: Get current charging power
+
+            // Dishwasher
+            .dishwasherReady(true) // Simplified for MVP
+            .dishwasherOn(isOn(snapshot.getDishwasherSwitch()))
+
+            // Smart Plug
+            .smartPlugOn(isOn(snapshot.getSmartPlugSwitch()))
+            .smartPlugPower(valueOrDefault(snapshot.getSmartPlugCurrentPowerUsed(), "smart_plug_power", 0.0))
+
+            // Generic loads
+            .loads(loads)
+            .loadsPower(loadsPower)
+
+            .build();
+    }
+
+    /**
+     * State of the configured loads, in priority order. Switches report whether they are on,
+     * number entities their power setpoint. A power sensor, if configured, overrides the power.
+     */
+    private List<LoadState> readLoads(HomeAssistantSnapshot snapshot) {
+        List<DevicePlugin> devices = deviceRegistry.getLoads();
+        if (devices.isEmpty()) {
+            return List.of();
+        }
+        List<LoadState> loads = new ArrayList<>(devices.size());
+        for (DevicePlugin device : devices) {
+            if (!device.isConfigured()) {
+                continue;
+            }
+            EntityValue entity = snapshot.getValue(device.getEntityId());
+            boolean on;
+            double power;
+            if (device.getPowerModel().isContinuous()) {
+                power = entity.isNumeric() ? entity.asDouble(0.0) : 0.0;
+                on = power > 0;
+            } else {
+                on = isOn(entity);
+                power = on ? device.getPowerModel().getRatedPower() : 0.0;
+            }
+            if (device.getPowerSensorId() != null) {
+                EntityValue sensor = snapshot.getValue(device.getPowerSensorId());
+                if (sensor.isNumeric()) {
+                    power = sensor.asDouble(power);
+                }
+            }
+            loads.add(new LoadState(device, on, power));
+        }
+        return loads;
+    }
+
+    /**
+     * Numeric value of a sensor, the fallback is counted when the sensor has no usable value
+     */
+    private double valueOrDefault(EntityValue value, String input, double defaultValue) {
+        if (!value.isNumeric()) {
+            IotMetrics.countFallback(input);
+            return defaultValue;
+        }
+        return value.asDouble(defaultValue);
+    }
+
+    /**
+     * Check if anyone is home based on device tracker state
+     */
+    private boolean isHome(EntityValue tracker) {
+        if (!tracker.isAvailable()) {
+            IotMetrics.countFallback("presence");
             return false;
         }
+        return "home".equalsIgnoreCase(tracker.getState());
     }
-    
+
+    /**
+     * Check if a switch or climate entity is on, climate entities report their HVAC mode
+     */
+    private boolean isOn(EntityValue device) {
+        return device.isAvailable() && !"off".equalsIgnoreCase(device.getState());
+    }
+
     /**
      * Estimate base house consumption (lighting, appliances, etc.)
      * This is a simplified approach - in production you'd track this more precisely
@@ -82,21 +198,7 @@ public class SystemStateService {
         // For now, return a typical base load
         return 300.0; // Watts
     }
-    
-    /**
-     * Parse double from string, return default on error
-     */
-    private double parseDouble(String value, double defaultValue) {
-        try {
-            // Remove any non-numeric characters except . and -
-            String cleaned = value.replaceAll("[^0-9.-]", "");
-            return Double.parseDouble(cleaned);
-        } catch (Exception e) {
-            log.debug("Could not parse double from '{}', using default {}", value, defaultValue);
-            return defaultValue;
-        }
-    }
-    
+
     /**
      * Get a default safe state when sensors are unavailable
      */
@@ -118,4 +220,4 @@ public class SystemStateService {
             .smartPlugPower(0.0)
             .build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,427 @@
+package com.mjurczyga.iot_server.simulation;
+
+import com.mjurczyga.iot_server.config.ControlLoopConfig;
+import com.mjurczyga.iot_server.config.DeviceConfig;
+import com.mjurczyga.iot_server.devices.ClimateControl;
+import com.mjurczyga.iot_server.devices.EVCharger;
+import com.mjurczyga.iot_server.devices.OnOffDevice;
+import com.mjurczyga.iot_server.devices.PVSystem;
+import com.mjurczyga.iot_server.logic.DecisionBuffer;
+import com.mjurczyga.iot_server.logic.PriorityCalculator;
+import com.mjurczyga.iot_server.model.DeviceDecision.ActionType;
+import com.mjurczyga.iot_server.model.SystemState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+
+/**
+ * Discrete-event simulation of a household controlled by the {@link PriorityCalculator}.
+ *
+ * Simulated time advances in steps of one second: PV production, house load, the indoor
+ * temperature and the energy totals are updated every step. Discrete changes - a new day, passing
+ * clouds, the car leaving and coming back, the dishwasher being loaded and finishing - come from
+ * an event queue. Control cycles are triggered like live ones: a PV, load or temperature change
+ * above the thresholds of the control loop or a presence change after min-interval, and at the
+ * latest after max-interval. The debounce is shorter than a step and not modelled.
+ *
+ * Each cycle builds a {@link SystemState} from the simulated devices and evaluates it with the
+ * simulation time as clock, so smoothing, dwell times and the EV ramp behave as they would live.
+ * The actions are applied to the devices, whose consumption feeds the next state. Generic loads
+ * are not simulated.
+ *
+ * A simulation owns its calculator and devices and runs once, on the calling thread.
+ */
+public class HouseholdSimulation {
+
+    private static final Logger log = LoggerFactory.getLogger(HouseholdSimulation.class);
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final int SECONDS_PER_HOUR = 3_600;
+    private static final int SECONDS_PER_DAY = 86_400;
+    private static final double JOULES_PER_KWH = 3_600_000.0;
+
+    private enum EventType {
+        DAY_START,
+        CLOUD_START,
+        CLOUD_END,
+        EV_DEPARTURE,
+        EV_ARRIVAL,
+        DISHWASHER_READY,
+        DISHWASHER_DONE
+    }
+
+    private record Event(long time, EventType type) implements Comparable<Event> {
+        @Override
+        public int compareTo(Event other) {
+            return Long.compare(time, other.time);
+        }
+    }
+
+    private final DeviceConfig config;
+    private final SimulationScenario scenario;
+    private final PriorityCalculator calculator;
+    private final DecisionBuffer decision = new DecisionBuffer();
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private final SplittableRandom random;
+
+    private final PVSystem pvSystem = new PVSystem();
+    private final EVCharger evCharger;
+    private final ClimateControl climate;
+    private final OnOffDevice dishwasher;
+    private final OnOffDevice smartPlug;
+
+    // Control loop thresholds, intervals in simulation seconds
+    private final long minInterval;
+    private final long maxInterval;
+    private final double pvDelta;
+    private final double loadDelta;
+    private final double temperatureDelta;
+
+    // Environment of the current day
+    private boolean weekend;
+    private double sunrise; // Seconds of the day
+    private double dayLength; // Seconds
+    private double peakProduction; // Watts
+    private double meanOutdoorTemperature;
+    private int clouds;
+
+    private double indoorTemperature;
+    private boolean dishwasherReady;
+    private long dishwasherEnd = -1;
+    private long dishwasherRemaining;
+    private long evUpdatedAt;
+
+    // Inputs of the last cycle
+    private long lastCycle = -1;
+    private double lastPv;
+    private double lastLoad;
+    private double lastTemperature;
+    private boolean pending;
+    private boolean ran;
+
+    // Totals, energies in Ws
+    private long cycles;
+    private long commands;
+    private double pvEnergy;
+    private double consumption;
+    private double selfConsumption;
+    private double gridImport;
+    private double gridExport;
+    private double evEnergy;
+    private double discomfort; // Celsius seconds
+
+    public HouseholdSimulation(DeviceConfig config, ControlLoopConfig controlConfig, SimulationScenario scenario) {
+        this.config = config;
+        this.scenario = scenario;
+        this.calculator = new PriorityCalculator(config);
+        this.random = new SplittableRandom(scenario.getSeed());
+
+        this.evCharger = new EVCharger("EV Charger", config.getEvMinPower(), config.getEvMaxPower(),
+                config.getEvBatteryCapacity());
+        this.climate = new ClimateControl("Climate", config.getAcCoolingPower(), config.getAcHeatingPower(),
+                config.getTargetTemperature(), config.getTemperatureHysteresis());
+        this.dishwasher = new OnOffDevice("Dishwasher", config.getDishwasherPower());
+        this.smartPlug = new OnOffDevice("Smart Plug", config.getSmartPlugPower());
+
+        this.minInterval = Math.max(1, controlConfig.getMinInterval().toSeconds());
+        this.maxInterval = Math.max(minInterval, controlConfig.getMaxInterval().toSeconds());
+        this.pvDelta = controlConfig.getPvDelta();
+        this.loadDelta = controlConfig.getLoadDelta();
+        this.temperatureDelta = controlConfig.getTemperatureDelta();
+
+        this.indoorTemperature = config.getTargetTemperature();
+        evCharger.setCurrentCharge(config.getEvBatteryCapacity() * scenario.getArrivalChargeMax() / 100.0);
+    }
+
+    /**
+     * Runs the whole scenario.
+     * @return The totals of the simulated period.
+     */
+    public SimulationResult run() {
+        if (ran) {
+            throw new IllegalStateException("A simulation can only run once");
+        }
+        ran = true;
+
+        long started = System.nanoTime();
+        long end = (long) scenario.getDays() * SECONDS_PER_DAY;
+        double thermalTimeConstant = scenario.getThermalTimeConstantHours() * SECONDS_PER_HOUR;
+        double acRate = scenario.getAcTemperatureRate() / SECONDS_PER_HOUR;
+
+        events.add(new Event(0, EventType.DAY_START));
+        for (long t = 0; t < end; t++) {
+            while (!events.isEmpty() && events.peek().time() <= t) {
+                handle(events.poll(), t);
+            }
+
+            int second = (int) (t % SECONDS_PER_DAY);
+            boolean home = isAnyoneHome(second);
+            double houseLoad = houseLoad(second, home);
+            double outdoorTemperature = outdoorTemperature(second);
+            pvSystem.setProduction(pvProduction(second));
+
+            if (isCycleDue(t, houseLoad)) {
+                runCycle(t, home, houseLoad, outdoorTemperature);
+            }
+
+            // Advance one second with the devices as the cycle left them
+            double pv = pvSystem.getProduction();
+            double load = houseLoad + climate.getPowerConsumption() + evCharger.getPowerConsumption()
+                    + dishwasher.getPowerConsumption() + smartPlug.getPowerConsumption();
+            pvEnergy += pv;
+            consumption += load;
+            selfConsumption += Math.min(pv, load);
+            gridImport += Math.max(0.0, load - pv);
+            gridExport += Math.max(0.0, pv - load);
+            evEnergy += evCharger.getPowerConsumption();
+
+            double heating = !climate.isOn() ? 0.0
+                    : climate.getMode() == ClimateControl.Mode.COOLING ? -acRate : acRate;
+            indoorTemperature += (outdoorTemperature - indoorTemperature) / thermalTimeConstant + heating;
+            if (home) {
+                discomfort += Math.max(0.0,
+                        Math.abs(indoorTemperature - config.getTargetTemperature()) - config.getTemperatureHysteresis());
+            }
+        }
+        advanceEv(end);
+
+        long wallTimeMillis = (System.nanoTime() - started) / 1_000_000;
+        SimulationResult result = SimulationResult.builder()
+                .simulatedSeconds(end)
+                .wallTimeMillis(wallTimeMillis)
+                .cycles(cycles)
+                .commands(commands)
+                .pvProduction(pvEnergy / JOULES_PER_KWH)
+                .consumption(consumption / JOULES_PER_KWH)
+                .selfConsumption(selfConsumption / JOULES_PER_KWH)
+                .gridImport(gridImport / JOULES_PER_KWH)
+                .gridExport(gridExport / JOULES_PER_KWH)
+                .evCharged(evEnergy / JOULES_PER_KWH)
+                .discomfortDegreeHours(discomfort / SECONDS_PER_HOUR)
+                .build();
+        log.debug("Simulated {} days in {} ms: {} cycles, {} commands, self-consumption {}%",
+                scenario.getDays(), wallTimeMillis, cycles, commands,
+                Math.round(result.getSelfConsumptionRatio() * 100));
+        return result;
+    }
+
+    private boolean isCycleDue(long t, double houseLoad) {
+        if (lastCycle < 0) {
+            return true;
+        }
+        long elapsed = t - lastCycle;
+        if (elapsed >= maxInterval) {
+            return true;
+        }
+        return elapsed >= minInterval && (pending
+                || Math.abs(pvSystem.getProduction() - lastPv) >= pvDelta
+                || Math.abs(houseLoad - lastLoad) >= loadDelta
+                || Math.abs(indoorTemperature - lastTemperature) >= temperatureDelta);
+    }
+
+    private void runCycle(long t, boolean home, double houseLoad, double outdoorTemperature) {
+        advanceEv(t);
+        SystemState state = SystemState.builder()
+                .anyoneHome(home)
+                .indoorTemperature(indoorTemperature)
+                .outdoorTemperature(outdoorTemperature)
+                .currentPvProduction(pvSystem.getProduction())
+                .currentHouseConsumption(houseLoad)
+                .acOn(climate.isOn())
+                .acPowerUsage(climate.getPowerConsumption())
+                .evConnected(evCharger.isConnected())
+                .evChargePercentage(evCharger.getChargePercentage())
+                .evChargingPower(evCharger.getPowerConsumption())
+                .dishwasherReady(dishwasherReady)
+                .dishwasherOn(dishwasher.isOn())
+                .smartPlugOn(smartPlug.isOn())
+                .smartPlugPower(smartPlug.getPowerConsumption())
+                .build();
+
+        calculator.evaluate(state, decision, t * NANOS_PER_SECOND);
+        for (int i = 0; i < decision.size(); i++) {
+            apply(i, t);
+        }
+
+        cycles++;
+        lastCycle = t;
+        lastPv = pvSystem.getProduction();
+        lastLoad = houseLoad;
+        lastTemperature = indoorTemperature;
+        pending = false;
+    }
+
+    private void apply(int index, long t) {
+        ActionType action = decision.getAction(index);
+        boolean on = action != ActionType.TURN_OFF;
+        switch (decision.getDevice(index)) {
+            case EV_CHARGER -> applyEvCharger(action == ActionType.SET_POWER ? decision.getTargetPower(index) : 0.0);
+            case AC_CLIMATE -> applyClimate(on);
+            case DISHWASHER -> applyDishwasher(on, t);
+            case SMART_PLUG -> count(on ? smartPlug.turnOn() : smartPlug.turnOff());
+            case LOAD -> {
+                // Generic loads are not simulated
+            }
+        }
+    }
+
+    private void applyEvCharger(double power) {
+        double current = evCharger.getPowerConsumption();
+        boolean unchanged = power <= 0.0
+                ? current <= 0.0
+                : current > 0.0 && Math.abs(power - current) < scenario.getPowerTolerance();
+        if (!unchanged) {
+            evCharger.setChargingPower(power);
+            commands++;
+        }
+    }
+
+    private void applyClimate(boolean on) {
+        if (!on) {
+            count(climate.turnOff());
+            return;
+        }
+        boolean cooling = indoorTemperature > config.getTargetTemperature();
+        boolean modeChanged = climate.getMode() != (cooling ? ClimateControl.Mode.COOLING : ClimateControl.Mode.HEATING);
+        if (cooling) {
+            climate.setModeCooling();
+        } else {
+            climate.setModeHeating();
+        }
+        count(climate.turnOn() || modeChanged);
+    }
+
+    private void applyDishwasher(boolean on, long t) {
+        if (!on) {
+            if (dishwasher.turnOff()) {
+                // Interrupted, the rest of the program runs when it is turned on again
+                dishwasherRemaining = Math.max(0, dishwasherEnd - t);
+                dishwasherEnd = -1;
+                commands++;
+            }
+        } else if (dishwasherReady && dishwasher.turnOn()) {
+            dishwasherEnd = t + dishwasherRemaining;
+            events.add(new Event(dishwasherEnd, EventType.DISHWASHER_DONE));
+            commands++;
+        }
+    }
+
+    private void count(boolean changed) {
+        if (changed) {
+            commands++;
+        }
+    }
+
+    private void handle(Event event, long t) {
+        switch (event.type()) {
+            case DAY_START -> startDay(event.time());
+            case CLOUD_START -> clouds++;
+            case CLOUD_END -> clouds--;
+            case EV_DEPARTURE -> {
+                advanceEv(t);
+                evCharger.setConnected(false);
+                evCharger.setChargingPower(0.0);
+                pending = true;
+            }
+            case EV_ARRIVAL -> {
+                double arrivalCharge = scenario.getArrivalChargeMin()
+                        + random.nextDouble() * (scenario.getArrivalChargeMax() - scenario.getArrivalChargeMin());
+                evCharger.setCurrentCharge(Math.min(evCharger.getCurrentCharge(),
+                        evCharger.getBatteryCapacity() * arrivalCharge / 100.0));
+                evCharger.setConnected(true);
+                evUpdatedAt = t;
+                pending = true;
+            }
+            case DISHWASHER_READY -> {
+                if (!dishwasherReady) {
+                    dishwasherReady = true;
+                    dishwasherRemaining = scenario.getDishwasherProgramMinutes() * 60L;
+                    pending = true;
+                }
+            }
+            case DISHWASHER_DONE -> {
+                // Events of interrupted programs are stale
+                if (event.time() == dishwasherEnd && dishwasher.turnOff()) {
+                    dishwasherReady = false;
+                    dishwasherEnd = -1;
+                    pending = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws the weather of the day and schedules its events
+     */
+    private void startDay(long time) {
+        LocalDate date = scenario.getStartDate().plusDays(time / SECONDS_PER_DAY);
+        int dayOfYear = date.getDayOfYear();
+        weekend = date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY;
+
+        // 1 at midsummer, -1 at midwinter; temperatures lag the sun by about a month
+        double season = Math.sin(2 * Math.PI * (dayOfYear - 81) / 365.0);
+        dayLength = (12.0 + 4.0 * season) * SECONDS_PER_HOUR;
+        sunrise = 13.0 * SECONDS_PER_HOUR - dayLength / 2; // Solar noon at 13:00
+        meanOutdoorTemperature = scenario.getMeanOutdoorTemperature()
+                + scenario.getSeasonalTemperatureAmplitude() * Math.sin(2 * Math.PI * (dayOfYear - 111) / 365.0);
+
+        boolean overcast = random.nextDouble() < scenario.getOvercastProbability();
+        double clearness = overcast ? 0.15 + 0.2 * random.nextDouble() : 0.8 + 0.2 * random.nextDouble();
+        peakProduction = config.getPvMaxProduction() * (0.55 + 0.45 * season) * clearness;
+
+        if (!overcast) {
+            int passing = random.nextInt(Math.max(0, scenario.getMaxCloudsPerDay()) + 1);
+            for (int i = 0; i < passing; i++) {
+                long start = time + (long) (sunrise + random.nextDouble() * dayLength);
+                events.add(new Event(start, EventType.CLOUD_START));
+                events.add(new Event(start + 60 + random.nextInt(540), EventType.CLOUD_END));
+            }
+        }
+        if (!weekend) {
+            events.add(new Event(time + (long) scenario.getDepartureHour() * SECONDS_PER_HOUR, EventType.EV_DEPARTURE));
+            events.add(new Event(time + (long) scenario.getArrivalHour() * SECONDS_PER_HOUR, EventType.EV_ARRIVAL));
+        }
+        events.add(new Event(time + (long) scenario.getDishwasherReadyHour() * SECONDS_PER_HOUR, EventType.DISHWASHER_READY));
+        events.add(new Event(time + SECONDS_PER_DAY, EventType.DAY_START));
+    }
+
+    private boolean isAnyoneHome(int second) {
+        return weekend
+                || second < scenario.getDepartureHour() * SECONDS_PER_HOUR
+                || second >= scenario.getArrivalHour() * SECONDS_PER_HOUR;
+    }
+
+    private double houseLoad(int second, boolean home) {
+        boolean evening = second >= 18 * SECONDS_PER_HOUR && second < 22 * SECONDS_PER_HOUR;
+        return scenario.getBaseLoad() + (home && evening ? scenario.getEveningLoad() : 0.0);
+    }
+
+    private double pvProduction(int second) {
+        double sinceSunrise = second - sunrise;
+        if (sinceSunrise <= 0 || sinceSunrise >= dayLength) {
+            return 0.0;
+        }
+        double power = peakProduction * Math.sin(Math.PI * sinceSunrise / dayLength);
+        return clouds > 0 ? power * scenario.getCloudAttenuation() : power;
+    }
+
+    private double outdoorTemperature(int second) {
+        // Coldest at 03:00, warmest at 15:00
+        return meanOutdoorTemperature + scenario.getDailyTemperatureAmplitude()
+                * Math.sin(2 * Math.PI * ((double) second / SECONDS_PER_DAY - 0.375));
+    }
+
+    /**
+     * Charges the car for the time since the last update, its power is constant in between
+     */
+    private void advanceEv(long t) {
+        if (t > evUpdatedAt) {
+            evCharger.charge(t - evUpdatedAt);
+        }
+        evUpdatedAt = t;
+    }
+}
@@ -0,0 +1,159 @@
+package com.mjurczyga.iot_server.simulation;
+
+import com.mjurczyga.iot_server.config.ControlLoopConfig;
+import com.mjurczyga.iot_server.config.DeviceConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Simulates variants of a home's DeviceConfig in parallel and ranks them.
+ *
+ * Every variant runs once per day of the sweep; all variants see the same days, weather and EV
+ * arrivals, so differences come from the parameters alone. The day runs are independent and are
+ * split recursively on a fork-join pool, which keeps all workers busy even when some days take
+ * longer than others. One core is always left to the control loops and the web server.
+ */
+public class ParameterSweep {
+
+    private static final Logger log = LoggerFactory.getLogger(ParameterSweep.class);
+
+    // Highest self-consumption first, then the least discomfort and the fewest commands
+    private static final Comparator<SweepResult> RANKING = Comparator
+            .comparingDouble((SweepResult result) -> -result.getTotal().getSelfConsumptionRatio())
+            .thenComparingDouble(result -> result.getTotal().getDiscomfortDegreeHours())
+            .thenComparingLong(result -> result.getTotal().getCommands());
+
+    private final DeviceConfig baseConfig;
+    private final ControlLoopConfig controlConfig;
+
+    public ParameterSweep(DeviceConfig baseConfig, ControlLoopConfig controlConfig) {
+        this.baseConfig = baseConfig;
+        this.controlConfig = controlConfig;
+    }
+
+    /**
+     * @return The variants of the grid, or a random sample of them if the spec asks for one.
+     */
+    public List<SweepVariant> variants(SweepSpec spec) {
+        List<SweepVariant> variants = new ArrayList<>();
+        for (double surplusBuffer : valuesOrBase(spec.getSurplusBuffers(), baseConfig.getSurplusBuffer())) {
+            for (double hysteresis : valuesOrBase(spec.getTemperatureHystereses(), baseConfig.getTemperatureHysteresis())) {
+                for (double evMinPower : valuesOrBase(spec.getEvMinPowers(), baseConfig.getEvMinPower())) {
+                    for (List<String> order : priorityOrders(spec)) {
+                        variants.add(new SweepVariant(surplusBuffer, hysteresis, evMinPower, order));
+                    }
+                }
+            }
+        }
+
+        if (spec.getSamples() > 0 && spec.getSamples() < variants.size()) {
+            Collections.shuffle(variants, new Random(spec.getScenario().getSeed()));
+            return List.copyOf(variants.subList(0, spec.getSamples()));
+        }
+        return variants;
+    }
+
+    /**
+     * Runs all variants and ranks them.
+     * @return One result per variant, best first.
+     */
+    public List<SweepResult> run(SweepSpec spec) {
+        if (spec.getDays() < 1) {
+            throw new IllegalArgumentException("A sweep needs at least one day");
+        }
+        List<SweepVariant> variants = variants(spec);
+        List<DeviceConfig> configs = variants.stream().map(variant -> variant.applyTo(baseConfig)).toList();
+        List<SimulationScenario> days = new ArrayList<>(spec.getDays());
+        for (int day = 0; day < spec.getDays(); day++) {
+            SimulationScenario scenario = spec.getScenario();
+            days.add(scenario.withStartDate(scenario.getStartDate().plusDays(day))
+                    .withDays(1)
+                    .withSeed(scenario.getSeed() + day));
+        }
+
+        SimulationResult[] results = new SimulationResult[configs.size() * days.size()];
+        int parallelism = parallelism(spec.getParallelism(), Runtime.getRuntime().availableProcessors());
+        long started = System.nanoTime();
+        try (ForkJoinPool pool = new ForkJoinPool(parallelism)) {
+            pool.invoke(new RunTask(configs, days, results, 0, results.length));
+        }
+
+        List<SweepResult> ranked = new ArrayList<>(variants.size());
+        for (int v = 0; v < variants.size(); v++) {
+            SimulationResult total = results[v * days.size()];
+            for (int day = 1; day < days.size(); day++) {
+                total = total.plus(results[v * days.size() + day]);
+            }
+            ranked.add(new SweepResult(variants.get(v), days.size(), total));
+        }
+        ranked.sort(RANKING);
+
+        log.info("Swept {} variants x {} days on {} threads in {} ms",
+                variants.size(), days.size(), parallelism, (System.nanoTime() - started) / 1_000_000);
+        return ranked;
+    }
+
+    /**
+     * @return The requested worker count, capped at all cores but one.
+     */
+    static int parallelism(int requested, int cores) {
+        int cap = Math.max(1, cores - 1);
+        return requested > 0 ? Math.min(requested, cap) : cap;
+    }
+
+    private static List<Double> valuesOrBase(List<Double> values, double base) {
+        return values == null || values.isEmpty() ? List.of(base) : values;
+    }
+
+    private List<List<String>> priorityOrders(SweepSpec spec) {
+        if (spec.getPriorityOrders() == null || spec.getPriorityOrders().isEmpty()) {
+            return List.of(baseConfig.isCustomPriorityEnabled() ? baseConfig.getCustomPriorityOrder() : List.of());
+        }
+        return spec.getPriorityOrders();
+    }
+
+    /**
+     * Runs the range [from, to) of the variant x day runs, run i is variant i / days, day i % days
+     */
+    private class RunTask extends RecursiveAction {
+
+        private final List<DeviceConfig> configs;
+        private final List<SimulationScenario> days;
+        private final SimulationResult[] results;
+        private final int from;
+        private final int to;
+
+        private RunTask(List<DeviceConfig> configs, List<SimulationScenario> days, SimulationResult[] results,
+                        int from, int to) {
+            this.configs = configs;
+            this.days = days;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (from == to) {
+                return;
+            }
+            if (to - from == 1) {
+                DeviceConfig config = configs.get(from / days.size());
+                SimulationScenario day = days.get(from % days.size());
+                results[from] = new HouseholdSimulation(config, controlConfig, day).run();
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RunTask(configs, days, results, from, middle),
+                    new RunTask(configs, days, results, middle, to));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.mjurczyga.iot_server.simulation;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Totals of a simulation run, energies in kWh
+ */
+@Data
+@Builder
+public class SimulationResult {
+    private long simulatedSeconds;
+    private long wallTimeMillis;
+    private long cycles;
+    private long commands; // Commands that changed a device, what the executor would have sent
+
+    private double pvProduction;
+    private double consumption;
+    private double selfConsumption; // PV energy used in the house
+    private double gridImport;
+    private double gridExport;
+    private double evCharged;
+
+    private double discomfortDegreeHours; // Temperature outside the hysteresis band while someone was home
+
+    /**
+     * @return The sums of both results, e.g. of the runs of one sweep variant.
+     */
+    public SimulationResult plus(SimulationResult other) {
+        return SimulationResult.builder()
+                .simulatedSeconds(simulatedSeconds + other.simulatedSeconds)
+                .wallTimeMillis(wallTimeMillis + other.wallTimeMillis)
+                .cycles(cycles + other.cycles)
+                .commands(commands + other.commands)
+                .pvProduction(pvProduction + other.pvProduction)
+                .consumption(consumption + other.consumption)
+                .selfConsumption(selfConsumption + other.selfConsumption)
+                .gridImport(gridImport + other.gridImport)
+                .gridExport(gridExport + other.gridExport)
+                .evCharged(evCharged + other.evCharged)
+                .discomfortDegreeHours(discomfortDegreeHours + other.discomfortDegreeHours)
+                .build();
+    }
+
+    /**
+     * @return Share of the PV production used in the house, 0..1
+     */
+    public double getSelfConsumptionRatio() {
+        return pvProduction > 0 ? selfConsumption / pvProduction : 0.0;
+    }
+}
@@ -0,0 +1,53 @@
+package com.mjurczyga.iot_server.simulation;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.With;
+
+import java.time.LocalDate;
+
+/**
+ * The simulated household and its surroundings. Device sizes come from the DeviceConfig of the
+ * home, this only describes weather, occupancy and the thermal behaviour of the house.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SimulationScenario {
+
+    // Simulated period, the same seed gives the same weather and EV arrivals
+    @With
+    private LocalDate startDate = LocalDate.of(2025, 1, 1);
+    @With
+    private int days = 365;
+    @With
+    private long seed = 42L;
+
+    // Weather
+    private double overcastProbability = 0.3; // Share of fully overcast days
+    private int maxCloudsPerDay = 40; // Passing clouds on a day that is not overcast
+    private double cloudAttenuation = 0.3; // PV factor while a cloud passes
+    private double meanOutdoorTemperature = 10.0; // Celsius, yearly mean
+    private double seasonalTemperatureAmplitude = 10.0; // Celsius
+    private double dailyTemperatureAmplitude = 5.0; // Celsius
+
+    // House
+    private double baseLoad = 300.0; // Watts, consumption not controlled by the control loop
+    private double eveningLoad = 400.0; // Watts, on top of the base load from 18:00 to 22:00 when someone is home
+    private double thermalTimeConstantHours = 30.0; // Time the indoor temperature needs to follow the outdoor one
+    private double acTemperatureRate = 1.5; // Celsius per hour the AC cools or heats
+
+    // Occupancy on workdays, the car leaves and comes back with the residents; weekends everyone stays home
+    private int departureHour = 7;
+    private int arrivalHour = 17;
+    private double arrivalChargeMin = 20.0; // Percent
+    private double arrivalChargeMax = 60.0; // Percent
+
+    // Appliances
+    private int dishwasherReadyHour = 21;
+    private int dishwasherProgramMinutes = 120;
+
+    // SET_POWER commands closer than this to the current power are not sent, as in the executor
+    private double powerTolerance = 100.0; // Watts
+}
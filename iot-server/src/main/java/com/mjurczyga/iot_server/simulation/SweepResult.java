@@ -0,0 +1,15 @@
+package com.mjurczyga.iot_server.simulation;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Totals of all runs of one variant
+ */
+@Data
+@AllArgsConstructor
+public class SweepResult {
+    private SweepVariant variant;
+    private int runs;
+    private SimulationResult total;
+}
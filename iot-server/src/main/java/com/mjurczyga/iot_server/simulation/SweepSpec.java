@@ -0,0 +1,29 @@
+package com.mjurczyga.iot_server.simulation;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * A parameter sweep: the values to try per parameter, an empty list keeps the home's value.
+ * Every variant is simulated on the same synthetic days, so their results are comparable.
+ */
+@Data
+public class SweepSpec {
+
+    private List<Double> surplusBuffers = List.of(); // Watts
+    private List<Double> temperatureHystereses = List.of(); // Celsius
+    private List<Double> evMinPowers = List.of(); // Watts
+    // Custom priority orders, an empty order runs the automatic MAX_USAGE/COMFORT modes
+    private List<List<String>> priorityOrders = List.of();
+
+    // 0 runs the full grid, otherwise a random sample of that many variants
+    private int samples = 0;
+
+    // Day-long runs per variant, the n-th run simulates the n-th day of the scenario
+    private int days = 30;
+    private SimulationScenario scenario = new SimulationScenario();
+
+    // Worker threads, 0 or more than available uses all cores but one
+    private int parallelism = 0;
+}
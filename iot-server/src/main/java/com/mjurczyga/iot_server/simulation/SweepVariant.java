@@ -0,0 +1,32 @@
+package com.mjurczyga.iot_server.simulation;
+
+import com.mjurczyga.iot_server.config.DeviceConfig;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One combination of swept parameters
+ */
+@Data
+@AllArgsConstructor
+public class SweepVariant {
+    private double surplusBuffer;
+    private double temperatureHysteresis;
+    private double evMinPower;
+    private List<String> priorityOrder; // Empty for the automatic modes
+
+    /**
+     * @return A copy of the base configuration with the parameters of this variant.
+     */
+    public DeviceConfig applyTo(DeviceConfig base) {
+        DeviceConfig config = base.copy();
+        config.setSurplusBuffer(surplusBuffer);
+        config.setTemperatureHysteresis(temperatureHysteresis);
+        config.setEvMinPower(evMinPower);
+        config.updateCustomPriority(!priorityOrder.isEmpty(),
+                priorityOrder.isEmpty() ? base.getCustomPriorityOrder() : priorityOrder);
+        return config;
+    }
+}
@@ -0,0 +1,10 @@
+package com.mjurczyga.iot_server.telemetry;
+
+/**
+ * A state change of a Home Assistant entity
+ * @param value The state as a number, NaN if it is not numeric.
+ * @param state The raw state.
+ */
+public record EntityReading(String homeId, long sampledAt, String entityId, double value, String state)
+        implements TelemetryRow {
+}
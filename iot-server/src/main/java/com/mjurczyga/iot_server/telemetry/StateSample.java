@@ -0,0 +1,10 @@
+package com.mjurczyga.iot_server.telemetry;
+
+import com.mjurczyga.iot_server.model.SystemState;
+
+/**
+ * The state a control cycle decided on, with its available surplus
+ */
+public record StateSample(String homeId, long sampledAt, SystemState state, double availableSurplus)
+        implements TelemetryRow {
+}
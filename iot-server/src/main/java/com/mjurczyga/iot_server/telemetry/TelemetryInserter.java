@@ -0,0 +1,266 @@
+package com.mjurczyga.iot_server.telemetry;
+
+import com.mjurczyga.iot_server.model.SystemState;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Writes batches of telemetry rows over JDBC, in one transaction per batch.
+ *
+ * On PostgreSQL the rows are streamed with COPY into tables partitioned by day (UTC); the
+ * partitions of the days in a batch are created before it is copied. Other databases, e.g. H2 in
+ * development, have plain tables and get JDBC batch inserts. The schemas are in
+ * schema-postgresql.sql and schema-h2.sql.
+ *
+ * Creating a partition fails once rows of its day are in the default partition, which stays so
+ * for the rest of the day; a failed partition is therefore tried again only after a retry interval.
+ */
+class TelemetryInserter {
+
+    private static final Logger log = LoggerFactory.getLogger(TelemetryInserter.class);
+
+    static final String STATE_TABLE = "telemetry_state";
+    static final String READING_TABLE = "telemetry_reading";
+
+    private static final String STATE_COLUMNS = "home_id, sampled_at, anyone_home, indoor_temperature, "
+            + "outdoor_temperature, pv_production, house_consumption, ac_on, ac_power, ev_connected, "
+            + "ev_charge_percentage, ev_charging_power, dishwasher_ready, dishwasher_on, smart_plug_on, "
+            + "smart_plug_power, loads_power, available_surplus";
+    private static final int STATE_COLUMN_COUNT = 18;
+    private static final String READING_COLUMNS = "home_id, sampled_at, entity_id, numeric_value, raw_state";
+    private static final int READING_COLUMN_COUNT = 5;
+    private static final int MAX_STATE_LENGTH = 255;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final long PARTITION_RETRY_NANOS = Duration.ofMinutes(5).toNanos();
+
+    // Partitions known to exist, created at most once per run
+    private final Set<String> partitions = ConcurrentHashMap.newKeySet();
+    // Partitions that could not be created, with the time of the next attempt
+    private final Map<String, Long> failedPartitions = new ConcurrentHashMap<>();
+    private final LongSupplier nanoClock;
+
+    TelemetryInserter() {
+        this(System::nanoTime);
+    }
+
+    TelemetryInserter(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+    }
+
+    void insert(Connection connection, List<StateSample> states, List<EntityReading> readings) throws SQLException {
+        boolean postgres = connection.isWrapperFor(PGConnection.class);
+        if (postgres) {
+            ensurePartitions(connection, STATE_TABLE, states);
+            ensurePartitions(connection, READING_TABLE, readings);
+        }
+
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            if (postgres) {
+                CopyManager copy = connection.unwrap(PGConnection.class).getCopyAPI();
+                copyStates(copy, states);
+                copyReadings(copy, readings);
+            } else {
+                batchStates(connection, states);
+                batchReadings(connection, readings);
+            }
+            connection.commit();
+        } catch (SQLException | IOException | RuntimeException e) {
+            connection.rollback();
+            throw e instanceof SQLException sql ? sql : new SQLException("Telemetry batch failed", e);
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void ensurePartitions(Connection connection, String table, List<? extends TelemetryRow> rows) {
+        long lastDay = Long.MIN_VALUE;
+        for (TelemetryRow row : rows) {
+            long day = Math.floorDiv(row.sampledAt(), MILLIS_PER_DAY);
+            if (day != lastDay) {
+                lastDay = day;
+                ensurePartition(connection, table, LocalDate.ofEpochDay(day));
+            }
+        }
+    }
+
+    private void ensurePartition(Connection connection, String table, LocalDate day) {
+        String partition = table + "_p" + day.format(DateTimeFormatter.BASIC_ISO_DATE);
+        if (partitions.contains(partition) || !retryDue(partition)) {
+            return;
+        }
+        // Other writers wait, so no rows reach the default partition while the partition is created
+        synchronized (partitions) {
+            if (partitions.contains(partition) || !retryDue(partition)) {
+                return;
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS " + partition + " PARTITION OF " + table
+                        + " FOR VALUES FROM ('" + day + " 00:00:00+00') TO ('" + day.plusDays(1) + " 00:00:00+00')");
+                partitions.add(partition);
+                failedPartitions.remove(partition);
+                log.info("Created telemetry partition {}", partition);
+            } catch (SQLException e) {
+                failedPartitions.put(partition, nanoClock.getAsLong() + PARTITION_RETRY_NANOS);
+                log.warn("Could not create telemetry partition {}, its rows go to the default partition "
+                        + "until a retry in {}: {}", partition, Duration.ofNanos(PARTITION_RETRY_NANOS), e.getMessage());
+            }
+        }
+    }
+
+    private boolean retryDue(String partition) {
+        Long retryAt = failedPartitions.get(partition);
+        return retryAt == null || nanoClock.getAsLong() - retryAt >= 0;
+    }
+
+    private static void copyStates(CopyManager copy, List<StateSample> states) throws SQLException, IOException {
+        if (states.isEmpty()) {
+            return;
+        }
+        StringBuilder csv = new StringBuilder(states.size() * 192);
+        for (StateSample sample : states) {
+            SystemState state = sample.state();
+            appendQuoted(csv, sample.homeId()).append(',')
+                    .append(Instant.ofEpochMilli(sample.sampledAt())).append(',')
+                    .append(state.isAnyoneHome()).append(',')
+                    .append(state.getIndoorTemperature()).append(',')
+                    .append(state.getOutdoorTemperature()).append(',')
+                    .append(state.getCurrentPvProduction()).append(',')
+                    .append(state.getCurrentHouseConsumption()).append(',')
+                    .append(state.isAcOn()).append(',')
+                    .append(state.getAcPowerUsage()).append(',')
+                    .append(state.isEvConnected()).append(',')
+                    .append(state.getEvChargePercentage()).append(',')
+                    .append(state.getEvChargingPower()).append(',')
+                    .append(state.isDishwasherReady()).append(',')
+                    .append(state.isDishwasherOn()).append(',')
+                    .append(state.isSmartPlugOn()).append(',')
+                    .append(state.getSmartPlugPower()).append(',')
+                    .append(state.getLoadsPower()).append(',')
+                    .append(sample.availableSurplus()).append('\n');
+        }
+        copy.copyIn("COPY " + STATE_TABLE + " (" + STATE_COLUMNS + ") FROM STDIN (FORMAT csv)",
+                new StringReader(csv.toString()));
+    }
+
+    private static void copyReadings(CopyManager copy, List<EntityReading> readings) throws SQLException, IOException {
+        if (readings.isEmpty()) {
+            return;
+        }
+        StringBuilder csv = new StringBuilder(readings.size() * 96);
+        for (EntityReading reading : readings) {
+            appendQuoted(csv, reading.homeId()).append(',')
+                    .append(Instant.ofEpochMilli(reading.sampledAt())).append(',');
+            appendQuoted(csv, reading.entityId()).append(',');
+            // An empty unquoted field is NULL
+            if (!Double.isNaN(reading.value())) {
+                csv.append(reading.value());
+            }
+            csv.append(',');
+            if (reading.state() != null) {
+                appendQuoted(csv, truncate(reading.state()));
+            }
+            csv.append('\n');
+        }
+        copy.copyIn("COPY " + READING_TABLE + " (" + READING_COLUMNS + ") FROM STDIN (FORMAT csv)",
+                new StringReader(csv.toString()));
+    }
+
+    private static void batchStates(Connection connection, List<StateSample> states) throws SQLException {
+        if (states.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(insert(STATE_TABLE, STATE_COLUMNS, STATE_COLUMN_COUNT))) {
+            for (StateSample sample : states) {
+                SystemState state = sample.state();
+                statement.setString(1, sample.homeId());
+                statement.setObject(2, timestamp(sample.sampledAt()));
+                statement.setBoolean(3, state.isAnyoneHome());
+                statement.setDouble(4, state.getIndoorTemperature());
+                statement.setDouble(5, state.getOutdoorTemperature());
+                statement.setDouble(6, state.getCurrentPvProduction());
+                statement.setDouble(7, state.getCurrentHouseConsumption());
+                statement.setBoolean(8, state.isAcOn());
+                statement.setDouble(9, state.getAcPowerUsage());
+                statement.setBoolean(10, state.isEvConnected());
+                statement.setDouble(11, state.getEvChargePercentage());
+                statement.setDouble(12, state.getEvChargingPower());
+                statement.setBoolean(13, state.isDishwasherReady());
+                statement.setBoolean(14, state.isDishwasherOn());
+                statement.setBoolean(15, state.isSmartPlugOn());
+                statement.setDouble(16, state.getSmartPlugPower());
+                statement.setDouble(17, state.getLoadsPower());
+                statement.setDouble(18, sample.availableSurplus());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private static void batchReadings(Connection connection, List<EntityReading> readings) throws SQLException {
+        if (readings.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(insert(READING_TABLE, READING_COLUMNS, READING_COLUMN_COUNT))) {
+            for (EntityReading reading : readings) {
+                statement.setString(1, reading.homeId());
+                statement.setObject(2, timestamp(reading.sampledAt()));
+                statement.setString(3, reading.entityId());
+                if (Double.isNaN(reading.value())) {
+                    statement.setNull(4, Types.DOUBLE);
+                } else {
+                    statement.setDouble(4, reading.value());
+                }
+                statement.setString(5, reading.state() != null ? truncate(reading.state()) : null);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private static String insert(String table, String columns, int count) {
+        return "INSERT INTO " + table + " (" + columns + ") VALUES (" + "?, ".repeat(count - 1) + "?)";
+    }
+
+    private static OffsetDateTime timestamp(long epochMillis) {
+        return OffsetDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+    }
+
+    private static String truncate(String value) {
+        return value.length() > MAX_STATE_LENGTH ? value.substring(0, MAX_STATE_LENGTH) : value;
+    }
+
+    private static StringBuilder appendQuoted(StringBuilder csv, String value) {
+        csv.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                csv.append('"');
+            }
+            csv.append(c);
+        }
+        return csv.append('"');
+    }
+}
@@ -0,0 +1,14 @@
+package com.mjurczyga.iot_server.telemetry;
+
+/**
+ * A row waiting in the telemetry queue
+ */
+public sealed interface TelemetryRow permits StateSample, EntityReading {
+
+    String homeId();
+
+    /**
+     * @return Time of the row, epoch milliseconds.
+     */
+    long sampledAt();
+}
@@ -0,0 +1,207 @@
+package com.mjurczyga.iot_server.telemetry;
+
+import com.mjurczyga.iot_server.client.home_assistant.EntityStateTable;
+import com.mjurczyga.iot_server.client.response.EntityValue;
+import com.mjurczyga.iot_server.client.response.HomeAssistantStateResponse;
+import com.mjurczyga.iot_server.config.TelemetryConfig;
+import com.mjurczyga.iot_server.metrics.IotMetrics;
+import com.mjurczyga.iot_server.model.SystemState;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous writer of the telemetry store.
+ *
+ * Control cycles and entity state changes offer rows to a bounded queue and return right away;
+ * writer threads drain the queue in batches of up to batch-size rows. When the database falls
+ * behind and the queue is full, new rows are dropped and counted instead of slowing down the
+ * control loop. Rows still queued on shutdown are written before the writers stop.
+ */
+@Component
+public class TelemetryWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(TelemetryWriter.class);
+
+    private static final long DROP_LOG_INTERVAL = 10_000;
+    private static final long STOP_TIMEOUT_MILLIS = 10_000;
+
+    private final TelemetryConfig config;
+    private final DataSource dataSource;
+    private final TelemetryInserter inserter = new TelemetryInserter();
+    private final BlockingQueue<TelemetryRow> queue;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private final List<Thread> writers = new ArrayList<>();
+    private volatile boolean running = false;
+
+    public TelemetryWriter(TelemetryConfig config, DataSource dataSource) {
+        this.config = config;
+        this.dataSource = dataSource;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, config.getQueueCapacity()));
+    }
+
+    @PostConstruct
+    void start() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        IotMetrics.registerCounter("iot.telemetry.accepted", "Telemetry rows queued for writing", accepted);
+        IotMetrics.registerCounter("iot.telemetry.dropped", "Telemetry rows dropped because the queue was full", dropped);
+        IotMetrics.registerCounter("iot.telemetry.written", "Telemetry rows written", written);
+        IotMetrics.registerCounter("iot.telemetry.failed", "Telemetry rows lost to failed writes", failed);
+        IotMetrics.registerGauge("iot.telemetry.queue.size", "Telemetry rows waiting to be written", queue::size);
+
+        running = true;
+        Thread.Builder builder = Thread.ofPlatform().name("telemetry-writer-", 0).daemon(true);
+        for (int i = 0; i < config.getWriterThreads(); i++) {
+            writers.add(builder.start(this::drain));
+        }
+        log.info("Telemetry writer started: {} thread(s), queue capacity {}, batch size {}",
+                writers.size(), config.getQueueCapacity(), config.getBatchSize());
+    }
+
+    @PreDestroy
+    void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (Thread writer : writers) {
+            try {
+                writer.join(STOP_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        writers.clear();
+        log.info("Telemetry writer stopped: {} rows written, {} dropped, {} failed, {} left in the queue",
+                written.get(), dropped.get(), failed.get(), queue.size());
+    }
+
+    /**
+     * Queues the state sample of a control cycle.
+     */
+    public void offerState(String homeId, long sampledAt, SystemState state) {
+        if (running) {
+            offer(new StateSample(homeId, sampledAt, state, state.getAvailableSurplus()));
+        }
+    }
+
+    /**
+     * Stores the state changes of a home's entities as readings, if entity readings are enabled.
+     */
+    public void trackEntities(String homeId, EntityStateTable stateTable) {
+        if (config.isEnabled() && config.isEntityReadings()) {
+            stateTable.addListener((entityId, response) -> offerReading(homeId, entityId, response));
+        }
+    }
+
+    /**
+     * Queues an entity state as reading, timestamped with its last change.
+     */
+    public void offerReading(String homeId, String entityId, HomeAssistantStateResponse response) {
+        if (!running || response == null) {
+            return;
+        }
+        EntityValue value = EntityValue.of(entityId, response);
+        Instant changed = value.getLastChanged();
+        long sampledAt = changed != null ? changed.toEpochMilli() : System.currentTimeMillis();
+        offer(new EntityReading(homeId, sampledAt, entityId, value.asDouble(Double.NaN), value.getState()));
+    }
+
+    /**
+     * @return true if the row was queued, false if it was dropped.
+     */
+    boolean offer(TelemetryRow row) {
+        boolean queued;
+        try {
+            long timeout = config.getOfferTimeout().toNanos();
+            queued = timeout <= 0 ? queue.offer(row) : queue.offer(row, timeout, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (queued) {
+            accepted.incrementAndGet();
+        } else if (dropped.incrementAndGet() % DROP_LOG_INTERVAL == 1) {
+            log.warn("Telemetry queue full, {} rows dropped so far", dropped.get());
+        }
+        return queued;
+    }
+
+    private void drain() {
+        int batchSize = Math.max(1, config.getBatchSize());
+        long pollNanos = config.getPollInterval().toNanos();
+        List<TelemetryRow> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                TelemetryRow first = queue.poll(pollNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<TelemetryRow> batch) {
+        List<StateSample> states = new ArrayList<>();
+        List<EntityReading> readings = new ArrayList<>();
+        for (TelemetryRow row : batch) {
+            if (row instanceof StateSample sample) {
+                states.add(sample);
+            } else {
+                readings.add((EntityReading) row);
+            }
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            inserter.insert(connection, states, readings);
+            written.addAndGet(batch.size());
+        } catch (SQLException e) {
+            failed.addAndGet(batch.size());
+            log.error("Failed to write {} telemetry rows: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+}
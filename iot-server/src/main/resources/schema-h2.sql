@@ -0,0 +1,35 @@
+-- Telemetry store for development, written by TelemetryWriter with batch inserts.
+-- See schema-postgresql.sql for the partitioned production schema.
+
+CREATE TABLE IF NOT EXISTS telemetry_state (
+    home_id VARCHAR(64) NOT NULL,
+    sampled_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    anyone_home BOOLEAN NOT NULL,
+    indoor_temperature DOUBLE PRECISION,
+    outdoor_temperature DOUBLE PRECISION,
+    pv_production DOUBLE PRECISION,
+    house_consumption DOUBLE PRECISION,
+    ac_on BOOLEAN NOT NULL,
+    ac_power DOUBLE PRECISION,
+    ev_connected BOOLEAN NOT NULL,
+    ev_charge_percentage DOUBLE PRECISION,
+    ev_charging_power DOUBLE PRECISION,
+    dishwasher_ready BOOLEAN NOT NULL,
+    dishwasher_on BOOLEAN NOT NULL,
+    smart_plug_on BOOLEAN NOT NULL,
+    smart_plug_power DOUBLE PRECISION,
+    loads_power DOUBLE PRECISION,
+    available_surplus DOUBLE PRECISION
+);
+
+CREATE INDEX IF NOT EXISTS telemetry_state_sampled_at ON telemetry_state (sampled_at);
+
+CREATE TABLE IF NOT EXISTS telemetry_reading (
+    home_id VARCHAR(64) NOT NULL,
+    sampled_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    entity_id VARCHAR(255) NOT NULL,
+    numeric_value DOUBLE PRECISION,
+    raw_state VARCHAR(255)
+);
+
+CREATE INDEX IF NOT EXISTS telemetry_reading_sampled_at ON telemetry_reading (sampled_at);
@@ -0,0 +1,41 @@
+-- Telemetry store, written by TelemetryWriter with COPY.
+-- Tables are partitioned by day (UTC); the writer creates the partition of a day before its first
+-- rows, rows of days without a partition land in the default partition. Rows arrive in time order,
+-- so BRIN indexes on sampled_at stay small and selective.
+
+CREATE TABLE IF NOT EXISTS telemetry_state (
+    home_id VARCHAR(64) NOT NULL,
+    sampled_at TIMESTAMPTZ NOT NULL,
+    anyone_home BOOLEAN NOT NULL,
+    indoor_temperature DOUBLE PRECISION,
+    outdoor_temperature DOUBLE PRECISION,
+    pv_production DOUBLE PRECISION,
+    house_consumption DOUBLE PRECISION,
+    ac_on BOOLEAN NOT NULL,
+    ac_power DOUBLE PRECISION,
+    ev_connected BOOLEAN NOT NULL,
+    ev_charge_percentage DOUBLE PRECISION,
+    ev_charging_power DOUBLE PRECISION,
+    dishwasher_ready BOOLEAN NOT NULL,
+    dishwasher_on BOOLEAN NOT NULL,
+    smart_plug_on BOOLEAN NOT NULL,
+    smart_plug_power DOUBLE PRECISION,
+    loads_power DOUBLE PRECISION,
+    available_surplus DOUBLE PRECISION
+) PARTITION BY RANGE (sampled_at);
+
+CREATE TABLE IF NOT EXISTS telemetry_state_default PARTITION OF telemetry_state DEFAULT;
+
+CREATE INDEX IF NOT EXISTS telemetry_state_sampled_at_brin ON telemetry_state USING BRIN (sampled_at);
+
+CREATE TABLE IF NOT EXISTS telemetry_reading (
+    home_id VARCHAR(64) NOT NULL,
+    sampled_at TIMESTAMPTZ NOT NULL,
+    entity_id VARCHAR(255) NOT NULL,
+    numeric_value DOUBLE PRECISION,
+    raw_state VARCHAR(255)
+) PARTITION BY RANGE (sampled_at);
+
+CREATE TABLE IF NOT EXISTS telemetry_reading_default PARTITION OF telemetry_reading DEFAULT;
+
+CREATE INDEX IF NOT EXISTS telemetry_reading_sampled_at_brin ON telemetry_reading USING BRIN (sampled_at);
@@ -0,0 +1,110 @@
+package com.mjurczyga.iot_server.client.home_assistant;
+
+import com.mjurczyga.iot_server.config.HomeAssistantConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerRegistryTest {
+
+    private static final String ENTITY = "sensor.pv_power";
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger subscriptions = new AtomicInteger();
+    private CircuitBreakerRegistry breakers;
+
+    @BeforeEach
+    void setUp() {
+        HomeAssistantConfig.Breaker config = new HomeAssistantConfig.Breaker();
+        config.setFailureThreshold(3);
+        config.setOpenDuration(Duration.ofSeconds(10));
+        breakers = new CircuitBreakerRegistry(config, clock::get);
+    }
+
+    private Mono<String> failing() {
+        return Mono.defer(() -> {
+            subscriptions.incrementAndGet();
+            return Mono.error(new IllegalStateException("connection refused"));
+        });
+    }
+
+    private Mono<String> succeeding() {
+        return Mono.defer(() -> {
+            subscriptions.incrementAndGet();
+            clock.addAndGet(Duration.ofMillis(20).toNanos());
+            return Mono.just("ok");
+        });
+    }
+
+    private static void assertCircuitOpen(Mono<String> call, String breaker) {
+        CircuitOpenException e = assertThrows(CircuitOpenException.class, call::block);
+        assertTrue(e.getMessage().contains(breaker), e.getMessage());
+    }
+
+    @Test
+    void protect_shouldOpenEntityAndHomeBreakerAfterFailures() {
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IllegalStateException.class, () -> breakers.protect(ENTITY, failing()).block());
+        }
+
+        assertCircuitOpen(breakers.protect(ENTITY, failing()), CircuitBreakerRegistry.HOME_BREAKER);
+        assertCircuitOpen(breakers.protect("sensor.other", succeeding()), CircuitBreakerRegistry.HOME_BREAKER);
+        assertEquals(3, subscriptions.get());
+    }
+
+    @Test
+    void protect_shouldIgnoreClientErrors() {
+        for (int i = 0; i < 5; i++) {
+            Mono<String> notFound = Mono.error(WebClientResponseException.create(
+                    HttpStatus.NOT_FOUND.value(), "Not Found", new HttpHeaders(), new byte[0], StandardCharsets.UTF_8));
+            assertThrows(WebClientResponseException.class, () -> breakers.protect(ENTITY, notFound).block());
+        }
+
+        assertEquals("ok", breakers.protect(ENTITY, succeeding()).block());
+    }
+
+    @Test
+    void protect_shouldProbeAfterOpenDurationAndClose() {
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IllegalStateException.class, () -> breakers.protect(ENTITY, failing()).block());
+        }
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+
+        assertEquals("ok", breakers.protect(ENTITY, succeeding()).block());
+
+        assertEquals(CircuitBreaker.State.CLOSED, breakers.getHomeBreaker().getStatus().getState());
+        assertEquals("ok", breakers.protect(ENTITY, succeeding()).block());
+    }
+
+    @Test
+    void protect_shouldRecordLatencyFromClock() {
+        for (int i = 0; i < 10; i++) {
+            breakers.protect(ENTITY, succeeding()).block();
+        }
+
+        assertEquals(20.0, breakers.getHomeBreaker().getStatus().getP50LatencyMillis(), 0.001);
+    }
+
+    @Test
+    void protectHome_shouldUseHomeBreakerOnly() {
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IllegalStateException.class, () -> breakers.protectHome(failing()).block());
+        }
+
+        List<CircuitBreaker.Status> statuses = breakers.getStatuses();
+        assertEquals(1, statuses.size());
+        assertEquals(CircuitBreaker.State.OPEN, statuses.get(0).getState());
+        assertCircuitOpen(breakers.protect(ENTITY, succeeding()), CircuitBreakerRegistry.HOME_BREAKER);
+    }
+}
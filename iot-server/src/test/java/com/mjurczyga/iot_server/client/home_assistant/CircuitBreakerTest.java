@@ -0,0 +1,104 @@
+package com.mjurczyga.iot_server.client.home_assistant;
+
+import com.mjurczyga.iot_server.config.HomeAssistantConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private HomeAssistantConfig.Breaker config;
+
+    @BeforeEach
+    void setUp() {
+        config = new HomeAssistantConfig.Breaker();
+        config.setFailureThreshold(3);
+        config.setOpenDuration(Duration.ofMillis(50));
+        config.setMinSamples(10);
+        config.setMinTimeout(Duration.ofMillis(100));
+        config.setMaxTimeout(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void breaker_shouldOpenAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("sensor.test", config, clock::get);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        assertTrue(breaker.tryAcquire());
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getStatus().getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void openBreaker_shouldLetSingleProbeThroughAfterOpenDuration() {
+        CircuitBreaker breaker = new CircuitBreaker("sensor.test", config, clock::get);
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure();
+        }
+
+        clock.addAndGet(Duration.ofMillis(49).toNanos());
+        assertFalse(breaker.tryAcquire());
+
+        clock.addAndGet(Duration.ofMillis(1).toNanos());
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getStatus().getState());
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onSuccess(1_000_000);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getStatus().getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void failedProbe_shouldOpenBreakerAgain() {
+        CircuitBreaker breaker = new CircuitBreaker("sensor.test", config, clock::get);
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure();
+        }
+        clock.addAndGet(Duration.ofMillis(50).toNanos());
+        assertTrue(breaker.tryAcquire());
+
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getStatus().getState());
+        assertFalse(breaker.tryAcquire());
+
+        // The open duration starts over with the failed probe
+        clock.addAndGet(Duration.ofMillis(49).toNanos());
+        assertFalse(breaker.tryAcquire());
+        clock.addAndGet(Duration.ofMillis(1).toNanos());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void timeout_shouldFollowLatencyPercentile() {
+        CircuitBreaker breaker = new CircuitBreaker("sensor.test", config, clock::get);
+        assertEquals(Duration.ofSeconds(5), breaker.getTimeout());
+
+        for (int i = 0; i < 20; i++) {
+            breaker.onSuccess(Duration.ofMillis(200).toNanos());
+        }
+
+        // p99 of 200ms * multiplier 2.0
+        assertEquals(Duration.ofMillis(400), breaker.getTimeout());
+    }
+
+    @Test
+    void timeout_shouldBeClampedToMinTimeout() {
+        CircuitBreaker breaker = new CircuitBreaker("sensor.test", config, clock::get);
+
+        for (int i = 0; i < 20; i++) {
+            breaker.onSuccess(Duration.ofMillis(1).toNanos());
+        }
+
+        assertEquals(Duration.ofMillis(100), breaker.getTimeout());
+    }
+}
@@ -0,0 +1,95 @@
+package com.mjurczyga.iot_server.client.home_assistant;
+
+import com.mjurczyga.iot_server.client.response.HomeAssistantStateResponse;
+import com.mjurczyga.iot_server.config.HomeAssistantConfig;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityStateCacheTest {
+
+    private final HomeAssistantConfig.Cache config = new HomeAssistantConfig.Cache();
+
+    EntityStateCacheTest() {
+        config.setDefaultTtl(Duration.ofMinutes(1));
+        config.setMaxSize(3);
+    }
+
+    private static HomeAssistantStateResponse stateOf(String entityId, String state) {
+        HomeAssistantStateResponse response = new HomeAssistantStateResponse();
+        response.setEntityId(entityId);
+        response.setState(state);
+        return response;
+    }
+
+    @Test
+    void get_shouldServeFreshEntryWithoutLoading() {
+        EntityStateCache cache = new EntityStateCache(config);
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            cache.get("sensor.a", id -> {
+                loads.incrementAndGet();
+                return Mono.just(stateOf(id, "1"));
+            }).block();
+        }
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void put_shouldEvictLeastRecentlyUsedEntry() {
+        EntityStateCache cache = new EntityStateCache(config);
+        cache.putAll(List.of(stateOf("sensor.a", "1"), stateOf("sensor.b", "2"), stateOf("sensor.c", "3")));
+
+        // Reading a makes b the least recently used entry
+        cache.get("sensor.a", id -> Mono.error(new AssertionError("a is cached"))).block();
+        cache.putAll(List.of(stateOf("sensor.d", "4")));
+
+        assertEquals(3, cache.size());
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("sensor.b", id -> {
+            loads.incrementAndGet();
+            return Mono.just(stateOf(id, "2"));
+        }).block();
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void put_shouldStayWithinMaxSizeUnderConcurrentWrites() throws InterruptedException {
+        config.setMaxSize(100);
+        EntityStateCache cache = new EntityStateCache(config);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+
+        for (int thread = 0; thread < 8; thread++) {
+            int offset = thread * 1_000;
+            executor.submit(() -> {
+                start.await();
+                List<HomeAssistantStateResponse> states = new ArrayList<>();
+                for (int i = 0; i < 1_000; i++) {
+                    states.add(stateOf("sensor.e" + (offset + i), "1"));
+                }
+                for (HomeAssistantStateResponse state : states) {
+                    cache.putAll(List.of(state));
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(100, cache.size());
+    }
+}
@@ -0,0 +1,108 @@
+package com.mjurczyga.iot_server.client.home_assistant;
+
+import com.mjurczyga.iot_server.client.response.HomeAssistantStateResponse;
+import com.mjurczyga.iot_server.config.EntityMapping;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityStateTableTest {
+
+    private static final String INDOOR = "sensor.153931628518786_indoor_temperature";
+
+    private final EntityStateTable table = new EntityStateTable(new EntityMapping());
+
+    private HomeAssistantStateResponse stateOf(String entityId, String state) {
+        HomeAssistantStateResponse response = new HomeAssistantStateResponse();
+        response.setEntityId(entityId);
+        response.setState(state);
+        return response;
+    }
+
+    @Test
+    void newTable_shouldNotBeSynced() {
+        assertFalse(table.isSynced());
+        assertEquals(0, table.toSnapshot().size());
+    }
+
+    @Test
+    void resync_shouldKeepOnlyTrackedEntities() {
+        table.resync(List.of(
+                stateOf(INDOOR, "21.5"),
+                stateOf("light.kitchen", "on")
+        ));
+
+        assertTrue(table.isSynced());
+        assertEquals(1, table.toSnapshot().size());
+        assertEquals("21.5", table.toSnapshot().getIndoorTemperature().getState());
+    }
+
+    @Test
+    void update_shouldApplyStateChanges() {
+        table.resync(List.of(stateOf(INDOOR, "21.5")));
+
+        table.update(INDOOR, stateOf(INDOOR, "22.0"));
+        table.update("light.kitchen", stateOf("light.kitchen", "off"));
+
+        assertEquals("22.0", table.toSnapshot().getIndoorTemperature().getState());
+        assertFalse(table.toSnapshot().contains("light.kitchen"));
+    }
+
+    @Test
+    void update_withNullState_shouldRemoveEntity() {
+        table.resync(List.of(stateOf(INDOOR, "21.5")));
+
+        table.update(INDOOR, null);
+
+        assertFalse(table.toSnapshot().getIndoorTemperature().isAvailable());
+    }
+
+    @Test
+    void markOutOfSync_shouldClearSyncedFlag() {
+        table.resync(List.of());
+
+        table.markOutOfSync();
+
+        assertFalse(table.isSynced());
+    }
+
+    @Test
+    void update_shouldNotifyListenersOfTrackedEntities() {
+        List<String> changed = new ArrayList<>();
+        table.addListener((entityId, state) -> changed.add(entityId));
+
+        table.update(INDOOR, stateOf(INDOOR, "22.0"));
+        table.update("light.kitchen", stateOf("light.kitchen", "off"));
+
+        assertEquals(List.of(INDOOR), changed);
+    }
+
+    @Test
+    void resync_shouldNotifyOnlyChangedAndRemovedEntities() {
+        String outdoor = new EntityMapping().getOutdoorTemperature();
+        table.resync(List.of(stateOf(INDOOR, "21.5"), stateOf(outdoor, "12.0")));
+        List<String> changed = new ArrayList<>();
+        table.addListener((entityId, state) -> changed.add(entityId + "=" + (state != null ? state.getState() : null)));
+
+        table.resync(List.of(stateOf(INDOOR, "21.5")));
+        table.resync(List.of(stateOf(INDOOR, "22.0")));
+
+        assertEquals(List.of(outdoor + "=null", INDOOR + "=22.0"), changed);
+    }
+
+    @Test
+    void resync_shouldSwapInCompleteTable() {
+        table.resync(List.of(stateOf(INDOOR, "21.5")));
+        List<Integer> sizesSeen = new ArrayList<>();
+        table.addListener((entityId, state) -> sizesSeen.add(table.toSnapshot().size()));
+
+        String outdoor = new EntityMapping().getOutdoorTemperature();
+        table.resync(List.of(stateOf(INDOOR, "22.0"), stateOf(outdoor, "12.0")));
+
+        // Listeners run after the swap and see the whole new table
+        assertEquals(List.of(2, 2), sizesSeen);
+    }
+}
@@ -1,21 +1,28 @@
 package com.mjurczyga.iot_server.client.home_assistant;
 
 import com.mjurczyga.iot_server.client.response.HomeAssistantStateResponse;
+import com.mjurczyga.iot_server.config.EntityMapping;
+import com.mjurczyga.iot_server.config.HomeAssistantConfig;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -40,11 +47,15 @@ class HomeAssistantClientTest {
     @Mock
     private WebClient.ResponseSpec responseSpec;
 
-    @InjectMocks
+    private HomeAssistantConfig homeAssistantConfig;
+
     private HomeAssistantClient homeAssistantClient;
 
     @BeforeEach
     void setUp() {
+        homeAssistantConfig = new HomeAssistantConfig();
+        homeAssistantClient = new HomeAssistantClient(webClient, homeAssistantConfig);
+
         when(webClient.get()).thenReturn(requestHeadersUriSpec);
         when(requestHeadersUriSpec.uri(anyString())).thenReturn(requestHeadersSpec);
         when(requestHeadersSpec.retrieve()).thenReturn(responseSpec);
@@ -60,6 +71,13 @@ class HomeAssistantClientTest {
         when(responseSpec.bodyToMono(HomeAssistantStateResponse.class)).thenReturn(Mono.just(response));
     }
 
+    private HomeAssistantStateResponse stateOf(String entityId, String state) {
+        HomeAssistantStateResponse response = new HomeAssistantStateResponse();
+        response.setEntityId(entityId);
+        response.setState(state);
+        return response;
+    }
+
     private void mockCallService(String expectedResponse) {
         when(responseSpec.bodyToMono(String.class)).thenReturn(Mono.just(expectedResponse));
     }
@@ -228,4 +246,77 @@ class HomeAssistantClientTest {
         assertTrue(result.contains("Unexpected error:"));
         assertTrue(result.contains("Connection timed out"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void getSnapshot_shouldResolveEntitiesFromSingleResponse() {
+        when(responseSpec.bodyToFlux(HomeAssistantStateResponse.class)).thenReturn(Flux.just(
+                stateOf("sensor.153931628518786_indoor_temperature", "21.5"),
+                stateOf("sensor.153931628518786_outdoor_temperature", "15.0"),
+                stateOf("device_tracker.iphone_jan", "home")
+        ));
+
+        HomeAssistantSnapshot snapshot = homeAssistantClient.getSnapshot();
+
+        assertEquals(3, snapshot.size());
+        assertEquals("21.5", snapshot.getIndoorTemperature().getState());
+        assertEquals("15.0", snapshot.getOutdoorTemperature().getState());
+        assertEquals("home", snapshot.getPresence().getState());
+        assertFalse(snapshot.getTemporaryPvProduction().isAvailable());
+    }
+
+    @Test
+    void fetchControlLoopEntities_shouldFetchEveryEntity() {
+        mockGetEntityState("42");
+
+        HomeAssistantSnapshot snapshot = homeAssistantClient.fetchControlLoopEntities(Duration.ofSeconds(1)).block();
+
+        assertEquals(new EntityMapping().controlLoopEntities().size(), snapshot.size());
+        assertEquals("42", snapshot.getIndoorTemperature().getState());
+        assertEquals("42", snapshot.getTemporaryPvProduction().getState());
+    }
+
+    @Test
+    void fetchControlLoopEntities_shouldSkipEntitiesExceedingTimeout() {
+        when(responseSpec.bodyToMono(HomeAssistantStateResponse.class)).thenReturn(Mono.never());
+
+        HomeAssistantSnapshot snapshot = homeAssistantClient.fetchControlLoopEntities(Duration.ofMillis(50)).block();
+
+        assertEquals(0, snapshot.size());
+        assertFalse(snapshot.getIndoorTemperature().isAvailable());
+    }
+
+    @Test
+    void getNextDawn_shouldBeServedFromCache_whenTtlConfigured() {
+        homeAssistantConfig.getCache().getTtl().put("sensor.sun_next_dawn", Duration.ofMinutes(10));
+        homeAssistantClient = new HomeAssistantClient(webClient, homeAssistantConfig);
+        mockGetEntityState("2025-11-05T06:30:00+00:00");
+
+        homeAssistantClient.getNextDawn();
+        String result = homeAssistantClient.getNextDawn();
+
+        assertEquals("2025-11-05T06:30:00+00:00", result);
+        verify(webClient, times(1)).get();
+    }
+
+    @Test
+    void getIndoorTemperature_shouldNotBeCached_withoutTtl() {
+        mockGetEntityState("21.5");
+
+        homeAssistantClient.getIndoorTemperature();
+        homeAssistantClient.getIndoorTemperature();
+
+        verify(webClient, times(2)).get();
+    }
+
+    @Test
+    void getIndoorTemperature_shouldUseConfiguredEntityMapping() {
+        EntityMapping entities = new EntityMapping();
+        entities.setIndoorTemperature("sensor.living_room_temperature");
+        homeAssistantClient = new HomeAssistantClient(webClient, homeAssistantConfig, entities);
+        mockGetEntityState("20.0");
+
+        homeAssistantClient.getIndoorTemperature();
+
+        verify(requestHeadersUriSpec).uri("/api/states/sensor.living_room_temperature");
+    }
+}
@@ -0,0 +1,50 @@
+package com.mjurczyga.iot_server.client.home_assistant;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mjurczyga.iot_server.config.EntityMapping;
+import com.mjurczyga.iot_server.config.HomeAssistantConfig;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HomeAssistantEventSubscriberTest {
+
+    private final HomeAssistantConfig.WebSocket config = new HomeAssistantConfig.WebSocket();
+    private final HomeAssistantEventSubscriber subscriber;
+
+    HomeAssistantEventSubscriberTest() {
+        config.setReconnectMinBackoff(Duration.ofSeconds(1));
+        config.setReconnectMaxBackoff(Duration.ofSeconds(60));
+        subscriber = new HomeAssistantEventSubscriber("http://localhost:8123", "token",
+                new EntityStateTable(new EntityMapping()), config, new ObjectMapper());
+    }
+
+    @Test
+    void nextReconnectDelay_shouldDoubleUpToMaxBackoff() {
+        assertBetween(1_000, 1_500, subscriber.nextReconnectDelay());
+        assertBetween(2_000, 3_000, subscriber.nextReconnectDelay());
+        assertBetween(4_000, 6_000, subscriber.nextReconnectDelay());
+
+        for (int i = 0; i < 100; i++) {
+            subscriber.nextReconnectDelay();
+        }
+        assertEquals(Duration.ofSeconds(60), subscriber.nextReconnectDelay());
+    }
+
+    @Test
+    void resetBackoff_shouldStartOverAtMinBackoff() {
+        for (int i = 0; i < 10; i++) {
+            subscriber.nextReconnectDelay();
+        }
+
+        subscriber.resetBackoff();
+
+        assertBetween(1_000, 1_500, subscriber.nextReconnectDelay());
+    }
+
+    private static void assertBetween(long minMillis, long maxMillis, Duration delay) {
+        assertTrue(delay.toMillis() >= minMillis && delay.toMillis() <= maxMillis, "Delay " + delay);
+    }
+}
@@ -0,0 +1,69 @@
+package com.mjurczyga.iot_server.client.response;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntityValueTest {
+
+    private HomeAssistantStateResponse responseOf(String state) {
+        HomeAssistantStateResponse response = new HomeAssistantStateResponse();
+        response.setState(state);
+        return response;
+    }
+
+    @Test
+    void parseNumber_shouldParsePlainDecimals() {
+        assertEquals(21.5, EntityValue.parseNumber("21.5"));
+        assertEquals(-3.25, EntityValue.parseNumber("-3.25"));
+        assertEquals(1500.0, EntityValue.parseNumber("1500"));
+        assertEquals(0.1, EntityValue.parseNumber("0.1"));
+        assertEquals(42.0, EntityValue.parseNumber(" 42 "));
+        assertEquals(1.5e3, EntityValue.parseNumber("1.5e3"));
+    }
+
+    @Test
+    void parseNumber_shouldRejectNonNumbers() {
+        assertTrue(Double.isNaN(EntityValue.parseNumber("home")));
+        assertTrue(Double.isNaN(EntityValue.parseNumber("")));
+        assertTrue(Double.isNaN(EntityValue.parseNumber("-")));
+        assertTrue(Double.isNaN(EntityValue.parseNumber("1.2.3")));
+        assertTrue(Double.isNaN(EntityValue.parseNumber("2025-11-05T06:30:00+00:00")));
+    }
+
+    @Test
+    void of_shouldCaptureUnitAndLastChanged() {
+        HomeAssistantStateResponse response = responseOf("1234.5");
+        HomeAssistantStateResponse.Attributes attributes = new HomeAssistantStateResponse.Attributes();
+        attributes.setUnitOfMeasurement("W");
+        response.setAttributes(attributes);
+        response.setLastChanged("2025-11-05T06:30:00+00:00");
+
+        EntityValue value = EntityValue.of("sensor.power", response);
+
+        assertTrue(value.isAvailable());
+        assertEquals(1234.5, value.asDouble(0.0));
+        assertEquals("W", value.getUnitOfMeasurement());
+        assertEquals(Instant.parse("2025-11-05T06:30:00Z"), value.getLastChanged());
+    }
+
+    @Test
+    void of_shouldTreatUnavailableStatesAsUnavailable() {
+        assertEquals(EntityValue.Status.UNAVAILABLE, EntityValue.of("sensor.a", responseOf("unavailable")).getStatus());
+        assertEquals(EntityValue.Status.UNAVAILABLE, EntityValue.of("sensor.a", responseOf("unknown")).getStatus());
+        assertEquals(EntityValue.Status.UNAVAILABLE, EntityValue.of("sensor.a", null).getStatus());
+        assertEquals(20.0, EntityValue.of("sensor.a", responseOf("unavailable")).asDouble(20.0));
+    }
+
+    @Test
+    void error_shouldNeverBeReadAsNumber() {
+        EntityValue value = EntityValue.error("sensor.153931628518786_indoor_temperature",
+                "Error fetching state for sensor.153931628518786_indoor_temperature: 404");
+
+        assertTrue(value.isError());
+        assertFalse(value.isNumeric());
+        assertEquals(22.0, value.asDouble(22.0));
+    }
+}
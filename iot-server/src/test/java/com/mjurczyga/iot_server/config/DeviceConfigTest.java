@@ -0,0 +1,88 @@
+package com.mjurczyga.iot_server.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceConfigTest {
+
+    @Test
+    void copy_shouldCopyEverySetting() {
+        DeviceConfig config = new DeviceConfig();
+        config.setPvMaxProduction(9000.0);
+        config.setEvCurrentStep(1.0);
+        config.setMinOnTime(Duration.ofMinutes(10));
+        config.setAllocationStrategy(DeviceConfig.AllocationStrategy.OPTIMAL);
+        config.setLoads(List.of(new DeviceConfig.Load()));
+        config.updateCustomPriority(true, List.of("SMART_PLUG", "EV_CHARGER"));
+
+        DeviceConfig copy = config.copy();
+
+        assertEquals(config, copy);
+        assertNotSame(config.getLoads(), copy.getLoads());
+    }
+
+    @Test
+    void copy_shouldCopyEveryFieldWithNonDefaultValue() throws IllegalAccessException {
+        // Fails for a new field that copy() misses
+        DeviceConfig config = new DeviceConfig();
+        DeviceConfig defaults = new DeviceConfig();
+        for (Field field : DeviceConfig.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            field.setAccessible(true);
+            field.set(config, nonDefault(field.get(defaults)));
+            assertNotEquals(field.get(defaults), field.get(config), field.getName());
+        }
+
+        DeviceConfig copy = config.copy();
+
+        for (Field field : DeviceConfig.class.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers())) {
+                assertEquals(field.get(config), field.get(copy), field.getName());
+            }
+        }
+    }
+
+    private static Object nonDefault(Object value) {
+        if (value instanceof Double number) {
+            return number + 1.5;
+        }
+        if (value instanceof Integer number) {
+            return number + 1;
+        }
+        if (value instanceof Duration duration) {
+            return duration.plusSeconds(7);
+        }
+        if (value instanceof DeviceConfig.AllocationStrategy strategy) {
+            return strategy == DeviceConfig.AllocationStrategy.GREEDY
+                    ? DeviceConfig.AllocationStrategy.OPTIMAL
+                    : DeviceConfig.AllocationStrategy.GREEDY;
+        }
+        if (value instanceof List<?>) {
+            return List.of(new DeviceConfig.Load());
+        }
+        if (value instanceof PriorityPlan) {
+            return PriorityPlan.compile(true, List.of("SMART_PLUG", "EV_CHARGER"));
+        }
+        throw new AssertionError("No non-default value for " + value);
+    }
+
+    @Test
+    void copy_shouldBeIndependent() {
+        DeviceConfig config = new DeviceConfig();
+        DeviceConfig copy = config.copy();
+
+        copy.setSurplusBuffer(1000.0);
+        copy.updateCustomPriority(true, List.of("DISHWASHER"));
+
+        assertEquals(200.0, config.getSurplusBuffer());
+        assertFalse(config.isCustomPriorityEnabled());
+    }
+}
@@ -0,0 +1,57 @@
+package com.mjurczyga.iot_server.config;
+
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriorityPlanTest {
+
+    @Test
+    void compile_shouldSkipUnknownDevicesAndKeepConfiguredNames() {
+        PriorityPlan plan = PriorityPlan.compile(true, List.of("SMART_PLUG", "INVALID_DEVICE", "EV_CHARGER"));
+
+        assertTrue(plan.isCustomEnabled());
+        assertEquals(2, plan.size());
+        assertEquals(DeviceType.SMART_PLUG, plan.get(0));
+        assertEquals(DeviceType.EV_CHARGER, plan.get(1));
+        assertEquals(List.of("SMART_PLUG", "INVALID_DEVICE", "EV_CHARGER"), plan.getCustomOrder());
+    }
+
+    @Test
+    void getPriority_shouldReturnConfiguredIndex() {
+        PriorityPlan plan = PriorityPlan.compile(true, List.of("DISHWASHER", "AC_CLIMATE"));
+
+        assertEquals(0, plan.getPriority("DISHWASHER"));
+        assertEquals(1, plan.getPriority(DeviceType.AC_CLIMATE));
+        assertEquals(999, plan.getPriority(DeviceType.SMART_PLUG));
+        assertEquals(999, plan.getPriority("UNKNOWN_DEVICE"));
+    }
+
+    @Test
+    void compile_shouldNotBeAffectedByLaterChangesOfTheSourceList() {
+        List<String> order = new ArrayList<>(List.of("EV_CHARGER", "SMART_PLUG"));
+        PriorityPlan plan = PriorityPlan.compile(false, order);
+
+        order.clear();
+
+        assertEquals(2, plan.size());
+        assertThrows(UnsupportedOperationException.class, () -> plan.getCustomOrder().add("DISHWASHER"));
+    }
+
+    @Test
+    void deviceConfig_shouldPublishNewPlanOnUpdate() {
+        DeviceConfig config = new DeviceConfig();
+        PriorityPlan before = config.getPriorityPlan();
+
+        config.updateCustomPriority(true, List.of("SMART_PLUG", "EV_CHARGER", "AC_CLIMATE", "DISHWASHER"));
+
+        assertNotSame(before, config.getPriorityPlan());
+        assertTrue(config.isCustomPriorityEnabled());
+        assertEquals(DeviceType.SMART_PLUG, config.getPriorityPlan().get(0));
+        assertEquals(3, config.getDevicePriority("DISHWASHER"));
+    }
+}
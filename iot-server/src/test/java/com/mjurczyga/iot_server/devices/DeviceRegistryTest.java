@@ -0,0 +1,77 @@
+package com.mjurczyga.iot_server.devices;
+
+import com.mjurczyga.iot_server.config.DeviceConfig;
+import com.mjurczyga.iot_server.config.EntityMapping;
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceRegistryTest {
+
+    private DeviceConfig.Load load(String id, int priority, double power, double maxPower) {
+        DeviceConfig.Load load = new DeviceConfig.Load();
+        load.setId(id);
+        load.setPriority(priority);
+        load.setPower(power);
+        load.setMaxPower(maxPower);
+        return load;
+    }
+
+    @Test
+    void shouldRegisterBuiltInDevices() {
+        EntityMapping entities = new EntityMapping();
+        entities.setEvChargerPower("number.ev_charger_power");
+
+        DeviceRegistry registry = new DeviceRegistry(new DeviceConfig(), entities);
+
+        assertEquals(4, registry.getBuiltIn().size());
+        DevicePlugin ev = registry.find(DeviceType.EV_CHARGER.name());
+        assertTrue(ev.isConfigured());
+        assertTrue(ev.getPowerModel().isContinuous());
+        assertSame(DeviceExecutor.POWER_SETPOINT, ev.getExecutor());
+        assertFalse(registry.find(DeviceType.DISHWASHER.name()).isConfigured());
+        assertEquals(Controllability.RUN_TO_COMPLETION, registry.find(DeviceType.DISHWASHER.name()).getControllability());
+    }
+
+    @Test
+    void shouldOrderLoadsByPriority() {
+        DeviceConfig config = new DeviceConfig();
+        config.getLoads().add(load("boiler", 20, 2000.0, 0.0));
+        config.getLoads().add(load("heat-pump", 10, 0.0, 3000.0));
+        config.getLoads().add(load("pool-pump", 10, 800.0, 0.0));
+        EntityMapping entities = new EntityMapping();
+        entities.getLoads().put("heat-pump", "number.heat_pump_power");
+
+        DeviceRegistry registry = new DeviceRegistry(config, entities);
+
+        assertEquals(List.of("heat-pump", "pool-pump", "boiler"),
+                registry.getLoads().stream().map(DevicePlugin::getId).toList());
+        DevicePlugin heatPump = registry.find("heat-pump");
+        assertEquals(DeviceType.LOAD, heatPump.getType());
+        assertEquals("number.heat_pump_power", heatPump.getEntityId());
+        assertTrue(heatPump.getPowerModel().isContinuous());
+        assertFalse(registry.find("boiler").getPowerModel().isContinuous());
+        assertEquals(2000.0, registry.find("boiler").getPowerModel().getRatedPower());
+        assertNull(registry.find("sauna"));
+    }
+
+    @Test
+    void shouldRejectDuplicateIds() {
+        DeviceConfig config = new DeviceConfig();
+        config.getLoads().add(load("boiler", 10, 2000.0, 0.0));
+        config.getLoads().add(load("boiler", 20, 2000.0, 0.0));
+
+        assertThrows(IllegalStateException.class, () -> new DeviceRegistry(config, new EntityMapping()));
+    }
+
+    @Test
+    void shouldRejectLoadsClashingWithBuiltInDevices() {
+        DeviceConfig config = new DeviceConfig();
+        config.getLoads().add(load("SMART_PLUG", 10, 500.0, 0.0));
+
+        assertThrows(IllegalStateException.class, () -> new DeviceRegistry(config, new EntityMapping()));
+    }
+}
@@ -0,0 +1,129 @@
+package com.mjurczyga.iot_server.home;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mjurczyga.iot_server.client.home_assistant.EntityStateTable;
+import com.mjurczyga.iot_server.client.home_assistant.HomeAssistantClient;
+import com.mjurczyga.iot_server.config.ControlLoopConfig;
+import com.mjurczyga.iot_server.config.DeviceConfig;
+import com.mjurczyga.iot_server.config.EntityMapping;
+import com.mjurczyga.iot_server.config.HomeAssistantConfig;
+import com.mjurczyga.iot_server.config.HomesConfig;
+import com.mjurczyga.iot_server.config.RecordingConfig;
+import com.mjurczyga.iot_server.config.TelemetryConfig;
+import com.mjurczyga.iot_server.devices.DeviceRegistry;
+import com.mjurczyga.iot_server.logic.PriorityCalculator;
+import com.mjurczyga.iot_server.service.DeviceExecutorService;
+import com.mjurczyga.iot_server.service.SystemStateService;
+import com.mjurczyga.iot_server.telemetry.TelemetryWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class HomeRegistryTest {
+
+    @Mock
+    private HomeAssistantClient homeAssistantClient;
+
+    @Mock
+    private SystemStateService systemStateService;
+
+    @Mock
+    private DeviceExecutorService executorService;
+
+    private final HomesConfig homesConfig = new HomesConfig();
+    private final DeviceConfig deviceConfig = new DeviceConfig();
+    private final EntityStateTable entityStateTable = new EntityStateTable(new EntityMapping());
+    private final PriorityCalculator priorityCalculator = new PriorityCalculator(deviceConfig);
+
+    private HomeRegistry registry(HomesConfig.Home... homes) {
+        homesConfig.setHomes(List.of(homes));
+        HomeAssistantConfig homeAssistantConfig = new HomeAssistantConfig();
+        RecordingConfig recordingConfig = new RecordingConfig();
+        recordingConfig.setDirectory("recordings");
+        HomeRegistry registry = new HomeRegistry(homesConfig, homeAssistantConfig, new ControlLoopConfig(),
+                recordingConfig, new ReactorClientHttpConnector(), new ObjectMapper(),
+                new TelemetryWriter(new TelemetryConfig(), null),
+                deviceConfig, new DeviceRegistry(deviceConfig, new EntityMapping()), homeAssistantClient,
+                entityStateTable, systemStateService, priorityCalculator, executorService);
+        registry.registerHomes();
+        return registry;
+    }
+
+    private static HomesConfig.Home home(String id) {
+        HomesConfig.Home home = new HomesConfig.Home();
+        home.setId(id);
+        home.setBaseUrl("http://" + id + ".local:8123");
+        home.setToken("token-" + id);
+        return home;
+    }
+
+    @Test
+    void registerHomes_shouldRegisterDefaultHomeFirst() {
+        HomeRegistry registry = registry(home("cabin"), home("flat"));
+
+        assertEquals(List.of(HomeRegistry.DEFAULT_HOME_ID, "cabin", "flat"),
+                registry.getHomes().stream().map(HomeContext::getId).toList());
+        HomeContext defaultHome = registry.getDefaultHome();
+        assertSame(homeAssistantClient, defaultHome.getHomeAssistantClient());
+        assertSame(priorityCalculator, defaultHome.getPriorityCalculator());
+        assertSame(entityStateTable, defaultHome.getEntityStateTable());
+        assertNull(defaultHome.getStateRecorder());
+    }
+
+    @Test
+    void registerHomes_shouldGiveAdditionalHomesTheirOwnComponents() {
+        HomesConfig.Home cabin = home("cabin");
+        HomeRegistry registry = registry(cabin);
+
+        HomeContext home = registry.findHome("cabin").orElseThrow();
+        HomeContext defaultHome = registry.getDefaultHome();
+        assertSame(cabin.getDevices(), home.getDeviceConfig());
+        assertNotSame(defaultHome.getHomeAssistantClient(), home.getHomeAssistantClient());
+        assertNotSame(defaultHome.getEntityStateTable(), home.getEntityStateTable());
+        assertNotSame(defaultHome.getPriorityCalculator(), home.getPriorityCalculator());
+        assertNotSame(defaultHome.getDecisionLane(), home.getDecisionLane());
+        assertEquals("cabin", home.getControlTrigger().getHomeId());
+    }
+
+    @Test
+    void registerHomes_shouldRejectDuplicateIds() {
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> registry(home("cabin"), home("cabin")));
+        assertTrue(e.getMessage().contains("cabin"));
+
+        assertThrows(IllegalStateException.class, () -> registry(home(HomeRegistry.DEFAULT_HOME_ID)));
+    }
+
+    @Test
+    void registerHomes_shouldRejectHomesWithoutIdOrBaseUrl() {
+        assertThrows(IllegalStateException.class, () -> registry(home(" ")));
+
+        HomesConfig.Home noUrl = home("cabin");
+        noUrl.setBaseUrl(null);
+        assertThrows(IllegalStateException.class, () -> registry(noUrl));
+    }
+
+    @Test
+    void findHome_shouldReturnEmptyForUnknownHome() {
+        HomeRegistry registry = registry(home("cabin"));
+
+        assertTrue(registry.findHome(HomeRegistry.DEFAULT_HOME_ID).isPresent());
+        assertTrue(registry.findHome("cabin").isPresent());
+        assertTrue(registry.findHome("villa").isEmpty());
+    }
+
+    @Test
+    void getRecordingDirectory_shouldResolveHomeId() {
+        HomeRegistry registry = registry();
+
+        assertEquals(Path.of("recordings", "cabin"), registry.getRecordingDirectory("cabin"));
+    }
+}
@@ -0,0 +1,271 @@
+package com.mjurczyga.iot_server.home;
+
+import com.mjurczyga.iot_server.client.home_assistant.EntityStateTable;
+import com.mjurczyga.iot_server.config.ControlLoopConfig;
+import com.mjurczyga.iot_server.config.EntityMapping;
+import com.mjurczyga.iot_server.service.ControlTrigger;
+import com.mjurczyga.iot_server.service.EnergyManagementService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class HomeSchedulerTest {
+
+    @Mock
+    private HomeRegistry homeRegistry;
+
+    @Mock
+    private EnergyManagementService energyManagementService;
+
+    private final AtomicLong clock = new AtomicLong(Duration.ofHours(1).toNanos());
+    private final ManualExecutor workers = new ManualExecutor();
+    private final List<String> cycles = new CopyOnWriteArrayList<>();
+    private ControlLoopConfig config;
+    private HomeScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        config = new ControlLoopConfig();
+        config.setShards(2);
+        config.setInitialDelay(Duration.ZERO);
+        doAnswer(invocation -> cycles.add(invocation.<HomeContext>getArgument(0).getId()))
+                .when(energyManagementService).runControlCycle(any());
+        scheduler = new HomeScheduler(homeRegistry, energyManagementService, config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.stop();
+    }
+
+    private HomeContext home(String id) {
+        EntityMapping entities = new EntityMapping();
+        return HomeContext.builder()
+                .id(id)
+                .entityStateTable(new EntityStateTable(entities))
+                .controlTrigger(new ControlTrigger(id, entities, config, Duration.ZERO, clock::get))
+                .build();
+    }
+
+    private void startWith(ExecutorService executor, String... ids) {
+        List<HomeContext> homes = new ArrayList<>();
+        for (String id : ids) {
+            homes.add(home(id));
+        }
+        when(homeRegistry.getHomes()).thenReturn(homes);
+        scheduler.start(mock(ScheduledExecutorService.class), executor, clock::get);
+    }
+
+    @Test
+    void tick_shouldWalkShardsInTurn() {
+        startWith(workers, "a", "b", "c", "d");
+
+        scheduler.tick();
+        workers.runAll();
+        assertEquals(List.of("a", "c"), cycles);
+
+        scheduler.tick();
+        workers.runAll();
+        assertEquals(List.of("a", "c", "b", "d"), cycles);
+        assertEquals(4, scheduler.getCompletedCycles());
+    }
+
+    @Test
+    void tick_shouldRunOnlyDueHomes() {
+        startWith(workers, "a", "b");
+        scheduler.tick();
+        scheduler.tick();
+        workers.runAll();
+
+        // Both homes ran on startup and are not due again before max-interval
+        scheduler.tick();
+        scheduler.tick();
+        assertEquals(0, workers.pending());
+
+        clock.addAndGet(config.getMaxInterval().toNanos());
+        scheduler.tick();
+        workers.runAll();
+        assertEquals(List.of("a", "b", "a"), cycles);
+    }
+
+    @Test
+    void tick_shouldCountOverrunOncePerRunningCycle() {
+        config.setShards(1);
+        config.setMaxInterval(Duration.ZERO);
+        startWith(workers, "a");
+
+        scheduler.tick();
+        scheduler.tick();
+        scheduler.tick();
+
+        assertEquals(1, workers.pending());
+        assertEquals(1, scheduler.getOverruns());
+
+        workers.runAll();
+        scheduler.tick();
+        assertEquals(1, workers.pending());
+        assertEquals(1, scheduler.getOverruns());
+
+        scheduler.tick();
+        assertEquals(2, scheduler.getOverruns());
+    }
+
+    @Test
+    void runCycle_shouldReportCyclesExceedingBudget() {
+        config.setShards(1);
+        config.setCycleBudget(Duration.ofSeconds(10));
+        doAnswer(invocation -> clock.addAndGet(Duration.ofSeconds(11).toNanos()))
+                .when(energyManagementService).runControlCycle(any());
+        startWith(workers, "a");
+
+        scheduler.tick();
+        workers.runAll();
+
+        assertEquals(1, scheduler.getSlowCycles());
+        assertEquals(1, scheduler.getCompletedCycles());
+    }
+
+    @Test
+    void tick_shouldTrackLagBehindPlannedTime() {
+        config.setShards(1);
+        config.setTickInterval(Duration.ofMillis(250));
+        startWith(workers, "a");
+
+        scheduler.tick();
+        clock.addAndGet(Duration.ofMillis(400).toNanos());
+        scheduler.tick(); // Planned 250ms after the first tick
+
+        assertEquals(150.0, scheduler.getMaxTickLagMillis(), 0.001);
+    }
+
+    @Test
+    void runCycle_shouldLimitConcurrentCycles() throws InterruptedException {
+        config.setShards(1);
+        config.setMaxConcurrentCycles(2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch twoRunning = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        doAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            twoRunning.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            running.decrementAndGet();
+            done.countDown();
+            return null;
+        }).when(energyManagementService).runControlCycle(any());
+        startWith(Executors.newFixedThreadPool(4), "a", "b", "c", "d");
+
+        scheduler.tick();
+
+        assertTrue(twoRunning.await(5, TimeUnit.SECONDS));
+        // The other two cycles wait for a permit
+        assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(2, running.get());
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    void createWorkers_shouldUseVirtualOrPlatformThreads() throws Exception {
+        config.setVirtualThreads(true);
+        ExecutorService virtual = HomeScheduler.createWorkers(config);
+        config.setVirtualThreads(false);
+        config.setCarrierThreads(2);
+        ExecutorService platform = HomeScheduler.createWorkers(config);
+        try {
+            Future<Thread> onVirtual = virtual.submit(Thread::currentThread);
+            Future<Thread> onPlatform = platform.submit(Thread::currentThread);
+
+            assertTrue(onVirtual.get(5, TimeUnit.SECONDS).isVirtual());
+            assertFalse(onPlatform.get(5, TimeUnit.SECONDS).isVirtual());
+            assertTrue(onPlatform.get().getName().startsWith("control-cycle-"));
+        } finally {
+            virtual.shutdownNow();
+            platform.shutdownNow();
+        }
+    }
+
+    /**
+     * Queues tasks until the test runs them on its own thread.
+     */
+    private static class ManualExecutor extends AbstractExecutorService {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+        private boolean shutdown;
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+
+        int pending() {
+            return tasks.size();
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            List<Runnable> remaining = new ArrayList<>(tasks);
+            tasks.clear();
+            return remaining;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
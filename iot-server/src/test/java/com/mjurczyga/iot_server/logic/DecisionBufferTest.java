@@ -0,0 +1,47 @@
+package com.mjurczyga.iot_server.logic;
+
+import com.mjurczyga.iot_server.model.DeviceDecision;
+import com.mjurczyga.iot_server.model.DeviceDecision.ActionType;
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecisionBufferTest {
+
+    @Test
+    void toDecision_shouldRenderReasonsAndExplanation() {
+        DecisionBuffer buffer = new DecisionBuffer();
+        buffer.mode("MAX_USAGE");
+        buffer.availableSurplus(4700.0);
+        buffer.add(DeviceType.EV_CHARGER, ActionType.SET_POWER, 4500.0, DecisionReason.EV_CHARGING, 4500.0, 50.0);
+        buffer.add(DeviceType.SMART_PLUG, ActionType.TURN_OFF, DecisionReason.SMART_PLUG_INSUFFICIENT_SURPLUS);
+        buffer.explanation(DecisionReason.MAX_USAGE, 5000.0, 200.0);
+
+        DeviceDecision decision = buffer.toDecision();
+
+        assertEquals("MAX_USAGE", decision.getMode());
+        assertEquals(4700.0, decision.getAvailableSurplus());
+        assertEquals(2, decision.getActions().size());
+        assertEquals(4500.0, decision.getActions().get(0).getTargetPower());
+        assertEquals("Charging with 4500W (50% charged)", decision.getActions().get(0).getReason());
+        assertNull(decision.getActions().get(1).getTargetPower());
+        assertEquals("Max usage mode: Utilizing 5000W from PV. Remaining surplus: 200W", decision.getExplanation());
+    }
+
+    @Test
+    void reset_shouldKeepCapacityAndClearContent() {
+        DecisionBuffer buffer = new DecisionBuffer();
+        for (int i = 0; i < 20; i++) {
+            buffer.add(DeviceType.DISHWASHER, ActionType.TURN_ON, DecisionReason.CLIMATE_IN_RANGE);
+        }
+        assertEquals(20, buffer.size());
+
+        buffer.reset();
+
+        assertEquals(0, buffer.size());
+        assertNull(buffer.getMode());
+        assertNull(buffer.renderExplanation());
+        assertTrue(buffer.toDecision().getActions().isEmpty());
+    }
+}
@@ -0,0 +1,41 @@
+package com.mjurczyga.iot_server.logic;
+
+import com.mjurczyga.iot_server.model.DeviceDecision.ActionType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DwellTrackerTest {
+
+    private static final long MINUTE = 60_000_000_000L;
+
+    @Test
+    void isHeld_shouldNotHoldDevicesWithUnknownHistory() {
+        DwellTracker tracker = new DwellTracker();
+        tracker.observe("SMART_PLUG", true, 0);
+
+        assertFalse(tracker.isHeld("SMART_PLUG", ActionType.TURN_OFF, 0, 5 * MINUTE, 2 * MINUTE));
+        assertFalse(tracker.isHeld("pool-pump", ActionType.TURN_ON, 0, 5 * MINUTE, 2 * MINUTE));
+    }
+
+    @Test
+    void isHeld_shouldHoldUntilMinimumOnTimeIsOver() {
+        DwellTracker tracker = new DwellTracker();
+        tracker.observe("SMART_PLUG", false, 0);
+        tracker.observe("SMART_PLUG", true, MINUTE);
+
+        assertTrue(tracker.isHeld("SMART_PLUG", ActionType.TURN_OFF, 3 * MINUTE, 5 * MINUTE, 2 * MINUTE));
+        assertFalse(tracker.isHeld("SMART_PLUG", ActionType.TURN_OFF, 6 * MINUTE, 5 * MINUTE, 2 * MINUTE));
+    }
+
+    @Test
+    void isHeld_shouldHoldUntilMinimumOffTimeIsOver() {
+        DwellTracker tracker = new DwellTracker();
+        tracker.observe("pool-pump", true, 0);
+        tracker.observe("pool-pump", false, MINUTE);
+
+        assertTrue(tracker.isHeld("pool-pump", ActionType.TURN_ON, 2 * MINUTE, 5 * MINUTE, 2 * MINUTE));
+        assertFalse(tracker.isHeld("pool-pump", ActionType.TURN_OFF, 2 * MINUTE, 5 * MINUTE, 2 * MINUTE));
+        assertFalse(tracker.isHeld("pool-pump", ActionType.TURN_ON, 3 * MINUTE, 5 * MINUTE, 2 * MINUTE));
+    }
+}
@@ -0,0 +1,116 @@
+package com.mjurczyga.iot_server.logic;
+
+import com.mjurczyga.iot_server.config.DeviceConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EvPowerControllerTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final DeviceConfig config = new DeviceConfig();
+    private EvPowerController controller;
+
+    @BeforeEach
+    void setUp() {
+        config.setEvMinPower(0.0);
+        config.setEvMaxPower(22000.0);
+        config.setEvCurrentStep(1.0);
+        controller = new EvPowerController(config);
+    }
+
+    @Test
+    void quantize_shouldRoundDownToWholeAmps() {
+        assertEquals(10 * 230.0, controller.quantize(2400.0), 1e-9);
+        assertEquals(32 * 230.0, controller.quantize(10000.0), 1e-9);
+        assertEquals(0.0, controller.quantize(6 * 230.0 - 1.0));
+    }
+
+    @Test
+    void quantize_shouldUseAllPhases() {
+        config.setEvPhases(3);
+
+        assertEquals(6 * 690.0, controller.quantize(4500.0), 1e-9);
+        assertEquals(0.0, controller.quantize(4000.0));
+    }
+
+    @Test
+    void quantize_shouldRespectPowerLimits() {
+        config.setEvMinPower(1400.0);
+        config.setEvMaxPower(3000.0);
+
+        // 1400W needs 7A, 3000W allows 13A
+        assertEquals(0.0, controller.quantize(1500.0));
+        assertEquals(7 * 230.0, controller.quantize(1700.0), 1e-9);
+        assertEquals(13 * 230.0, controller.quantize(5000.0), 1e-9);
+    }
+
+    @Test
+    void quantize_shouldBeContinuous_whenStepIsZero() {
+        config.setEvCurrentStep(0.0);
+        config.setEvMinPower(1400.0);
+        config.setEvMaxPower(7400.0);
+
+        assertEquals(2345.0, controller.quantize(2345.0));
+        assertEquals(0.0, controller.quantize(1000.0));
+    }
+
+    @Test
+    void regulate_shouldIgnoreIncreasesWithinDeadband() {
+        config.setEvDeadband(1.0);
+        controller.regulate(2400.0, 0L); // 10A
+
+        assertEquals(10 * 230.0, controller.regulate(2600.0, SECOND), 1e-9); // 11A possible
+        assertEquals(12 * 230.0, controller.regulate(2800.0, 2 * SECOND), 1e-9);
+    }
+
+    @Test
+    void regulate_shouldDecreaseImmediately() {
+        config.setEvDeadband(1.0);
+        controller.regulate(2400.0, 0L);
+
+        assertEquals(9 * 230.0, controller.regulate(2200.0, SECOND), 1e-9);
+        assertEquals(0.0, controller.regulate(1000.0, 2 * SECOND));
+    }
+
+    @Test
+    void regulate_shouldLimitRampUp() {
+        config.setEvRampRate(2.0);
+        controller.regulate(6 * 230.0, 0L);
+
+        assertEquals(8 * 230.0, controller.regulate(7000.0, SECOND), 1e-9);
+        assertEquals(28 * 230.0, controller.regulate(7000.0, 11 * SECOND), 1e-9);
+    }
+
+    @Test
+    void regulate_shouldStartAtMinimumCurrent_whenRampLimited() {
+        config.setEvRampRate(2.0);
+
+        assertEquals(6 * 230.0, controller.regulate(7000.0, 0L), 1e-9);
+        assertEquals(8 * 230.0, controller.regulate(7000.0, SECOND), 1e-9);
+    }
+
+    @Test
+    void regulate_shouldRampAgain_afterReset() {
+        config.setEvRampRate(2.0);
+        controller.regulate(7000.0, 0L);
+        controller.regulate(7000.0, 20 * SECOND);
+
+        // The car was reconnected, charging starts over at the minimum current
+        controller.reset();
+
+        assertEquals(6 * 230.0, controller.regulate(7000.0, 60 * SECOND), 1e-9);
+        assertEquals(10 * 230.0, controller.regulate(7000.0, 62 * SECOND), 1e-9);
+    }
+
+    @Test
+    void regulate_shouldRampAgain_afterStop() {
+        config.setEvRampRate(2.0);
+        controller.regulate(7000.0, 0L);
+        controller.regulate(1000.0, SECOND);
+
+        assertEquals(6 * 230.0, controller.regulate(7000.0, 60 * SECOND), 1e-9);
+    }
+}
@@ -0,0 +1,137 @@
+package com.mjurczyga.iot_server.logic;
+
+import com.mjurczyga.iot_server.config.DeviceConfig;
+import com.mjurczyga.iot_server.model.DeviceDecision;
+import com.mjurczyga.iot_server.model.DeviceDecision.ActionType;
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceType;
+import com.mjurczyga.iot_server.model.SystemState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OptimalSurplusAllocatorTest {
+
+    private static final List<DeviceType> ORDER = List.of(
+            DeviceType.EV_CHARGER, DeviceType.AC_CLIMATE, DeviceType.DISHWASHER, DeviceType.SMART_PLUG);
+
+    private final DeviceConfig config = new DeviceConfig();
+    private OptimalSurplusAllocator allocator;
+
+    @BeforeEach
+    void setUp() {
+        allocator = new OptimalSurplusAllocator(config);
+    }
+
+    private SystemState.SystemStateBuilder state(double pvProduction) {
+        return SystemState.builder()
+                .currentPvProduction(pvProduction)
+                .currentHouseConsumption(300.0)
+                .indoorTemperature(22.0)
+                .evConnected(true)
+                .evChargePercentage(50.0)
+                .dishwasherReady(true);
+    }
+
+    private DeviceDecision allocate(SystemState state) {
+        DecisionBuffer buffer = new DecisionBuffer();
+        allocator.allocate(state, state.getAvailableSurplus(), ORDER, buffer);
+        return buffer.toDecision();
+    }
+
+    private DeviceDecision.DeviceAction actionFor(DeviceDecision decision, DeviceType device) {
+        return decision.getActions().stream()
+                .filter(action -> action.getDevice() == device)
+                .findFirst()
+                .orElse(null);
+    }
+
+    @Test
+    void allocate_shouldSlowEvChargerDownInsteadOfStarvingDishwasher() {
+        // 3500W surplus: greedy gives the EV 3300W, here the dishwasher runs and the EV takes the rest
+        DeviceDecision decision = allocate(state(3800.0).build());
+
+        assertEquals(ActionType.TURN_ON, actionFor(decision, DeviceType.DISHWASHER).getAction());
+        DeviceDecision.DeviceAction ev = actionFor(decision, DeviceType.EV_CHARGER);
+        assertEquals(ActionType.SET_POWER, ev.getAction());
+        assertEquals(1500.0, ev.getTargetPower(), 0.001);
+    }
+
+    @Test
+    void allocate_shouldNotExceedSurplusMinusBuffer() {
+        DeviceDecision decision = allocate(state(2600.0).build());
+
+        double allocated = decision.getActions().stream()
+                .mapToDouble(action -> switch (action.getDevice()) {
+                    case EV_CHARGER -> action.getTargetPower() != null ? action.getTargetPower() : 0.0;
+                    case DISHWASHER -> config.getDishwasherPower();
+                    case SMART_PLUG -> config.getSmartPlugPower();
+                    case AC_CLIMATE -> config.getAcCoolingPower();
+                    case LOAD -> 0.0;
+                })
+                .sum();
+        assertTrue(allocated <= 2300.0 - config.getSurplusBuffer());
+    }
+
+    @Test
+    void allocate_shouldTurnOffRunningSmartPlugWithoutSurplus() {
+        DeviceDecision decision = allocate(state(300.0).smartPlugOn(true).smartPlugPower(500.0).build());
+
+        assertEquals(ActionType.TURN_OFF, actionFor(decision, DeviceType.SMART_PLUG).getAction());
+        assertNull(actionFor(decision, DeviceType.DISHWASHER));
+    }
+
+    @Test
+    void allocate_shouldTurnOffDisconnectedEvCharger() {
+        DeviceDecision decision = allocate(state(5000.0).evConnected(false).evChargingPower(2000.0).build());
+
+        assertEquals(ActionType.TURN_OFF, actionFor(decision, DeviceType.EV_CHARGER).getAction());
+        assertEquals("EV not connected", actionFor(decision, DeviceType.EV_CHARGER).getReason());
+    }
+
+    @Test
+    void allocate_shouldNotCarryStateBetweenCalls() {
+        // The search state is reused, a large problem must not leak into the next one
+        DeviceDecision first = allocate(state(3800.0).smartPlugOn(true).smartPlugPower(500.0).build());
+        DeviceDecision second = allocate(state(5000.0).evConnected(false).dishwasherReady(false).build());
+
+        assertEquals(ActionType.TURN_ON, actionFor(first, DeviceType.DISHWASHER).getAction());
+        assertEquals(ActionType.TURN_ON, actionFor(second, DeviceType.SMART_PLUG).getAction());
+        assertNull(actionFor(second, DeviceType.DISHWASHER));
+        assertNull(actionFor(second, DeviceType.EV_CHARGER));
+    }
+
+    @Test
+    void allocate_shouldPreferHigherPriorityWhenUsageIsEqual() {
+        // Room for one 1800W device only, the dishwasher and the plug use exactly the same surplus
+        config.setSmartPlugPower(1800.0);
+        SystemState state = state(2600.0).evConnected(false).build();
+
+        DeviceDecision decision = allocate(state);
+        assertEquals(ActionType.TURN_ON, actionFor(decision, DeviceType.DISHWASHER).getAction());
+        assertNull(actionFor(decision, DeviceType.SMART_PLUG));
+
+        DecisionBuffer buffer = new DecisionBuffer();
+        allocator.allocate(state, state.getAvailableSurplus(),
+                List.of(DeviceType.EV_CHARGER, DeviceType.AC_CLIMATE, DeviceType.SMART_PLUG, DeviceType.DISHWASHER),
+                buffer);
+        DeviceDecision reversed = buffer.toDecision();
+        assertEquals(ActionType.TURN_ON, actionFor(reversed, DeviceType.SMART_PLUG).getAction());
+        assertNull(actionFor(reversed, DeviceType.DISHWASHER));
+    }
+
+    @Test
+    void allocate_shouldKeepPowerOfHeldDevice() {
+        // The running plug cannot be switched off yet, its 500W are not free for the dishwasher
+        SystemState state = state(2400.0).evConnected(false).smartPlugOn(true).smartPlugPower(500.0).build();
+        DecisionBuffer buffer = new DecisionBuffer();
+        buffer.hold(DeviceType.SMART_PLUG);
+        allocator.allocate(state, state.getAvailableSurplus(), ORDER, buffer);
+        DeviceDecision decision = buffer.toDecision();
+
+        assertNull(actionFor(decision, DeviceType.SMART_PLUG));
+        assertNull(actionFor(decision, DeviceType.DISHWASHER));
+    }
+}
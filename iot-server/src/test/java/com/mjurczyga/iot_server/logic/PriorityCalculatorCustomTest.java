@@ -1,6 +1,7 @@
 package com.mjurczyga.iot_server.logic;
 
 import com.mjurczyga.iot_server.config.DeviceConfig;
+import com.mjurczyga.iot_server.config.PriorityPlan;
 import com.mjurczyga.iot_server.model.DeviceDecision;
 import com.mjurczyga.iot_server.model.DeviceDecision.ActionType;
 import com.mjurczyga.iot_server.model.DeviceDecision.DeviceType;
@@ -44,16 +45,17 @@ class PriorityCalculatorCustomModeTest {
         when(config.getSurplusBuffer()).thenReturn(200.0);
         
         // Default: custom mode disabled
-        when(config.isCustomPriorityEnabled()).thenReturn(false);
+        when(config.getPriorityPlan()).thenReturn(PriorityPlan.compile(false, List.of()));
+    }
+
+    private void customPriority(String... devices) {
+        when(config.getPriorityPlan()).thenReturn(PriorityPlan.compile(true, Arrays.asList(devices)));
     }
 
     @Test
     void customMode_shouldBeActivated_whenEnabled() {
         // Enable custom mode
-        when(config.isCustomPriorityEnabled()).thenReturn(true);
-        when(config.getCustomPriorityOrder()).thenReturn(Arrays.asList(
-            "EV_CHARGER", "AC_CLIMATE", "DISHWASHER", "SMART_PLUG"
-        ));
+        customPriority("EV_CHARGER", "AC_CLIMATE", "DISHWASHER", "SMART_PLUG");
 
         SystemState state = SystemState.builder()
                 .anyoneHome(true) // Even though someone is home, custom mode should override
@@ -79,10 +81,7 @@ class PriorityCalculatorCustomModeTest {
 
     @Test
     void customMode_shouldProcessDevicesInOrder_smartPlugFirst() {
-        when(config.isCustomPriorityEnabled()).thenReturn(true);
-        when(config.getCustomPriorityOrder()).thenReturn(Arrays.asList(
-            "SMART_PLUG", "AC_CLIMATE", "EV_CHARGER", "DISHWASHER"
-        ));
+        customPriority("SMART_PLUG", "AC_CLIMATE", "EV_CHARGER", "DISHWASHER");
 
         SystemState state = SystemState.builder()
                 .anyoneHome(false)
@@ -111,10 +110,7 @@ class PriorityCalculatorCustomModeTest {
 
     @Test
     void customMode_shouldProcessDevicesInOrder_evFirst() {
-        when(config.isCustomPriorityEnabled()).thenReturn(true);
-        when(config.getCustomPriorityOrder()).thenReturn(Arrays.asList(
-            "EV_CHARGER", "AC_CLIMATE", "DISHWASHER", "SMART_PLUG"
-        ));
+        customPriority("EV_CHARGER", "AC_CLIMATE", "DISHWASHER", "SMART_PLUG");
 
         SystemState state = SystemState.builder()
                 .anyoneHome(false)
@@ -143,10 +139,7 @@ class PriorityCalculatorCustomModeTest {
 
     @Test
     void customMode_shouldRespectSurplusLimits() {
-        when(config.isCustomPriorityEnabled()).thenReturn(true);
-        when(config.getCustomPriorityOrder()).thenReturn(Arrays.asList(
-            "DISHWASHER", "SMART_PLUG", "EV_CHARGER", "AC_CLIMATE"
-        ));
+        customPriority("DISHWASHER", "SMART_PLUG", "EV_CHARGER", "AC_CLIMATE");
 
         SystemState state = SystemState.builder()
                 .anyoneHome(false)
@@ -180,10 +173,7 @@ class PriorityCalculatorCustomModeTest {
 
     @Test
     void customMode_shouldHandleMultipleDevices() {
-        when(config.isCustomPriorityEnabled()).thenReturn(true);
-        when(config.getCustomPriorityOrder()).thenReturn(Arrays.asList(
-            "SMART_PLUG", "EV_CHARGER", "DISHWASHER", "AC_CLIMATE"
-        ));
+        customPriority("SMART_PLUG", "EV_CHARGER", "DISHWASHER", "AC_CLIMATE");
 
         SystemState state = SystemState.builder()
                 .anyoneHome(false)
@@ -218,10 +208,7 @@ class PriorityCalculatorCustomModeTest {
 
     @Test
     void customMode_shouldOverridePresenceDetection() {
-        when(config.isCustomPriorityEnabled()).thenReturn(true);
-        when(config.getCustomPriorityOrder()).thenReturn(Arrays.asList(
-            "EV_CHARGER", "SMART_PLUG", "DISHWASHER", "AC_CLIMATE"
-        ));
+        customPriority("EV_CHARGER", "SMART_PLUG", "DISHWASHER", "AC_CLIMATE");
 
         SystemState state = SystemState.builder()
                 .anyoneHome(true) // Someone is home
@@ -248,10 +235,7 @@ class PriorityCalculatorCustomModeTest {
 
     @Test
     void customMode_acFirst_shouldStillRespectTemperature() {
-        when(config.isCustomPriorityEnabled()).thenReturn(true);
-        when(config.getCustomPriorityOrder()).thenReturn(Arrays.asList(
-            "AC_CLIMATE", "SMART_PLUG", "EV_CHARGER", "DISHWASHER"
-        ));
+        customPriority("AC_CLIMATE", "SMART_PLUG", "EV_CHARGER", "DISHWASHER");
 
         SystemState state = SystemState.builder()
                 .anyoneHome(false)
@@ -280,10 +264,7 @@ class PriorityCalculatorCustomModeTest {
 
     @Test
     void customMode_acFirst_shouldTurnOnWhenHot() {
-        when(config.isCustomPriorityEnabled()).thenReturn(true);
-        when(config.getCustomPriorityOrder()).thenReturn(Arrays.asList(
-            "AC_CLIMATE", "SMART_PLUG", "EV_CHARGER", "DISHWASHER"
-        ));
+        customPriority("AC_CLIMATE", "SMART_PLUG", "EV_CHARGER", "DISHWASHER");
 
         SystemState state = SystemState.builder()
                 .anyoneHome(false)
@@ -313,10 +294,7 @@ class PriorityCalculatorCustomModeTest {
 
     @Test
     void customMode_shouldHandleInvalidDeviceNames() {
-        when(config.isCustomPriorityEnabled()).thenReturn(true);
-        when(config.getCustomPriorityOrder()).thenReturn(Arrays.asList(
-            "EV_CHARGER", "INVALID_DEVICE", "AC_CLIMATE", "SMART_PLUG"
-        ));
+        customPriority("EV_CHARGER", "INVALID_DEVICE", "AC_CLIMATE", "SMART_PLUG");
 
         SystemState state = SystemState.builder()
                 .anyoneHome(false)
@@ -341,10 +319,7 @@ class PriorityCalculatorCustomModeTest {
 
     @Test
     void customMode_dishwasherFirst_shouldTurnOnWithSurplus() {
-        when(config.isCustomPriorityEnabled()).thenReturn(true);
-        when(config.getCustomPriorityOrder()).thenReturn(Arrays.asList(
-            "DISHWASHER", "SMART_PLUG", "AC_CLIMATE", "EV_CHARGER"
-        ));
+        customPriority("DISHWASHER", "SMART_PLUG", "AC_CLIMATE", "EV_CHARGER");
 
         SystemState state = SystemState.builder()
                 .anyoneHome(false)
@@ -373,8 +348,7 @@ class PriorityCalculatorCustomModeTest {
 
     @Test
     void customMode_shouldWorkWithEmptyPriorityList() {
-        when(config.isCustomPriorityEnabled()).thenReturn(true);
-        when(config.getCustomPriorityOrder()).thenReturn(Arrays.asList());
+        customPriority();
 
         SystemState state = SystemState.builder()
                 .anyoneHome(false)
@@ -402,7 +376,7 @@ class PriorityCalculatorCustomModeTest {
 
     @Test
     void disabledCustomMode_shouldUseMaxUsageMode() {
-        when(config.isCustomPriorityEnabled()).thenReturn(false);
+        when(config.getPriorityPlan()).thenReturn(PriorityPlan.compile(false, List.of()));
 
         SystemState state = SystemState.builder()
                 .anyoneHome(false) // No one home
@@ -428,7 +402,7 @@ class PriorityCalculatorCustomModeTest {
 
     @Test
     void disabledCustomMode_shouldUseComfortMode() {
-        when(config.isCustomPriorityEnabled()).thenReturn(false);
+        when(config.getPriorityPlan()).thenReturn(PriorityPlan.compile(false, List.of()));
 
         SystemState state = SystemState.builder()
                 .anyoneHome(true) // Someone is home
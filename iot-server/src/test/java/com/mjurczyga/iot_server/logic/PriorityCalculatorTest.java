@@ -1,9 +1,16 @@
 package com.mjurczyga.iot_server.logic;
 
 import com.mjurczyga.iot_server.config.DeviceConfig;
+import com.mjurczyga.iot_server.config.PriorityPlan;
+import com.mjurczyga.iot_server.devices.Controllability;
+import com.mjurczyga.iot_server.devices.DeviceExecutor;
+import com.mjurczyga.iot_server.devices.DevicePlugin;
+import com.mjurczyga.iot_server.devices.PowerModel;
 import com.mjurczyga.iot_server.model.DeviceDecision;
 import com.mjurczyga.iot_server.model.DeviceDecision.ActionType;
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceAction;
 import com.mjurczyga.iot_server.model.DeviceDecision.DeviceType;
+import com.mjurczyga.iot_server.model.LoadState;
 import com.mjurczyga.iot_server.model.SystemState;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -14,6 +21,9 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 
+import java.time.Duration;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.when;
 
@@ -39,6 +49,7 @@ class PriorityCalculatorTest {
         when(config.getDishwasherPower()).thenReturn(1800.0);
         when(config.getSmartPlugPower()).thenReturn(500.0);
         when(config.getSurplusBuffer()).thenReturn(200.0);
+        when(config.getPriorityPlan()).thenReturn(PriorityPlan.compile(false, List.of()));
     }
 
     @Test
@@ -506,4 +517,108 @@ class PriorityCalculatorTest {
                 .anyMatch(action -> action.getDevice() == DeviceType.AC_CLIMATE 
                         && action.getAction() == ActionType.TURN_ON));
     }
-}
\ No newline at end of file
+
+    private LoadState load(String id, PowerModel powerModel, boolean on, double power) {
+        DevicePlugin device = DevicePlugin.builder()
+                .id(id)
+                .type(DeviceType.LOAD)
+                .name(id)
+                .entityId("switch." + id)
+                .powerModel(powerModel)
+                .controllability(Controllability.SURPLUS)
+                .executor(powerModel.isContinuous() ? DeviceExecutor.POWER_SETPOINT : DeviceExecutor.ON_OFF)
+                .build();
+        return new LoadState(device, on, power);
+    }
+
+    private DeviceAction actionFor(DeviceDecision decision, String deviceId) {
+        return decision.getActions().stream()
+                .filter(action -> deviceId.equals(action.getDeviceId()))
+                .findFirst()
+                .orElse(null);
+    }
+
+    @Test
+    void calculatePriorities_shouldAllocateLoadsAfterBuiltInDevices() {
+        SystemState state = SystemState.builder()
+                .anyoneHome(false)
+                .currentPvProduction(5000.0)
+                .currentHouseConsumption(300.0)
+                .indoorTemperature(22.0)
+                .evConnected(false)
+                .dishwasherReady(false)
+                .loads(List.of(
+                        load("pool-pump", PowerModel.onOff(800.0), false, 0.0),
+                        load("heat-pump", PowerModel.continuous(500.0, 3000.0), false, 0.0),
+                        load("sauna", PowerModel.onOff(6000.0), false, 0.0)))
+                .build();
+
+        DeviceDecision decision = priorityCalculator.calculatePriorities(state);
+
+        // 4700W surplus: smart plug 500W, pool pump 800W, heat pump capped at 3000W
+        assertEquals(ActionType.TURN_ON, actionFor(decision, "SMART_PLUG").getAction());
+        assertEquals(ActionType.TURN_ON, actionFor(decision, "pool-pump").getAction());
+        DeviceAction heatPump = actionFor(decision, "heat-pump");
+        assertEquals(ActionType.SET_POWER, heatPump.getAction());
+        assertEquals(3000.0, heatPump.getTargetPower());
+        assertEquals("Running heat-pump with 3000W", heatPump.getReason());
+        assertNull(actionFor(decision, "sauna"));
+    }
+
+    @Test
+    void calculatePriorities_shouldTurnOffLoad_whenSurplusIsGone() {
+        SystemState state = SystemState.builder()
+                .anyoneHome(false)
+                .currentPvProduction(0.0)
+                .currentHouseConsumption(300.0)
+                .indoorTemperature(22.0)
+                .evConnected(false)
+                .dishwasherReady(false)
+                .loads(List.of(load("pool-pump", PowerModel.onOff(800.0), true, 800.0)))
+                .loadsPower(800.0)
+                .build();
+
+        DeviceDecision decision = priorityCalculator.calculatePriorities(state);
+
+        assertEquals(ActionType.TURN_OFF, actionFor(decision, "pool-pump").getAction());
+        assertEquals(DeviceType.LOAD, actionFor(decision, "pool-pump").getDevice());
+    }
+
+    @Test
+    void calculatePriorities_shouldHoldDevice_withinMinimumOnTime() {
+        when(config.getMinOnTime()).thenReturn(Duration.ofMinutes(5));
+        SystemState.SystemStateBuilder state = SystemState.builder()
+                .anyoneHome(false)
+                .currentPvProduction(0.0)
+                .currentHouseConsumption(300.0)
+                .indoorTemperature(22.0)
+                .evConnected(false)
+                .dishwasherReady(false);
+        priorityCalculator.calculatePriorities(state.smartPlugOn(false).build());
+
+        // Plug was just switched on, the surplus is gone already
+        DeviceDecision decision = priorityCalculator.calculatePriorities(
+                state.smartPlugOn(true).smartPlugPower(500.0).build());
+
+        assertNull(actionFor(decision, "SMART_PLUG"));
+    }
+
+    @Test
+    void calculatePriorities_shouldKeepPowerOfHeldDevice_fromLowerPriorities() {
+        when(config.getMinOnTime()).thenReturn(Duration.ofMinutes(5));
+        SystemState.SystemStateBuilder state = SystemState.builder()
+                .anyoneHome(false)
+                .currentHouseConsumption(300.0)
+                .indoorTemperature(25.0)
+                .evConnected(false)
+                .dishwasherReady(false);
+        priorityCalculator.calculatePriorities(state.currentPvProduction(0.0).acOn(false).build());
+
+        // AC was just switched on and lacks surplus, switching it off would leave room for the plug
+        DeviceDecision decision = priorityCalculator.calculatePriorities(
+                state.currentPvProduction(1400.0).acOn(true).acPowerUsage(1000.0).build());
+
+        assertNull(actionFor(decision, "AC_CLIMATE"));
+        assertNull(actionFor(decision, "SMART_PLUG"));
+    }
+}
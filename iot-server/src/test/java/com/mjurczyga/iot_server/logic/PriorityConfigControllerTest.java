@@ -18,6 +18,7 @@ import java.util.Map;
 
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -76,8 +77,7 @@ class PriorityConfigControllerTest {
                 .content(objectMapper.writeValueAsString(request)))
                 .andExpect(status().isOk());
 
-        verify(deviceConfig).setCustomPriorityEnabled(true);
-        verify(deviceConfig).setCustomPriorityOrder(anyList());
+        verify(deviceConfig).updateCustomPriority(eq(true), anyList());
     }
 
     @Test
@@ -98,8 +98,7 @@ class PriorityConfigControllerTest {
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("$.error").exists());
 
-        verify(deviceConfig, never()).setCustomPriorityEnabled(anyBoolean());
-        verify(deviceConfig, never()).setCustomPriorityOrder(anyList());
+        verify(deviceConfig, never()).updateCustomPriority(anyBoolean(), anyList());
     }
 
     @Test
@@ -120,7 +119,7 @@ class PriorityConfigControllerTest {
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("$.error").exists());
 
-        verify(deviceConfig, never()).setCustomPriorityEnabled(anyBoolean());
+        verify(deviceConfig, never()).updateCustomPriority(anyBoolean(), anyList());
     }
 
     @Test
@@ -141,7 +140,7 @@ class PriorityConfigControllerTest {
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("$.error").exists());
 
-        verify(deviceConfig, never()).setCustomPriorityEnabled(anyBoolean());
+        verify(deviceConfig, never()).updateCustomPriority(anyBoolean(), anyList());
     }
 
     @Test
@@ -222,8 +221,7 @@ class PriorityConfigControllerTest {
                 .content(objectMapper.writeValueAsString(request)))
                 .andExpect(status().isOk());
 
-        verify(deviceConfig).setCustomPriorityEnabled(false);
-        verify(deviceConfig).setCustomPriorityOrder(anyList());
+        verify(deviceConfig).updateCustomPriority(eq(false), anyList());
     }
 
     @Test
@@ -244,7 +242,7 @@ class PriorityConfigControllerTest {
                 .content(objectMapper.writeValueAsString(request)))
                 .andExpect(status().isBadRequest());
 
-        verify(deviceConfig, never()).setCustomPriorityEnabled(anyBoolean());
+        verify(deviceConfig, never()).updateCustomPriority(anyBoolean(), anyList());
     }
 
     @Test
@@ -280,6 +278,6 @@ class PriorityConfigControllerTest {
                 .content(invalidJson))
                 .andExpect(status().isBadRequest());
 
-        verify(deviceConfig, never()).setCustomPriorityEnabled(anyBoolean());
+        verify(deviceConfig, never()).updateCustomPriority(anyBoolean(), anyList());
     }
 }
\ No newline at end of file
@@ -0,0 +1,60 @@
+package com.mjurczyga.iot_server.logic;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SurplusSmootherTest {
+
+    private static final long SECOND = 1_000_000_000L;
+    private static final long WINDOW = 300 * SECOND;
+
+    @Test
+    void add_shouldReturnSample_whenWindowHasOneSample() {
+        SurplusSmoother smoother = new SurplusSmoother();
+
+        assertEquals(4000.0, smoother.add(0, 4000.0, WINDOW));
+    }
+
+    @Test
+    void add_shouldWeightSamplesByDuration() {
+        SurplusSmoother smoother = new SurplusSmoother();
+        smoother.add(0, 4000.0, WINDOW);
+        smoother.add(270 * SECOND, 0.0, WINDOW); // cloud after 270s of sun
+
+        // 270s of 4000W and 30s of 0W
+        assertEquals(3600.0, smoother.add(300 * SECOND, 0.0, WINDOW), 1e-9);
+    }
+
+    @Test
+    void add_shouldDropSamplesOutsideWindow() {
+        SurplusSmoother smoother = new SurplusSmoother();
+        smoother.add(0, 4000.0, WINDOW);
+        smoother.add(10 * SECOND, 1000.0, WINDOW);
+        smoother.add(400 * SECOND, 1000.0, WINDOW);
+
+        assertEquals(1000.0, smoother.add(500 * SECOND, 1000.0, WINDOW), 1e-9);
+        assertEquals(3, smoother.size());
+    }
+
+    @Test
+    void add_shouldKeepMeanThroughRingBufferGrowth() {
+        SurplusSmoother smoother = new SurplusSmoother();
+        double mean = 0.0;
+        for (int i = 0; i < 1000; i++) {
+            mean = smoother.add(i * SECOND, i % 2 == 0 ? 2000.0 : 1000.0, WINDOW);
+        }
+
+        assertEquals(1500.0, mean, 10.0);
+        assertEquals(301, smoother.size());
+    }
+
+    @Test
+    void add_shouldPassSampleThrough_whenSmoothingDisabled() {
+        SurplusSmoother smoother = new SurplusSmoother();
+        smoother.add(0, 4000.0, WINDOW);
+
+        assertEquals(100.0, smoother.add(SECOND, 100.0, 0));
+        assertEquals(0, smoother.size());
+    }
+}
@@ -0,0 +1,76 @@
+package com.mjurczyga.iot_server.recording;
+
+import com.mjurczyga.iot_server.config.DeviceConfig;
+import com.mjurczyga.iot_server.logic.DecisionBuffer;
+import com.mjurczyga.iot_server.logic.PriorityCalculator;
+import com.mjurczyga.iot_server.model.SystemState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordingReplayTest {
+
+    private static final long START = 1_750_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replay_shouldReportNoDifferences_forSameCalculator() throws IOException {
+        record(new DeviceConfig());
+
+        ReplayReport report = new RecordingReplay(new PriorityCalculator(new DeviceConfig()), id -> null, 10)
+                .replay(directory);
+
+        assertEquals(100, report.getCycles());
+        assertEquals(0, report.getDifferingCycles());
+    }
+
+    @Test
+    void replay_shouldReportDifferences_whenDecisionsChange() throws IOException {
+        record(new DeviceConfig());
+        DeviceConfig changed = new DeviceConfig();
+        changed.setSurplusBuffer(5000.0);
+
+        ReplayReport report = new RecordingReplay(new PriorityCalculator(changed), id -> null, 3)
+                .replay(directory);
+
+        assertTrue(report.getDifferingCycles() > 0);
+        assertEquals(3, report.getDifferences().size());
+        assertNotEquals(report.getDifferences().get(0).getRecordedActions(),
+                report.getDifferences().get(0).getReplayedActions());
+    }
+
+    /**
+     * Records 100 cycles of a calculator with the given configuration, PV ramping up
+     */
+    private void record(DeviceConfig config) {
+        PriorityCalculator calculator = new PriorityCalculator(config);
+        DecisionBuffer buffer = new DecisionBuffer();
+        try (StateRecorder recorder = new StateRecorder(directory, 1 << 16)) {
+            for (int i = 0; i < 100; i++) {
+                long time = START + i * 30_000L;
+                SystemState state = state(100.0 * i);
+                calculator.evaluate(state, buffer, time * 1_000_000L);
+                recorder.record(time, state, buffer.toDecision());
+            }
+        }
+    }
+
+    private static SystemState state(double pv) {
+        return SystemState.builder()
+                .anyoneHome(false)
+                .indoorTemperature(22.0)
+                .outdoorTemperature(15.0)
+                .currentPvProduction(pv)
+                .currentHouseConsumption(300.0)
+                .evConnected(true)
+                .evChargePercentage(40.0)
+                .dishwasherReady(true)
+                .build();
+    }
+}
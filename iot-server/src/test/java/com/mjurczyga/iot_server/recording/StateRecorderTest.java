@@ -0,0 +1,105 @@
+package com.mjurczyga.iot_server.recording;
+
+import com.mjurczyga.iot_server.devices.DevicePlugin;
+import com.mjurczyga.iot_server.devices.PowerModel;
+import com.mjurczyga.iot_server.model.DeviceDecision;
+import com.mjurczyga.iot_server.model.DeviceDecision.ActionType;
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceType;
+import com.mjurczyga.iot_server.model.LoadState;
+import com.mjurczyga.iot_server.model.SystemState;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StateRecorderTest {
+
+    private static final long START = 1_750_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    private final DevicePlugin poolPump = DevicePlugin.builder()
+            .id("pool-pump")
+            .name("Pool pump")
+            .powerModel(PowerModel.onOff(800.0))
+            .build();
+
+    @Test
+    void record_shouldReadBackStateAndDecision() throws IOException {
+        SystemState state = state(3500.0);
+        state.setAcOn(true);
+        state.setAcPowerUsage(1000.0);
+        state.setLoads(List.of(new LoadState(poolPump, true, 780.0)));
+        state.setLoadsPower(780.0);
+        DeviceDecision decision = DeviceDecision.create().mode("MAX_USAGE").availableSurplus(1200.0);
+        decision.addAction(DeviceDecision.DeviceAction.builder()
+                .device(DeviceType.EV_CHARGER).action(ActionType.SET_POWER).targetPower(2300.0).build());
+        decision.addAction(DeviceDecision.DeviceAction.builder()
+                .device(DeviceType.LOAD).deviceId("pool-pump").action(ActionType.TURN_OFF).build());
+
+        try (StateRecorder recorder = new StateRecorder(directory, 4096)) {
+            recorder.record(START, state, decision);
+        }
+        List<RecordedCycle> cycles = new ArrayList<>();
+        long read = RecordingReader.read(directory, Map.of("pool-pump", poolPump)::get, cycles::add);
+
+        assertEquals(1, read);
+        RecordedCycle cycle = cycles.get(0);
+        assertEquals(START, cycle.timestampMillis());
+        assertEquals(state, cycle.state());
+        assertEquals("MAX_USAGE", cycle.decision().getMode());
+        assertEquals(1200.0, cycle.decision().getAvailableSurplus());
+        assertEquals(2300.0, cycle.decision().getActions().get(0).getTargetPower());
+        assertEquals("pool-pump", cycle.decision().getActions().get(1).getDeviceId());
+        assertNull(cycle.decision().getActions().get(1).getTargetPower());
+    }
+
+    @Test
+    void record_shouldStartNewSegment_whenFull() throws IOException {
+        try (StateRecorder recorder = new StateRecorder(directory, 512)) {
+            for (int i = 0; i < 20; i++) {
+                recorder.record(START + i * 1000L, state(1000.0 + i), DeviceDecision.create().mode("COMFORT"));
+            }
+        }
+        List<RecordedCycle> cycles = new ArrayList<>();
+        RecordingReader.read(directory, id -> null, cycles::add);
+
+        assertTrue(RecordingReader.segments(directory).size() > 1);
+        assertEquals(20, cycles.size());
+        assertEquals(1019.0, cycles.get(19).state().getCurrentPvProduction());
+    }
+
+    @Test
+    void record_shouldIgnoreCycles_afterClose() throws IOException {
+        StateRecorder recorder = new StateRecorder(directory, 4096);
+        recorder.record(START, state(1000.0), DeviceDecision.create().mode("COMFORT"));
+        recorder.close();
+
+        recorder.record(START + 1000L, state(1100.0), DeviceDecision.create().mode("COMFORT"));
+        List<RecordedCycle> cycles = new ArrayList<>();
+        RecordingReader.read(directory, id -> null, cycles::add);
+
+        assertEquals(1, RecordingReader.segments(directory).size());
+        assertEquals(1, cycles.size());
+    }
+
+    private static SystemState state(double pv) {
+        return SystemState.builder()
+                .anyoneHome(false)
+                .indoorTemperature(22.0)
+                .outdoorTemperature(15.0)
+                .currentPvProduction(pv)
+                .currentHouseConsumption(300.0)
+                .evConnected(true)
+                .evChargePercentage(40.0)
+                .dishwasherReady(true)
+                .build();
+    }
+}
@@ -0,0 +1,163 @@
+package com.mjurczyga.iot_server.service;
+
+import com.mjurczyga.iot_server.client.home_assistant.HomeAssistantSnapshot;
+import com.mjurczyga.iot_server.client.response.HomeAssistantStateResponse;
+import com.mjurczyga.iot_server.config.ControlLoopConfig;
+import com.mjurczyga.iot_server.config.EntityMapping;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ControlTriggerTest {
+
+    private final EntityMapping entities = new EntityMapping();
+    private final AtomicLong clock = new AtomicLong(Duration.ofHours(1).toNanos());
+    private ControlLoopConfig config;
+    private ControlTrigger trigger;
+
+    @BeforeEach
+    void setUp() {
+        config = new ControlLoopConfig();
+        config.setDebounce(Duration.ZERO);
+        config.setMinInterval(Duration.ZERO);
+        trigger = new ControlTrigger("default", entities, config, Duration.ZERO, clock::get);
+    }
+
+    private HomeAssistantStateResponse stateOf(String entityId, String state) {
+        HomeAssistantStateResponse response = new HomeAssistantStateResponse();
+        response.setEntityId(entityId);
+        response.setState(state);
+        return response;
+    }
+
+    private void startWithPv(String pv) {
+        trigger.beginCycle(HomeAssistantSnapshot.of(List.of(
+                stateOf(entities.getPvCurrentProduction(), pv),
+                stateOf(entities.getPresenceTracker(), "home")
+        ), entities));
+    }
+
+    @Test
+    void evaluate_shouldRunOnStartup() {
+        assertEquals(ControlTrigger.Reason.STARTUP, trigger.evaluate());
+    }
+
+    @Test
+    void evaluate_shouldWaitForPhaseOffset() {
+        ControlTrigger delayed = new ControlTrigger("summer-house", entities, config, Duration.ofMinutes(1), clock::get);
+
+        assertEquals(ControlTrigger.Reason.NONE, delayed.evaluate());
+        clock.addAndGet(Duration.ofMinutes(1).toNanos());
+        assertEquals(ControlTrigger.Reason.STARTUP, delayed.evaluate());
+    }
+
+    @Test
+    void smallPvChange_shouldNotTriggerCycle() {
+        startWithPv("3000");
+
+        trigger.onStateChange(entities.getPvCurrentProduction(), stateOf(entities.getPvCurrentProduction(), "3150"));
+
+        assertFalse(trigger.isPending());
+        assertEquals(ControlTrigger.Reason.NONE, trigger.evaluate());
+    }
+
+    @Test
+    void largePvChange_shouldTriggerCycle() {
+        startWithPv("3000");
+
+        trigger.onStateChange(entities.getPvCurrentProduction(), stateOf(entities.getPvCurrentProduction(), "1200"));
+
+        assertEquals(ControlTrigger.Reason.STATE_CHANGE, trigger.evaluate());
+    }
+
+    @Test
+    void presenceChange_shouldAlwaysTriggerCycle() {
+        startWithPv("3000");
+
+        trigger.onStateChange(entities.getPresenceTracker(), stateOf(entities.getPresenceTracker(), "not_home"));
+
+        assertEquals(ControlTrigger.Reason.STATE_CHANGE, trigger.evaluate());
+    }
+
+    @Test
+    void pendingChange_shouldWaitForDebounce() {
+        config.setDebounce(Duration.ofMinutes(1));
+        config.setMaxInterval(Duration.ofHours(1));
+        startWithPv("3000");
+
+        trigger.onStateChange(entities.getPvCurrentProduction(), stateOf(entities.getPvCurrentProduction(), "0"));
+
+        assertTrue(trigger.isPending());
+        assertEquals(ControlTrigger.Reason.NONE, trigger.evaluate());
+        clock.addAndGet(Duration.ofMinutes(1).toNanos());
+        assertEquals(ControlTrigger.Reason.STATE_CHANGE, trigger.evaluate());
+    }
+
+    @Test
+    void significantChange_shouldRestartDebounce() {
+        config.setDebounce(Duration.ofMillis(300));
+        String pv = entities.getPvCurrentProduction();
+        startWithPv("3000");
+
+        trigger.onStateChange(pv, stateOf(pv, "1000"));
+        clock.addAndGet(Duration.ofMillis(200).toNanos());
+        trigger.onStateChange(pv, stateOf(pv, "800"));
+        clock.addAndGet(Duration.ofMillis(200).toNanos());
+
+        // 400ms since the first change, but only 200ms since the last one
+        assertEquals(ControlTrigger.Reason.NONE, trigger.evaluate());
+        clock.addAndGet(Duration.ofMillis(100).toNanos());
+        assertEquals(ControlTrigger.Reason.STATE_CHANGE, trigger.evaluate());
+    }
+
+    @Test
+    void insignificantChange_shouldNotRestartDebounce() {
+        config.setDebounce(Duration.ofMillis(300));
+        String pv = entities.getPvCurrentProduction();
+        startWithPv("3000");
+
+        trigger.onStateChange(pv, stateOf(pv, "1000"));
+        clock.addAndGet(Duration.ofMillis(200).toNanos());
+        trigger.onStateChange(pv, stateOf(pv, "3050"));
+        clock.addAndGet(Duration.ofMillis(100).toNanos());
+
+        assertEquals(ControlTrigger.Reason.STATE_CHANGE, trigger.evaluate());
+    }
+
+    @Test
+    void evaluate_shouldRespectMinInterval() {
+        config.setMinInterval(Duration.ofSeconds(1));
+        String pv = entities.getPvCurrentProduction();
+        startWithPv("3000");
+
+        trigger.onStateChange(pv, stateOf(pv, "1000"));
+
+        assertEquals(ControlTrigger.Reason.NONE, trigger.evaluate());
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertEquals(ControlTrigger.Reason.STATE_CHANGE, trigger.evaluate());
+    }
+
+    @Test
+    void evaluate_shouldRunHeartbeatAfterMaxInterval() {
+        config.setMaxInterval(Duration.ZERO);
+        startWithPv("3000");
+
+        assertEquals(ControlTrigger.Reason.HEARTBEAT, trigger.evaluate());
+    }
+
+    @Test
+    void beginCycle_shouldClearPendingChange() {
+        startWithPv("3000");
+        trigger.onStateChange(entities.getPvCurrentProduction(), stateOf(entities.getPvCurrentProduction(), "500"));
+
+        startWithPv("500");
+
+        assertFalse(trigger.isPending());
+        assertEquals(ControlTrigger.Reason.NONE, trigger.evaluate());
+    }
+}
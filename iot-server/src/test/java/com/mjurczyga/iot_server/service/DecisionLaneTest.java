@@ -0,0 +1,116 @@
+package com.mjurczyga.iot_server.service;
+
+import com.mjurczyga.iot_server.model.ActionResult;
+import com.mjurczyga.iot_server.model.DeviceDecision;
+import com.mjurczyga.iot_server.model.SystemState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class DecisionLaneTest {
+
+    @Mock
+    private DeviceExecutorService executorService;
+
+    @Mock
+    private SystemStateService systemStateService;
+
+    private final List<String> executed = new CopyOnWriteArrayList<>();
+    private final CountDownLatch firstStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseFirst = new CountDownLatch(1);
+
+    private DecisionLane lane;
+
+    @BeforeEach
+    void setUp() {
+        when(executorService.executeDecision(any())).thenAnswer(invocation -> {
+            DeviceDecision decision = invocation.getArgument(0);
+            if (executed.isEmpty()) {
+                firstStarted.countDown();
+                releaseFirst.await(5, TimeUnit.SECONDS);
+            }
+            executed.add(decision.getExplanation());
+            return List.of();
+        });
+        lane = new DecisionLane("default", executorService, systemStateService, 1, () -> false, false);
+    }
+
+    private DeviceDecision decision(String name) {
+        return DeviceDecision.create().explanation(name).build();
+    }
+
+    private void awaitExecuted(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (executed.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void submit_shouldExecuteDecisionsInOrder() throws InterruptedException {
+        releaseFirst.countDown();
+
+        lane.submit(SystemState.builder().build(), decision("first"));
+        awaitExecuted(1);
+        lane.submit(SystemState.builder().build(), decision("second"));
+        awaitExecuted(2);
+
+        assertEquals(List.of("first", "second"), executed);
+    }
+
+    @Test
+    void submit_shouldDropWaitingDecisionWhenNewerArrives() throws InterruptedException {
+        lane.submit(SystemState.builder().build(), decision("first"));
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+
+        // While the first decision executes, two more arrive but only one may wait
+        lane.submit(SystemState.builder().build(), decision("stale"));
+        lane.submit(SystemState.builder().build(), decision("latest"));
+        releaseFirst.countDown();
+        awaitExecuted(2);
+
+        assertEquals(List.of("first", "latest"), executed);
+        assertEquals(1, lane.getSuperseded());
+    }
+
+    @Test
+    void submit_shouldCompleteWithResultsOnceExecuted() throws Exception {
+        releaseFirst.countDown();
+
+        CompletableFuture<List<ActionResult>> result = lane.submit(SystemState.builder().build(), decision("first"));
+
+        assertEquals(List.of(), result.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("first"), executed);
+    }
+
+    @Test
+    void submit_shouldCancelSupersededDecision() throws Exception {
+        CompletableFuture<List<ActionResult>> first = lane.submit(SystemState.builder().build(), decision("first"));
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<List<ActionResult>> stale = lane.submit(SystemState.builder().build(), decision("stale"));
+        CompletableFuture<List<ActionResult>> latest = lane.submit(SystemState.builder().build(), decision("latest"));
+        releaseFirst.countDown();
+
+        assertThrows(CancellationException.class, stale::join);
+        assertEquals(List.of(), first.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(), latest.get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,212 @@
+package com.mjurczyga.iot_server.service;
+
+import com.mjurczyga.iot_server.client.home_assistant.HomeAssistantClient;
+import com.mjurczyga.iot_server.config.DeviceConfig;
+import com.mjurczyga.iot_server.config.EntityMapping;
+import com.mjurczyga.iot_server.config.HomeAssistantConfig;
+import com.mjurczyga.iot_server.devices.DeviceRegistry;
+import com.mjurczyga.iot_server.model.ActionResult;
+import com.mjurczyga.iot_server.model.DeviceDecision;
+import com.mjurczyga.iot_server.model.DeviceDecision.ActionType;
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceAction;
+import com.mjurczyga.iot_server.model.DeviceDecision.DeviceType;
+import com.mjurczyga.iot_server.model.SystemState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class DeviceExecutorServiceTest {
+
+    @Mock
+    private HomeAssistantClient homeAssistantClient;
+
+    private final EntityMapping entities = new EntityMapping();
+
+    private DeviceExecutorService executorService;
+
+    @BeforeEach
+    void setUp() {
+        entities.setDishwasherSwitch("switch.dishwasher");
+        entities.setEvChargerPower("number.ev_charger_power");
+        entities.getLoads().put("pool-pump", "switch.pool_pump");
+        entities.getLoads().put("heat-pump", "number.heat_pump_power");
+
+        DeviceConfig devices = new DeviceConfig();
+        devices.getLoads().add(load("pool-pump", 800.0, 0.0));
+        devices.getLoads().add(load("heat-pump", 0.0, 3000.0));
+
+        when(homeAssistantClient.getEntities()).thenReturn(entities);
+        when(homeAssistantClient.callServiceAsync(anyString(), anyString(), anyCollection(), anyMap()))
+                .thenReturn(Mono.just("[]"));
+        executorService = new DeviceExecutorService(homeAssistantClient, new HomeAssistantConfig(),
+                new DeviceRegistry(devices, entities));
+    }
+
+    private DeviceConfig.Load load(String id, double power, double maxPower) {
+        DeviceConfig.Load load = new DeviceConfig.Load();
+        load.setId(id);
+        load.setPower(power);
+        load.setMaxPower(maxPower);
+        return load;
+    }
+
+    private DeviceAction loadAction(String id, ActionType type, Double targetPower) {
+        return DeviceAction.builder().device(DeviceType.LOAD).deviceId(id).action(type).targetPower(targetPower)
+                .reason("test").build();
+    }
+
+    private DeviceAction action(DeviceType device, ActionType type, Double targetPower) {
+        return DeviceAction.builder().device(device).action(type).targetPower(targetPower).reason("test").build();
+    }
+
+    private DeviceDecision decisionOf(DeviceAction... actions) {
+        DeviceDecision decision = DeviceDecision.create().mode("MAX_USAGE").build();
+        for (DeviceAction action : actions) {
+            decision.addAction(action);
+        }
+        return decision;
+    }
+
+    @Test
+    void executeDecision_shouldBatchActionsWithSameService() {
+        List<ActionResult> results = executorService.executeDecision(decisionOf(
+                action(DeviceType.SMART_PLUG, ActionType.TURN_ON, null),
+                action(DeviceType.DISHWASHER, ActionType.TURN_ON, null)));
+
+        verify(homeAssistantClient, times(1)).callServiceAsync(
+                "switch", "turn_on", List.of(entities.getSmartPlugSwitch(), "switch.dishwasher"), Map.of());
+        assertEquals(2, results.size());
+        assertTrue(results.stream().allMatch(result -> result.getStatus() == ActionResult.Status.SUCCESS));
+    }
+
+    @Test
+    void executeDecision_shouldSendDifferentServicesSeparately() {
+        executorService.executeDecision(decisionOf(
+                action(DeviceType.SMART_PLUG, ActionType.TURN_OFF, null),
+                action(DeviceType.EV_CHARGER, ActionType.SET_POWER, 3500.0)));
+
+        verify(homeAssistantClient).callServiceAsync(
+                "switch", "turn_off", List.of(entities.getSmartPlugSwitch()), Map.of());
+        verify(homeAssistantClient).callServiceAsync(
+                "number", "set_value", List.of("number.ev_charger_power"), Map.of("value", 3500.0));
+    }
+
+    @Test
+    void executeDecision_shouldSkipUnconfiguredDevicesAndNoChange() {
+        List<ActionResult> results = executorService.executeDecision(decisionOf(
+                action(DeviceType.AC_CLIMATE, ActionType.TURN_ON, null),
+                action(DeviceType.SMART_PLUG, ActionType.NO_CHANGE, null)));
+
+        verify(homeAssistantClient, never()).callServiceAsync(anyString(), anyString(), anyCollection(), anyMap());
+        assertEquals(ActionResult.Status.SKIPPED, results.get(0).getStatus());
+        assertEquals(ActionResult.Status.SKIPPED, results.get(1).getStatus());
+    }
+
+    @Test
+    void executeDecision_shouldReportFailurePerGroup() {
+        when(homeAssistantClient.callServiceAsync(eq("switch"), eq("turn_on"), anyCollection(), any()))
+                .thenReturn(Mono.error(new RuntimeException("Connection refused")));
+
+        List<ActionResult> results = executorService.executeDecision(decisionOf(
+                action(DeviceType.SMART_PLUG, ActionType.TURN_ON, null),
+                action(DeviceType.EV_CHARGER, ActionType.TURN_OFF, null)));
+
+        assertEquals(ActionResult.Status.FAILED, results.get(0).getStatus());
+        assertEquals("Connection refused", results.get(0).getMessage());
+        assertEquals(ActionResult.Status.SUCCESS, results.get(1).getStatus());
+    }
+
+    @Test
+    void executeDecision_shouldNotResendAppliedAction() {
+        DeviceDecision decision = decisionOf(action(DeviceType.SMART_PLUG, ActionType.TURN_ON, null));
+
+        executorService.executeDecision(decision);
+        List<ActionResult> results = executorService.executeDecision(decision);
+
+        verify(homeAssistantClient, times(1)).callServiceAsync(anyString(), anyString(), anyCollection(), anyMap());
+        assertEquals(ActionResult.Status.SKIPPED, results.get(0).getStatus());
+    }
+
+    @Test
+    void executeDecision_shouldSuppressPowerChangesBelowTolerance() {
+        executorService.executeDecision(decisionOf(action(DeviceType.EV_CHARGER, ActionType.SET_POWER, 3500.0)));
+        executorService.executeDecision(decisionOf(action(DeviceType.EV_CHARGER, ActionType.SET_POWER, 3550.0)));
+        executorService.executeDecision(decisionOf(action(DeviceType.EV_CHARGER, ActionType.SET_POWER, 4000.0)));
+
+        verify(homeAssistantClient).callServiceAsync(
+                "number", "set_value", List.of("number.ev_charger_power"), Map.of("value", 3500.0));
+        verify(homeAssistantClient, never()).callServiceAsync(
+                "number", "set_value", List.of("number.ev_charger_power"), Map.of("value", 3550.0));
+        verify(homeAssistantClient).callServiceAsync(
+                "number", "set_value", List.of("number.ev_charger_power"), Map.of("value", 4000.0));
+    }
+
+    @Test
+    void reconcile_shouldResendWhenObservedStateDiffers() {
+        DeviceDecision decision = decisionOf(action(DeviceType.SMART_PLUG, ActionType.TURN_ON, null));
+        executorService.executeDecision(decision);
+
+        // Plug was switched off manually
+        executorService.reconcile(SystemState.builder().smartPlugOn(false).build());
+        executorService.executeDecision(decision);
+
+        verify(homeAssistantClient, times(2)).callServiceAsync(anyString(), anyString(), anyCollection(), anyMap());
+    }
+
+    @Test
+    void executeDecision_shouldResendAfterFailure() {
+        when(homeAssistantClient.callServiceAsync(anyString(), anyString(), anyCollection(), anyMap()))
+                .thenReturn(Mono.error(new RuntimeException("Connection refused")))
+                .thenReturn(Mono.just("[]"));
+        DeviceDecision decision = decisionOf(action(DeviceType.SMART_PLUG, ActionType.TURN_ON, null));
+
+        executorService.executeDecision(decision);
+        List<ActionResult> results = executorService.executeDecision(decision);
+
+        assertEquals(ActionResult.Status.SUCCESS, results.get(0).getStatus());
+    }
+
+    @Test
+    void executeDecision_shouldUseExecutorOfLoad() {
+        List<ActionResult> results = executorService.executeDecision(decisionOf(
+                loadAction("pool-pump", ActionType.TURN_ON, null),
+                loadAction("heat-pump", ActionType.SET_POWER, 1500.0)));
+
+        assertEquals(ActionResult.Status.SUCCESS, results.get(0).getStatus());
+        assertEquals(ActionResult.Status.SUCCESS, results.get(1).getStatus());
+        verify(homeAssistantClient).callServiceAsync(eq("switch"), eq("turn_on"),
+                eq(List.of("switch.pool_pump")), anyMap());
+        verify(homeAssistantClient).callServiceAsync(eq("number"), eq("set_value"),
+                eq(List.of("number.heat_pump_power")), eq(Map.of("value", 1500.0)));
+    }
+
+    @Test
+    void executeDecision_shouldSkipUnknownLoad() {
+        List<ActionResult> results = executorService.executeDecision(decisionOf(
+                loadAction("sauna", ActionType.TURN_ON, null)));
+
+        assertEquals(ActionResult.Status.SKIPPED, results.get(0).getStatus());
+        verify(homeAssistantClient, never()).callServiceAsync(anyString(), anyString(), anyCollection(), anyMap());
+    }
+}
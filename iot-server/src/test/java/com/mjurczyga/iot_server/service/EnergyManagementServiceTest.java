@@ -0,0 +1,54 @@
+package com.mjurczyga.iot_server.service;
+
+import com.mjurczyga.iot_server.config.DeviceConfig;
+import com.mjurczyga.iot_server.home.HomeContext;
+import com.mjurczyga.iot_server.logic.PriorityCalculator;
+import com.mjurczyga.iot_server.model.DeviceDecision;
+import com.mjurczyga.iot_server.model.SystemState;
+import com.mjurczyga.iot_server.telemetry.TelemetryWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class EnergyManagementServiceTest {
+
+    @Mock
+    private TelemetryWriter telemetryWriter;
+
+    @Mock
+    private SystemStateService systemStateService;
+
+    @Mock
+    private PriorityCalculator liveCalculator;
+
+    @Test
+    void calculateDecision_shouldLeaveLiveCalculatorUntouched() {
+        when(systemStateService.getCurrentState()).thenReturn(SystemState.builder()
+                .currentPvProduction(5000.0)
+                .currentHouseConsumption(300.0)
+                .indoorTemperature(22.0)
+                .dishwasherReady(true)
+                .build());
+        HomeContext home = HomeContext.builder()
+                .id("default")
+                .deviceConfig(new DeviceConfig())
+                .systemStateService(systemStateService)
+                .priorityCalculator(liveCalculator)
+                .build();
+
+        DeviceDecision decision = new EnergyManagementService(telemetryWriter).calculateDecision(home);
+
+        assertEquals("MAX_USAGE", decision.getMode());
+        assertFalse(decision.getActions().isEmpty());
+        verifyNoInteractions(liveCalculator, telemetryWriter);
+    }
+}
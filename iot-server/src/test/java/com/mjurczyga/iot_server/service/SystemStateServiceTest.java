@@ -0,0 +1,158 @@
+package com.mjurczyga.iot_server.service;
+
+import com.mjurczyga.iot_server.client.home_assistant.EntityStateTable;
+import com.mjurczyga.iot_server.client.home_assistant.HomeAssistantClient;
+import com.mjurczyga.iot_server.client.home_assistant.HomeAssistantSnapshot;
+import com.mjurczyga.iot_server.client.response.HomeAssistantStateResponse;
+import com.mjurczyga.iot_server.config.DeviceConfig;
+import com.mjurczyga.iot_server.config.EntityMapping;
+import com.mjurczyga.iot_server.config.HomeAssistantConfig;
+import com.mjurczyga.iot_server.devices.DeviceRegistry;
+import com.mjurczyga.iot_server.model.LoadState;
+import com.mjurczyga.iot_server.model.SystemState;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class SystemStateServiceTest {
+
+    @Mock
+    private HomeAssistantClient homeAssistantClient;
+
+    private final EntityMapping entities = new EntityMapping();
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private HomeAssistantConfig homeAssistantConfig;
+    private SystemStateService systemStateService;
+
+    @BeforeEach
+    void setUp() {
+        Metrics.addRegistry(meterRegistry);
+        homeAssistantConfig = new HomeAssistantConfig();
+        systemStateService = new SystemStateService(homeAssistantClient, homeAssistantConfig,
+                new EntityStateTable(entities), new DeviceRegistry(new DeviceConfig(), entities));
+
+        when(homeAssistantClient.fetchSnapshot()).thenReturn(Mono.defer(() -> {
+            fetches.incrementAndGet();
+            return Mono.just(HomeAssistantSnapshot.of(List.of(
+                    stateOf(entities.getIndoorTemperature(), "24.5"),
+                    stateOf(entities.getPvCurrentProduction(), "3200"),
+                    stateOf(entities.getPresenceTracker(), "home")
+            ), entities)).delayElement(Duration.ofMillis(100));
+        }));
+    }
+
+    @AfterEach
+    void tearDown() {
+        Metrics.removeRegistry(meterRegistry);
+    }
+
+    private HomeAssistantStateResponse stateOf(String entityId, String state) {
+        HomeAssistantStateResponse response = new HomeAssistantStateResponse();
+        response.setEntityId(entityId);
+        response.setState(state);
+        return response;
+    }
+
+    @Test
+    void getCurrentState_shouldBuildStateFromSnapshot() {
+        SystemState state = systemStateService.getCurrentState();
+
+        assertTrue(state.isAnyoneHome());
+        assertEquals(24.5, state.getIndoorTemperature());
+        assertEquals(3200.0, state.getCurrentPvProduction());
+        assertEquals(20.0, state.getOutdoorTemperature()); // missing sensor falls back to default
+    }
+
+    @Test
+    void getCurrentStateAsync_shouldShareOneGatherBetweenConcurrentCallers() {
+        Mono.zip(
+                systemStateService.getCurrentStateAsync(),
+                systemStateService.getCurrentStateAsync(),
+                systemStateService.getCurrentStateAsync()
+        ).block();
+
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    void getCurrentStateAsync_shouldGatherAgain_afterCoalesceWindow() {
+        homeAssistantConfig.setCoalesceWindow(Duration.ZERO);
+
+        systemStateService.getCurrentState();
+        systemStateService.getCurrentState();
+
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    void getCurrentState_shouldReturnDefaultState_whenGatherFails() {
+        when(homeAssistantClient.fetchSnapshot()).thenReturn(Mono.error(new RuntimeException("Connection refused")));
+
+        SystemState state = systemStateService.getCurrentState();
+
+        assertFalse(state.isAnyoneHome());
+        assertEquals(22.0, state.getIndoorTemperature());
+    }
+
+    @Test
+    void getCurrentState_shouldCountFallbacksForMissingSensors() {
+        systemStateService.getCurrentState();
+
+        // The snapshot has no outdoor temperature and no smart plug power
+        assertEquals(1.0, meterRegistry.counter("iot.control.fallbacks", "input", "outdoor_temperature").count());
+        assertEquals(0.0, meterRegistry.counter("iot.control.fallbacks", "input", "indoor_temperature").count());
+        assertEquals(1.0, meterRegistry.counter("iot.control.gather", "source", "snapshot").count());
+    }
+
+    @Test
+    void getCurrentState_shouldReadLoads() {
+        DeviceConfig devices = new DeviceConfig();
+        DeviceConfig.Load pump = new DeviceConfig.Load();
+        pump.setId("pool-pump");
+        pump.setPower(800.0);
+        devices.getLoads().add(pump);
+        DeviceConfig.Load boiler = new DeviceConfig.Load();
+        boiler.setId("boiler");
+        boiler.setPower(2000.0);
+        devices.getLoads().add(boiler);
+        entities.getLoads().put("pool-pump", "switch.pool_pump");
+        entities.getLoadPower().put("pool-pump", "sensor.pool_pump_power");
+        entities.getLoads().put("boiler", "switch.boiler");
+
+        when(homeAssistantClient.fetchSnapshot()).thenReturn(Mono.just(HomeAssistantSnapshot.of(List.of(
+                stateOf("switch.pool_pump", "on"),
+                stateOf("sensor.pool_pump_power", "750"),
+                stateOf("switch.boiler", "off")
+        ), entities)));
+        SystemStateService service = new SystemStateService(homeAssistantClient, homeAssistantConfig,
+                new EntityStateTable(entities), new DeviceRegistry(devices, entities));
+
+        SystemState state = service.getCurrentState();
+
+        assertEquals(List.of("boiler", "pool-pump"), state.getLoads().stream().map(LoadState::getId).toList());
+        assertFalse(state.getLoads().get(0).isOn());
+        assertTrue(state.getLoads().get(1).isOn());
+        assertEquals(750.0, state.getLoads().get(1).getPower());
+        assertEquals(750.0, state.getLoadsPower());
+    }
+}
@@ -0,0 +1,73 @@
+package com.mjurczyga.iot_server.simulation;
+
+import com.mjurczyga.iot_server.config.ControlLoopConfig;
+import com.mjurczyga.iot_server.config.DeviceConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HouseholdSimulationTest {
+
+    private final DeviceConfig config = new DeviceConfig();
+    private final ControlLoopConfig controlConfig = new ControlLoopConfig();
+    private final SimulationScenario scenario = new SimulationScenario();
+
+    @BeforeEach
+    void setUp() {
+        scenario.setStartDate(LocalDate.of(2025, 6, 2));
+        scenario.setDays(7);
+    }
+
+    @Test
+    void run_shouldBalanceEnergy() {
+        SimulationResult result = new HouseholdSimulation(config, controlConfig, scenario).run();
+
+        assertEquals(7 * 86_400L, result.getSimulatedSeconds());
+        assertEquals(result.getPvProduction(), result.getSelfConsumption() + result.getGridExport(), 1e-6);
+        assertEquals(result.getConsumption(), result.getSelfConsumption() + result.getGridImport(), 1e-6);
+        assertTrue(result.getSelfConsumptionRatio() > 0 && result.getSelfConsumptionRatio() <= 1);
+    }
+
+    @Test
+    void run_shouldChargeEvFromSurplus() {
+        SimulationResult result = new HouseholdSimulation(config, controlConfig, scenario).run();
+
+        assertTrue(result.getEvCharged() > 0);
+        assertTrue(result.getCommands() > 0);
+        // Cycles run at least every max-interval
+        assertTrue(result.getCycles() >= result.getSimulatedSeconds() / 30);
+    }
+
+    @Test
+    void run_shouldBeReproducible_withSameSeed() {
+        SimulationResult first = new HouseholdSimulation(config, controlConfig, scenario).run();
+        SimulationResult second = new HouseholdSimulation(config, controlConfig, scenario).run();
+
+        assertEquals(first.getCycles(), second.getCycles());
+        assertEquals(first.getCommands(), second.getCommands());
+        assertEquals(first.getGridImport(), second.getGridImport());
+    }
+
+    @Test
+    void run_shouldSimulateYearWithinRequestBudget() {
+        // The simulation endpoint runs on the request thread and accepts up to a year
+        scenario.setDays(366);
+
+        SimulationResult result = assertTimeout(Duration.ofSeconds(30),
+                () -> new HouseholdSimulation(config, controlConfig, scenario).run());
+
+        assertEquals(366 * 86_400L, result.getSimulatedSeconds());
+    }
+
+    @Test
+    void run_shouldRunOnlyOnce() {
+        HouseholdSimulation simulation = new HouseholdSimulation(config, controlConfig, scenario);
+        simulation.run();
+
+        assertThrows(IllegalStateException.class, simulation::run);
+    }
+}
@@ -0,0 +1,96 @@
+package com.mjurczyga.iot_server.simulation;
+
+import com.mjurczyga.iot_server.config.ControlLoopConfig;
+import com.mjurczyga.iot_server.config.DeviceConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParameterSweepTest {
+
+    private final DeviceConfig config = new DeviceConfig();
+    private final ParameterSweep sweep = new ParameterSweep(config, new ControlLoopConfig());
+    private final SweepSpec spec = new SweepSpec();
+
+    @BeforeEach
+    void setUp() {
+        spec.getScenario().setStartDate(LocalDate.of(2025, 6, 2));
+        spec.setDays(2);
+        spec.setParallelism(2);
+    }
+
+    @Test
+    void variants_shouldBuildGrid_withBaseValuesForUnsweptParameters() {
+        spec.setSurplusBuffers(List.of(100.0, 200.0, 400.0));
+        spec.setPriorityOrders(List.of(List.of(), List.of("SMART_PLUG", "EV_CHARGER", "AC_CLIMATE", "DISHWASHER")));
+
+        List<SweepVariant> variants = sweep.variants(spec);
+
+        assertEquals(6, variants.size());
+        assertTrue(variants.stream().allMatch(variant -> variant.getEvMinPower() == config.getEvMinPower()));
+        assertTrue(variants.stream().allMatch(variant ->
+                variant.getTemperatureHysteresis() == config.getTemperatureHysteresis()));
+    }
+
+    @Test
+    void variants_shouldSampleDistinctVariants() {
+        spec.setSurplusBuffers(List.of(0.0, 100.0, 200.0, 300.0));
+        spec.setEvMinPowers(List.of(1400.0, 2000.0, 4000.0));
+        spec.setSamples(5);
+
+        List<SweepVariant> variants = sweep.variants(spec);
+
+        assertEquals(5, variants.size());
+        assertEquals(5, variants.stream().distinct().count());
+        assertEquals(variants, sweep.variants(spec));
+    }
+
+    @Test
+    void applyTo_shouldNotChangeBaseConfig() {
+        SweepVariant variant = new SweepVariant(500.0, 1.0, 2000.0, List.of("SMART_PLUG", "EV_CHARGER"));
+
+        DeviceConfig applied = variant.applyTo(config);
+
+        assertEquals(500.0, applied.getSurplusBuffer());
+        assertTrue(applied.isCustomPriorityEnabled());
+        assertEquals(200.0, config.getSurplusBuffer());
+        assertFalse(config.isCustomPriorityEnabled());
+    }
+
+    @Test
+    void run_shouldReturnRankedTotalPerVariant() {
+        spec.setSurplusBuffers(List.of(100.0, 1000.0));
+
+        List<SweepResult> results = sweep.run(spec);
+
+        assertEquals(2, results.size());
+        assertTrue(results.stream().allMatch(result -> result.getRuns() == 2));
+        assertTrue(results.stream().allMatch(result -> result.getTotal().getSimulatedSeconds() == 2 * 86_400L));
+        assertTrue(results.get(0).getTotal().getSelfConsumptionRatio()
+                >= results.get(1).getTotal().getSelfConsumptionRatio());
+    }
+
+    @Test
+    void run_shouldMatchSingleDaySimulation() {
+        SimulationScenario day = spec.getScenario().withDays(1);
+        SimulationResult single = new HouseholdSimulation(config, new ControlLoopConfig(), day).run();
+        spec.setDays(1);
+
+        SimulationResult swept = sweep.run(spec).get(0).getTotal();
+
+        assertEquals(single.getCommands(), swept.getCommands());
+        assertEquals(single.getGridImport(), swept.getGridImport());
+    }
+
+    @Test
+    void parallelism_shouldLeaveOneCoreFree() {
+        assertEquals(7, ParameterSweep.parallelism(0, 8));
+        assertEquals(7, ParameterSweep.parallelism(64, 8));
+        assertEquals(2, ParameterSweep.parallelism(2, 8));
+        assertEquals(1, ParameterSweep.parallelism(0, 1));
+    }
+}
@@ -0,0 +1,118 @@
+package com.mjurczyga.iot_server.telemetry;
+
+import com.mjurczyga.iot_server.model.SystemState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * COPY path against a real PostgreSQL, e.g.
+ * IOT_TEST_POSTGRES_URL=jdbc:postgresql://localhost:5432/iot_test IOT_TEST_POSTGRES_USER=postgres
+ * IOT_TEST_POSTGRES_PASSWORD=postgres ./gradlew test
+ * The telemetry tables of that database are dropped and recreated.
+ */
+@EnabledIfEnvironmentVariable(named = "IOT_TEST_POSTGRES_URL", matches = "jdbc:postgresql:.+")
+class TelemetryInserterPostgresTest {
+
+    // 2025-06-15T15:06:40Z
+    private static final long START = 1_750_000_000_000L;
+    private static final String STATE_PARTITION = "telemetry_state_p20250615";
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource(System.getenv("IOT_TEST_POSTGRES_URL"),
+                System.getenv("IOT_TEST_POSTGRES_USER"), System.getenv("IOT_TEST_POSTGRES_PASSWORD"));
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("DROP TABLE IF EXISTS telemetry_state, telemetry_reading CASCADE");
+        new ResourceDatabasePopulator(new ClassPathResource("schema-postgresql.sql")).execute(dataSource);
+    }
+
+    @Test
+    void insert_shouldCopyRowsIntoDayPartitions() throws SQLException {
+        TelemetryInserter inserter = new TelemetryInserter();
+
+        try (Connection connection = dataSource.getConnection()) {
+            inserter.insert(connection,
+                    List.of(new StateSample("default", START, state(3200.0), 2600.0),
+                            new StateSample("default", START + 86_400_000L, state(3300.0), 2700.0)),
+                    List.of(new EntityReading("default", START, "sensor.pv_power", 3200.5, "3200.5"),
+                            new EntityReading("default", START, "person.owner", Double.NaN, "at \"home\", awake")));
+        }
+
+        assertEquals(1, count(STATE_PARTITION));
+        assertEquals(1, count("telemetry_state_p20250616"));
+        assertEquals(0, count("telemetry_state_default"));
+        assertEquals(2600.0, jdbc.queryForObject(
+                "SELECT available_surplus FROM telemetry_state ORDER BY sampled_at LIMIT 1", Double.class));
+        assertNull(jdbc.queryForObject(
+                "SELECT numeric_value FROM telemetry_reading WHERE entity_id = 'person.owner'", Double.class));
+        assertEquals("at \"home\", awake", jdbc.queryForObject(
+                "SELECT raw_state FROM telemetry_reading WHERE entity_id = 'person.owner'", String.class));
+    }
+
+    @Test
+    void insert_shouldRetryPartition_whenCreationFailed() throws SQLException {
+        AtomicLong clock = new AtomicLong(Duration.ofHours(1).toNanos());
+        TelemetryInserter inserter = new TelemetryInserter(clock::get);
+        // Rows of the day in the default partition make creating the day partition fail
+        jdbc.update("INSERT INTO telemetry_state_default (home_id, sampled_at, anyone_home, ac_on, ev_connected, "
+                + "dishwasher_ready, dishwasher_on, smart_plug_on) "
+                + "VALUES ('default', TIMESTAMPTZ '2025-06-15 12:00:00+00', false, false, false, false, false, false)");
+
+        try (Connection connection = dataSource.getConnection()) {
+            inserter.insert(connection, List.of(new StateSample("default", START, state(3200.0), 2600.0)), List.of());
+        }
+        assertEquals(0, count(STATE_PARTITION));
+        assertEquals(2, count("telemetry_state_default"));
+
+        // Not tried again before the retry interval is over
+        jdbc.update("DELETE FROM telemetry_state_default");
+        try (Connection connection = dataSource.getConnection()) {
+            inserter.insert(connection, List.of(new StateSample("default", START, state(3300.0), 2700.0)), List.of());
+        }
+        assertEquals(0, count(STATE_PARTITION));
+        assertEquals(1, count("telemetry_state_default"));
+
+        jdbc.update("DELETE FROM telemetry_state_default");
+        clock.addAndGet(Duration.ofMinutes(5).toNanos());
+        try (Connection connection = dataSource.getConnection()) {
+            inserter.insert(connection, List.of(new StateSample("default", START, state(3400.0), 2800.0)), List.of());
+        }
+        assertEquals(1, count(STATE_PARTITION));
+    }
+
+    private int count(String table) {
+        Boolean exists = jdbc.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, table);
+        if (!Boolean.TRUE.equals(exists)) {
+            return 0;
+        }
+        return jdbc.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+
+    private static SystemState state(double pvProduction) {
+        return SystemState.builder()
+                .anyoneHome(true)
+                .indoorTemperature(22.5)
+                .outdoorTemperature(28.0)
+                .currentPvProduction(pvProduction)
+                .currentHouseConsumption(600.0)
+                .evConnected(true)
+                .evChargePercentage(55.0)
+                .build();
+    }
+}
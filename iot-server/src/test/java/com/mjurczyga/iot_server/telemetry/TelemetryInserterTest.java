@@ -0,0 +1,82 @@
+package com.mjurczyga.iot_server.telemetry;
+
+import com.mjurczyga.iot_server.model.SystemState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class TelemetryInserterTest {
+
+    private static final long START = 1_750_000_000_000L;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PGConnection pgConnection;
+
+    @Mock
+    private CopyManager copyManager;
+
+    @Mock
+    private Statement statement;
+
+    private final AtomicLong clock = new AtomicLong(Duration.ofHours(1).toNanos());
+    private TelemetryInserter inserter;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        when(connection.isWrapperFor(PGConnection.class)).thenReturn(true);
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        when(pgConnection.getCopyAPI()).thenReturn(copyManager);
+        when(connection.createStatement()).thenReturn(statement);
+        inserter = new TelemetryInserter(clock::get);
+    }
+
+    @Test
+    void insert_shouldCreatePartitionOnce() throws SQLException {
+        insert();
+        insert();
+
+        verify(statement, times(1)).execute(anyString());
+    }
+
+    @Test
+    void insert_shouldRetryFailedPartition_onlyAfterRetryInterval() throws SQLException {
+        when(statement.execute(anyString())).thenThrow(new SQLException("default partition contains rows"));
+
+        insert();
+        clock.addAndGet(Duration.ofMinutes(4).toNanos());
+        insert();
+        verify(statement, times(1)).execute(anyString());
+
+        clock.addAndGet(Duration.ofMinutes(1).toNanos());
+        insert();
+        verify(statement, times(2)).execute(anyString());
+    }
+
+    private void insert() throws SQLException {
+        inserter.insert(connection, List.of(new StateSample("default", START, SystemState.builder().build(), 0.0)),
+                List.of());
+    }
+}
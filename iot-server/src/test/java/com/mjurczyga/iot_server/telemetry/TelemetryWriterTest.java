@@ -0,0 +1,112 @@
+package com.mjurczyga.iot_server.telemetry;
+
+import com.mjurczyga.iot_server.client.response.HomeAssistantStateResponse;
+import com.mjurczyga.iot_server.config.TelemetryConfig;
+import com.mjurczyga.iot_server.model.SystemState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TelemetryWriterTest {
+
+    private static final long START = 1_750_000_000_000L;
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbc;
+    private TelemetryConfig config;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:telemetry-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        new ResourceDatabasePopulator(new ClassPathResource("schema-h2.sql")).execute(dataSource);
+        jdbc = new JdbcTemplate(dataSource);
+
+        config = new TelemetryConfig();
+        config.setEnabled(true);
+        config.setBatchSize(10);
+        config.setPollInterval(Duration.ofMillis(10));
+    }
+
+    @Test
+    void stop_shouldWriteAllQueuedRows() {
+        TelemetryWriter writer = new TelemetryWriter(config, dataSource);
+        writer.start();
+
+        for (int i = 0; i < 25; i++) {
+            writer.offerState("default", START + i * 1000L, state(3000.0 + i));
+        }
+        writer.offerReading("default", "sensor.pv_power", response("sensor.pv_power", "3200.5", "2025-06-15T12:00:00+00:00"));
+        writer.offerReading("default", "person.owner", response("person.owner", "home", null));
+        writer.stop();
+
+        assertEquals(27, writer.getAccepted());
+        assertEquals(27, writer.getWritten());
+        assertEquals(0, writer.getFailed());
+        assertEquals(25, jdbc.queryForObject("SELECT COUNT(*) FROM telemetry_state", Integer.class));
+        assertEquals(3024.0, jdbc.queryForObject(
+                "SELECT pv_production FROM telemetry_state ORDER BY sampled_at DESC LIMIT 1", Double.class));
+
+        assertEquals(3200.5, jdbc.queryForObject(
+                "SELECT numeric_value FROM telemetry_reading WHERE entity_id = 'sensor.pv_power'", Double.class));
+        assertNull(jdbc.queryForObject(
+                "SELECT numeric_value FROM telemetry_reading WHERE entity_id = 'person.owner'", Double.class));
+        assertEquals("home", jdbc.queryForObject(
+                "SELECT raw_state FROM telemetry_reading WHERE entity_id = 'person.owner'", String.class));
+    }
+
+    @Test
+    void offer_shouldDropRowsWhenQueueIsFull() {
+        config.setQueueCapacity(5);
+        config.setWriterThreads(0); // Nothing drains the queue
+        TelemetryWriter writer = new TelemetryWriter(config, dataSource);
+        writer.start();
+
+        for (int i = 0; i < 8; i++) {
+            writer.offerState("default", START + i * 1000L, state(3000.0));
+        }
+
+        assertEquals(5, writer.getAccepted());
+        assertEquals(3, writer.getDropped());
+    }
+
+    @Test
+    void offer_shouldIgnoreRowsWhenDisabled() {
+        config.setEnabled(false);
+        TelemetryWriter writer = new TelemetryWriter(config, dataSource);
+        writer.start();
+
+        writer.offerState("default", START, state(3000.0));
+        writer.stop();
+
+        assertEquals(0, writer.getAccepted());
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM telemetry_state", Integer.class));
+    }
+
+    private static SystemState state(double pvProduction) {
+        return SystemState.builder()
+                .anyoneHome(true)
+                .indoorTemperature(22.5)
+                .outdoorTemperature(28.0)
+                .currentPvProduction(pvProduction)
+                .currentHouseConsumption(600.0)
+                .evConnected(true)
+                .evChargePercentage(55.0)
+                .build();
+    }
+
+    private static HomeAssistantStateResponse response(String entityId, String state, String lastChanged) {
+        HomeAssistantStateResponse response = new HomeAssistantStateResponse();
+        response.setEntityId(entityId);
+        response.setState(state);
+        response.setLastChanged(lastChanged);
+        return response;
+    }
+}